@@ -0,0 +1,28 @@
+//  Copyright 2020-2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor;
+
+import androidx.annotation.NonNull;
+
+import io.heraldprox.herald.sensor.datatype.ProximityBatch;
+import io.heraldprox.herald.sensor.datatype.SensorType;
+
+/**
+ * Optional extension of SensorDelegate for receiving proximity measurements in batches.
+ * <br>- Sensors deliver all measurements acquired in one dispatch cycle as a single batch,
+ *   instead of calling didMeasure and didMeasure:withPayload once per measurement.
+ * <br>- Delegates implementing this interface receive proximity measurements through this
+ *   method only, all other sensor events are delivered through SensorDelegate as before.
+ * <br>- Use BatchSensorDelegateAdapter to deliver batches to existing SensorDelegate implementations.
+ */
+public interface BatchSensorDelegate extends SensorDelegate {
+    /**
+     * Measure proximity to targets, e.g. all RSSI values from BLE peripherals acquired in
+     * the last dispatch cycle. The batch is immutable once delivered and may be retained.
+     * @param sensor
+     * @param didMeasure
+     */
+    void sensor(@NonNull final SensorType sensor, @NonNull final ProximityBatch didMeasure);
+}
@@ -0,0 +1,94 @@
+//  Copyright 2020-2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor;
+
+import androidx.annotation.NonNull;
+
+import io.heraldprox.herald.sensor.datatype.ImmediateSendData;
+import io.heraldprox.herald.sensor.datatype.Location;
+import io.heraldprox.herald.sensor.datatype.PayloadData;
+import io.heraldprox.herald.sensor.datatype.Proximity;
+import io.heraldprox.herald.sensor.datatype.ProximityBatch;
+import io.heraldprox.herald.sensor.datatype.SensorState;
+import io.heraldprox.herald.sensor.datatype.SensorType;
+import io.heraldprox.herald.sensor.datatype.TargetIdentifier;
+
+import java.util.List;
+
+/**
+ * Adapter for delivering proximity measurement batches to an existing SensorDelegate. Each
+ * measurement in a batch is delivered as didMeasure, followed by didMeasure:withPayload if
+ * payload data was known at the time of measurement. All other events are passed through.
+ * <br>- SensorDelegate has no timestamp for measurements, thus the delegate receives all
+ *   measurements in a batch at the time of dispatch, and the time of each measurement within
+ *   the batch cycle is lost. Sensors deliver measurements to SensorDelegate directly as they
+ *   are acquired, and this adapter is only for consumers that hold batches themselves.
+ */
+public class BatchSensorDelegateAdapter implements BatchSensorDelegate {
+    @NonNull
+    private final SensorDelegate delegate;
+
+    public BatchSensorDelegateAdapter(@NonNull final SensorDelegate delegate) {
+        this.delegate = delegate;
+    }
+
+    @NonNull
+    public SensorDelegate delegate() {
+        return delegate;
+    }
+
+    @Override
+    public void sensor(@NonNull final SensorType sensor, @NonNull final ProximityBatch didMeasure) {
+        for (int i=0; i<didMeasure.size(); i++) {
+            final Proximity proximity = didMeasure.proximity(i);
+            final TargetIdentifier fromTarget = didMeasure.target(i);
+            delegate.sensor(sensor, proximity, fromTarget);
+            final PayloadData withPayload = didMeasure.payload(i);
+            if (null != withPayload) {
+                delegate.sensor(sensor, proximity, fromTarget, withPayload);
+            }
+        }
+    }
+
+    @Override
+    public void sensor(@NonNull final SensorType sensor, @NonNull final TargetIdentifier didDetect) {
+        delegate.sensor(sensor, didDetect);
+    }
+
+    @Override
+    public void sensor(@NonNull final SensorType sensor, @NonNull final PayloadData didRead, @NonNull final TargetIdentifier fromTarget) {
+        delegate.sensor(sensor, didRead, fromTarget);
+    }
+
+    @Override
+    public void sensor(@NonNull final SensorType sensor, @NonNull final ImmediateSendData didReceive, @NonNull final TargetIdentifier fromTarget) {
+        delegate.sensor(sensor, didReceive, fromTarget);
+    }
+
+    @Override
+    public void sensor(@NonNull final SensorType sensor, @NonNull final List<PayloadData> didShare, @NonNull final TargetIdentifier fromTarget) {
+        delegate.sensor(sensor, didShare, fromTarget);
+    }
+
+    @Override
+    public void sensor(@NonNull final SensorType sensor, @NonNull final Proximity didMeasure, @NonNull final TargetIdentifier fromTarget) {
+        delegate.sensor(sensor, didMeasure, fromTarget);
+    }
+
+    @Override
+    public void sensor(@NonNull final SensorType sensor, @NonNull final Location didVisit) {
+        delegate.sensor(sensor, didVisit);
+    }
+
+    @Override
+    public void sensor(@NonNull final SensorType sensor, @NonNull final Proximity didMeasure, @NonNull final TargetIdentifier fromTarget, @NonNull final PayloadData withPayload) {
+        delegate.sensor(sensor, didMeasure, fromTarget, withPayload);
+    }
+
+    @Override
+    public void sensor(@NonNull final SensorType sensor, @NonNull final SensorState didUpdateState) {
+        delegate.sensor(sensor, didUpdateState);
+    }
+}
@@ -0,0 +1,226 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis;
+
+import androidx.annotation.NonNull;
+
+import io.heraldprox.herald.sensor.datatype.Encounter;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Time indexed in-memory store of encounters for answering time range queries by binary
+ * search, rather than scanning all encounters for every query.
+ * <br>- Encounters are held in time order in parallel arrays of timestamp (primitive) and
+ *   encounter. Encounters arrive in time order, thus append is normally amortised O(1). An
+ *   encounter that arrives out of order is inserted after all encounters with the same or
+ *   earlier timestamp, at O(n) cost.
+ * <br>- Range queries return read-only views of the backing arrays in O(log n) time and
+ *   constant memory. An array slot is never overwritten once written, as insertion, compaction
+ *   and clear always allocate new arrays, thus views remain valid and unchanged after the store
+ *   is modified.
+ * <br>- Removal of encounters before a cut off time advances the start of the live range in
+ *   O(log n) time, and the arrays are compacted once the majority is no longer live.
+ * <br>- Encounters without timestamp are not stored, as they can never match a time range.
+ * <br>- This class is not thread safe, access must be synchronized by the owner.
+ */
+final class EncounterStore {
+    private final static int minimumCapacity = 16;
+    @NonNull
+    private long[] times = new long[minimumCapacity];
+    @NonNull
+    private Encounter[] encounters = new Encounter[minimumCapacity];
+    // Live encounters are in range [start, end)
+    private int start = 0;
+    private int end = 0;
+
+    /**
+     * Read-only view of a range of the backing arrays.
+     */
+    private final static class View extends AbstractList<Encounter> implements RandomAccess {
+        @NonNull
+        private final Encounter[] encounters;
+        private final int offset;
+        private final int size;
+
+        private View(@NonNull final Encounter[] encounters, final int offset, final int size) {
+            this.encounters = encounters;
+            this.offset = offset;
+            this.size = size;
+        }
+
+        @Override
+        public Encounter get(final int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("index=" + index + ",size=" + size);
+            }
+            return encounters[offset + index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Number of encounters in store.
+     * @return Encounter count.
+     */
+    int size() {
+        return end - start;
+    }
+
+    /**
+     * Add encounter to store.
+     * @param encounter Encounter
+     * @return True if encounter was added, false if encounter has no timestamp.
+     */
+    boolean add(@NonNull final Encounter encounter) {
+        if (null == encounter.timestamp) {
+            return false;
+        }
+        final long time = encounter.timestamp.getTime();
+        // Append in time order
+        if (end == start || time >= times[end - 1]) {
+            if (end == times.length) {
+                reallocate(size() + 1);
+            }
+            times[end] = time;
+            encounters[end] = encounter;
+            end++;
+            return true;
+        }
+        // Insert out of order encounter into new arrays, such that existing views are unaffected
+        final int position = upperBound(time) - start;
+        final int size = size();
+        final long[] newTimes = new long[capacity(size + 1)];
+        final Encounter[] newEncounters = new Encounter[newTimes.length];
+        System.arraycopy(times, start, newTimes, 0, position);
+        System.arraycopy(encounters, start, newEncounters, 0, position);
+        newTimes[position] = time;
+        newEncounters[position] = encounter;
+        System.arraycopy(times, start + position, newTimes, position + 1, size - position);
+        System.arraycopy(encounters, start + position, newEncounters, position + 1, size - position);
+        times = newTimes;
+        encounters = newEncounters;
+        start = 0;
+        end = size + 1;
+        return true;
+    }
+
+    /**
+     * Get encounters from start time (inclusive) to end time (exclusive).
+     * @param startTime Start time in milliseconds since unix epoch (inclusive)
+     * @param endTime End time in milliseconds since unix epoch (exclusive)
+     * @return Read-only view of encounters in time order.
+     */
+    @NonNull
+    List<Encounter> range(final long startTime, final long endTime) {
+        final int from = lowerBound(startTime);
+        final int to = Math.max(from, lowerBound(endTime));
+        return new View(encounters, from, to - from);
+    }
+
+    /**
+     * Get encounters from start time (inclusive).
+     * @param startTime Start time in milliseconds since unix epoch (inclusive)
+     * @return Read-only view of encounters in time order.
+     */
+    @NonNull
+    List<Encounter> since(final long startTime) {
+        final int from = lowerBound(startTime);
+        return new View(encounters, from, end - from);
+    }
+
+    /**
+     * Remove all encounters before time (exclusive).
+     * @param time Cut off time in milliseconds since unix epoch (exclusive)
+     * @return Number of encounters removed.
+     */
+    int removeBefore(final long time) {
+        final int from = lowerBound(time);
+        final int removed = from - start;
+        start = from;
+        // Release removed encounters once the majority of the arrays is no longer live
+        if (start > times.length / 2) {
+            reallocate(size());
+        }
+        return removed;
+    }
+
+    /**
+     * Remove all encounters.
+     */
+    void clear() {
+        times = new long[minimumCapacity];
+        encounters = new Encounter[minimumCapacity];
+        start = 0;
+        end = 0;
+    }
+
+    /**
+     * Copy live encounters into new arrays with capacity for at least minimum encounters.
+     * @param minimum Minimum capacity
+     */
+    private void reallocate(final int minimum) {
+        final int size = size();
+        final long[] newTimes = new long[capacity(minimum)];
+        final Encounter[] newEncounters = new Encounter[newTimes.length];
+        System.arraycopy(times, start, newTimes, 0, size);
+        System.arraycopy(encounters, start, newEncounters, 0, size);
+        times = newTimes;
+        encounters = newEncounters;
+        start = 0;
+        end = size;
+    }
+
+    /**
+     * Capacity for minimum number of encounters, with room for growth.
+     * @param minimum Minimum capacity
+     * @return Array size.
+     */
+    private static int capacity(final int minimum) {
+        return Math.max(minimumCapacity, minimum + (minimum >> 1));
+    }
+
+    /**
+     * Index of first live encounter with timestamp at or after time.
+     * @param time Time in milliseconds since unix epoch
+     * @return Index in range [start, end].
+     */
+    private int lowerBound(final long time) {
+        int low = start, high = end;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (times[middle] < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Index of first live encounter with timestamp after time.
+     * @param time Time in milliseconds since unix epoch
+     * @return Index in range [start, end].
+     */
+    private int upperBound(final long time) {
+        int low = start, high = end;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (times[middle] <= time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -7,10 +7,14 @@ package io.heraldprox.herald.sensor.analysis;
 import android.content.Context;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import io.heraldprox.herald.sensor.data.ConcreteSensorLogger;
+import io.heraldprox.herald.sensor.data.SegmentedTextFile;
 import io.heraldprox.herald.sensor.data.SensorDelegateLogger;
 import io.heraldprox.herald.sensor.data.SensorLogger;
+import io.heraldprox.herald.sensor.data.TextFile;
+import io.heraldprox.herald.sensor.datatype.Callback;
 import io.heraldprox.herald.sensor.datatype.Distribution;
 import io.heraldprox.herald.sensor.datatype.Encounter;
 import io.heraldprox.herald.sensor.datatype.PayloadData;
@@ -30,44 +34,156 @@ import java.util.Map;
  * Log of interactions for recording encounters (time, proximity, and identity).
  * This is can be used as basis for maintaining a persistent log of encounters
  * for on-device or centralised matching.
+ * <br>- Logs created with a context are stored as daily segment files with a manifest (see
+ *   SegmentedTextFile), e.g. "contacts.csv" is stored as "contacts-20210901-000000.csv" and
+ *   so on, with manifest "contacts-manifest.csv". Encounters in an existing log file are
+ *   migrated on start up, leaving the original log file empty, thus exports should collect
+ *   the segment files instead of the original file.
  */
 public class Interactions extends SensorDelegateLogger {
     @SuppressWarnings("FieldCanBeLocal")
     private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "Analysis.EncounterLog");
+    private final static String header = "time,proximity,unit,payload";
     @NonNull
-    private List<Encounter> encounters = new ArrayList<>();
+    private final EncounterStore encounters = new EncounterStore();
+    @Nullable
+    private final SegmentedTextFile segmentedTextFile;
 
     public Interactions() {
         super();
+        segmentedTextFile = null;
     }
 
+    /**
+     * Interactions log stored as daily segment files, derived from filename.
+     * Encounters in an existing log file with this filename are migrated to segment files.
+     * @param context Application context
+     * @param filename Log file name
+     */
     public Interactions(@NonNull final Context context, @NonNull final String filename) {
         super(context, filename);
-        for (String line : contentsOf().split("\n")) {
-            final Encounter encounter = new Encounter(line);
-            if (encounter.isValid()) {
-                encounters.add(encounter);
+        segmentedTextFile = new SegmentedTextFile(context, filename, TimeInterval.day, header);
+        migrate();
+        load();
+    }
+
+    /**
+     * Interactions log stored as segment files, after migrating encounters from log file.
+     * @param textFile Log file, which is emptied after migration.
+     * @param segmentedTextFile Segment files.
+     */
+    public Interactions(@NonNull final TextFile textFile, @NonNull final SegmentedTextFile segmentedTextFile) {
+        super(textFile);
+        this.segmentedTextFile = segmentedTextFile;
+        migrate();
+        load();
+    }
+
+    /**
+     * Interactions log stored as segment files.
+     * @param segmentedTextFile Segment files.
+     */
+    public Interactions(@NonNull final SegmentedTextFile segmentedTextFile) {
+        super();
+        this.segmentedTextFile = segmentedTextFile;
+        load();
+    }
+
+    /**
+     * Migrate encounters from log file to segment files, writing consecutive encounters in
+     * the same segment in a single write. Log file is emptied on completion.
+     */
+    private void migrate() {
+        if (null == segmentedTextFile || empty()) {
+            return;
+        }
+        final List<String> lines = new ArrayList<>();
+        final long[] segment = new long[]{Long.MIN_VALUE};
+        if (!forEachLine(new Callback<String>() {
+            @Override
+            public void accept(final String line) {
+                final Encounter encounter = new Encounter(line);
+                if (!encounter.isValid()) {
+                    return;
+                }
+                final long segmentStart = segmentedTextFile.segmentStart(encounter.timestamp.getTime());
+                if (segmentStart != segment[0] && !lines.isEmpty()) {
+                    segmentedTextFile.write(segment[0], lines);
+                    lines.clear();
+                }
+                segment[0] = segmentStart;
+                lines.add(line);
             }
+        })) {
+            logger.fault("Migrate historic encounters failed, log file retained");
+            return;
         }
+        segmentedTextFile.write(segment[0], lines);
+        super.reset();
+        logger.debug("Migrated historic encounters to segment files (segments={})", segmentedTextFile.segments());
+    }
+
+    /**
+     * Load historic encounters from segment files line by line, such that the file content is
+     * never held in memory in its entirety. Records before the retention cut off are discarded.
+     */
+    private void load() {
+        if (null == segmentedTextFile) {
+            return;
+        }
+        segmentedTextFile.forEachLine(new Callback<String>() {
+            @Override
+            public void accept(final String line) {
+                final Encounter encounter = new Encounter(line);
+                if (encounter.isValid()) {
+                    encounters.add(encounter);
+                }
+            }
+        });
+        encounters.removeBefore(segmentedTextFile.start());
         logger.debug("Loaded historic encounters (count={})", encounters.size());
     }
 
     @Override
     public synchronized void reset() {
         super.reset();
+        if (null != segmentedTextFile) {
+            segmentedTextFile.reset();
+        }
         encounters.clear();
     }
 
-    private void writeHeader() {
-        if (empty()) {
-            write("time,proximity,unit,payload");
+    public synchronized void append(@NonNull final Encounter encounter) {
+        if (null != segmentedTextFile) {
+            final long time = (null == encounter.timestamp ? System.currentTimeMillis() : encounter.timestamp.getTime());
+            segmentedTextFile.write(time, encounter.csvString());
         }
+        encounters.add(encounter);
     }
 
-    public synchronized void append(@NonNull final Encounter encounter) {
-        writeHeader();
-        write(encounter.csvString());
-        encounters.add(encounter);
+    /**
+     * Get encounters from start date (inclusive) to end date (exclusive) in time order. This
+     * is a binary search of the time indexed store, and the result is a read-only view that
+     * is unaffected by subsequent changes to the log.
+     * @param start Start date (inclusive)
+     * @param end End date (exclusive)
+     * @return Read-only view of encounters in requested period.
+     */
+    @NonNull
+    public synchronized List<Encounter> encounters(@NonNull final Date start, @NonNull final Date end) {
+        return encounters.range(start.getTime(), end.getTime());
+    }
+
+    /**
+     * Get all encounters from start date (inclusive) in time order. This is a binary search of
+     * the time indexed store, and the result is a read-only view that is unaffected by
+     * subsequent changes to the log.
+     * @param start Start date (inclusive)
+     * @return Read-only view of encounters from start date to now.
+     */
+    @NonNull
+    public synchronized List<Encounter> encounters(@NonNull final Date start) {
+        return encounters.since(start.getTime());
     }
 
     /**
@@ -78,19 +194,7 @@ public class Interactions extends SensorDelegateLogger {
      */
     @NonNull
     public synchronized List<Encounter> subdata(@NonNull final Date start, @NonNull final Date end) {
-        final long startTime = start.getTime();
-        final long endTime = end.getTime();
-        final List<Encounter> subdata = new ArrayList<>();
-        for (Encounter encounter : encounters) {
-            if (null == encounter.timestamp) {
-                continue;
-            }
-            final long time = encounter.timestamp.getTime();
-            if (time >= startTime && time < endTime) {
-                subdata.add(encounter);
-            }
-        }
-        return subdata;
+        return new ArrayList<>(encounters(start, end));
     }
 
     /**
@@ -100,18 +204,7 @@ public class Interactions extends SensorDelegateLogger {
      */
     @NonNull
     public synchronized List<Encounter> subdata(@NonNull final Date start) {
-        final long startTime = start.getTime();
-        final List<Encounter> subdata = new ArrayList<>();
-        for (final Encounter encounter : encounters) {
-            if (null == encounter.timestamp) {
-                continue;
-            }
-            final long time = encounter.timestamp.getTime();
-            if (time >= startTime) {
-                subdata.add(encounter);
-            }
-        }
-        return subdata;
+        return new ArrayList<>(encounters(start));
     }
 
     /**
@@ -120,15 +213,11 @@ public class Interactions extends SensorDelegateLogger {
      * @param before Cut off date (exclusive)
      */
     public synchronized void remove(@NonNull final Date before) {
-        final StringBuilder content = new StringBuilder();
-        content.append("time,proximity,unit,payload\n");
-        final List<Encounter> subdata = subdata(before);
-        for (final Encounter encounter : subdata) {
-            content.append(encounter.csvString());
-            content.append("\n");
+        encounters.removeBefore(before.getTime());
+        // Whole segments are deleted, retained records are never rewritten
+        if (null != segmentedTextFile) {
+            segmentedTextFile.removeBefore(before.getTime());
         }
-        overwrite(content.toString());
-        encounters = subdata;
     }
 
     // MARK:- SensorDelegate
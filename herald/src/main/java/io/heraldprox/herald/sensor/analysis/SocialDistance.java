@@ -58,7 +58,7 @@ public class SocialDistance extends Interactions {
     @NonNull
     public Double scoreByProximity(@NonNull final Date start, @NonNull final Date end, final double measuredPower, final double excludeRssiBelow) {
         // Get encounters over time period
-        final List<Encounter> encounters = subdata(start, end);
+        final List<Encounter> encounters = encounters(start, end);
         // Get number of minutes in time period
         final double duration = Math.ceil(new TimeInterval(start, end).value / 60d);
         if (0 == duration) {
@@ -114,7 +114,7 @@ public class SocialDistance extends Interactions {
     @NonNull
     public Double scoreByTarget(@NonNull final Date start, @NonNull final Date end, final int maximumDeviceCount, final double excludeRssiBelow) {
         // Get encounters over time period
-        final List<Encounter> encounters = subdata(start, end);
+        final List<Encounter> encounters = encounters(start, end);
         // Get number of minutes in time period
         final double duration = Math.ceil(new TimeInterval(start, end).value / 60d);
         if (0 == duration) {
@@ -8,19 +8,28 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import io.heraldprox.herald.sensor.datatype.Distribution;
-import io.heraldprox.herald.sensor.analysis.sampling.Aggregate;
+import io.heraldprox.herald.sensor.analysis.sampling.IncrementalAggregate;
+import io.heraldprox.herald.sensor.analysis.sampling.PrimitiveAggregate;
 import io.heraldprox.herald.sensor.analysis.sampling.Sample;
 import io.heraldprox.herald.sensor.datatype.DoubleValue;
 
 /**
  * Aggregate wrapper for {@link Distribution} to provide a one-pass Gaussian model for estimating
- * mean, variance, standard deviation, min and max for sample values.
+ * mean, variance, standard deviation, min and max for sample values. When maintained
+ * incrementally over a sliding window, min and max are tracked by monotonic queues to provide
+ * amortised constant time updates on eviction.
  * @param <T>
  */
-public class Gaussian<T extends DoubleValue> implements Aggregate<T> {
+public class Gaussian<T extends DoubleValue> implements PrimitiveAggregate<T>, IncrementalAggregate<T> {
     private int run = 1;
     @NonNull
     private Distribution model = new Distribution();
+    // Window minimum at head, values in ascending order
+    @NonNull
+    private final MonotonicQueue windowMin = new MonotonicQueue(true);
+    // Window maximum at head, values in descending order
+    @NonNull
+    private final MonotonicQueue windowMax = new MonotonicQueue(false);
 
     @Override
     public int runs() {
@@ -34,8 +43,27 @@ public class Gaussian<T extends DoubleValue> implements Aggregate<T> {
 
     @Override
     public void map(@NonNull final Sample<T> value) {
+        map(value.taken().getTime(), value.value().doubleValue());
+    }
+
+    @Override
+    public void map(final long time, final double value) {
         if (run > 1) return;
-        model.add(value.value().doubleValue());
+        model.add(value);
+    }
+
+    @Override
+    public void onPush(final long time, final double value) {
+        model.add(value);
+        windowMin.push(value);
+        windowMax.push(value);
+    }
+
+    @Override
+    public void onEvict(final long time, final double value) {
+        windowMin.evict(value);
+        windowMax.evict(value);
+        model.remove(value, windowMin.head(), windowMax.head());
     }
 
     /**
@@ -51,6 +79,8 @@ public class Gaussian<T extends DoubleValue> implements Aggregate<T> {
     @Override
     public void reset() {
         model = new Distribution();
+        windowMin.clear();
+        windowMax.clear();
     }
 
     /**
@@ -62,4 +92,57 @@ public class Gaussian<T extends DoubleValue> implements Aggregate<T> {
     public Distribution model() {
         return model;
     }
+
+    /**
+     * Monotonic queue of window values for sliding window min or max, where values that can
+     * never become the head are discarded on push. Values must be evicted in push order.
+     */
+    private final static class MonotonicQueue {
+        private final boolean ascending;
+        private double[] values = new double[16];
+        private int head = 0;
+        private int size = 0;
+
+        private MonotonicQueue(final boolean ascending) {
+            this.ascending = ascending;
+        }
+
+        private void push(final double value) {
+            // Discard tail values that are superseded by the new value
+            while (size > 0) {
+                final double tail = values[(head + size - 1) % values.length];
+                if (ascending ? tail > value : tail < value) {
+                    size--;
+                } else {
+                    break;
+                }
+            }
+            if (size == values.length) {
+                final double[] grown = new double[values.length * 2];
+                for (int i=0; i<size; i++) {
+                    grown[i] = values[(head + i) % values.length];
+                }
+                values = grown;
+                head = 0;
+            }
+            values[(head + size) % values.length] = value;
+            size++;
+        }
+
+        private void evict(final double value) {
+            if (size > 0 && values[head] == value) {
+                head = (head + 1) % values.length;
+                size--;
+            }
+        }
+
+        private double head() {
+            return (0 == size ? (ascending ? Double.MAX_VALUE : -Double.MAX_VALUE) : values[head]);
+        }
+
+        private void clear() {
+            head = 0;
+            size = 0;
+        }
+    }
 }
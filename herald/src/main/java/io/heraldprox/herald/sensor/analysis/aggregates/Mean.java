@@ -7,14 +7,19 @@ package io.heraldprox.herald.sensor.analysis.aggregates;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import io.heraldprox.herald.sensor.analysis.sampling.Aggregate;
+import io.heraldprox.herald.sensor.analysis.sampling.IncrementalAggregate;
+import io.heraldprox.herald.sensor.analysis.sampling.PrimitiveAggregate;
 import io.heraldprox.herald.sensor.analysis.sampling.Sample;
 import io.heraldprox.herald.sensor.datatype.DoubleValue;
 
-public class Mean<T extends DoubleValue> implements Aggregate<T> {
+public class Mean<T extends DoubleValue> implements PrimitiveAggregate<T>, IncrementalAggregate<T> {
     private int run = 1;
     private long count = 0;
     private double sum = 0;
+    // Incremental running mean for sliding window
+    private boolean incremental = false;
+    private long windowCount = 0;
+    private double windowMean = 0;
 
     @Override
     public int runs() {
@@ -28,14 +33,41 @@ public class Mean<T extends DoubleValue> implements Aggregate<T> {
 
     @Override
     public void map(@NonNull final Sample<T> value) {
+        map(value.taken().getTime(), value.value().doubleValue());
+    }
+
+    @Override
+    public void map(final long time, final double value) {
         if (run > 1) return;
-        sum += value.value().doubleValue();
+        sum += value;
         count++;
     }
 
+    @Override
+    public void onPush(final long time, final double value) {
+        incremental = true;
+        windowCount++;
+        windowMean += (value - windowMean) / windowCount;
+    }
+
+    @Override
+    public void onEvict(final long time, final double value) {
+        incremental = true;
+        if (windowCount <= 1) {
+            windowCount = 0;
+            windowMean = 0;
+            return;
+        }
+        windowCount--;
+        windowMean -= (value - windowMean) / windowCount;
+    }
+
     @Nullable
     @Override
     public Double reduce() {
+        if (incremental) {
+            return (0 == windowCount ? null : windowMean);
+        }
         if (0 == count) {
             return null;
         }
@@ -46,5 +78,8 @@ public class Mean<T extends DoubleValue> implements Aggregate<T> {
     public void reset() {
         count = 0;
         sum = 0;
+        incremental = false;
+        windowCount = 0;
+        windowMean = 0;
     }
 }
@@ -7,18 +7,24 @@ package io.heraldprox.herald.sensor.analysis.aggregates;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import io.heraldprox.herald.sensor.analysis.sampling.Aggregate;
+import io.heraldprox.herald.sensor.analysis.sampling.IncrementalAggregate;
+import io.heraldprox.herald.sensor.analysis.sampling.PrimitiveAggregate;
 import io.heraldprox.herald.sensor.analysis.sampling.Sample;
 import io.heraldprox.herald.sensor.datatype.DoubleValue;
 
-import java.util.Collections;
-import java.util.PriorityQueue;
-import java.util.Queue;
+import java.util.Arrays;
 
-public class Median<T extends DoubleValue> implements Aggregate<T> {
+/**
+ * Median of sample values, backed by an order statistic tree of primitive values that supports
+ * insert, delete and median in O(log n) time without boxing. When maintained incrementally
+ * over a sliding window, onEvict() deletes the evicted value, thus the median of the last N
+ * samples is always current.
+ * @param <T>
+ */
+public class Median<T extends DoubleValue> implements PrimitiveAggregate<T>, IncrementalAggregate<T> {
     private int run = 1;
-    private final Queue<Double> minHeap = new PriorityQueue<>(10);
-    private final Queue<Double> maxHeap = new PriorityQueue<>(10, Collections.reverseOrder());
+    @NonNull
+    private final SortedValues values = new SortedValues();
 
     @Override
     public int runs() {
@@ -32,8 +38,23 @@ public class Median<T extends DoubleValue> implements Aggregate<T> {
 
     @Override
     public void map(@NonNull final Sample<T> value) {
+        map(value.taken().getTime(), value.value().doubleValue());
+    }
+
+    @Override
+    public void map(final long time, final double value) {
         if (run > 1) return;
-        add(value.value().doubleValue());
+        values.add(value);
+    }
+
+    @Override
+    public void onPush(final long time, final double value) {
+        values.add(value);
+    }
+
+    @Override
+    public void onEvict(final long time, final double value) {
+        values.remove(value);
     }
 
     @Nullable
@@ -44,31 +65,204 @@ public class Median<T extends DoubleValue> implements Aggregate<T> {
 
     @Override
     public void reset() {
-        minHeap.clear();
-        maxHeap.clear();
+        values.clear();
     }
 
-    private void add(final double value) {
-        if (minHeap.size() == maxHeap.size()) {
-            maxHeap.offer(value);
-            minHeap.offer(maxHeap.poll());
-        } else {
-            minHeap.offer(value);
-            maxHeap.offer(minHeap.poll());
-        }
+    /**
+     * Number of values in median calculation.
+     * @return Value count.
+     */
+    public int count() {
+        return values.size();
     }
 
     @Nullable
     private Double median() {
-        if (minHeap.size() > maxHeap.size()) {
-            return minHeap.peek();
-        } else {
-            final Double min = minHeap.peek();
-            final Double max = maxHeap.peek();
-            if (min != null && max != null) {
-                return (min + max) / 2;
-            }
+        final int size = values.size();
+        if (0 == size) {
             return null;
         }
+        if (1 == size % 2) {
+            // Collection with odd number of elements reports centre value
+            return values.get(size / 2);
+        }
+        // Collection with even number of elements reports mean of the two centre values
+        return (values.get(size / 2 - 1) + values.get(size / 2)) / 2;
+    }
+
+    /**
+     * Sorted multiset of primitive values, implemented as a treap (randomised binary search
+     * tree) in parallel arrays, where each node holds a distinct value, its occurrence count,
+     * and the total count of its subtree for selecting values by rank.
+     */
+    private final static class SortedValues {
+        // Node 0 is the null node, with size 0
+        private double[] value = new double[16];
+        private int[] count = new int[16];
+        private int[] size = new int[16];
+        private int[] left = new int[16];
+        private int[] right = new int[16];
+        private int[] priority = new int[16];
+        private int root = 0;
+        // Nodes in use, or on free list linked by left
+        private int nodes = 0;
+        private int free = 0;
+        private int seed = 0x2545F491;
+
+        private int size() {
+            return size[root];
+        }
+
+        private void clear() {
+            root = 0;
+            nodes = 0;
+            free = 0;
+        }
+
+        private void add(final double x) {
+            root = insert(root, x);
+        }
+
+        private void remove(final double x) {
+            root = delete(root, x);
+        }
+
+        /**
+         * Get value by rank.
+         * @param rank Rank in range [0,size)
+         * @return Value at rank in ascending order.
+         */
+        private double get(int rank) {
+            int node = root;
+            while (0 != node) {
+                final int leftSize = size[left[node]];
+                if (rank < leftSize) {
+                    node = left[node];
+                } else if (rank < leftSize + count[node]) {
+                    return value[node];
+                } else {
+                    rank -= leftSize + count[node];
+                    node = right[node];
+                }
+            }
+            throw new IndexOutOfBoundsException();
+        }
+
+        private int newNode(final double x) {
+            final int node;
+            if (0 != free) {
+                node = free;
+                free = left[free];
+            } else {
+                node = ++nodes;
+                if (node == value.length) {
+                    final int capacity = value.length * 2;
+                    value = Arrays.copyOf(value, capacity);
+                    count = Arrays.copyOf(count, capacity);
+                    size = Arrays.copyOf(size, capacity);
+                    left = Arrays.copyOf(left, capacity);
+                    right = Arrays.copyOf(right, capacity);
+                    priority = Arrays.copyOf(priority, capacity);
+                }
+            }
+            // Xorshift for node priority
+            seed ^= seed << 13;
+            seed ^= seed >>> 17;
+            seed ^= seed << 5;
+            value[node] = x;
+            count[node] = 1;
+            size[node] = 1;
+            left[node] = 0;
+            right[node] = 0;
+            priority[node] = seed;
+            return node;
+        }
+
+        private void freeNode(final int node) {
+            left[node] = free;
+            free = node;
+        }
+
+        private void update(final int node) {
+            size[node] = size[left[node]] + count[node] + size[right[node]];
+        }
+
+        private int rotateRight(final int node) {
+            final int pivot = left[node];
+            left[node] = right[pivot];
+            right[pivot] = node;
+            update(node);
+            update(pivot);
+            return pivot;
+        }
+
+        private int rotateLeft(final int node) {
+            final int pivot = right[node];
+            right[node] = left[pivot];
+            left[pivot] = node;
+            update(node);
+            update(pivot);
+            return pivot;
+        }
+
+        private int insert(final int node, final double x) {
+            if (0 == node) {
+                return newNode(x);
+            }
+            final int comparison = Double.compare(x, value[node]);
+            if (0 == comparison) {
+                count[node]++;
+                size[node]++;
+                return node;
+            }
+            // Insert into subtree before assignment, as insert may replace the arrays on growth
+            if (comparison < 0) {
+                final int child = insert(left[node], x);
+                left[node] = child;
+                if (priority[child] > priority[node]) {
+                    return rotateRight(node);
+                }
+            } else {
+                final int child = insert(right[node], x);
+                right[node] = child;
+                if (priority[child] > priority[node]) {
+                    return rotateLeft(node);
+                }
+            }
+            update(node);
+            return node;
+        }
+
+        private int delete(final int node, final double x) {
+            if (0 == node) {
+                // Value not found
+                return 0;
+            }
+            final int comparison = Double.compare(x, value[node]);
+            if (comparison < 0) {
+                left[node] = delete(left[node], x);
+            } else if (comparison > 0) {
+                right[node] = delete(right[node], x);
+            } else if (count[node] > 1) {
+                count[node]--;
+            } else if (0 == left[node] || 0 == right[node]) {
+                final int child = (0 == left[node] ? right[node] : left[node]);
+                freeNode(node);
+                return child;
+            } else if (priority[left[node]] > priority[right[node]]) {
+                // Rotate node down towards a leaf, then delete
+                final int pivot = rotateRight(node);
+                right[pivot] = delete(node, x);
+                update(pivot);
+                return pivot;
+            } else {
+                final int pivot = rotateLeft(node);
+                left[pivot] = delete(node, x);
+                update(pivot);
+                return pivot;
+            }
+            update(node);
+            return node;
+        }
     }
 }
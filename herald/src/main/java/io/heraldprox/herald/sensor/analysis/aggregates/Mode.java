@@ -7,14 +7,14 @@ package io.heraldprox.herald.sensor.analysis.aggregates;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import io.heraldprox.herald.sensor.analysis.sampling.Aggregate;
+import io.heraldprox.herald.sensor.analysis.sampling.PrimitiveAggregate;
 import io.heraldprox.herald.sensor.analysis.sampling.Sample;
 import io.heraldprox.herald.sensor.datatype.DoubleValue;
 
 import java.util.HashMap;
 import java.util.Map;
 
-public class Mode<T extends DoubleValue> implements Aggregate<T> {
+public class Mode<T extends DoubleValue> implements PrimitiveAggregate<T> {
     private int run = 1;
     private final Map<Double,Counter> counts = new HashMap<>();
     private final static class Counter {
@@ -33,10 +33,15 @@ public class Mode<T extends DoubleValue> implements Aggregate<T> {
 
     @Override
     public void map(@NonNull final Sample<T> value) {
+        map(value.taken().getTime(), value.value().doubleValue());
+    }
+
+    @Override
+    public void map(final long time, final double value) {
         if (run > 1) return;
-        final Counter counter = counts.get(value.value().doubleValue());
+        final Counter counter = counts.get(value);
         if (null == counter) {
-            counts.put(value.value().doubleValue(), new Counter());
+            counts.put(value, new Counter());
         } else {
             counter.value++;
         }
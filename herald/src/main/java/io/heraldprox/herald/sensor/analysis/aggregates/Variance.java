@@ -7,23 +7,53 @@ package io.heraldprox.herald.sensor.analysis.aggregates;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import io.heraldprox.herald.sensor.analysis.sampling.Aggregate;
+import io.heraldprox.herald.sensor.analysis.sampling.IncrementalAggregate;
+import io.heraldprox.herald.sensor.analysis.sampling.PrimitiveAggregate;
 import io.heraldprox.herald.sensor.analysis.sampling.Sample;
+import io.heraldprox.herald.sensor.analysis.sampling.SinglePassAggregate;
 import io.heraldprox.herald.sensor.datatype.DoubleValue;
 
-public class Variance<T extends DoubleValue> implements Aggregate<T> {
+/**
+ * Sample variance, evaluated in two runs (mean, then sum of squared deviations), or in a single
+ * pass by accumulating deviations from the first value after beginSinglePass(), as used by
+ * SampleList.aggregate().
+ * @param <T>
+ */
+public class Variance<T extends DoubleValue> implements PrimitiveAggregate<T>, IncrementalAggregate<T>, SinglePassAggregate<T> {
     private int run = 1;
     private long count = 0;
+    // Sum of values in run 1, sum of squared deviations in run 2 and single pass
     private double sum = 0;
+    // Mean in run 2, shift value (first value) in single pass
     private double mean = 0;
+    private boolean singlePass = false;
+    private double shiftedSum = 0;
+    // Incremental Welford accumulators for sliding window
+    private boolean incremental = false;
+    private long windowCount = 0;
+    private double windowMean = 0;
+    private double windowM2 = 0;
 
     @Override
     public int runs() {
         return 2;
     }
 
+    @Override
+    public void beginSinglePass() {
+        run = 1;
+        count = 0;
+        sum = 0;
+        mean = 0;
+        shiftedSum = 0;
+        singlePass = true;
+    }
+
     @Override
     public void beginRun(final int thisRun) {
+        if (singlePass) {
+            return;
+        }
         run = thisRun;
         if (2 == run) {
             // initialise mean
@@ -36,19 +66,65 @@ public class Variance<T extends DoubleValue> implements Aggregate<T> {
 
     @Override
     public void map(@NonNull final Sample<T> value) {
+        map(value.taken().getTime(), value.value().doubleValue());
+    }
+
+    @Override
+    public void map(final long time, final double value) {
+        if (singlePass) {
+            // Shifted data accumulation, where the first value is the shift
+            if (0 == count) {
+                mean = value;
+            }
+            final double delta = value - mean;
+            shiftedSum += delta;
+            sum += delta * delta;
+            count++;
+            return;
+        }
         if (1 == run) {
-            sum += value.value().doubleValue();
+            sum += value;
         } else {
             // 2 == run
-            final double dv = value.value().doubleValue();
-            sum += (dv - mean) * (dv - mean);
+            sum += (value - mean) * (value - mean);
         }
         count++;
     }
 
+    @Override
+    public void onPush(final long time, final double value) {
+        incremental = true;
+        windowCount++;
+        final double delta = value - windowMean;
+        windowMean += delta / windowCount;
+        windowM2 += delta * (value - windowMean);
+    }
+
+    @Override
+    public void onEvict(final long time, final double value) {
+        incremental = true;
+        if (windowCount <= 1) {
+            windowCount = 0;
+            windowMean = 0;
+            windowM2 = 0;
+            return;
+        }
+        // Reverse Welford update, where M2 is clamped to avoid negative variance from rounding
+        windowCount--;
+        final double delta = value - windowMean;
+        windowMean -= delta / windowCount;
+        windowM2 = Math.max(0, windowM2 - delta * (value - windowMean));
+    }
+
     @Nullable
     @Override
     public Double reduce() {
+        if (incremental) {
+            return (windowCount < 2 ? null : windowM2 / (windowCount - 1));
+        }
+        if (singlePass) {
+            return (count < 2 ? null : (sum - shiftedSum * shiftedSum / count) / (count - 1));
+        }
         if (run < 2 || count < 2) {
             return null;
         }
@@ -61,5 +137,11 @@ public class Variance<T extends DoubleValue> implements Aggregate<T> {
         run = 1;
         sum = 0;
         mean = 0;
+        singlePass = false;
+        shiftedSum = 0;
+        incremental = false;
+        windowCount = 0;
+        windowMean = 0;
+        windowM2 = 0;
     }
 }
@@ -0,0 +1,456 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis.algorithms.distance;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import io.heraldprox.herald.sensor.data.ConcreteSensorLogger;
+import io.heraldprox.herald.sensor.data.SensorLogger;
+import io.heraldprox.herald.sensor.data.TextFile;
+import io.heraldprox.herald.sensor.datatype.Distance;
+import io.heraldprox.herald.sensor.datatype.TimeInterval;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Offline batch calibration of distance model parameters from captured calibration logs
+ * (CalibrationLog) and contact logs (ContactLog), grouped by device model.
+ * <br>- Log files are parsed in parallel, one task per file, by scanning memory mapped regions
+ *   of the file for RSSI values without materialising lines or strings.
+ * <br>- Each task accumulates a histogram for its file, which is merged into the histogram of
+ *   the device model on completion. Histograms are mergeable and lock free, thus the work
+ *   scales with the number of files and cores.
+ * <br>- Model parameters are fitted to the histogram of each device model using the same
+ *   percentiles as SelfCalibratedModel, and expressed as intercept and coefficient for
+ *   SmoothedLinearModel.setParameters(), i.e. distance = intercept + coefficient x RSSI.
+ * <br>- Fitted parameters can be written to a CSV table (model,intercept,coefficient,samples)
+ *   for loading at startup.
+ */
+public class BatchCalibration {
+    private final static SensorLogger logger = new ConcreteSensorLogger("Analysis", "BatchCalibration");
+    // Default coefficient derived from SmoothedLinearModel
+    private final static double defaultCoefficient = 0.266793;
+    // Memory mapped region size for parsing large files in fixed size windows
+    private final static int defaultRegionSize = 64 * 1024 * 1024;
+    private final static int minRssi = -99, maxRssi = -10;
+    @NonNull
+    private final Distance min, mean;
+    private final double maxRssiPercentile, anchorRssiPercentile;
+    @NonNull
+    private final Map<String, List<File>> files = new TreeMap<>();
+
+    /**
+     * Fitted model parameters for a device model.
+     */
+    public final static class Parameters {
+        public final double intercept;
+        public final double coefficient;
+        public final long samples;
+
+        public Parameters(final double intercept, final double coefficient, final long samples) {
+            this.intercept = intercept;
+            this.coefficient = coefficient;
+            this.samples = samples;
+        }
+
+        /**
+         * Apply parameters to distance model. Parameters are only applicable to SmoothedLinearModel
+         * itself, as subclasses may interpret the parameters differently, e.g. SelfCalibratedModel
+         * uses intercept and coefficient of normalised RSSI, and replaces the parameters on update().
+         * @param model Distance model
+         * @throws IllegalArgumentException if model is a subclass of SmoothedLinearModel.
+         */
+        public void apply(@NonNull final SmoothedLinearModel<?> model) {
+            if (SmoothedLinearModel.class != model.getClass()) {
+                throw new IllegalArgumentException("Parameters are not applicable to model: " + model.getClass().getName());
+            }
+            model.setParameters(intercept, coefficient);
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "Parameters{intercept=" + intercept + ",coefficient=" + coefficient + ",samples=" + samples + "}";
+        }
+    }
+
+    /**
+     * Batch calibration using social norms for minimum and mean distance between people, see
+     * SelfCalibratedModel for details.
+     * @param min Minimum distance between people
+     * @param mean Mean distance between people
+     * @param withinMin Time duration within minimum distance per day
+     * @param withinMean Time duration within mean distance per day
+     */
+    public BatchCalibration(@NonNull final Distance min, @NonNull final Distance mean, @NonNull final TimeInterval withinMin, @NonNull final TimeInterval withinMean) {
+        this.min = min;
+        this.mean = mean;
+        this.maxRssiPercentile = (TimeInterval.day.value - withinMin.value) / (double) TimeInterval.day.value;
+        this.anchorRssiPercentile = (TimeInterval.day.value - withinMean.value) / (double) TimeInterval.day.value;
+    }
+
+    /**
+     * Add calibration log or contact log file for device model. File format is detected from
+     * the header line.
+     * @param deviceModel Device model
+     * @param file Log file
+     */
+    public synchronized void add(@NonNull final String deviceModel, @NonNull final File file) {
+        List<File> list = files.get(deviceModel);
+        if (null == list) {
+            list = new ArrayList<>();
+            files.put(deviceModel, list);
+        }
+        list.add(file);
+    }
+
+    /**
+     * Parse all files and fit model parameters using all available processors.
+     * @return Model parameters for each device model with at least one RSSI sample.
+     */
+    @NonNull
+    public Map<String, Parameters> run() {
+        return run(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Parse all files and fit model parameters.
+     * @param threads Number of parser threads
+     * @return Model parameters for each device model with at least one RSSI sample.
+     */
+    @NonNull
+    public synchronized Map<String, Parameters> run(final int threads) {
+        final Map<String, RssiHistogram> histograms = histograms(threads, defaultRegionSize);
+        final Map<String, Parameters> parameters = new TreeMap<>();
+        for (final Map.Entry<String, RssiHistogram> entry : histograms.entrySet()) {
+            final Parameters fitted = fit(entry.getValue());
+            if (null != fitted) {
+                parameters.put(entry.getKey(), fitted);
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Parse all files in parallel and merge histograms by device model.
+     * @param threads Number of parser threads
+     * @param regionSize Memory mapped region size
+     * @return Histogram for each device model.
+     */
+    @NonNull
+    synchronized Map<String, RssiHistogram> histograms(final int threads, final int regionSize) {
+        final Map<String, RssiHistogram> histograms = new TreeMap<>();
+        final ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            final List<Future<Long>> futures = new ArrayList<>();
+            for (final Map.Entry<String, List<File>> entry : files.entrySet()) {
+                final RssiHistogram histogram = new RssiHistogram(minRssi, maxRssi);
+                histograms.put(entry.getKey(), histogram);
+                for (final File file : entry.getValue()) {
+                    futures.add(executorService.submit(new Callable<Long>() {
+                        @Override
+                        public Long call() throws Exception {
+                            final RssiHistogram fileHistogram = new RssiHistogram(minRssi, maxRssi);
+                            final long samples = parse(file, fileHistogram, regionSize);
+                            histogram.merge(fileHistogram);
+                            return samples;
+                        }
+                    }));
+                }
+            }
+            for (final Future<Long> future : futures) {
+                try {
+                    future.get();
+                } catch (Throwable e) {
+                    logger.fault("histograms, failed to parse file", e);
+                }
+            }
+        } finally {
+            executorService.shutdown();
+        }
+        return histograms;
+    }
+
+    /**
+     * Fit model parameters to histogram. The RSSI value at the max RSSI percentile is mapped
+     * to the minimum distance, and the value at the anchor percentile is mapped to the mean
+     * distance.
+     * @param histogram RSSI histogram
+     * @return Model parameters, or null if histogram is empty.
+     */
+    @Nullable
+    public Parameters fit(@NonNull final RssiHistogram histogram) {
+        final long samples = histogram.samples();
+        if (0 == samples) {
+            return null;
+        }
+        final double maxRssi = histogram.samplePercentile(maxRssiPercentile);
+        final double anchorRssi = histogram.samplePercentile(anchorRssiPercentile);
+        final double rssiRange = maxRssi - anchorRssi;
+        // Distance increases by scale for every unit decrease in RSSI
+        final double scale = (rssiRange > 0 ? (mean.value - min.value) / rssiRange : defaultCoefficient);
+        return new Parameters(min.value + scale * maxRssi, -scale, samples);
+    }
+
+    // MARK: - Parameter table
+
+    /**
+     * Write model parameters as CSV table (model,intercept,coefficient,samples).
+     * @param parameters Model parameters by device model
+     * @param textFile CSV file
+     */
+    public static void write(@NonNull final Map<String, Parameters> parameters, @NonNull final TextFile textFile) {
+        final StringBuilder s = new StringBuilder("model,intercept,coefficient,samples\n");
+        for (final Map.Entry<String, Parameters> entry : parameters.entrySet()) {
+            final Parameters value = entry.getValue();
+            s.append(TextFile.csv(entry.getKey())).append(',').append(value.intercept).append(',').append(value.coefficient).append(',').append(value.samples).append('\n');
+        }
+        textFile.overwrite(s.toString());
+    }
+
+    /**
+     * Read model parameters from CSV table (model,intercept,coefficient,samples).
+     * @param textFile CSV file
+     * @return Model parameters by device model.
+     */
+    @NonNull
+    public static Map<String, Parameters> read(@NonNull final TextFile textFile) {
+        final Map<String, Parameters> parameters = new TreeMap<>();
+        for (final String row : textFile.contentsOf().split("\n")) {
+            // Model may be quoted and contain commas, thus parse values from the end of row
+            final int samplesIndex = row.lastIndexOf(',');
+            final int coefficientIndex = (samplesIndex > 0 ? row.lastIndexOf(',', samplesIndex - 1) : -1);
+            final int interceptIndex = (coefficientIndex > 0 ? row.lastIndexOf(',', coefficientIndex - 1) : -1);
+            if (interceptIndex <= 0) {
+                continue;
+            }
+            try {
+                final double intercept = Double.parseDouble(row.substring(interceptIndex + 1, coefficientIndex));
+                final double coefficient = Double.parseDouble(row.substring(coefficientIndex + 1, samplesIndex));
+                final long samples = Long.parseLong(row.substring(samplesIndex + 1).trim());
+                String model = row.substring(0, interceptIndex);
+                if (model.length() >= 2 && model.startsWith("\"") && model.endsWith("\"")) {
+                    model = model.substring(1, model.length() - 1);
+                }
+                parameters.put(model, new Parameters(intercept, coefficient, samples));
+            } catch (NumberFormatException e) {
+                // Header or invalid row
+            }
+        }
+        return parameters;
+    }
+
+    // MARK: - Parser
+
+    /**
+     * Parse RSSI values from calibration log or contact log into histogram. File is scanned in
+     * memory mapped regions, where a line spanning two regions is parsed in the next region.
+     * @param file Log file
+     * @param histogram Histogram for RSSI values
+     * @param regionSize Memory mapped region size, must be larger than the longest line
+     * @return Number of RSSI values parsed.
+     * @throws IOException on file access failure
+     */
+    static long parse(@NonNull final File file, @NonNull final RssiHistogram histogram, final int regionSize) throws IOException {
+        final LineParser parser = new LineParser(histogram);
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = randomAccessFile.getChannel();
+            final long length = channel.size();
+            long position = 0;
+            while (position < length) {
+                final int size = (int) Math.min(length - position, regionSize);
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+                final boolean lastRegion = (position + size >= length);
+                int lineStart = 0;
+                for (int i=0; i<size; i++) {
+                    if ('\n' == buffer.get(i)) {
+                        parser.line(buffer, lineStart, i);
+                        lineStart = i + 1;
+                    }
+                }
+                if (lastRegion) {
+                    if (lineStart < size) {
+                        parser.line(buffer, lineStart, size);
+                    }
+                    position = length;
+                } else if (0 == lineStart) {
+                    // Line is longer than region, skip region
+                    logger.fault("parse, line exceeds region size (file={},position={})", file, position);
+                    position += size;
+                } else {
+                    // Continue from start of incomplete line
+                    position += lineStart;
+                }
+            }
+        } finally {
+            randomAccessFile.close();
+        }
+        return parser.samples;
+    }
+
+    /**
+     * Parser for RSSI values in lines of a calibration log or contact log. File format is
+     * detected from the header line, and all fields are parsed in place from the buffer.
+     */
+    private final static class LineParser {
+        private final static byte formatUnknown = 0, formatCalibrationLog = 1, formatContactLog = 2, formatInvalid = 3;
+        // Calibration log header "time,payload,rssi,x,y,z" where RSSI is in field 2
+        private final static int calibrationLogRssiField = 2;
+        // Contact log header "time,sensor,id,detect,read,measure,share,visit,data" where
+        // measure field is "3" for proximity measurements, and data field is "RSSI:value[...]"
+        private final static int contactLogMeasureField = 5;
+        private final static int contactLogDataField = 8;
+        @NonNull
+        private final RssiHistogram histogram;
+        private byte format = formatUnknown;
+        private long samples = 0;
+        // Field boundaries of current line
+        @NonNull
+        private final int[] fieldStart = new int[contactLogDataField + 1];
+        @NonNull
+        private final int[] fieldEnd = new int[contactLogDataField + 1];
+
+        private LineParser(@NonNull final RssiHistogram histogram) {
+            this.histogram = histogram;
+        }
+
+        private void line(@NonNull final MappedByteBuffer buffer, final int start, int end) {
+            // Strip carriage return
+            if (end > start && '\r' == buffer.get(end - 1)) {
+                end--;
+            }
+            if (formatUnknown == format) {
+                format = format(buffer, start, end);
+                return;
+            }
+            if (formatCalibrationLog == format) {
+                if (fields(buffer, start, end) > calibrationLogRssiField) {
+                    add(number(buffer, fieldStart[calibrationLogRssiField], fieldEnd[calibrationLogRssiField]));
+                }
+            } else if (formatContactLog == format) {
+                if (fields(buffer, start, end) > contactLogDataField
+                        && fieldEnd[contactLogMeasureField] - fieldStart[contactLogMeasureField] == 1
+                        && '3' == buffer.get(fieldStart[contactLogMeasureField])) {
+                    final int dataStart = fieldStart[contactLogDataField];
+                    final int dataEnd = fieldEnd[contactLogDataField];
+                    if (startsWith(buffer, dataStart, dataEnd, "RSSI:")) {
+                        add(number(buffer, dataStart + 5, dataEnd));
+                    }
+                }
+            }
+        }
+
+        private void add(final double rssi) {
+            if (!Double.isNaN(rssi)) {
+                histogram.add(rssi);
+                samples++;
+            }
+        }
+
+        private static byte format(@NonNull final MappedByteBuffer buffer, final int start, final int end) {
+            if (startsWith(buffer, start, end, "time,payload,rssi")) {
+                return formatCalibrationLog;
+            }
+            if (startsWith(buffer, start, end, "time,sensor,id,detect,read,measure")) {
+                return formatContactLog;
+            }
+            logger.fault("format, unknown file format");
+            return formatInvalid;
+        }
+
+        /**
+         * Locate field boundaries in line, excluding enclosing quotes.
+         * @return Number of fields located, up to the data field of contact log.
+         */
+        private int fields(@NonNull final MappedByteBuffer buffer, final int start, final int end) {
+            int field = 0;
+            int from = start;
+            boolean quoted = false;
+            for (int i=start; i<end && field < fieldStart.length; i++) {
+                final byte b = buffer.get(i);
+                if ('"' == b) {
+                    quoted = !quoted;
+                } else if (',' == b && !quoted) {
+                    setField(buffer, field++, from, i);
+                    from = i + 1;
+                }
+            }
+            if (field < fieldStart.length) {
+                setField(buffer, field++, from, end);
+            }
+            return field;
+        }
+
+        private void setField(@NonNull final MappedByteBuffer buffer, final int field, int from, int to) {
+            if (to - from >= 2 && '"' == buffer.get(from) && '"' == buffer.get(to - 1)) {
+                from++;
+                to--;
+            }
+            fieldStart[field] = from;
+            fieldEnd[field] = to;
+        }
+
+        private static boolean startsWith(@NonNull final MappedByteBuffer buffer, final int start, final int end, @NonNull final String prefix) {
+            if (end - start < prefix.length()) {
+                return false;
+            }
+            for (int i=prefix.length(); i-->0;) {
+                if (buffer.get(start + i) != prefix.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Parse decimal number at start of range, e.g. "-55" or "-55.0[...]".
+         * @return Number, or NaN if range does not start with a number.
+         */
+        private static double number(@NonNull final MappedByteBuffer buffer, final int start, final int end) {
+            int i = start;
+            boolean negative = false;
+            if (i < end && ('-' == buffer.get(i) || '+' == buffer.get(i))) {
+                negative = ('-' == buffer.get(i));
+                i++;
+            }
+            double value = 0;
+            double scale = 0;
+            boolean digits = false;
+            for (; i<end; i++) {
+                final byte b = buffer.get(i);
+                if (b >= '0' && b <= '9') {
+                    value = value * 10 + (b - '0');
+                    scale *= 10;
+                    digits = true;
+                } else if ('.' == b && 0 == scale) {
+                    scale = 1;
+                } else {
+                    break;
+                }
+            }
+            if (!digits) {
+                return Double.NaN;
+            }
+            if (scale > 1) {
+                value /= scale;
+            }
+            return (negative ? -value : value);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis.algorithms.distance;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Lookup table of distance estimates for batch estimation of distance for many targets.
+ * <br>- Table covers the RSSI range [-128, 0] at half unit resolution. RSSI measurements are
+ *   integers, thus the median of RSSI samples is always an integer or half way between two
+ *   integers, and the mode is always an integer. Estimates for these values are looked up
+ *   from the table, which holds the exact result of the model, rather than evaluating
+ *   Math.pow() or Math.log10() for every target.
+ * <br>- Values outside of the table are estimated by the model directly, thus the result is
+ *   always identical to estimating distance one target at a time.
+ * <br>- Table is immutable, and must be rebuilt when model parameters change.
+ */
+abstract class DistanceTable {
+    final static int minRssi = -128, maxRssi = 0;
+    @NonNull
+    private final double[] table = new double[(maxRssi - minRssi) * 2 + 1];
+
+    /**
+     * Build table. Subclass fields used by estimate() must be initialised before calling build().
+     * @return This table.
+     */
+    @NonNull
+    DistanceTable build() {
+        for (int i=table.length; i-->0;) {
+            table[i] = estimate(minRssi + i / 2d);
+        }
+        return this;
+    }
+
+    /**
+     * Estimate distance for RSSI value.
+     * @param rssi RSSI value
+     * @return Distance in metres, or NaN if RSSI is outside of model range.
+     */
+    abstract double estimate(final double rssi);
+
+    /**
+     * Estimate distance for each RSSI value.
+     * @param rssi RSSI value of each target
+     * @param distance Distance in metres for each target (output), or NaN if RSSI is outside
+     *                 of model range.
+     * @param count Number of targets
+     */
+    void distance(@NonNull final double[] rssi, @NonNull final double[] distance, final int count) {
+        final double[] table = this.table;
+        for (int i=0; i<count; i++) {
+            final double value = rssi[i];
+            final double position = (value - minRssi) * 2;
+            final int index = (int) position;
+            if (index == position && index < table.length && index >= 0) {
+                distance[i] = table[index];
+            } else {
+                distance[i] = estimate(value);
+            }
+        }
+    }
+}
@@ -12,14 +12,29 @@ import io.heraldprox.herald.sensor.analysis.sampling.Aggregate;
 import io.heraldprox.herald.sensor.analysis.sampling.Sample;
 import io.heraldprox.herald.sensor.datatype.DoubleValue;
 
+/**
+ * Distance model based on mode of RSSI samples, where
+ *      DistanceInMetres = 10 ^ ((ModeOfRssi - Intercept) / Coefficient)
+ * <br>- Distance for many targets can be estimated at once from the mode RSSI of each target
+ *   by distance(double[],double[],int), using a lookup table of the model.
+ * @param <T>
+ */
 public class FowlerBasic<T extends DoubleValue> implements Aggregate<T> {
     private final Mode<T> mode = new Mode<>();
     private final double intercept;
     private final double coefficient;
+    @NonNull
+    private final DistanceTable distanceTable;
 
     public FowlerBasic(final double intercept, final double coefficient) {
         this.intercept = intercept;
         this.coefficient = coefficient;
+        this.distanceTable = new DistanceTable() {
+            @Override
+            double estimate(final double rssi) {
+                return FowlerBasic.this.distance(rssi);
+            }
+        }.build();
     }
 
     @Override
@@ -47,10 +62,33 @@ public class FowlerBasic<T extends DoubleValue> implements Aggregate<T> {
         if (null == modeValue) {
             return null;
         }
-        final double exponent = (modeValue - intercept) / coefficient;
+        return distance(modeValue);
+    }
+
+    /**
+     * Estimate distance from mode RSSI.
+     * @param modeOfRssi Mode RSSI
+     * @return Distance in metres, or NaN if coefficient is zero.
+     */
+    public double distance(final double modeOfRssi) {
+        if (0 == coefficient) {
+            return Double.NaN;
+        }
+        final double exponent = (modeOfRssi - intercept) / coefficient;
         return Math.pow(10, exponent);
     }
 
+    /**
+     * Estimate distance for many targets at once from the mode RSSI of each target. Result
+     * is identical to distance(double) for each target.
+     * @param modeOfRssi Mode RSSI of each target
+     * @param distance Distance in metres for each target (output), or NaN if coefficient is zero.
+     * @param count Number of targets
+     */
+    public void distance(@NonNull final double[] modeOfRssi, @NonNull final double[] distance, final int count) {
+        distanceTable.distance(modeOfRssi, distance, count);
+    }
+
     @Override
     public void reset() {
         mode.reset();
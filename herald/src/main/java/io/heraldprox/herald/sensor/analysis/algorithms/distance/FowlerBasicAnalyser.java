@@ -21,20 +21,29 @@ import io.heraldprox.herald.sensor.datatype.Distance;
 import io.heraldprox.herald.sensor.datatype.RSSI;
 import io.heraldprox.herald.sensor.datatype.TimeInterval;
 
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 @SuppressWarnings("unchecked")
 public class FowlerBasicAnalyser implements AnalysisProvider<RSSI, Distance> {
     @NonNull
     private final TimeInterval interval;
+    private final double intercept;
+    private final double coefficient;
+    // Time of last analysis for each sampled ID, for concurrent analysis of different IDs
     @NonNull
-    private final FowlerBasic basic;
-    @NonNull
-    private Date lastRan = new Date(0);
+    private final Map<SampledID, Date> lastRan = new ConcurrentHashMap<>();
+    private final long sweepInterval;
+    private volatile long nextSweepTime = 0;
 
     private final Filter<RSSI> valid = new InRange<>(-99, -10);
 
     public FowlerBasicAnalyser(final long interval, final double intercept, final double coefficient) {
         this.interval = new TimeInterval(interval);
-        this.basic = new FowlerBasic(intercept, coefficient);
+        this.sweepInterval = Math.max(this.interval.millis(), TimeInterval.minute.millis());
+        this.intercept = intercept;
+        this.coefficient = coefficient;
     }
 
     public FowlerBasicAnalyser() {
@@ -55,11 +64,14 @@ public class FowlerBasicAnalyser implements AnalysisProvider<RSSI, Distance> {
 
     @Override
     public boolean analyse(@NonNull final Date timeNow, @NonNull final SampledID sampled, @NonNull final SampleList<RSSI> src, @NonNull final SampleList<Distance> output, @NonNull final CallableForNewSample<Distance> callable) {
+        sweep(timeNow);
         // Interval guard
-        if (lastRan.secondsSinceUnixEpoch() + interval.value >= timeNow.secondsSinceUnixEpoch()) {
+        final Date lastRanForSampled = lastRan.get(sampled);
+        final long lastRanSeconds = (null == lastRanForSampled ? 0 : lastRanForSampled.secondsSinceUnixEpoch());
+        if (lastRanSeconds + interval.value >= timeNow.secondsSinceUnixEpoch()) {
             return false;
         }
-        basic.reset();
+        final FowlerBasic basic = new FowlerBasic(intercept, coefficient);
         final SampleList<RSSI> values = src.filter(valid).toView();
         final Summary<RSSI> summary = values.aggregate(new Mode<RSSI>(), new Variance<RSSI>());
         final Double mode = summary.get(Mode.class);
@@ -80,10 +92,39 @@ public class FowlerBasicAnalyser implements AnalysisProvider<RSSI, Distance> {
         if (null == latestTime) {
             return false;
         }
-        lastRan = latestTime;
+        lastRan.put(sampled, latestTime);
         final Sample<Distance> newSample = new Sample<>(latestTime, new Distance(distance));
         output.push(newSample);
         callable.newSample(sampled, newSample);
         return true;
     }
+
+    /**
+     * Discard last ran time of sampled IDs where the interval has elapsed, at most once per
+     * minute, such that state for transient sampled IDs does not accumulate. An entry where
+     * the interval has elapsed has the same effect on the interval guard as no entry.
+     * @param timeNow Current time
+     */
+    private void sweep(@NonNull final Date timeNow) {
+        final long now = timeNow.getTime();
+        // Sweep again if time has moved backwards, e.g. on replay
+        if (now < nextSweepTime && now >= nextSweepTime - sweepInterval) {
+            return;
+        }
+        nextSweepTime = now + sweepInterval;
+        final Iterator<Date> iterator = lastRan.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().getTime() > interval.millis()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Number of sampled IDs with last ran time.
+     * @return Sampled ID count.
+     */
+    int lastRanSize() {
+        return lastRan.size();
+    }
 }
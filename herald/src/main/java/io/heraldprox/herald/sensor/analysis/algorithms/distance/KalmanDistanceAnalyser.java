@@ -0,0 +1,304 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis.algorithms.distance;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import io.heraldprox.herald.sensor.analysis.sampling.AnalysisProvider;
+import io.heraldprox.herald.sensor.analysis.sampling.CallableForNewSample;
+import io.heraldprox.herald.sensor.analysis.sampling.IncrementalAggregate;
+import io.heraldprox.herald.sensor.analysis.sampling.Sample;
+import io.heraldprox.herald.sensor.analysis.sampling.SampleList;
+import io.heraldprox.herald.sensor.analysis.sampling.SampledID;
+import io.heraldprox.herald.sensor.data.ConcreteSensorLogger;
+import io.heraldprox.herald.sensor.data.SensorLogger;
+import io.heraldprox.herald.sensor.datatype.Date;
+import io.heraldprox.herald.sensor.datatype.Distance;
+import io.heraldprox.herald.sensor.datatype.RSSI;
+import io.heraldprox.herald.sensor.datatype.TimeInterval;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Distance estimation by one dimensional Kalman filter of RSSI for each sampled ID.
+ * <br>- The filter is tracked by the input sample list as an incremental aggregate, thus each
+ *   new RSSI sample updates the filter state in constant time and memory, and analysis only
+ *   reads the current estimate without scanning the sample window.
+ * <br>- The filter models RSSI as a random walk, where the estimate variance grows with the
+ *   time elapsed since the last measurement (process noise), and each measurement carries
+ *   a fixed variance (measurement noise) to reflect interference.
+ * <br>- Outliers are rejected by gating, where a measurement is rejected if it deviates from
+ *   the estimate by more than a number of standard deviations of the expected deviation.
+ *   The filter is reinitialised after a number of consecutive rejections, to follow genuine
+ *   changes in distance.
+ * <br>- Filtered RSSI is translated to distance by SmoothedLinearModel, and published at most
+ *   once per interval of sample time for each sampled ID.
+ * <br>- Filter state is discarded for sampled IDs without new samples within the time to live.
+ */
+public class KalmanDistanceAnalyser implements AnalysisProvider<RSSI, Distance> {
+    private final SensorLogger logger = new ConcreteSensorLogger("Analysis", "KalmanDistanceAnalyser");
+    @NonNull
+    private final TimeInterval interval;
+    @NonNull
+    private final SmoothedLinearModel<RSSI> model;
+    private final double processNoise;
+    private final double measurementNoise;
+    private final double gate;
+    private final int maxRejected;
+    @NonNull
+    private final TimeInterval timeToLive;
+    // Filter state for each sampled ID, for concurrent analysis of different IDs
+    @NonNull
+    private final Map<SampledID, RssiFilter> filters = new ConcurrentHashMap<>();
+    private volatile long nextSweepTime = 0;
+
+    /**
+     * Kalman filter of RSSI, maintained incrementally by the input sample list.
+     */
+    final static class RssiFilter implements IncrementalAggregate<RSSI> {
+        private final double processNoise;
+        private final double measurementNoise;
+        private final double gate;
+        private final int maxRejected;
+        @NonNull
+        private final SampleList<RSSI> list;
+        // Filter state
+        private boolean initialised = false;
+        private double estimate = 0;
+        private double variance = 0;
+        // Time of last accepted measurement in milliseconds
+        private long time = 0;
+        private int rejected = 0;
+        private long rejectedTotal = 0;
+        // Time of last published estimate in milliseconds, accessed by analysis only
+        private long published = Long.MIN_VALUE;
+
+        RssiFilter(@NonNull final SampleList<RSSI> list, final double processNoise, final double measurementNoise, final double gate, final int maxRejected) {
+            this.list = list;
+            this.processNoise = processNoise;
+            this.measurementNoise = measurementNoise;
+            this.gate = gate;
+            this.maxRejected = maxRejected;
+        }
+
+        @Override
+        public synchronized void onPush(final long time, final double value) {
+            // Guard for valid RSSI range
+            if (value < -99 || value > -10) {
+                return;
+            }
+            if (!initialised || time < this.time) {
+                initialise(time, value);
+                return;
+            }
+            // Predict, where uncertainty grows with elapsed time
+            final double predictedVariance = variance + processNoise * ((time - this.time) / 1000d);
+            final double innovation = value - estimate;
+            final double innovationVariance = predictedVariance + measurementNoise;
+            // Outlier gating, reinitialise after consecutive rejections as the target has moved
+            if (innovation * innovation > gate * gate * innovationVariance) {
+                rejectedTotal++;
+                if (++rejected > maxRejected) {
+                    initialise(time, value);
+                }
+                return;
+            }
+            // Update
+            final double gain = predictedVariance / innovationVariance;
+            estimate += gain * innovation;
+            variance = (1 - gain) * predictedVariance;
+            this.time = time;
+            rejected = 0;
+        }
+
+        private void initialise(final long time, final double value) {
+            initialised = true;
+            estimate = value;
+            variance = measurementNoise;
+            this.time = time;
+            rejected = 0;
+        }
+
+        @Override
+        public void onEvict(final long time, final double value) {
+            // Filter state summarises the entire stream rather than the window
+        }
+
+        @Override
+        public int runs() {
+            return 1;
+        }
+
+        @Override
+        public void beginRun(final int thisRun) {
+        }
+
+        @Override
+        public void map(@NonNull final Sample<RSSI> value) {
+            onPush(value.taken().getTime(), value.value().value);
+        }
+
+        @Nullable
+        @Override
+        public synchronized Double reduce() {
+            return (initialised ? estimate : null);
+        }
+
+        @Override
+        public synchronized void reset() {
+            initialised = false;
+            estimate = 0;
+            variance = 0;
+            time = 0;
+            rejected = 0;
+        }
+
+        /**
+         * Time of last accepted measurement.
+         * @return Milliseconds since unix epoch, or 0 if filter has no estimate.
+         */
+        synchronized long time() {
+            return (initialised ? time : 0);
+        }
+
+        /**
+         * Variance of estimate.
+         * @return Variance.
+         */
+        synchronized double variance() {
+            return variance;
+        }
+
+        /**
+         * Total number of rejected outliers.
+         * @return Rejected measurement count.
+         */
+        synchronized long rejected() {
+            return rejectedTotal;
+        }
+    }
+
+    /**
+     * Kalman filter distance analyser with default parameters, publishing distance at most
+     * once per second for each sampled ID.
+     */
+    public KalmanDistanceAnalyser() {
+        this(TimeInterval.seconds(1), new SmoothedLinearModel<RSSI>(), 0.5, 25, 3, 3, TimeInterval.minutes(30));
+    }
+
+    /**
+     * Kalman filter distance analyser.
+     * @param interval Minimum sample time between published distance estimates for each sampled ID.
+     * @param model Model for translating filtered RSSI to distance.
+     * @param processNoise Variance of RSSI change per second of elapsed time (dB^2/s).
+     * @param measurementNoise Variance of RSSI measurement (dB^2).
+     * @param gate Outlier gate in standard deviations of expected deviation.
+     * @param maxRejected Number of consecutive outliers before the filter is reinitialised.
+     * @param timeToLive Filter state is discarded after this time without new samples.
+     */
+    public KalmanDistanceAnalyser(@NonNull final TimeInterval interval, @NonNull final SmoothedLinearModel<RSSI> model, final double processNoise, final double measurementNoise, final double gate, final int maxRejected, @NonNull final TimeInterval timeToLive) {
+        this.interval = interval;
+        this.model = model;
+        this.processNoise = processNoise;
+        this.measurementNoise = measurementNoise;
+        this.gate = gate;
+        this.maxRejected = maxRejected;
+        this.timeToLive = timeToLive;
+    }
+
+    @NonNull
+    @Override
+    public Class<RSSI> inputType() {
+        return RSSI.class;
+    }
+
+    @NonNull
+    @Override
+    public Class<Distance> outputType() {
+        return Distance.class;
+    }
+
+    @Override
+    public boolean analyse(@NonNull final Date timeNow, @NonNull final SampledID sampled, @NonNull final SampleList<RSSI> input, @NonNull final SampleList<Distance> output, @NonNull final CallableForNewSample<Distance> callable) {
+        sweep(timeNow);
+        final RssiFilter filter = filter(sampled, input);
+        final long time;
+        final Double estimate;
+        synchronized (filter) {
+            time = filter.time();
+            estimate = filter.reduce();
+            // Interval guard
+            if (null == estimate || time < filter.published + interval.millis() || time <= filter.published) {
+                return false;
+            }
+            filter.published = time;
+        }
+        final double distance = model.distance(estimate);
+        if (Double.isNaN(distance)) {
+            logger.debug("analyse, skipped (reason=outOfModelRange,rssi={})", estimate);
+            return false;
+        }
+        final Sample<Distance> newSample = new Sample<>(new Date(new java.util.Date(time)), new Distance(distance));
+        output.push(newSample);
+        callable.newSample(sampled, newSample);
+        return true;
+    }
+
+    /**
+     * Get filter for sampled ID, creating and registering a new filter with the input list if
+     * required. A new filter replays the current window once, and is then maintained by the
+     * list. The filter is replaced if the list for the sampled ID has been replaced.
+     * @param sampled Sampled ID
+     * @param input Input list of sampled ID
+     * @return Filter that is tracked by input list.
+     */
+    @NonNull
+    RssiFilter filter(@NonNull final SampledID sampled, @NonNull final SampleList<RSSI> input) {
+        final RssiFilter existing = filters.get(sampled);
+        if (null != existing && existing.list == input) {
+            return existing;
+        }
+        final RssiFilter filter = new RssiFilter(input, processNoise, measurementNoise, gate, maxRejected);
+        if (null != existing) {
+            existing.list.untrack(existing);
+        }
+        input.track(filter);
+        filters.put(sampled, filter);
+        return filter;
+    }
+
+    /**
+     * Discard filters without new samples within the time to live, at most once per time to
+     * live, such that filter state for departed targets does not accumulate.
+     * @param timeNow Current time
+     */
+    private void sweep(@NonNull final Date timeNow) {
+        final long now = timeNow.getTime();
+        if (now < nextSweepTime) {
+            return;
+        }
+        nextSweepTime = now + timeToLive.millis();
+        final Iterator<Map.Entry<SampledID, RssiFilter>> iterator = filters.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final RssiFilter filter = iterator.next().getValue();
+            final long time = filter.time();
+            if (0 == time || time + timeToLive.millis() < now) {
+                filter.list.untrack(filter);
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Number of sampled IDs with filter state.
+     * @return Filter count.
+     */
+    public int size() {
+        return filters.size();
+    }
+}
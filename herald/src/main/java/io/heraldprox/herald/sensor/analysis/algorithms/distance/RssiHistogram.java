@@ -8,58 +8,99 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import io.heraldprox.herald.sensor.DefaultSensorDelegate;
+import io.heraldprox.herald.sensor.data.ConcreteSensorLogger;
+import io.heraldprox.herald.sensor.data.SensorLogger;
 import io.heraldprox.herald.sensor.data.TextFile;
-import io.heraldprox.herald.sensor.datatype.Date;
+import io.heraldprox.herald.sensor.datatype.Callback;
 import io.heraldprox.herald.sensor.datatype.Proximity;
 import io.heraldprox.herald.sensor.datatype.ProximityMeasurementUnit;
 import io.heraldprox.herald.sensor.datatype.SensorType;
 import io.heraldprox.herald.sensor.datatype.TargetIdentifier;
 import io.heraldprox.herald.sensor.datatype.TimeInterval;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
 /**
  * Accumulate histogram of all RSSI measurements to build a profile of the receiver for normalisation
+ * <br>- Counts are held in Fenwick (binary indexed) trees, thus cumulative counts for percentiles
+ *   and normalisation are computed on demand in O(log n) time, and are always current.
+ * <br>- Counts are striped across several trees by thread to avoid contention, where add()
+ *   takes no locks and queries sum over all stripes.
+ * <br>- Histogram is written to storage at regular intervals by a background task, thus add()
+ *   never blocks on file I/O. Writes for all histograms are performed by a single shared daemon
+ *   thread, thus histograms can be discarded without being closed.
+ * <br>- Counts are available as a snapshot via histogram(), which replaces the public histogram
+ *   array of earlier versions.
  */
 public class RssiHistogram extends DefaultSensorDelegate {
-    public final int min, max;
-    @NonNull
-    public final long[] histogram;
+    private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "Analysis.RssiHistogram");
+    // Shared by all histograms, as writes are infrequent
     @NonNull
-    private final long[] cdf;
+    private final static ExecutorService executorService = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "RssiHistogram");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    public final int min, max;
+    // Number of bins
+    private final int size;
+    // Fenwick trees of counts, indexed from 1, one per stripe, where index 0 is the stripe total
     @NonNull
-    private final double[] transform;
+    private final AtomicLongArray[] stripes;
+    private final int stripeMask;
     @Nullable
     private final TextFile textFile;
     @NonNull
     private final TimeInterval updatePeriod;
     @NonNull
-    private Date lastUpdateTime = new Date(0);
-    private long samples = 0;
+    private final AtomicBoolean writeScheduled = new AtomicBoolean(false);
+    private volatile long nextWriteTime = 0;
+    @NonNull
+    private final Runnable writeTask = new Runnable() {
+        @Override
+        public void run() {
+            writeScheduled.set(false);
+            //noinspection ConstantConditions
+            write(textFile);
+        }
+    };
 
     /**
      * Accumulate histogram of RSSI for value range [min, max] and auto-write profile to storage at regular intervals.
      * @param min Minimum RSSI value (inclusive)
      * @param max Maximum RSSI value (inclusive)
-     * @param updatePeriod Update histogram normalisation parameters at regular intervals
+     * @param updatePeriod Write histogram to storage at regular intervals
      * @param textFile Optionally write histogram to storage at regular intervals
      */
     public RssiHistogram(final int min, final int max, @NonNull final TimeInterval updatePeriod, @Nullable final TextFile textFile) {
         this.min = min;
         this.max = max;
-        this.histogram = new long[max - min + 1];
-        this.cdf = new long[histogram.length];
-        this.transform = new double[histogram.length];
+        this.size = max - min + 1;
+        // Power of two stripes, at least one per processor up to a maximum of 8
+        final int processors = Math.min(8, Math.max(1, Runtime.getRuntime().availableProcessors()));
+        final int stripeCount = (Integer.bitCount(processors) == 1 ? processors : Integer.highestOneBit(processors) << 1);
+        this.stripes = new AtomicLongArray[stripeCount];
+        for (int i=stripeCount; i-->0;) {
+            stripes[i] = new AtomicLongArray(size + 1);
+        }
+        this.stripeMask = stripeCount - 1;
         this.textFile = textFile;
         this.updatePeriod = updatePeriod;
-        clear();
         if (textFile != null) {
             read(textFile);
-            update();
         }
+        this.nextWriteTime = nextWriteTime(System.currentTimeMillis());
     }
 
     /**
-     * Accumulate histogram of RSSI for value range [min, max] in-memory only. Histogram normalisation parameters
-     * are updated once per minute.
+     * Accumulate histogram of RSSI for value range [min, max] in-memory only.
      * @param min Minimum RSSI value (inclusive)
      * @param max Maximum RSSI value (inclusive)
      */
@@ -69,10 +110,6 @@ public class RssiHistogram extends DefaultSensorDelegate {
 
     @Override
     public void sensor(@NonNull final SensorType sensor, @NonNull final Proximity didMeasure, final @NonNull TargetIdentifier fromTarget) {
-        // Guard for data collection until histogram reaches maximum count
-        if (Long.MAX_VALUE == samples) {
-            return;
-        }
         // Guard for RSSI measurements only
         //noinspection ConstantConditions
         if (didMeasure.unit != ProximityMeasurementUnit.RSSI || null == didMeasure.value) {
@@ -82,52 +119,128 @@ public class RssiHistogram extends DefaultSensorDelegate {
     }
 
     /**
-     * Add RSSI sample.
+     * Add RSSI sample. This is lock free and safe to call concurrently from any thread.
      * @param rssiValue RSSI sample value
      */
-    public synchronized void add(final double rssiValue) {
+    public void add(final double rssiValue) {
         // Guard for RSSI range
         final int rssi = (int) Math.round(rssiValue);
         if (rssi < min || rssi > max) {
             return;
         }
-        // Increment count
-        final int index = rssi - min;
-        histogram[index]++;
-        samples++;
-        // Update at regular intervals
-        final Date time = new Date();
-        if (lastUpdateTime.secondsSinceUnixEpoch() + updatePeriod.value < time.secondsSinceUnixEpoch()) {
-            if (textFile != null) {
-                write(textFile);
+        // Guard for data collection until histogram reaches maximum count
+        if (Long.MAX_VALUE == samples()) {
+            return;
+        }
+        increment(rssi - min, 1);
+        // Write to storage at regular intervals in background
+        if (null != textFile && System.currentTimeMillis() >= nextWriteTime && writeScheduled.compareAndSet(false, true)) {
+            nextWriteTime = nextWriteTime(System.currentTimeMillis());
+            try {
+                executorService.execute(writeTask);
+            } catch (Throwable e) {
+                writeScheduled.set(false);
+                logger.fault("add, failed to schedule write (file={})", textFile, e);
+            }
+        }
+    }
+
+    /**
+     * Merge counts from another histogram, e.g. histograms accumulated in parallel from separate
+     * data sources. Counts outside of the value range of this histogram are discarded, and
+     * counts are discarded once this histogram reaches maximum count.
+     * @param histogram Histogram to merge into this histogram.
+     */
+    public void merge(@NonNull final RssiHistogram histogram) {
+        final long[] counts = histogram.histogram();
+        long remaining = Long.MAX_VALUE - samples();
+        for (int i=0; i<counts.length && remaining > 0; i++) {
+            final int rssi = histogram.min + i;
+            if (0 == counts[i] || rssi < min || rssi > max) {
+                continue;
             }
-            update();
-            lastUpdateTime = time;
+            final long count = Math.min(counts[i], remaining);
+            increment(rssi - min, count);
+            remaining -= count;
+        }
+    }
+
+    /**
+     * Increment count of bin in stripe for this thread.
+     * @param index Bin index in range [0, size)
+     * @param count Increment
+     */
+    private void increment(final int index, final long count) {
+        final AtomicLongArray tree = stripes[(int) Thread.currentThread().getId() & stripeMask];
+        for (int i = index + 1; i <= size; i += (i & -i)) {
+            tree.getAndAdd(i, count);
         }
+        tree.getAndAdd(0, count);
     }
 
+    /**
+     * Time of next background write to storage, where an update period of never disables writes.
+     * @param now Current time in milliseconds
+     * @return Time of next write in milliseconds.
+     */
+    private long nextWriteTime(final long now) {
+        if (updatePeriod.value >= (Long.MAX_VALUE - now) / 1000) {
+            return Long.MAX_VALUE;
+        }
+        return now + updatePeriod.millis();
+    }
+
+    /**
+     * Reset all counts to zero. Samples added concurrently may or may not be retained.
+     */
     public void clear() {
-        for (int i=histogram.length; i-->0;) {
-            histogram[i] = 0;
-            cdf[i] = 0;
+        for (final AtomicLongArray tree : stripes) {
+            for (int i=size; i>=0; i--) {
+                tree.set(i, 0);
+            }
         }
-        for (int i=transform.length; i-->0;) {
-            transform[i] = i;
+    }
+
+    /**
+     * Total number of samples in histogram.
+     * @return Sample count.
+     */
+    public long samples() {
+        long sum = 0;
+        for (final AtomicLongArray tree : stripes) {
+            sum += tree.get(0);
+        }
+        return sum;
+    }
+
+    /**
+     * Number of samples with RSSI value.
+     * @param rssi RSSI value
+     * @return Sample count, or zero if RSSI is outside of value range.
+     */
+    public long count(final int rssi) {
+        if (rssi < min || rssi > max) {
+            return 0;
         }
-        samples = 0;
+        final int index = rssi - min;
+        return cumulativeCount(index) - (index > 0 ? cumulativeCount(index - 1) : 0);
     }
 
     public int samplePercentile(final double percentile) {
+        final long samples = samples();
         if (0 == samples) {
             return (int) Math.round(min + (max - min) * percentile);
         }
+        // First RSSI value where cumulative count >= percentile count
         final double percentileCount = samples * percentile;
-        for (int i=0; i<cdf.length; i++) {
-            if (cdf[i] >= percentileCount) {
-                return min + i;
-            }
+        if (percentileCount <= 0) {
+            return min;
+        }
+        final long target = (long) Math.ceil(percentileCount);
+        if (target > samples) {
+            return max;
         }
-        return max;
+        return min + lowerBound(target);
     }
 
     public double normalisedPercentile(final double percentile) {
@@ -140,20 +253,31 @@ public class RssiHistogram extends DefaultSensorDelegate {
      */
     public void read(@NonNull final TextFile textFile) {
         clear();
-        final String content = textFile.contentsOf();
-        for (final String row : content.split("\n")) {
-            final String[] cols = row.split(",", 2);
-            if (cols.length != 2) {
-                continue;
+        final long[] histogram = new long[size];
+        textFile.forEachLine(new Callback<String>() {
+            @Override
+            public void accept(final String row) {
+                final String[] cols = row.split(",", 2);
+                if (cols.length != 2) {
+                    return;
+                }
+                final int rssi = Integer.parseInt(cols[0]);
+                final long count = Long.parseLong(cols[1]);
+                if (rssi < min || rssi > max) {
+                    return;
+                }
+                histogram[rssi - min] = count;
             }
-            final int rssi = Integer.parseInt(cols[0]);
-            final long count = Long.parseLong(cols[1]);
-            if (rssi < min || rssi > max) {
-                continue;
+        });
+        // Build tree in O(n) by propagating each node to its parent
+        final AtomicLongArray tree = stripes[0];
+        for (int i=1; i<=size; i++) {
+            tree.addAndGet(0, histogram[i - 1]);
+            final long value = tree.addAndGet(i, histogram[i - 1]);
+            final int parent = i + (i & -i);
+            if (parent <= size) {
+                tree.addAndGet(parent, value);
             }
-            final int index = rssi - min;
-            histogram[index] = count;
-            samples += count;
         }
     }
 
@@ -163,6 +287,7 @@ public class RssiHistogram extends DefaultSensorDelegate {
      */
     @NonNull
     private String toCsv() {
+        final long[] histogram = histogram();
         final StringBuilder s = new StringBuilder();
         for (int i=0; i<histogram.length; i++) {
             final int rssi = min + i;
@@ -181,69 +306,88 @@ public class RssiHistogram extends DefaultSensorDelegate {
         textFile.overwrite(content);
     }
 
-    // MARK: - Histogram equalisation
+    /**
+     * Snapshot of histogram counts.
+     * @return Sample count for each RSSI value in range [min, max].
+     */
+    @NonNull
+    public long[] histogram() {
+        final long[] histogram = new long[size];
+        long previous = 0;
+        for (int i=0; i<size; i++) {
+            final long cumulative = cumulativeCount(i);
+            histogram[i] = cumulative - previous;
+            previous = cumulative;
+        }
+        return histogram;
+    }
+
+    // MARK: - Fenwick tree
 
     /**
-     * Compute cumulative distribution function (CDF) of histogram.
-     * @param histogram Histogram data (input)
-     * @param cdf Cumulative distribution function (output)
+     * Cumulative count of samples up to and including bin, summed over all stripes.
+     * @param index Bin index in range [0, size)
+     * @return Cumulative count.
      */
-    private static void cumulativeDistributionFunction(@NonNull final long[] histogram, @NonNull final long[] cdf) {
+    private long cumulativeCount(final int index) {
         long sum = 0;
-        for (int i = 0; i < histogram.length; i++) {
-            cdf[i] = (sum += histogram[i]);
+        for (final AtomicLongArray tree : stripes) {
+            for (int i = index + 1; i > 0; i -= (i & -i)) {
+                sum += tree.get(i);
+            }
         }
+        return sum;
     }
 
-//    // Compute transformation table for equalising histogram to target CDF.
-//    // Use this to normalise all phones towards a common histogram profile.
-//    private static void equalisation(final long[] histogram, final long[] cdf, final double[] transform) {
-//        final double sum = cdf[cdf.length - 1];
-//        final long max = cdf.length - 1;
-//        if (sum > 0) {
-//            int j = 0;
-//            for (int i = 0; i < histogram.length; i++) {
-//                for (; j < cdf.length; j++) {
-//                    if (histogram[i] <= cdf[j]) {
-//                        transform[i] = j;
-//                        break;
-//                    }
-//                }
-//            }
-//        }
-//    }
-
     /**
-     * Compute transformation table for normalising histogram to maximise its dynamic range.
-     * @param cdf Cumulative distribution function (input)
-     * @param transform Histogram normalisation lookup table (output)
+     * Find first bin where cumulative count reaches the target by descending the tree.
+     * @param target Target count, must be in range [1, samples]
+     * @return Bin index in range [0, size), or size - 1 if target was not reached.
      */
-    private static void normalisation(@NonNull final long[] cdf, @NonNull final double[] transform) {
-        final double sum = cdf[cdf.length - 1];
-        final long max = cdf.length - 1;
-        if (sum > 0) {
-            for (int i = cdf.length; i-- > 0; ) {
-                transform[i] = max * cdf[i] / sum;
+    private int lowerBound(long target) {
+        int position = 0;
+        for (int step = Integer.highestOneBit(size); step > 0; step >>= 1) {
+            final int next = position + step;
+            if (next > size) {
+                continue;
+            }
+            long count = 0;
+            for (final AtomicLongArray tree : stripes) {
+                count += tree.get(next);
+            }
+            if (count < target) {
+                position = next;
+                target -= count;
             }
         }
+        return Math.min(position, size - 1);
     }
 
+    /**
+     * Normalisation parameters are derived from the histogram on demand, thus they are always
+     * current. Retained for compatibility.
+     */
     public void update() {
-        cumulativeDistributionFunction(histogram, cdf);
-        normalisation(cdf, transform);
     }
 
     // MARK: - Normalisation
 
+    /**
+     * Normalise RSSI value to maximise dynamic range of histogram, by mapping each RSSI value to
+     * its position in the cumulative distribution function (CDF) scaled to the value range.
+     * Values outside of the range are clamped to min and max. All values are unchanged while the
+     * histogram is empty.
+     * @param rssi RSSI value
+     * @return Normalised RSSI value.
+     */
     public double normalise(final double rssi) {
-        final int index = (int) (Math.round(rssi) - min);
-        if (index < 0) {
-            return min + transform[0];
-        }
-        if (index >= transform.length) {
-            return min + transform[transform.length - 1];
+        final int index = (int) Math.max(0, Math.min(size - 1, Math.round(rssi) - min));
+        final long samples = samples();
+        if (0 == samples) {
+            return min + index;
         }
-        return min + transform[index];
+        final long max = size - 1;
+        return min + max * cumulativeCount(index) / (double) samples;
     }
 //
 //    public Proximity normalise(Proximity proximity) {
@@ -257,6 +401,6 @@ public class RssiHistogram extends DefaultSensorDelegate {
     @NonNull
     @Override
     public String toString() {
-        return "RssiHistogram{samples="+samples+",p05="+samplePercentile(0.05)+",p50="+samplePercentile(0.5) + ",p95="+samplePercentile(0.95)+"}";
+        return "RssiHistogram{samples="+samples()+",p05="+samplePercentile(0.05)+",p50="+samplePercentile(0.5) + ",p95="+samplePercentile(0.95)+"}";
     }
 }
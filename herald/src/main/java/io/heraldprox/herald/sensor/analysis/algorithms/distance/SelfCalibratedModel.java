@@ -7,11 +7,11 @@ package io.heraldprox.herald.sensor.analysis.algorithms.distance;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import io.heraldprox.herald.sensor.analysis.sampling.CumulativeAggregate;
 import io.heraldprox.herald.sensor.analysis.sampling.Sample;
 import io.heraldprox.herald.sensor.data.ConcreteSensorLogger;
 import io.heraldprox.herald.sensor.data.SensorLogger;
 import io.heraldprox.herald.sensor.data.TextFile;
-import io.heraldprox.herald.sensor.datatype.Date;
 import io.heraldprox.herald.sensor.datatype.Distance;
 import io.heraldprox.herald.sensor.datatype.DoubleValue;
 import io.heraldprox.herald.sensor.datatype.TimeInterval;
@@ -30,9 +30,11 @@ import io.heraldprox.herald.sensor.datatype.TimeInterval;
  * <br>- Use social norm to set minimum and mean distance between people, then set
  *   time duration within minimum and mean distance to derive percentiles for
  *   self-calibration based on observed values.
+ * <br>- Every sample mapped by the model is also added to the long term histogram, thus the
+ *   model is a cumulative aggregate that must map each sample once.
  * @param <T>
  */
-public class SelfCalibratedModel<T extends DoubleValue> extends SmoothedLinearModel<T> {
+public class SelfCalibratedModel<T extends DoubleValue> extends SmoothedLinearModel<T> implements CumulativeAggregate<T> {
     private final SensorLogger logger = new ConcreteSensorLogger("Analysis", "SmoothedLinearSelfCalibratedModel");
     @NonNull
     private final Distance min, mean;
@@ -43,7 +45,8 @@ public class SelfCalibratedModel<T extends DoubleValue> extends SmoothedLinearMo
     private final TextFile textFile;
     private double maxRssi = -10;
     @NonNull
-    private Date lastSampleTime = new Date(0);
+    // Seconds since unix epoch of last sample added to histogram
+    private long lastSampleTime = 0;
 
     public SelfCalibratedModel(@NonNull final Distance min, @NonNull final Distance mean, @NonNull final TimeInterval withinMin, @NonNull final TimeInterval withinMean, @Nullable final TextFile textFile) {
         super();
@@ -81,10 +84,26 @@ public class SelfCalibratedModel<T extends DoubleValue> extends SmoothedLinearMo
 
     @Override
     public void map(@NonNull final Sample<T> value) {
-        super.map(value);
-        if (value.taken().secondsSinceUnixEpoch() > lastSampleTime.secondsSinceUnixEpoch()) {
-            histogram.add(value.value().doubleValue());
-            lastSampleTime = value.taken();
+        map(value.taken().getTime(), value.value().doubleValue());
+    }
+
+    @Override
+    public void map(final long time, final double value) {
+        super.map(time, value);
+        addToHistogram(time, value);
+    }
+
+    @Override
+    public void onPush(final long time, final double value) {
+        super.onPush(time, value);
+        addToHistogram(time, value);
+    }
+
+    private void addToHistogram(final long time, final double value) {
+        final long secondsSinceUnixEpoch = time / 1000;
+        if (secondsSinceUnixEpoch > lastSampleTime) {
+            histogram.add(value);
+            lastSampleTime = secondsSinceUnixEpoch;
         }
     }
 
@@ -98,20 +117,49 @@ public class SelfCalibratedModel<T extends DoubleValue> extends SmoothedLinearMo
             logger.debug("reduce, sample median is null");
             return null;
         }
-        final double normalisedMedian = histogram.normalise(sampleMedian);
-        if (normalisedMedian < -99) {
-            logger.debug("reduce, out of range (reason=tooFar,median={},minRssi={})", normalisedMedian, -99);
+        final double distanceInMetres = distance(sampleMedian);
+        if (Double.isNaN(distanceInMetres)) {
+            logger.debug("reduce, out of range (median={},normalisedMedian={},minRssi={},maxRssi={})", sampleMedian, histogram.normalise(sampleMedian), -99, maxRssi);
             return null;
         }
-        if (normalisedMedian > maxRssi) {
-            logger.debug("reduce, out of range (reason=tooNear,median={},maxRssi={})", normalisedMedian, maxRssi);
-            return null;
+        return distanceInMetres;
+    }
+
+    /**
+     * Estimate distance from median RSSI, normalised by the histogram, using the current model
+     * parameters. Call update() to update model parameters from the histogram.
+     * @param medianOfRssi Median RSSI
+     * @return Distance in metres, or NaN if median RSSI is too near or too far.
+     */
+    @Override
+    public double distance(final double medianOfRssi) {
+        if (Double.isNaN(medianOfRssi)) {
+            return Double.NaN;
         }
-        final Double distanceInMetres = min.value + (intercept - normalisedMedian) * coefficient;
+        final double normalisedMedian = histogram.normalise(medianOfRssi);
+        // Too far or too near
+        if (normalisedMedian < -99 || normalisedMedian > maxRssi) {
+            return Double.NaN;
+        }
+        final double distanceInMetres = min.value + (intercept - normalisedMedian) * coefficient;
         if (distanceInMetres <= 0) {
-            logger.debug("reduce, out of range (reason=tooNear,median={},distance={})", normalisedMedian, distanceInMetres);
-            return null;
+            return Double.NaN;
         }
         return distanceInMetres;
     }
+
+    /**
+     * Estimate distance for many targets at once from the median RSSI of each target. Model
+     * parameters and normalisation are updated from the histogram once for the batch.
+     * @param medianOfRssi Median RSSI of each target
+     * @param distance Distance in metres for each target (output), or NaN if median RSSI is
+     *                 too near or too far.
+     * @param count Number of targets
+     */
+    @Override
+    public void distance(@NonNull final double[] medianOfRssi, @NonNull final double[] distance, final int count) {
+        // Update invalidates lookup table, as normalisation changes with the histogram
+        update();
+        super.distance(medianOfRssi, distance, count);
+    }
 }
@@ -8,7 +8,8 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import io.heraldprox.herald.sensor.analysis.aggregates.Median;
-import io.heraldprox.herald.sensor.analysis.sampling.Aggregate;
+import io.heraldprox.herald.sensor.analysis.sampling.IncrementalAggregate;
+import io.heraldprox.herald.sensor.analysis.sampling.PrimitiveAggregate;
 import io.heraldprox.herald.sensor.analysis.sampling.Sample;
 import io.heraldprox.herald.sensor.data.ConcreteSensorLogger;
 import io.heraldprox.herald.sensor.data.SensorLogger;
@@ -49,13 +50,20 @@ import io.heraldprox.herald.sensor.datatype.DoubleValue;
  *   and also the significant impact of interference within a short range, a linear model
  *   avoids being skewed by the 0 - 20cm range, and offer simplicity for fitting the data
  *   range of interest (1 - 8m).
+ * <br>- The model can be maintained incrementally over a sliding window of RSSI samples, where
+ *   the median is updated in O(log n) time on every push and evict.
+ * <br>- Distance for many targets can be estimated at once from the median RSSI of each target
+ *   by distance(double[],double[],int), using a lookup table of the model.
  * @param <T>
  */
-public class SmoothedLinearModel<T extends DoubleValue> implements Aggregate<T> {
+public class SmoothedLinearModel<T extends DoubleValue> implements PrimitiveAggregate<T>, IncrementalAggregate<T> {
     private final SensorLogger logger = new ConcreteSensorLogger("Analysis", "SmoothedLinearModel");
     private final Median<T> median = new Median<>();
     protected double intercept;
     protected double coefficient;
+    // Lookup table for batch estimation, rebuilt on demand after parameter change
+    @Nullable
+    private volatile DistanceTable distanceTable = null;
 
     public SmoothedLinearModel() {
         // Model parameters derived by DataAnalysis.R using data from experiments:
@@ -76,6 +84,7 @@ public class SmoothedLinearModel<T extends DoubleValue> implements Aggregate<T>
     public void setParameters(final double intercept, final double coefficient) {
         this.intercept = intercept;
         this.coefficient = coefficient;
+        this.distanceTable = null;
     }
 
     @Override
@@ -93,6 +102,21 @@ public class SmoothedLinearModel<T extends DoubleValue> implements Aggregate<T>
         median.map(value);
     }
 
+    @Override
+    public void map(final long time, final double value) {
+        median.map(time, value);
+    }
+
+    @Override
+    public void onPush(final long time, final double value) {
+        median.onPush(time, value);
+    }
+
+    @Override
+    public void onEvict(final long time, final double value) {
+        median.onEvict(time, value);
+    }
+
     @Nullable
     @Override
     public Double reduce() {
@@ -101,14 +125,58 @@ public class SmoothedLinearModel<T extends DoubleValue> implements Aggregate<T>
             logger.debug("reduce, medianOfRssi is null");
             return null;
         }
-        final Double distanceInMetres = intercept + coefficient * medianOfRssi;
-        if (distanceInMetres <= 0) {
-            logger.debug("reduce, out of range (medianOfRssi={},distanceInMetres={})", medianOfRssi, distanceInMetres);
+        final double distanceInMetres = distance(medianOfRssi);
+        if (Double.isNaN(distanceInMetres)) {
+            logger.debug("reduce, out of range (medianOfRssi={},distanceInMetres={})", medianOfRssi, intercept + coefficient * medianOfRssi);
             return null;
         }
         return distanceInMetres;
     }
 
+    /**
+     * Estimate distance from median RSSI.
+     * @param medianOfRssi Median RSSI
+     * @return Distance in metres, or NaN if median RSSI is outside of model range.
+     */
+    public double distance(final double medianOfRssi) {
+        final double distanceInMetres = intercept + coefficient * medianOfRssi;
+        if (distanceInMetres <= 0) {
+            return Double.NaN;
+        }
+        return distanceInMetres;
+    }
+
+    /**
+     * Estimate distance for many targets at once from the median RSSI of each target. Result
+     * is identical to distance(double) for each target.
+     * @param medianOfRssi Median RSSI of each target
+     * @param distance Distance in metres for each target (output), or NaN if median RSSI is
+     *                 outside of model range.
+     * @param count Number of targets
+     */
+    public void distance(@NonNull final double[] medianOfRssi, @NonNull final double[] distance, final int count) {
+        distanceTable().distance(medianOfRssi, distance, count);
+    }
+
+    /**
+     * Lookup table of model for current parameters.
+     * @return Lookup table.
+     */
+    @NonNull
+    DistanceTable distanceTable() {
+        DistanceTable distanceTable = this.distanceTable;
+        if (null == distanceTable) {
+            distanceTable = new DistanceTable() {
+                @Override
+                double estimate(final double rssi) {
+                    return SmoothedLinearModel.this.distance(rssi);
+                }
+            }.build();
+            this.distanceTable = distanceTable;
+        }
+        return distanceTable;
+    }
+
     @Override
     public void reset() {
         median.reset();
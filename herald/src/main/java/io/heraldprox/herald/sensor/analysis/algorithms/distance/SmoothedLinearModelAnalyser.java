@@ -21,6 +21,10 @@ import io.heraldprox.herald.sensor.datatype.Distance;
 import io.heraldprox.herald.sensor.datatype.RSSI;
 import io.heraldprox.herald.sensor.datatype.TimeInterval;
 
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 public class SmoothedLinearModelAnalyser implements AnalysisProvider<RSSI, Distance> {
     private final SensorLogger logger = new ConcreteSensorLogger("Analysis", "SmoothedLinearModelAnalyser");
     @NonNull
@@ -29,8 +33,11 @@ public class SmoothedLinearModelAnalyser implements AnalysisProvider<RSSI, Dista
     private final TimeInterval smoothingWindow;
     @NonNull
     private final SmoothedLinearModel model;
+    // Time of last analysis for each sampled ID, for concurrent analysis of different IDs
     @NonNull
-    private Date lastRan = new Date(0);
+    private final Map<SampledID, Date> lastRan = new ConcurrentHashMap<>();
+    private final long sweepInterval;
+    private volatile long nextSweepTime = 0;
     private final Filter<RSSI> valid = new InRange<>(-99, -10);
 
     public SmoothedLinearModelAnalyser() {
@@ -39,6 +46,7 @@ public class SmoothedLinearModelAnalyser implements AnalysisProvider<RSSI, Dista
 
     public SmoothedLinearModelAnalyser(@NonNull final TimeInterval interval, @NonNull final TimeInterval smoothingWindow, @NonNull final SmoothedLinearModel<RSSI> smoothedLinearModel) {
         this.interval = interval;
+        this.sweepInterval = Math.max(interval.millis(), TimeInterval.minute.millis());
         this.smoothingWindow = smoothingWindow;
         this.model = smoothedLinearModel;
     }
@@ -57,10 +65,12 @@ public class SmoothedLinearModelAnalyser implements AnalysisProvider<RSSI, Dista
 
     @Override
     public boolean analyse(@NonNull final Date timeNow, @NonNull final SampledID sampled, @NonNull final SampleList<RSSI> input, @NonNull final SampleList<Distance> output, @NonNull CallableForNewSample<Distance> callable) {
+        sweep(timeNow);
         // Interval guard
-        final TimeInterval secondsSinceLastRan = new TimeInterval(timeNow.secondsSinceUnixEpoch() - lastRan.secondsSinceUnixEpoch());
+        final Date lastRanForSampled = lastRanFor(sampled);
+        final TimeInterval secondsSinceLastRan = new TimeInterval(timeNow.secondsSinceUnixEpoch() - lastRanForSampled.secondsSinceUnixEpoch());
         if (secondsSinceLastRan.value < interval.value) {
-            logger.debug("analyse, skipped (reason=elapsedSinceLastRanBelowInterval,interval={}s,timeSinceLastRan={}s,lastRan={})", interval, secondsSinceLastRan, lastRan);
+            logger.debug("analyse, skipped (reason=elapsedSinceLastRanBelowInterval,interval={}s,timeSinceLastRan={}s,lastRan={})", interval, secondsSinceLastRan, lastRanForSampled);
             return false;
         }
         // Input guard : Must have valid data to analyse
@@ -87,10 +97,16 @@ public class SmoothedLinearModelAnalyser implements AnalysisProvider<RSSI, Dista
             return false;
         }
         // Estimate distance based on smoothed linear model
-        model.reset();
-        final Double distance = window.aggregate(model).get(SmoothedLinearModel.class);
+        // Model is shared by all sampled IDs
+        final Double distance;
+        final Double medianOfRssi;
+        synchronized (model) {
+            model.reset();
+            distance = window.aggregate(model).get(SmoothedLinearModel.class);
+            medianOfRssi = model.medianOfRssi();
+        }
         if (null == distance) {
-            logger.debug("analyse, skipped (reason=outOfModelRange,mediaOfRssi={})", model.medianOfRssi());
+            logger.debug("analyse, skipped (reason=outOfModelRange,mediaOfRssi={})", medianOfRssi);
             return false;
         }
         // Publish distance data
@@ -106,11 +122,46 @@ public class SmoothedLinearModelAnalyser implements AnalysisProvider<RSSI, Dista
             return false;
         }
         final Date timeMiddle = new Date(timeEnd.secondsSinceUnixEpoch() - ((timeEnd.secondsSinceUnixEpoch() - timeStart.secondsSinceUnixEpoch()) / 2));
-        logger.debug("analyse (timeStart={},timeEnd={},timeMiddle={},samples={},medianOfRssi={},distance={})", timeStart, timeEnd, timeMiddle, window.size(), model.medianOfRssi(), distance);
+        logger.debug("analyse (timeStart={},timeEnd={},timeMiddle={},samples={},medianOfRssi={},distance={})", timeStart, timeEnd, timeMiddle, window.size(), medianOfRssi, distance);
         final Sample<Distance> newSample = new Sample<>(timeMiddle, new Distance(distance));
         output.push(newSample);
         callable.newSample(sampled, newSample);
-        lastRan = new Date();
+        lastRan.put(sampled, timeNow);
         return true;
     }
+
+    @NonNull
+    private Date lastRanFor(@NonNull final SampledID sampled) {
+        final Date lastRanForSampled = lastRan.get(sampled);
+        return (null == lastRanForSampled ? new Date(0) : lastRanForSampled);
+    }
+
+    /**
+     * Discard last ran time of sampled IDs where the interval has elapsed, at most once per
+     * minute, such that state for transient sampled IDs does not accumulate. An entry where
+     * the interval has elapsed has the same effect on the interval guard as no entry.
+     * @param timeNow Current time
+     */
+    private void sweep(@NonNull final Date timeNow) {
+        final long now = timeNow.getTime();
+        // Sweep again if time has moved backwards, e.g. on replay
+        if (now < nextSweepTime && now >= nextSweepTime - sweepInterval) {
+            return;
+        }
+        nextSweepTime = now + sweepInterval;
+        final Iterator<Date> iterator = lastRan.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().getTime() > interval.millis()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Number of sampled IDs with last ran time.
+     * @return Sampled ID count.
+     */
+    int lastRanSize() {
+        return lastRan.size();
+    }
 }
@@ -0,0 +1,181 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis.algorithms.risk;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import io.heraldprox.herald.sensor.analysis.sampling.CallableForNewSample;
+import io.heraldprox.herald.sensor.analysis.sampling.Sample;
+import io.heraldprox.herald.sensor.analysis.sampling.SampledID;
+import io.heraldprox.herald.sensor.datatype.DoubleValue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Running risk score for each sampled ID, maintained incrementally as distance samples arrive.
+ * <br>- Each new distance sample is folded into the risk score of its sampled ID in O(1) time,
+ *   by adding the risk slice for the time period since the previous sample, as computed by
+ *   RiskAggregationBasic over consecutive pairs of samples. The risk score is therefore
+ *   identical to aggregating the entire sample history, without retaining or rescanning it.
+ * <br>- Samples that are older than the latest sample of a sampled ID are ignored.
+ * <br>- Register as CallableForNewSample for distance samples, e.g. with an analysis delegate,
+ *   to keep risk scores for all targets current. Sampled IDs are updated concurrently,
+ *   where each sampled ID has its own lock.
+ * <br>
+ * NOT FOR PRODUCTION EPIDEMIOLOGICAL USE - SAMPLE ONLY!!!
+ * @param <T>
+ */
+public class RiskAccumulator<T extends DoubleValue> implements CallableForNewSample<T> {
+    @NonNull
+    private final RiskAggregationBasic<?> model;
+    @NonNull
+    private final ConcurrentMap<SampledID, State> states = new ConcurrentHashMap<>();
+
+    /**
+     * Accumulator state for a sampled ID.
+     */
+    private final static class State {
+        // Time of latest sample in seconds since unix epoch
+        private long time = 0;
+        private long samples = 0;
+        private double riskScore = 0;
+    }
+
+    /**
+     * Running risk score for each sampled ID.
+     * @param model Risk model parameters.
+     */
+    public RiskAccumulator(@NonNull final RiskAggregationBasic<?> model) {
+        this.model = model;
+    }
+
+    @Override
+    public void newSample(@NonNull final SampledID sampled, @NonNull final Sample<T> item) {
+        add(sampled, item.taken().secondsSinceUnixEpoch(), item.value().doubleValue());
+    }
+
+    /**
+     * Fold distance sample into running risk score of sampled ID.
+     * @param sampled Sampled ID
+     * @param secondsSinceUnixEpoch Time of sample
+     * @param distance Distance sample value
+     * @return Risk score of sampled ID, including this sample.
+     */
+    public double add(@NonNull final SampledID sampled, final long secondsSinceUnixEpoch, final double distance) {
+        final State state = state(sampled);
+        synchronized (state) {
+            if (state.samples > 0) {
+                if (secondsSinceUnixEpoch < state.time) {
+                    return state.riskScore;
+                }
+                state.riskScore += model.riskSlice(distance, secondsSinceUnixEpoch - state.time);
+            }
+            state.time = secondsSinceUnixEpoch;
+            state.samples++;
+            return state.riskScore;
+        }
+    }
+
+    @NonNull
+    private State state(@NonNull final SampledID sampled) {
+        final State state = states.get(sampled);
+        if (null != state) {
+            return state;
+        }
+        final State newState = new State();
+        final State existingState = states.putIfAbsent(sampled, newState);
+        return (null == existingState ? newState : existingState);
+    }
+
+    /**
+     * Current risk score of sampled ID.
+     * @param sampled Sampled ID
+     * @return Risk score, or null if there are no samples for the sampled ID.
+     */
+    @Nullable
+    public Double riskScore(@NonNull final SampledID sampled) {
+        final State state = states.get(sampled);
+        if (null == state) {
+            return null;
+        }
+        synchronized (state) {
+            return state.riskScore;
+        }
+    }
+
+    /**
+     * Number of sampled IDs with risk scores.
+     * @return Sampled ID count.
+     */
+    public int size() {
+        return states.size();
+    }
+
+    /**
+     * Snapshot of current risk scores of all sampled IDs.
+     * @return Risk score for each sampled ID.
+     */
+    @NonNull
+    public Map<SampledID, Double> snapshot() {
+        final Map<SampledID, Double> snapshot = new HashMap<>(states.size());
+        for (final Map.Entry<SampledID, State> entry : states.entrySet()) {
+            final State state = entry.getValue();
+            synchronized (state) {
+                snapshot.put(entry.getKey(), state.riskScore);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Merge risk scores from another accumulator, e.g. accumulators for disjoint sample streams
+     * or consecutive periods. Risk scores are added, and the latest sample of either accumulator
+     * becomes the reference for the next risk slice of the sampled ID.
+     * @param accumulator Accumulator to merge into this accumulator.
+     */
+    public void merge(@NonNull final RiskAccumulator<?> accumulator) {
+        for (final Map.Entry<SampledID, State> entry : accumulator.states.entrySet()) {
+            // Copy other state before locking this state to avoid nested locks
+            final State other = entry.getValue();
+            final long time, samples;
+            final double riskScore;
+            synchronized (other) {
+                time = other.time;
+                samples = other.samples;
+                riskScore = other.riskScore;
+            }
+            if (0 == samples) {
+                continue;
+            }
+            final State state = state(entry.getKey());
+            synchronized (state) {
+                if (0 == state.samples || time > state.time) {
+                    state.time = time;
+                }
+                state.samples += samples;
+                state.riskScore += riskScore;
+            }
+        }
+    }
+
+    /**
+     * Reset risk scores of all sampled IDs.
+     */
+    public void reset() {
+        states.clear();
+    }
+
+    /**
+     * Reset risk score of sampled ID.
+     * @param sampled Sampled ID
+     */
+    public void reset(@NonNull final SampledID sampled) {
+        states.remove(sampled);
+    }
+}
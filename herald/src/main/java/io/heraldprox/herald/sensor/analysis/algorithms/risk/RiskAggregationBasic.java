@@ -77,33 +77,41 @@ public class RiskAggregationBasic<T extends DoubleValue> implements Aggregate<T>
         if (-1.0 != nMinusOne) {
             // we have two values with which to calculate
             // using nMinusOne and n, and calculate interim risk score addition
-            final double dist = distanceScale * n;
-            final double t = timeScale * (time - timeMinusOne); // seconds
-
-            double riskSlice = minimumRiskScoreAtClamp; // assume < clamp distance
-            if (dist > minimumDistanceClamp) {
-                // otherwise, do the inverse log of distance to get the risk score
-
-                // don't forget to clamp at risk score
-                riskSlice = minimumRiskScoreAtClamp - (logScale * Math.log10(dist));
-                if (riskSlice > minimumRiskScoreAtClamp) {
-                    // possible as the passed in logScale could be a negative
-                    riskSlice = minimumRiskScoreAtClamp;
-                }
-                if (riskSlice < 0.0) {
-                    riskSlice = 0.0; // cannot have a negative slice
-                }
-            }
-            riskSlice *= t;
-
             // add it to the risk score
-            riskScore += riskSlice;
+            riskScore += riskSlice(n, time - timeMinusOne);
         }
 
         // return current full risk score
         return riskScore;
     }
 
+    /**
+     * Risk score addition for time period spent at distance.
+     * @param distance Distance at end of time period
+     * @param seconds Duration of time period in seconds
+     * @return Risk slice for time period.
+     */
+    double riskSlice(final double distance, final long seconds) {
+        final double dist = distanceScale * distance;
+        final double t = timeScale * seconds;
+
+        double riskSlice = minimumRiskScoreAtClamp; // assume < clamp distance
+        if (dist > minimumDistanceClamp) {
+            // otherwise, do the inverse log of distance to get the risk score
+
+            // don't forget to clamp at risk score
+            riskSlice = minimumRiskScoreAtClamp - (logScale * Math.log10(dist));
+            if (riskSlice > minimumRiskScoreAtClamp) {
+                // possible as the passed in logScale could be a negative
+                riskSlice = minimumRiskScoreAtClamp;
+            }
+            if (riskSlice < 0.0) {
+                riskSlice = 0.0; // cannot have a negative slice
+            }
+        }
+        return riskSlice * t;
+    }
+
     @Override
     public void reset() {
         run = 1;
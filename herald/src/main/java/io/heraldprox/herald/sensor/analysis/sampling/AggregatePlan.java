@@ -0,0 +1,123 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis.sampling;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import io.heraldprox.herald.sensor.datatype.DoubleValue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Evaluation plan for aggregating a sample list, where each pass over the list only maps the
+ * aggregates that require the pass.
+ * <br>- Single pass aggregates are evaluated in one pass, thus a list of single run aggregates
+ *   and variance is evaluated in one pass instead of two.
+ * <br>- Primitive aggregates are mapped with time and value, and samples are only materialised
+ *   in passes that include aggregates of samples, or where the filter is not primitive.
+ * <br>- A filter is evaluated in every pass while scanning the list, rather than copying the
+ *   accepted samples, thus multi-run aggregates over a filtered list rescan the list.
+ */
+@SuppressWarnings("unchecked")
+final class AggregatePlan<T extends DoubleValue> {
+    @NonNull
+    private final Aggregate<T>[] aggregates;
+    // Aggregates to map in each pass, indexed by run - 1
+    @NonNull
+    private final PrimitiveAggregate<T>[][] primitiveAggregates;
+    @NonNull
+    private final Aggregate<T>[][] sampleAggregates;
+
+    AggregatePlan(@NonNull final Aggregate<T>[] aggregates) {
+        this.aggregates = aggregates;
+        int passes = 1;
+        for (final Aggregate<T> aggregate : aggregates) {
+            passes = Math.max(passes, runs(aggregate));
+        }
+        primitiveAggregates = (PrimitiveAggregate<T>[][]) new PrimitiveAggregate<?>[passes][];
+        sampleAggregates = (Aggregate<T>[][]) new Aggregate<?>[passes][];
+        final List<PrimitiveAggregate<T>> primitive = new ArrayList<>(aggregates.length);
+        final List<Aggregate<T>> sample = new ArrayList<>(aggregates.length);
+        for (int pass=0; pass<passes; pass++) {
+            primitive.clear();
+            sample.clear();
+            for (final Aggregate<T> aggregate : aggregates) {
+                if (pass >= runs(aggregate)) {
+                    continue;
+                }
+                if (aggregate instanceof PrimitiveAggregate) {
+                    primitive.add((PrimitiveAggregate<T>) aggregate);
+                } else {
+                    sample.add(aggregate);
+                }
+            }
+            primitiveAggregates[pass] = primitive.toArray((PrimitiveAggregate<T>[]) new PrimitiveAggregate<?>[primitive.size()]);
+            sampleAggregates[pass] = sample.toArray((Aggregate<T>[]) new Aggregate<?>[sample.size()]);
+        }
+    }
+
+    private static int runs(@NonNull final Aggregate<?> aggregate) {
+        return (aggregate instanceof SinglePassAggregate ? 1 : Math.max(1, aggregate.runs()));
+    }
+
+    /**
+     * Evaluate all aggregates over samples in list that are accepted by filter.
+     * @param list Sample list
+     * @param filter Filter, or null to accept all samples.
+     * @return Summary of aggregates, in order of evaluation request.
+     */
+    @NonNull
+    Summary<T> execute(@NonNull final SampleList<T> list, @Nullable final Filter<T> filter) {
+        final PrimitiveFilter<T> primitiveFilter = (filter instanceof PrimitiveFilter ? (PrimitiveFilter<T>) filter : null);
+        for (int pass=0; pass<primitiveAggregates.length; pass++) {
+            final PrimitiveAggregate<T>[] primitive = primitiveAggregates[pass];
+            final Aggregate<T>[] sample = sampleAggregates[pass];
+            for (final Aggregate<T> aggregate : primitive) {
+                beginRun(aggregate, pass + 1);
+            }
+            for (final Aggregate<T> aggregate : sample) {
+                beginRun(aggregate, pass + 1);
+            }
+            final int size = list.length();
+            if (0 == sample.length && (null == filter || null != primitiveFilter)) {
+                // Allocation free path for aggregates and filters of time and value
+                for (int index=0; index<size; index++) {
+                    final long time = list.timeOf(index);
+                    final double value = list.valueOf(index);
+                    if (null != primitiveFilter && !primitiveFilter.test(time, value)) {
+                        continue;
+                    }
+                    for (final PrimitiveAggregate<T> aggregate : primitive) {
+                        aggregate.map(time, value);
+                    }
+                }
+            } else {
+                for (int index=0; index<size; index++) {
+                    final Sample<T> value = list.get(index);
+                    if (null != filter && !filter.test(value)) {
+                        continue;
+                    }
+                    for (final PrimitiveAggregate<T> aggregate : primitive) {
+                        aggregate.map(value);
+                    }
+                    for (final Aggregate<T> aggregate : sample) {
+                        aggregate.map(value);
+                    }
+                }
+            }
+        }
+        return new Summary<>(aggregates);
+    }
+
+    private static void beginRun(@NonNull final Aggregate<?> aggregate, final int run) {
+        if (aggregate instanceof SinglePassAggregate) {
+            ((SinglePassAggregate<?>) aggregate).beginSinglePass();
+        } else {
+            aggregate.beginRun(run);
+        }
+    }
+}
@@ -6,19 +6,50 @@ package io.heraldprox.herald.sensor.analysis.sampling;
 
 import androidx.annotation.NonNull;
 
-import io.heraldprox.herald.sensor.data.ConcreteSensorLogger;
-import io.heraldprox.herald.sensor.data.SensorLogger;
 import io.heraldprox.herald.sensor.datatype.DoubleValue;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Delegates for new samples, dispatched by sample value type.
+ * <br>- Registration rebuilds immutable dispatch tables (copy on write), thus dispatch of new
+ *   samples takes no locks, performs no map lookups and allocates nothing.
+ * <br>- Each value type has a typed dispatcher holding the delegates for that type, which is
+ *   stable for the lifetime of the manager, thus callers that produce samples of a known type,
+ *   e.g. analysis providers, can resolve the dispatcher once and call it directly.
+ */
+@SuppressWarnings("unchecked")
 public class AnalysisDelegateManager {
-    private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "Analysis.AnalysisDelegateManager");
-    private final Map<Class<? extends DoubleValue>, List<AnalysisDelegate<? extends DoubleValue>>> lists = new ConcurrentHashMap<>();
+    // Dispatchers for all value types, scanned by identity of value type on dispatch
+    @NonNull
+    private volatile Dispatcher<? extends DoubleValue>[] dispatchers = (Dispatcher<? extends DoubleValue>[]) new Dispatcher<?>[0];
+    @NonNull
+    private volatile Set<Class<? extends DoubleValue>> inputTypes = Collections.emptySet();
+
+    /**
+     * Typed dispatcher of new samples to all delegates for a value type.
+     * @param <T> Value type
+     */
+    final static class Dispatcher<T extends DoubleValue> implements CallableForNewSample<T> {
+        @NonNull
+        private final Class<T> type;
+        @NonNull
+        private volatile AnalysisDelegate<T>[] delegates = (AnalysisDelegate<T>[]) new AnalysisDelegate<?>[0];
+
+        private Dispatcher(@NonNull final Class<T> type) {
+            this.type = type;
+        }
+
+        @Override
+        public void newSample(@NonNull final SampledID sampled, @NonNull final Sample<T> item) {
+            for (final AnalysisDelegate<T> delegate : delegates) {
+                delegate.newSample(sampled, item);
+            }
+        }
+    }
 
     public AnalysisDelegateManager(@NonNull final AnalysisDelegate<? extends DoubleValue> ... delegates) {
         for (final AnalysisDelegate<? extends DoubleValue> delegate : delegates) {
@@ -28,37 +59,47 @@ public class AnalysisDelegateManager {
 
     @NonNull
     public Set<Class<? extends DoubleValue>> inputTypes() {
-        return lists.keySet();
+        return inputTypes;
     }
 
-    public void add(@NonNull final AnalysisDelegate<? extends DoubleValue> delegate) {
-        final Class<? extends DoubleValue> inputType = delegate.inputType();
-        final List<AnalysisDelegate<? extends DoubleValue>> list = list(inputType);
-        list.add(delegate);
+    public synchronized <T extends DoubleValue> void add(@NonNull final AnalysisDelegate<T> delegate) {
+        final Class<T> inputType = delegate.inputType();
+        final Dispatcher<T> dispatcher = dispatcher(inputType);
+        final AnalysisDelegate<T>[] delegates = Arrays.copyOf(dispatcher.delegates, dispatcher.delegates.length + 1);
+        delegates[delegates.length - 1] = delegate;
+        dispatcher.delegates = delegates;
+        final Set<Class<? extends DoubleValue>> inputTypes = new HashSet<>(this.inputTypes);
+        inputTypes.add(inputType);
+        this.inputTypes = Collections.unmodifiableSet(inputTypes);
     }
 
+    /**
+     * Get dispatcher for value type, creating an empty dispatcher if the value type has no
+     * delegates yet. Delegates added later are included in the existing dispatcher.
+     * @param type Value type
+     * @return Dispatcher to all delegates for the value type.
+     */
     @NonNull
-    private synchronized List<AnalysisDelegate<? extends DoubleValue>> list(@NonNull final Class<? extends DoubleValue> inputType) {
-        List<AnalysisDelegate<? extends DoubleValue>> list = lists.get(inputType);
-        if (null == list) {
-            list = new ArrayList<>(1);
-            lists.put(inputType, list);
+    synchronized <T extends DoubleValue> Dispatcher<T> dispatcher(@NonNull final Class<T> type) {
+        for (final Dispatcher<? extends DoubleValue> dispatcher : dispatchers) {
+            if (dispatcher.type == type) {
+                return (Dispatcher<T>) dispatcher;
+            }
         }
-        return list;
+        final Dispatcher<T> dispatcher = new Dispatcher<>(type);
+        final Dispatcher<? extends DoubleValue>[] dispatchers = Arrays.copyOf(this.dispatchers, this.dispatchers.length + 1);
+        dispatchers[dispatchers.length - 1] = dispatcher;
+        this.dispatchers = dispatchers;
+        return dispatcher;
     }
 
     public <T extends DoubleValue> void newSample(@NonNull final SampledID sampled, @NonNull final Sample<T> sample) {
         final Class<? extends DoubleValue> inputType = sample.value().getClass();
-        final List<AnalysisDelegate<? extends DoubleValue>> list = lists.get(inputType);
-        if (null == list) {
-            return;
-        }
-        for (final AnalysisDelegate<? extends DoubleValue> delegate : list) {
-            try {
-                //noinspection unchecked
-                ((AnalysisDelegate<T>) delegate).newSample(sampled, sample);
-            } catch (Throwable e) {
-                logger.fault("newSample failed to cast delegate", e);
+        for (final Dispatcher<? extends DoubleValue> dispatcher : dispatchers) {
+            if (dispatcher.type == inputType) {
+                // Dispatcher type is the runtime type of the value, thus the cast is safe
+                ((Dispatcher<T>) dispatcher).newSample(sampled, sample);
+                return;
             }
         }
     }
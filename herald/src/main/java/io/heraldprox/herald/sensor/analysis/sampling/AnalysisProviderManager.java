@@ -5,6 +5,7 @@
 package io.heraldprox.herald.sensor.analysis.sampling;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import io.heraldprox.herald.sensor.data.ConcreteSensorLogger;
 import io.heraldprox.herald.sensor.data.SensorLogger;
@@ -12,19 +13,83 @@ import io.heraldprox.herald.sensor.datatype.Date;
 import io.heraldprox.herald.sensor.datatype.DoubleValue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Analysis providers, run in dependency order.
+ * <br>- Providers form a graph where a provider depends on all other providers that produce
+ *   its input type. Providers run in topological order of this graph, thus a chain such as
+ *   RSSI to Distance to Risk completes in a single pass regardless of registration order.
+ *   Independent providers, and providers in a cycle, run in registration order.
+ * <br>- Input and output sample lists of all providers are resolved once per sampled ID and
+ *   cached in the variant set until the lists for the sampled ID change.
+ * <br>- A provider is skipped if its input list has not changed since the provider last
+ *   produced new samples from it, unless analysis is forced.
+ */
 @SuppressWarnings("unchecked")
 public class AnalysisProviderManager {
     private final SensorLogger logger = new ConcreteSensorLogger("Analysis", "AnalysisProviderManager");
     private final Set<Class<? extends DoubleValue>> outputTypes = new HashSet<>();
     private final Map<Class<? extends DoubleValue>, List<AnalysisProvider<? extends DoubleValue, ? extends DoubleValue>>> lists = new ConcurrentHashMap<>();
     private final List<AnalysisProvider<? extends DoubleValue, ? extends DoubleValue>> providers = new ArrayList<>();
-    private final Map<Class<? extends DoubleValue>, CallableForNewSample<? extends DoubleValue>> callables = new ConcurrentHashMap<>();
+    // Providers in topological order, replaced on add()
+    @NonNull
+    private volatile AnalysisProvider<? extends DoubleValue, ? extends DoubleValue>[] ordered = (AnalysisProvider<? extends DoubleValue, ? extends DoubleValue>[]) new AnalysisProvider<?, ?>[0];
+    // Dispatchers for the output type of each provider in order, for the last delegates used
+    @Nullable
+    private volatile Dispatch dispatch = null;
+
+    /**
+     * Immutable dispatch table from providers in order to delegate dispatchers.
+     */
+    private final static class Dispatch {
+        @NonNull
+        private final AnalysisDelegateManager delegates;
+        @NonNull
+        private final AnalysisProvider<? extends DoubleValue, ? extends DoubleValue>[] ordered;
+        @NonNull
+        private final CallableForNewSample<? extends DoubleValue>[] callables;
+
+        private Dispatch(@NonNull final AnalysisDelegateManager delegates, @NonNull final AnalysisProvider<? extends DoubleValue, ? extends DoubleValue>[] ordered) {
+            this.delegates = delegates;
+            this.ordered = ordered;
+            this.callables = (CallableForNewSample<? extends DoubleValue>[]) new CallableForNewSample<?>[ordered.length];
+            for (int i=0; i<ordered.length; i++) {
+                callables[i] = delegates.dispatcher(ordered[i].outputType());
+            }
+        }
+    }
+
+    /**
+     * Resolved sample lists for running all providers in order on a sampled ID, and the input
+     * list version at the last run of each provider that produced new samples. Bindings are
+     * accessed by one analysis at a time for each sampled ID.
+     */
+    final static class Bindings {
+        @NonNull
+        private final AnalysisProvider<? extends DoubleValue, ? extends DoubleValue>[] ordered;
+        // Input and output lists are null where the input list does not exist
+        @NonNull
+        private final SampleList<? extends DoubleValue>[] inputs;
+        @NonNull
+        private final SampleList<? extends DoubleValue>[] outputs;
+        // Odd version never matches a readable list version
+        @NonNull
+        private final int[] analysedVersions;
+
+        private Bindings(@NonNull final AnalysisProvider<? extends DoubleValue, ? extends DoubleValue>[] ordered) {
+            this.ordered = ordered;
+            this.inputs = (SampleList<? extends DoubleValue>[]) new SampleList<?>[ordered.length];
+            this.outputs = (SampleList<? extends DoubleValue>[]) new SampleList<?>[ordered.length];
+            this.analysedVersions = new int[ordered.length];
+            Arrays.fill(analysedVersions, -1);
+        }
+    }
 
     public AnalysisProviderManager(@NonNull final AnalysisProvider<? extends DoubleValue, ? extends DoubleValue> ... providers) {
         for (final AnalysisProvider<? extends DoubleValue, ? extends DoubleValue> provider : providers) {
@@ -48,7 +113,52 @@ public class AnalysisProviderManager {
         final List<AnalysisProvider<? extends DoubleValue, ? extends DoubleValue>> list = list(inputType);
         list.add(provider);
         outputTypes.add(outputType);
-        providers.add(provider);
+        synchronized (this) {
+            providers.add(provider);
+            ordered = order(providers);
+        }
+    }
+
+    /**
+     * Providers in topological order of dependencies, where each provider runs after all other
+     * providers that produce its input type. The earliest registered provider is selected
+     * among providers that are ready, thus independent providers retain registration order.
+     * @param providers Providers in registration order
+     * @return Providers in dependency order.
+     */
+    @NonNull
+    private AnalysisProvider<? extends DoubleValue, ? extends DoubleValue>[] order(@NonNull final List<AnalysisProvider<? extends DoubleValue, ? extends DoubleValue>> providers) {
+        final int n = providers.size();
+        final AnalysisProvider<? extends DoubleValue, ? extends DoubleValue>[] ordered = (AnalysisProvider<? extends DoubleValue, ? extends DoubleValue>[]) new AnalysisProvider<?, ?>[n];
+        final boolean[] done = new boolean[n];
+        for (int k=0; k<n; k++) {
+            int next = -1;
+            for (int i=0; i<n && next < 0; i++) {
+                if (done[i]) {
+                    continue;
+                }
+                boolean ready = true;
+                for (int j=0; j<n && ready; j++) {
+                    if (j != i && !done[j] && providers.get(j).outputType() == providers.get(i).inputType()) {
+                        ready = false;
+                    }
+                }
+                if (ready) {
+                    next = i;
+                }
+            }
+            if (next < 0) {
+                // Cycle, continue with earliest registered pending provider
+                next = 0;
+                while (done[next]) {
+                    next++;
+                }
+                logger.fault("order, cyclic dependency between providers (provider={},inputType={})", providers.get(next).getClass().getSimpleName(), providers.get(next).inputType().getSimpleName());
+            }
+            done[next] = true;
+            ordered[k] = providers.get(next);
+        }
+        return ordered;
     }
 
     @NonNull
@@ -61,31 +171,130 @@ public class AnalysisProviderManager {
         return list;
     }
 
-    @NonNull
-    private synchronized <U extends DoubleValue> CallableForNewSample<U> callable(@NonNull final Class<U> type, @NonNull final AnalysisDelegateManager delegates) {
-        CallableForNewSample<? extends DoubleValue> callable = callables.get(type);
-        if (null == callable) {
-            callable = new CallableForNewSample<U>() {
-                @Override
-                public void newSample(@NonNull final SampledID sampled, @NonNull final Sample<U> item) {
-                    delegates.newSample(sampled, item);
-                }
-            };
-            callables.put(type, callable);
-        }
-        return (CallableForNewSample<U>) callable;
+    @SuppressWarnings("UnusedReturnValue")
+    public boolean analyse(@NonNull final Date timeNow, @NonNull final SampledID sampled, @NonNull final VariantSet variantSet, @NonNull final AnalysisDelegateManager delegates) {
+        return analyse(timeNow, sampled, variantSet, delegates, null);
+    }
+
+    /**
+     * Analyse samples for sampled ID, only running providers with changed input.
+     * @param timeNow Analysis time
+     * @param sampled Sampled ID
+     * @param variantSet Input and output sample lists
+     * @param delegates Receiver of new samples
+     * @param changed Input types with new samples, or null to run all providers. Providers run
+     *                in dependency order, and the output type of a provider that produced new
+     *                samples is considered changed for subsequent providers.
+     * @return True if any provider produced new samples.
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    public boolean analyse(@NonNull final Date timeNow, @NonNull final SampledID sampled, @NonNull final VariantSet variantSet, @NonNull final AnalysisDelegateManager delegates, @Nullable final Set<Class<? extends DoubleValue>> changed) {
+        return analyse(timeNow, sampled, variantSet, delegates, null, changed, false);
     }
 
+    /**
+     * Analyse samples for sampled ID, with all new samples reported to the given callable instead
+     * of the delegates, e.g. for buffering output during concurrent analysis.
+     * @param timeNow Analysis time
+     * @param sampled Sampled ID
+     * @param variantSet Input and output sample lists
+     * @param callable Receiver of new samples of all output types
+     * @param changed Input types with new samples, or null to run all providers.
+     * @return True if any provider produced new samples.
+     */
     @SuppressWarnings("UnusedReturnValue")
-    public <T extends DoubleValue, U extends DoubleValue> boolean analyse(@NonNull final Date timeNow, @NonNull final SampledID sampled, @NonNull final VariantSet variantSet, @NonNull final AnalysisDelegateManager delegates) {
+    public boolean analyse(@NonNull final Date timeNow, @NonNull final SampledID sampled, @NonNull final VariantSet variantSet, @NonNull final CallableForNewSample<? extends DoubleValue> callable, @Nullable final Set<Class<? extends DoubleValue>> changed) {
+        return analyse(timeNow, sampled, variantSet, null, callable, changed, false);
+    }
+
+    /**
+     * Analyse samples for sampled ID.
+     * @param force Run providers even if their input list has not changed since they last
+     *              produced new samples, e.g. for periodic re-evaluation of providers that
+     *              depend on the clock.
+     */
+    <T extends DoubleValue, U extends DoubleValue> boolean analyse(@NonNull final Date timeNow, @NonNull final SampledID sampled, @NonNull final VariantSet variantSet, @Nullable final AnalysisDelegateManager delegates, @Nullable final CallableForNewSample<? extends DoubleValue> callable, @Nullable final Set<Class<? extends DoubleValue>> changed, final boolean force) {
+        // Copy of changed types, extended with output types of providers with new samples
+        final Set<Class<? extends DoubleValue>> changedTypes = (null == changed ? null : new HashSet<>(changed));
+        final Bindings bindings = bindings(sampled, variantSet);
+        final CallableForNewSample<? extends DoubleValue>[] callables = (null == callable ? dispatch(delegates, bindings.ordered).callables : null);
         boolean update = false;
-        for (final AnalysisProvider<? extends DoubleValue, ? extends DoubleValue> provider : providers) {
-            final SampleList<T> input = (SampleList<T>) variantSet.listManager(provider.inputType(), sampled);
-            final SampleList<U> output = (SampleList<U>) variantSet.listManager(provider.outputType(), sampled);
-            final AnalysisProvider<T,U> typedProvider = (AnalysisProvider<T,U>) provider;
-            final boolean hasUpdate = typedProvider.analyse(timeNow, sampled, input, output, callable(typedProvider.outputType(), delegates));
+        for (int i=0; i<bindings.ordered.length; i++) {
+            final AnalysisProvider<T,U> provider = (AnalysisProvider<T,U>) bindings.ordered[i];
+            if (null != changedTypes && !changedTypes.contains(provider.inputType())) {
+                continue;
+            }
+            final SampleList<T> input = (SampleList<T>) bindings.inputs[i];
+            if (null == input) {
+                continue;
+            }
+            final int version = input.beginRead();
+            if (!force && version == bindings.analysedVersions[i]) {
+                continue;
+            }
+            final SampleList<U> output = (SampleList<U>) bindings.outputs[i];
+            final CallableForNewSample<U> typedCallable = (CallableForNewSample<U>) (null == callable ? callables[i] : callable);
+            final boolean hasUpdate = provider.analyse(timeNow, sampled, input, output, typedCallable);
+            if (hasUpdate) {
+                bindings.analysedVersions[i] = version;
+                if (null != changedTypes) {
+                    changedTypes.add(provider.outputType());
+                }
+            }
             update = update || hasUpdate;
         }
         return update;
     }
+
+    /**
+     * Get dispatch table for delegates and providers, rebuilding the table if either has changed.
+     * Concurrent rebuilds produce equivalent tables, thus no lock is required.
+     * @param delegates Receiver of new samples
+     * @param ordered Providers in order
+     * @return Dispatch table.
+     */
+    @NonNull
+    private Dispatch dispatch(@NonNull final AnalysisDelegateManager delegates, @NonNull final AnalysisProvider<? extends DoubleValue, ? extends DoubleValue>[] ordered) {
+        Dispatch dispatch = this.dispatch;
+        if (null == dispatch || dispatch.delegates != delegates || dispatch.ordered != ordered) {
+            dispatch = new Dispatch(delegates, ordered);
+            this.dispatch = dispatch;
+        }
+        return dispatch;
+    }
+
+    /**
+     * Get cached bindings for sampled ID, or resolve the input and output lists of all
+     * providers in order. Missing input lists are not created, as the sampled ID may have been
+     * evicted concurrently, and output lists are only created for providers with input.
+     * @param sampled Sampled ID
+     * @param variantSet Input and output sample lists
+     * @return Bindings for current providers and lists.
+     */
+    @NonNull
+    private Bindings bindings(@NonNull final SampledID sampled, @NonNull final VariantSet variantSet) {
+        final AnalysisProvider<? extends DoubleValue, ? extends DoubleValue>[] ordered = this.ordered;
+        final Bindings cached = variantSet.bindings(sampled);
+        if (null != cached && cached.ordered == ordered) {
+            return cached;
+        }
+        final Bindings bindings = new Bindings(ordered);
+        for (int i=0; i<ordered.length; i++) {
+            bindings.inputs[i] = variantSet.listManager(ordered[i].inputType()).existingList(sampled);
+            if (null != bindings.inputs[i]) {
+                bindings.outputs[i] = variantSet.listManager(ordered[i].outputType(), sampled);
+            }
+        }
+        // Lists may change concurrently, e.g. on eviction, which invalidates cached bindings.
+        // Bindings are only retained if the lists are still current after caching.
+        variantSet.bindings(sampled, bindings);
+        for (int i=0; i<ordered.length; i++) {
+            if (bindings.inputs[i] != variantSet.listManager(ordered[i].inputType()).existingList(sampled) ||
+                    (null != bindings.outputs[i] && bindings.outputs[i] != variantSet.listManager(ordered[i].outputType()).existingList(sampled))) {
+                variantSet.unbind(sampled, bindings);
+                break;
+            }
+        }
+        return bindings;
+    }
 }
@@ -5,12 +5,40 @@
 package io.heraldprox.herald.sensor.analysis.sampling;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import io.heraldprox.herald.sensor.data.ConcreteSensorLogger;
 import io.heraldprox.herald.sensor.data.SensorLogger;
 import io.heraldprox.herald.sensor.datatype.Date;
 import io.heraldprox.herald.sensor.datatype.DoubleValue;
+import io.heraldprox.herald.sensor.datatype.TimeInterval;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs all analysis providers for every sampled ID, in ascending order of sampled ID.
+ * <br>- Serial mode runs all analysis on the calling thread.
+ * <br>- Parallel mode analyses sampled IDs concurrently on a fork join pool, where all providers
+ *   for a sampled ID run in sequence within a single task, thus each task only accesses the
+ *   sample lists of its own sampled ID. Providers must be safe for concurrent use across
+ *   different sampled IDs. New samples are buffered per sampled ID and reported to delegates on
+ *   the calling thread after all tasks have completed, in the same order as serial mode.
+ * <br>- Incremental mode only runs providers for (sampled ID, input type) pairs that received
+ *   samples via newSample() since the last run, thus run time scales with the ingest rate
+ *   rather than the number of sampled IDs. Providers that depend on the clock, e.g. for
+ *   interval guards, can be re-evaluated periodically for sampled IDs without new samples.
+ * <br>- Each run applies the eviction policy of the variant set before analysis, thus idle
+ *   sampled IDs are not analysed.
+ */
+@SuppressWarnings("unchecked")
 public class AnalysisRunner {
     private final SensorLogger logger = new ConcreteSensorLogger("Analysis", "AnalysisRunner");
     @NonNull
@@ -19,11 +47,30 @@ public class AnalysisRunner {
     private final AnalysisDelegateManager analysisDelegateManager;
     @NonNull
     private final VariantSet variantSet;
+    @Nullable
+    private final ForkJoinPool pool;
+    private boolean incremental = false;
+    @Nullable
+    private TimeInterval reevaluationInterval = null;
+    // Time of last analysis of all providers for each sampled ID, for re-evaluation
+    private final Map<SampledID, Long> lastEvaluated = new HashMap<>();
 
     public AnalysisRunner(@NonNull final AnalysisProviderManager analysisProviderManager, @NonNull final AnalysisDelegateManager analysisDelegateManager, final int defaultListSize) {
+        this(analysisProviderManager, analysisDelegateManager, defaultListSize, null);
+    }
+
+    /**
+     * Analysis runner with optional parallel mode.
+     * @param analysisProviderManager Analysis providers
+     * @param analysisDelegateManager Delegates for new samples
+     * @param defaultListSize Default sample list capacity
+     * @param pool Fork join pool for analysing sampled IDs in parallel, or null for serial mode.
+     */
+    public AnalysisRunner(@NonNull final AnalysisProviderManager analysisProviderManager, @NonNull final AnalysisDelegateManager analysisDelegateManager, final int defaultListSize, @Nullable final ForkJoinPool pool) {
         this.analysisDelegateManager = analysisDelegateManager;
         this.analysisProviderManager = analysisProviderManager;
         this.variantSet = new VariantSet(defaultListSize);
+        this.pool = pool;
     }
 
     @NonNull
@@ -39,9 +86,138 @@ public class AnalysisRunner {
         run(new Date());
     }
 
-    public void run(@NonNull final Date timeNow) {
-        for (final SampledID sampled : variantSet.sampledIDs()) {
-            analysisProviderManager.analyse(timeNow, sampled, variantSet, analysisDelegateManager);
+    /**
+     * Set incremental mode, where run() only analyses sampled IDs with new samples.
+     * @param incremental Only run providers for input types with new samples since the last run.
+     * @param reevaluationInterval Run all providers for sampled IDs that have not been fully
+     *                             analysed within this interval, regardless of new samples, or
+     *                             null to only analyse on new samples.
+     */
+    public synchronized void incremental(final boolean incremental, @Nullable final TimeInterval reevaluationInterval) {
+        this.incremental = incremental;
+        this.reevaluationInterval = reevaluationInterval;
+        lastEvaluated.clear();
+        variantSet.trackDirty(incremental);
+    }
+
+    public synchronized void run(@NonNull final Date timeNow) {
+        variantSet.evict(timeNow);
+        final SampledID[] sampledIDs;
+        final Set<Class<? extends DoubleValue>>[] changed;
+        if (incremental) {
+            final TreeMap<SampledID, Set<Class<? extends DoubleValue>>> analyse = new TreeMap<>(variantSet.drainDirty());
+            reevaluate(timeNow, analyse);
+            sampledIDs = analyse.keySet().toArray(new SampledID[0]);
+            changed = analyse.values().toArray((Set<Class<? extends DoubleValue>>[]) new Set<?>[0]);
+        } else {
+            sampledIDs = variantSet.sortedSampledIDs();
+            changed = (Set<Class<? extends DoubleValue>>[]) new Set<?>[sampledIDs.length];
+        }
+        if (null == pool || sampledIDs.length < 2) {
+            for (int i=0; i<sampledIDs.length; i++) {
+                // Re-evaluation in incremental mode runs providers regardless of input changes
+                analysisProviderManager.analyse(timeNow, sampledIDs[i], variantSet, analysisDelegateManager, null, changed[i], incremental && null == changed[i]);
+            }
+            return;
+        }
+        final SampleBuffer[] buffers = new SampleBuffer[sampledIDs.length];
+        final int threshold = Math.max(1, sampledIDs.length / (pool.getParallelism() * 4));
+        pool.invoke(new AnalyseTask(timeNow, sampledIDs, changed, incremental, buffers, 0, sampledIDs.length, threshold));
+        for (final SampleBuffer buffer : buffers) {
+            if (null != buffer) {
+                buffer.deliver(analysisDelegateManager);
+            }
+        }
+    }
+
+    /**
+     * Add sampled IDs that are due for re-evaluation of all providers, and record evaluation
+     * time for sampled IDs that have never been evaluated.
+     * @param timeNow Analysis time
+     * @param analyse Changed input types for each sampled ID, where null means all providers.
+     */
+    private void reevaluate(@NonNull final Date timeNow, @NonNull final Map<SampledID, Set<Class<? extends DoubleValue>>> analyse) {
+        if (null == reevaluationInterval) {
+            return;
+        }
+        final long now = timeNow.secondsSinceUnixEpoch();
+        final Set<SampledID> current = variantSet.sampledIDs();
+        for (final Iterator<Map.Entry<SampledID, Long>> iterator = lastEvaluated.entrySet().iterator(); iterator.hasNext();) {
+            final Map.Entry<SampledID, Long> entry = iterator.next();
+            if (!current.contains(entry.getKey())) {
+                iterator.remove();
+            } else if (now - entry.getValue() >= reevaluationInterval.value) {
+                analyse.put(entry.getKey(), null);
+                entry.setValue(now);
+            }
+        }
+        for (final SampledID sampledID : analyse.keySet()) {
+            if (!lastEvaluated.containsKey(sampledID)) {
+                lastEvaluated.put(sampledID, now);
+            }
+        }
+    }
+
+    /**
+     * Analyse a range of sampled IDs, splitting the range until it is below the threshold.
+     */
+    private final class AnalyseTask extends RecursiveAction {
+        @NonNull
+        private final Date timeNow;
+        @NonNull
+        private final SampledID[] sampledIDs;
+        @NonNull
+        private final Set<Class<? extends DoubleValue>>[] changed;
+        private final boolean incremental;
+        @NonNull
+        private final SampleBuffer[] buffers;
+        private final int from, to, threshold;
+
+        private AnalyseTask(@NonNull final Date timeNow, @NonNull final SampledID[] sampledIDs, @NonNull final Set<Class<? extends DoubleValue>>[] changed, final boolean incremental, @NonNull final SampleBuffer[] buffers, final int from, final int to, final int threshold) {
+            this.timeNow = timeNow;
+            this.sampledIDs = sampledIDs;
+            this.changed = changed;
+            this.incremental = incremental;
+            this.buffers = buffers;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= threshold) {
+                for (int i=from; i<to; i++) {
+                    final SampleBuffer buffer = new SampleBuffer();
+                    analysisProviderManager.analyse(timeNow, sampledIDs[i], variantSet, null, buffer, changed[i], incremental && null == changed[i]);
+                    // Each task writes to its own slots, published to the caller by invoke()
+                    buffers[i] = buffer;
+                }
+                return;
+            }
+            final int middle = (from + to) >>> 1;
+            invokeAll(new AnalyseTask(timeNow, sampledIDs, changed, incremental, buffers, from, middle, threshold),
+                    new AnalyseTask(timeNow, sampledIDs, changed, incremental, buffers, middle, to, threshold));
+        }
+    }
+
+    /**
+     * New samples produced by analysis of a sampled ID, in order of production.
+     */
+    private final static class SampleBuffer implements CallableForNewSample<DoubleValue> {
+        private final List<SampledID> sampledIDs = new ArrayList<>(1);
+        private final List<Sample<DoubleValue>> samples = new ArrayList<>(1);
+
+        @Override
+        public void newSample(@NonNull final SampledID sampled, @NonNull final Sample<DoubleValue> item) {
+            sampledIDs.add(sampled);
+            samples.add(item);
+        }
+
+        private void deliver(@NonNull final AnalysisDelegateManager delegates) {
+            for (int i=0; i<samples.size(); i++) {
+                delegates.newSample(sampledIDs.get(i), samples.get(i));
+            }
         }
     }
 }
@@ -0,0 +1,17 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis.sampling;
+
+import io.heraldprox.herald.sensor.datatype.DoubleValue;
+
+/**
+ * Aggregate where map() accumulates state that is retained by reset(), e.g. a long term
+ * histogram of all values observed, thus every sample must be mapped exactly once per
+ * evaluation. SampleList.aggregate() evaluates such aggregates in a single pass over a
+ * consistent copy of the list, instead of evaluating the list in place and repeating the
+ * evaluation if the list is modified concurrently.
+ */
+public interface CumulativeAggregate<T extends DoubleValue> extends Aggregate<T> {
+}
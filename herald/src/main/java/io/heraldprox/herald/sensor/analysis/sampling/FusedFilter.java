@@ -0,0 +1,79 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis.sampling;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Conjunction of a chain of filters as a single predicate, such that nested filter() calls
+ * on a sample list are evaluated in one scan, rather than through a chain of iterators.
+ */
+@SuppressWarnings("unchecked")
+class FusedFilter<T> implements Filter<T> {
+    @NonNull
+    final Filter<T>[] filters;
+
+    private FusedFilter(@NonNull final Filter<T>[] filters) {
+        this.filters = filters;
+    }
+
+    /**
+     * Fuse filter with existing filter.
+     * @param filter Existing filter, or null for none.
+     * @param next Filter to apply after existing filter.
+     * @return Filter accepting samples that are accepted by both filters, which implements
+     * PrimitiveFilter if both filters implement PrimitiveFilter.
+     */
+    @NonNull
+    static <T> Filter<T> fuse(@Nullable final Filter<T> filter, @NonNull final Filter<T> next) {
+        if (null == filter) {
+            return next;
+        }
+        final Filter<T>[] filters;
+        if (filter instanceof FusedFilter) {
+            final Filter<T>[] fused = ((FusedFilter<T>) filter).filters;
+            filters = Arrays.copyOf(fused, fused.length + 1);
+        } else {
+            filters = (Filter<T>[]) new Filter<?>[]{filter, null};
+        }
+        filters[filters.length - 1] = next;
+        for (final Filter<T> each : filters) {
+            if (!(each instanceof PrimitiveFilter)) {
+                return new FusedFilter<>(filters);
+            }
+        }
+        return new FusedPrimitiveFilter<>(filters);
+    }
+
+    @Override
+    public boolean test(@NonNull final Sample<T> item) {
+        for (final Filter<T> filter : filters) {
+            if (!filter.test(item)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private final static class FusedPrimitiveFilter<T> extends FusedFilter<T> implements PrimitiveFilter<T> {
+
+        private FusedPrimitiveFilter(@NonNull final Filter<T>[] filters) {
+            super(filters);
+        }
+
+        @Override
+        public boolean test(final long time, final double value) {
+            for (final Filter<T> filter : filters) {
+                if (!((PrimitiveFilter<T>) filter).test(time, value)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
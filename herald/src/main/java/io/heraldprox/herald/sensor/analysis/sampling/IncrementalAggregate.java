@@ -0,0 +1,35 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis.sampling;
+
+import io.heraldprox.herald.sensor.datatype.DoubleValue;
+
+/**
+ * Aggregate that is maintained incrementally as samples enter and leave a sample list window,
+ * thus reduce() is available at any time without rescanning the window.
+ * <br>- Register with SampleList.track(), which resets the aggregate and replays the current window.
+ * <br>- onPush() is called for every new sample, and onEvict() is called for every sample that
+ *   leaves the window, i.e. overwritten when the list is full, or removed by clearBeforeDate().
+ *   Samples are always evicted in the order they were pushed.
+ * <br>- reset() is called when the list is cleared.
+ * <br>- The incremental state is separate from the map() state, but an aggregate that is tracked
+ *   by a list should not also be passed to aggregate() as reset() clears both.
+ */
+public interface IncrementalAggregate<T extends DoubleValue> extends Aggregate<T> {
+
+    /**
+     * Sample has entered the window.
+     * @param time Milliseconds since unix epoch, as Date.getTime().
+     * @param value Sample value as double.
+     */
+    void onPush(final long time, final double value);
+
+    /**
+     * Sample has left the window.
+     * @param time Milliseconds since unix epoch, as Date.getTime().
+     * @param value Sample value as double.
+     */
+    void onEvict(final long time, final double value);
+}
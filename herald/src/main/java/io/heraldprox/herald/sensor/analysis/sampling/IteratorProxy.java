@@ -11,11 +11,26 @@ import io.heraldprox.herald.sensor.datatype.DoubleValue;
 
 import java.util.Iterator;
 
+/**
+ * Filtered iterator over samples.
+ * <br>- Filters on a sample list are applied to the list directly, where time range filters
+ *   narrow the list by binary search, and all other filters in a chain of filter() calls are
+ *   fused into a single predicate. Aggregation evaluates the predicate while scanning the list
+ *   in each pass, thus filtered aggregates are evaluated without intermediate collections.
+ * <br>- Filters on an arbitrary iterator, or on an iterator that has been started, are applied
+ *   by a chain of iterators.
+ */
 public class IteratorProxy<T extends DoubleValue> implements Iterator<Sample<T>>, Filterable<T> {
-    @NonNull
+    // Source iterator, where samples are not in a sample list
+    @Nullable
     private final Iterator<Sample<T>> source;
-    @NonNull
+    @Nullable
     private final Filter<T> filter;
+    // Sample list that is filtered by the fused filter, if available
+    @Nullable
+    private final SampleList<T> list;
+    private int index = 0;
+    private boolean started = false;
     @Nullable
     private Sample<T> nextItem = null;
     private boolean nextItemSet = false;
@@ -23,16 +38,30 @@ public class IteratorProxy<T extends DoubleValue> implements Iterator<Sample<T>>
     public IteratorProxy(@NonNull final Iterator<Sample<T>> source, @NonNull final Filter<T> filter) {
         this.source = source;
         this.filter = filter;
+        this.list = null;
+    }
+
+    /**
+     * Iterator over sample list, accepting samples in the list that are accepted by the filter.
+     * @param list Sample list, or time range view of a sample list.
+     * @param filter Filter, or null to accept all samples in the list.
+     */
+    IteratorProxy(@NonNull final SampleList<T> list, @Nullable final Filter<T> filter) {
+        this.source = null;
+        this.filter = filter;
+        this.list = list;
     }
 
     @Override
     public boolean hasNext() {
+        started = true;
         return nextItemSet || moveToNextItem();
     }
 
     @Nullable
     @Override
     public Sample<T> next() {
+        started = true;
         if (!nextItemSet && !moveToNextItem()) {
             return null;
         }
@@ -40,26 +69,54 @@ public class IteratorProxy<T extends DoubleValue> implements Iterator<Sample<T>>
         return nextItem;
     }
 
+    @SuppressWarnings("unchecked")
     @NonNull
     @Override
     public IteratorProxy<T> filter(@NonNull final Filter<T> filter) {
-        return new IteratorProxy<>(this, filter);
+        if (null == list || started) {
+            return new IteratorProxy<>(this, filter);
+        }
+        if (filter instanceof TimeRangeFilter) {
+            // Fast path for time range filters by binary search
+            final TimeRangeFilter<T> timeRangeFilter = (TimeRangeFilter<T>) filter;
+            return new IteratorProxy<>(list.timeRange(timeRangeFilter.fromTime(), timeRangeFilter.toTime()), this.filter);
+        }
+        return new IteratorProxy<>(list, FusedFilter.fuse(this.filter, filter));
     }
 
     @NonNull
     public Summary<T> aggregate(@NonNull final Aggregate<T> ... aggregates) {
-        return toView().aggregate(aggregates);
+        if (null == list || started) {
+            return toView().aggregate(aggregates);
+        }
+        return list.aggregate(filter, aggregates);
     }
 
     @NonNull
     public SampleList<T> toView() {
+        if (null != list && null == filter && !started) {
+            return list;
+        }
         return new SampleList<>(this);
     }
 
     private boolean moveToNextItem() {
-        while (source.hasNext()) {
+        if (null != list) {
+            // Scan list directly, rather than through the list iterator
+            final int size = list.size();
+            while (index < size) {
+                final Sample<T> item = list.get(index++);
+                if (null != item && (null == filter || filter.test(item))) {
+                    nextItem = item;
+                    nextItemSet = true;
+                    return true;
+                }
+            }
+            return false;
+        }
+        while (null != source && source.hasNext()) {
             final Sample<T> item = source.next();
-            if (filter.test(item)) {
+            if (null == filter || filter.test(item)) {
                 nextItem = item;
                 nextItemSet = true;
                 return true;
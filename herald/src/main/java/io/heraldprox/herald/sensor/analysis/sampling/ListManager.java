@@ -5,50 +5,178 @@
 package io.heraldprox.herald.sensor.analysis.sampling;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import io.heraldprox.herald.sensor.datatype.DoubleValue;
 
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+/**
+ * Sample lists by sampled ID. Lookup and push are lock free, and list creation and removal are
+ * serialised by lock stripes, such that concurrent requests for a new sampled ID create exactly
+ * one list, while requests for different sampled IDs rarely contend.
+ */
 public class ListManager<T extends DoubleValue> {
+    private final static int stripes = 16;
     private final int listSize;
-    private final Map<SampledID, SampleList<T>> map = new ConcurrentHashMap<>();
+    @Nullable
+    private final Class<T> primitiveValueType;
+    private final ConcurrentMap<SampledID, SampleList<T>> map = new ConcurrentHashMap<>();
+    @NonNull
+    private final Object[] locks = new Object[stripes];
+    // Listener and detached flags for each stripe are guarded by the stripe lock
+    @Nullable
+    private final Listener listener;
+    @NonNull
+    private final boolean[] detached = new boolean[stripes];
+
+    /**
+     * Receiver of list membership changes, for maintaining an index of sampled IDs across list
+     * managers without rebuilding it on every query.
+     */
+    interface Listener {
+        void listAdded(@NonNull final SampledID sampledID);
+
+        void listRemoved(@NonNull final SampledID sampledID);
+    }
 
     public ListManager(final int listSize) {
+        this(listSize, null);
+    }
+
+    /**
+     * List manager for sample lists of given size.
+     * @param listSize Sample list capacity
+     * @param primitiveValueType Value type for PrimitiveSampleList storage, or null for SampleList.
+     */
+    public ListManager(final int listSize, @Nullable final Class<T> primitiveValueType) {
+        this(listSize, primitiveValueType, null);
+    }
+
+    ListManager(final int listSize, @Nullable final Class<T> primitiveValueType, @Nullable final Listener listener) {
         this.listSize = listSize;
+        this.primitiveValueType = primitiveValueType;
+        this.listener = listener;
+        for (int i=0; i<stripes; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    private static int stripe(@NonNull final SampledID sampledID) {
+        final int hash = sampledID.hashCode();
+        return (hash ^ (hash >>> 16)) & (stripes - 1);
     }
 
     @NonNull
-    public synchronized SampleList<T> list(final SampledID listFor) {
-        SampleList<T> list = map.get(listFor);
-        if (null == list) {
-            list = new SampleList<>(listSize);
-            map.put(listFor, list);
+    public SampleList<T> list(@NonNull final SampledID listFor) {
+        final SampleList<T> existing = map.get(listFor);
+        if (null != existing) {
+            return existing;
         }
-        return list;
+        final int stripe = stripe(listFor);
+        synchronized (locks[stripe]) {
+            SampleList<T> list = map.get(listFor);
+            if (null == list) {
+                list = (null == primitiveValueType ? new SampleList<T>(listSize) : new PrimitiveSampleList<>(listSize, primitiveValueType));
+                map.put(listFor, list);
+                if (null != listener && !detached[stripe]) {
+                    listener.listAdded(listFor);
+                }
+            }
+            return list;
+        }
+    }
+
+    /**
+     * Get existing list for sampled ID, without creating a new list.
+     * @param listFor Sampled ID
+     * @return Sample list, or null if the list does not exist.
+     */
+    @Nullable
+    public SampleList<T> existingList(@NonNull final SampledID listFor) {
+        return map.get(listFor);
     }
 
     @NonNull
-    public synchronized Set<SampledID> sampledIDs() {
+    public Set<SampledID> sampledIDs() {
         return map.keySet();
     }
 
-    public synchronized void remove(@NonNull final SampledID listFor) {
-        map.remove(listFor);
+    public void remove(@NonNull final SampledID listFor) {
+        final int stripe = stripe(listFor);
+        synchronized (locks[stripe]) {
+            if (null != map.remove(listFor) && null != listener && !detached[stripe]) {
+                listener.listRemoved(listFor);
+            }
+        }
+    }
 
+    /**
+     * Remove list for sampled ID, only if it is the given list.
+     * @param listFor Sampled ID
+     * @param list Expected list
+     * @return True if list was removed.
+     */
+    boolean remove(@NonNull final SampledID listFor, @NonNull final SampleList<?> list) {
+        final int stripe = stripe(listFor);
+        synchronized (locks[stripe]) {
+            if (!map.remove(listFor, list)) {
+                return false;
+            }
+            if (null != listener && !detached[stripe]) {
+                listener.listRemoved(listFor);
+            }
+            return true;
+        }
     }
 
-    public synchronized int size() {
+    public int size() {
         return map.size();
     }
 
-    public synchronized void clear() {
-        map.clear();
+    public void clear() {
+        for (final SampledID sampledID : map.keySet()) {
+            remove(sampledID);
+        }
+    }
+
+    /**
+     * Stop notifying listener of membership changes, after reporting removal of all lists.
+     */
+    void detach() {
+        if (null == listener) {
+            return;
+        }
+        for (int stripe=0; stripe<stripes; stripe++) {
+            synchronized (locks[stripe]) {
+                if (detached[stripe]) {
+                    continue;
+                }
+                for (final SampledID sampledID : map.keySet()) {
+                    if (stripe(sampledID) == stripe) {
+                        listener.listRemoved(sampledID);
+                    }
+                }
+                detached[stripe] = true;
+            }
+        }
     }
 
-    public synchronized void push(@NonNull final SampledID sampledID, @NonNull final Sample<T> sample) {
-        list(sampledID).push(sample);
+    /**
+     * Push sample to list for sampled ID, creating the list if required. Samples for the same
+     * sampled ID may be pushed concurrently, as sample lists serialise writers. A sample pushed
+     * to a list that was removed concurrently is pushed again to a new list, such that removal
+     * of idle lists never drops a new sample.
+     * @param sampledID Sampled ID
+     * @param sample New sample
+     */
+    public void push(@NonNull final SampledID sampledID, @NonNull final Sample<T> sample) {
+        final SampleList<T> list = list(sampledID);
+        list.push(sample);
+        if (map.get(sampledID) != list) {
+            list(sampledID).push(sample);
+        }
     }
 }
@@ -0,0 +1,25 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis.sampling;
+
+import io.heraldprox.herald.sensor.datatype.DoubleValue;
+
+/**
+ * Aggregate that only requires sample time and value. SampleList.aggregate() uses the
+ * allocation free map(time, value) path when all aggregates implement this interface.
+ * <br>- SampleList.aggregate() evaluates primitive aggregates in place and may call reset()
+ *   and evaluate again if the list is modified concurrently, thus map() must only affect state
+ *   that is restored by reset(). Aggregates that accumulate state beyond reset() must also
+ *   implement CumulativeAggregate.
+ */
+public interface PrimitiveAggregate<T extends DoubleValue> extends Aggregate<T> {
+
+    /**
+     * Map sample, equivalent to map(Sample) for a sample with the same time and value.
+     * @param time Milliseconds since unix epoch, as Date.getTime().
+     * @param value Sample value as double.
+     */
+    void map(final long time, final double value);
+}
@@ -0,0 +1,20 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis.sampling;
+
+/**
+ * Filter that only requires sample time and value. Filtered aggregation uses the allocation
+ * free test(time, value) path when all filters in the chain implement this interface.
+ */
+public interface PrimitiveFilter<T> extends Filter<T> {
+
+    /**
+     * Test sample, equivalent to test(Sample) for a sample with the same time and value.
+     * @param time Milliseconds since unix epoch, as Date.getTime().
+     * @param value Sample value as double.
+     * @return True if sample is accepted.
+     */
+    boolean test(final long time, final double value);
+}
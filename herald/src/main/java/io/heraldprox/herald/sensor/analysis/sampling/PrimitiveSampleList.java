@@ -0,0 +1,184 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis.sampling;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import io.heraldprox.herald.sensor.datatype.Date;
+import io.heraldprox.herald.sensor.datatype.Distance;
+import io.heraldprox.herald.sensor.datatype.DoubleValue;
+import io.heraldprox.herald.sensor.datatype.RSSI;
+
+/**
+ * Sample list backed by parallel primitive arrays of sample times and values, instead of Sample,
+ * Date and value objects for every sample. Sample and value objects are only materialised on
+ * demand, e.g. by get() and iterator(), while forEach() and aggregate() with PrimitiveAggregate
+ * are allocation free.
+ * <br>- Only suitable for value types that are fully described by doubleValue() and can be
+ *   constructed from a double value by a ValueFactory, e.g. RSSI and Distance.
+ */
+public class PrimitiveSampleList<T extends DoubleValue> extends SampleList<T> {
+    @NonNull
+    private final long[] times;
+    @NonNull
+    private final double[] values;
+    @NonNull
+    private final ValueFactory<T> valueFactory;
+
+    /**
+     * Factory for constructing value objects from primitive values on demand.
+     * @param <T> Value type
+     */
+    public interface ValueFactory<T extends DoubleValue> {
+        @NonNull
+        T value(final double value);
+    }
+
+    @NonNull
+    public final static ValueFactory<RSSI> rssi = new ValueFactory<RSSI>() {
+        @NonNull
+        @Override
+        public RSSI value(final double value) {
+            return new RSSI(value);
+        }
+    };
+
+    @NonNull
+    public final static ValueFactory<Distance> distance = new ValueFactory<Distance>() {
+        @NonNull
+        @Override
+        public Distance value(final double value) {
+            return new Distance(value);
+        }
+    };
+
+    /**
+     * Primitive sample list.
+     * @param size Capacity
+     * @param valueFactory Factory for constructing value objects from primitive values.
+     */
+    public PrimitiveSampleList(final int size, @NonNull final ValueFactory<T> valueFactory) {
+        super(size, false);
+        this.times = new long[size];
+        this.values = new double[size];
+        this.valueFactory = valueFactory;
+    }
+
+    /**
+     * Primitive sample list for supported value type.
+     * @param size Capacity
+     * @param valueType Value type, see supports().
+     * @throws IllegalArgumentException if value type is not supported.
+     */
+    public PrimitiveSampleList(final int size, @NonNull final Class<T> valueType) {
+        this(size, checkedValueFactory(valueType));
+    }
+
+    /**
+     * Test if value type can be held in a primitive sample list without a value factory.
+     * Subclasses of supported types are not supported, as they may hold additional state.
+     * @param valueType Value type
+     * @return True if value type is RSSI or Distance.
+     */
+    public static boolean supports(@NonNull final Class<?> valueType) {
+        return null != valueFactory(valueType);
+    }
+
+    @Nullable
+    private static ValueFactory<? extends DoubleValue> valueFactory(@NonNull final Class<?> valueType) {
+        if (RSSI.class == valueType) {
+            return rssi;
+        }
+        if (Distance.class == valueType) {
+            return distance;
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    @NonNull
+    private static <T extends DoubleValue> ValueFactory<T> checkedValueFactory(@NonNull final Class<T> valueType) {
+        final ValueFactory<? extends DoubleValue> valueFactory = valueFactory(valueType);
+        if (null == valueFactory) {
+            throw new IllegalArgumentException("Value type is not supported: " + valueType.getName());
+        }
+        return (ValueFactory<T>) valueFactory;
+    }
+
+    /**
+     * Push sample without allocation.
+     * @param taken Time sample was taken.
+     * @param value Sample value.
+     */
+    public void push(@NonNull final Date taken, final double value) {
+        beginWrite();
+        try {
+            final int position = pushPosition();
+            times[position] = taken.getTime();
+            values[position] = value;
+            pushed(position);
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * Push sample without allocation.
+     * @param secondsSinceUnixEpoch Time sample was taken.
+     * @param value Sample value.
+     */
+    public void push(final long secondsSinceUnixEpoch, final double value) {
+        beginWrite();
+        try {
+            final int position = pushPosition();
+            times[position] = secondsSinceUnixEpoch * 1000;
+            values[position] = value;
+            pushed(position);
+        } finally {
+            endWrite();
+        }
+    }
+
+    @Override
+    public void push(@NonNull final Date taken, @NonNull final T value) {
+        push(taken, value.doubleValue());
+    }
+
+    @Override
+    public void push(final long secondsSinceUnixEpoch, @NonNull final T value) {
+        push(secondsSinceUnixEpoch, value.doubleValue());
+    }
+
+    // MARK:- Sample storage
+
+    @NonNull
+    @Override
+    protected Sample<T> sampleAt(final int position) {
+        return new Sample<>(new Date(new java.util.Date(times[position])), valueObjectAt(position));
+    }
+
+    @Override
+    protected long timeAt(final int position) {
+        return times[position];
+    }
+
+    @Override
+    protected double valueAt(final int position) {
+        return values[position];
+    }
+
+    @NonNull
+    @Override
+    protected T valueObjectAt(final int position) {
+        return valueFactory.value(values[position]);
+    }
+
+    @Override
+    protected void set(final int position, @NonNull final Sample<T> sample) {
+        times[position] = sample.taken().getTime();
+        values[position] = sample.value().doubleValue();
+    }
+}
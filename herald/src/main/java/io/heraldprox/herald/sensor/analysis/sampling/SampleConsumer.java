@@ -0,0 +1,18 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis.sampling;
+
+/**
+ * Consumer of sample time and value, for visiting samples without materialising Sample objects.
+ */
+public interface SampleConsumer {
+
+    /**
+     * Visit sample.
+     * @param time Milliseconds since unix epoch, as Date.getTime().
+     * @param value Sample value as double.
+     */
+    void accept(final long time, final double value);
+}
@@ -13,32 +13,57 @@ import io.heraldprox.herald.sensor.datatype.DoubleValue;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
+/**
+ * Ring buffer of samples in time order, where the oldest sample is evicted when the buffer is full.
+ * <br>- Samples are expected to be pushed in time order, as time range views (since, until,
+ *   between) and clearBeforeDate() locate samples by binary search.
+ * <br>- Time range filters (Since, Until, InPeriod) are applied by binary search, and views
+ *   returned by since(), until(), between() and latest(n) are time bounded views over this
+ *   list without copying. Views are read only, and the index range of a view is resolved
+ *   again after this list is modified.
+ * <br>- Concurrent access follows a sequence lock protocol, where writers (push, clear,
+ *   clearBeforeDate, track) are serialised by a version number that is odd while a write is in
+ *   progress, and readers never block writers. Readers read optimistically and retry if the
+ *   version has changed, thus size(), get(), latest(), latestValue() and every sample passed to
+ *   forEach() are consistent, and aggregate() evaluates a consistent window. Iteration over a
+ *   list that is being modified may skip or repeat samples as the window moves, use snapshot()
+ *   for a consistent copy.
+ */
 @SuppressWarnings("unchecked")
 public class SampleList<T extends DoubleValue> implements Iterable<Sample<T>>, Filterable<T> {
+    private final static Sample<?>[] noSamples = new Sample<?>[0];
+    private final static IncrementalAggregate<?>[] noIncrementalAggregates = new IncrementalAggregate<?>[0];
+    @SuppressWarnings("rawtypes")
+    private final static AtomicIntegerFieldUpdater<SampleList> versionUpdater = AtomicIntegerFieldUpdater.newUpdater(SampleList.class, "version");
+    // Sequence number, odd while a write is in progress
+    private volatile int version = 0;
+    // Sample storage, or empty if samples are held by subclass, e.g. PrimitiveSampleList
     @NonNull
     private final Sample[] data;
+    private final int capacity;
     private int oldestPosition, newestPosition;
+    // Aggregates maintained on push and evict, replaced on change for allocation free iteration
+    @NonNull
+    private IncrementalAggregate<T>[] incrementalAggregates = (IncrementalAggregate<T>[]) noIncrementalAggregates;
 
     public SampleList(final int size) {
         this.data = new Sample[size];
+        this.capacity = size;
         this.oldestPosition = size;
         this.newestPosition = size;
     }
 
     public SampleList(final int size, @NonNull final Sample<T> ... samples) {
-        this.data = new Sample[size];
-        this.oldestPosition = size;
-        this.newestPosition = size;
+        this(size);
         for (final Sample<T> sample : samples) {
             push(sample);
         }
     }
 
     public SampleList(@NonNull final Sample<T> ... samples) {
-        this.data = new Sample[samples.length];
-        this.oldestPosition = data.length;
-        this.newestPosition = data.length;
+        this(samples.length);
         for (final Sample<T> sample : samples) {
             push(sample);
         }
@@ -48,6 +73,19 @@ public class SampleList<T extends DoubleValue> implements Iterable<Sample<T>>, F
         this(toArray(iterator));
     }
 
+    /**
+     * Ring buffer of given size for subclasses that provide their own sample storage by
+     * overriding sampleAt(), timeAt(), valueAt(), valueObjectAt() and set().
+     * @param size Capacity
+     * @param sampleStorage Allocate storage for Sample objects in this class.
+     */
+    protected SampleList(final int size, final boolean sampleStorage) {
+        this.data = (sampleStorage ? new Sample[size] : noSamples);
+        this.capacity = size;
+        this.oldestPosition = size;
+        this.newestPosition = size;
+    }
+
     @NonNull
     private static <T> Sample<T>[] toArray(@NonNull final Iterator<Sample<T>> iterator) {
         final List<Sample<T>> list = new ArrayList<>();
@@ -58,9 +96,200 @@ public class SampleList<T extends DoubleValue> implements Iterable<Sample<T>>, F
         return (Sample<T>[]) list.toArray(new Sample[list.size()]);
     }
 
-    public void push(@NonNull final Sample<T> sample) {
+    // MARK:- Concurrency
+
+    /**
+     * Begin optimistic read, waiting for any write in progress to complete.
+     * @return Version for validate().
+     */
+    int beginRead() {
+        while (true) {
+            final int current = version;
+            if (0 == (current & 1)) {
+                return current;
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Validate optimistic read. The compare and set acts as a release, thus reads before this
+     * call cannot observe writes that start after it.
+     * @param version Version returned by beginRead().
+     * @return True if no write has started since beginRead(), thus all reads were consistent.
+     */
+    boolean validate(final int version) {
+        return versionUpdater.compareAndSet(this, version, version);
+    }
+
+    /**
+     * Begin write, waiting for any other write in progress to complete. Must be followed by
+     * endWrite(), and the writer must only call unchecked methods, e.g. length() and timeOf().
+     */
+    protected final void beginWrite() {
+        while (true) {
+            final int current = version;
+            if (0 == (current & 1) && versionUpdater.compareAndSet(this, current, current + 1)) {
+                return;
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * End write started by beginWrite().
+     */
+    protected final void endWrite() {
+        versionUpdater.incrementAndGet(this);
+    }
+
+    // MARK:- Sample storage
+
+    /**
+     * Get sample at position in ring buffer.
+     * @param position Position in storage.
+     * @return Sample, which may be materialised on demand by subclasses.
+     */
+    @Nullable
+    protected Sample<T> sampleAt(final int position) {
+        return (Sample<T>) data[position];
+    }
+
+    /**
+     * Get time of sample at position in ring buffer.
+     * @param position Position in storage.
+     * @return Milliseconds since unix epoch, as Date.getTime().
+     */
+    protected long timeAt(final int position) {
+        return data[position].taken().getTime();
+    }
+
+    /**
+     * Get value of sample at position in ring buffer.
+     * @param position Position in storage.
+     * @return Sample value as double.
+     */
+    protected double valueAt(final int position) {
+        return ((Sample<T>) data[position]).value().doubleValue();
+    }
+
+    /**
+     * Get value object of sample at position in ring buffer.
+     * @param position Position in storage.
+     * @return Sample value, which may be materialised on demand by subclasses.
+     */
+    @Nullable
+    protected T valueObjectAt(final int position) {
+        final Sample<T> sample = (Sample<T>) data[position];
+        return (null == sample ? null : sample.value());
+    }
+
+    /**
+     * Get sample at index.
+     * @param index Index in range [0,size), where 0 is the oldest sample.
+     * @return Sample, which may be materialised on demand by subclasses.
+     */
+    @Nullable
+    protected Sample<T> sampleOf(final int index) {
+        return sampleAt(position(index));
+    }
+
+    /**
+     * Get time of sample at index.
+     * @param index Index in range [0,size), where 0 is the oldest sample.
+     * @return Milliseconds since unix epoch, as Date.getTime().
+     */
+    protected long timeOf(final int index) {
+        return timeAt(position(index));
+    }
+
+    /**
+     * Get value of sample at index.
+     * @param index Index in range [0,size), where 0 is the oldest sample.
+     * @return Sample value as double.
+     */
+    protected double valueOf(final int index) {
+        return valueAt(position(index));
+    }
+
+    /**
+     * Set sample at position in ring buffer.
+     * @param position Position in storage.
+     * @param sample Sample.
+     */
+    protected void set(final int position, @NonNull final Sample<T> sample) {
+        data[position] = sample;
+    }
+
+    /**
+     * Advance ring buffer for a new sample, evicting the oldest sample if the buffer is full.
+     * Must be called within a write, i.e. beginWrite() followed by endWrite() in a finally
+     * block, and pushed() must be called after storing the new sample.
+     * @return Position for storing the new sample.
+     */
+    protected final int pushPosition() {
+        if (0 != incrementalAggregates.length && length() == capacity && capacity > 0) {
+            // Oldest sample will be overwritten
+            evicted(oldestPosition);
+        }
         incrementNewest();
-        data[newestPosition] = sample;
+        return newestPosition;
+    }
+
+    /**
+     * Notify incremental aggregates of new sample stored at position. Must be called within
+     * the write that called pushPosition().
+     * @param position Position returned by pushPosition().
+     */
+    protected final void pushed(final int position) {
+        if (0 == incrementalAggregates.length) {
+            return;
+        }
+        final long time = timeAt(position);
+        final double value = valueAt(position);
+        for (final IncrementalAggregate<T> aggregate : incrementalAggregates) {
+            aggregate.onPush(time, value);
+        }
+    }
+
+    private void evicted(final int position) {
+        if (0 == incrementalAggregates.length) {
+            return;
+        }
+        final long time = timeAt(position);
+        final double value = valueAt(position);
+        for (final IncrementalAggregate<T> aggregate : incrementalAggregates) {
+            aggregate.onEvict(time, value);
+        }
+    }
+
+    /**
+     * Convert index to position in ring buffer.
+     * @param index Index in range [0,size), where 0 is the oldest sample.
+     * @return Position in storage.
+     */
+    protected final int position(final int index) {
+        if (newestPosition >= oldestPosition) {
+            return index + oldestPosition;
+        }
+        if (index + oldestPosition >= capacity) {
+            // TODO handle the situation where this pos > newestPosition (i.e. gap in the middle)
+            return index + oldestPosition - capacity;
+        }
+        return index + oldestPosition;
+    }
+
+    // MARK:- Ring buffer
+
+    public void push(@NonNull final Sample<T> sample) {
+        beginWrite();
+        try {
+            final int position = pushPosition();
+            set(position, sample);
+            pushed(position);
+        } finally {
+            endWrite();
+        }
     }
 
     public void push(@NonNull final Date taken, @NonNull final T value) {
@@ -72,88 +301,357 @@ public class SampleList<T extends DoubleValue> implements Iterable<Sample<T>>, F
     }
 
     public int size() {
-        if (newestPosition == data.length) return 0;
+        while (true) {
+            final int version = beginRead();
+            final int size = length();
+            if (validate(version)) {
+                return size;
+            }
+        }
+    }
+
+    /**
+     * Number of samples, without concurrency control, for use within reads and writes.
+     * @return Number of samples.
+     */
+    protected int length() {
+        if (newestPosition == capacity) return 0;
         if (newestPosition >= oldestPosition) {
             // not overlapping the end
             return newestPosition - oldestPosition + 1;
         }
         // we've overlapped
-        return (1 + newestPosition) + (data.length - oldestPosition);
+        return (1 + newestPosition) + (capacity - oldestPosition);
     }
 
     @Nullable
     public Sample<T> get(final int index) {
-        if (newestPosition >= oldestPosition) {
-            return data[index + oldestPosition];
-        }
-        if (index + oldestPosition >= data.length) {
-            // TODO handle the situation where this pos > newestPosition (i.e. gap in the middle)
-            return data[index + oldestPosition - data.length];
+        while (true) {
+            final int version = beginRead();
+            try {
+                final Sample<T> sample = sampleOf(index);
+                if (validate(version)) {
+                    return sample;
+                }
+            } catch (RuntimeException e) {
+                // Positions may be inconsistent during concurrent write
+                if (validate(version)) {
+                    throw e;
+                }
+            }
         }
-        return data[index + oldestPosition];
     }
 
     public void clearBeforeDate(@NonNull final Date before) {
-        if (oldestPosition == data.length) return;
-        while (oldestPosition != newestPosition) {
-            if (data[oldestPosition].taken().getTime() < before.getTime()) {
-                ++oldestPosition;
-                if (data.length == oldestPosition) {
-                    // overflowed
-                    oldestPosition = 0;
-                }
-            } else {
+        beginWrite();
+        try {
+            if (oldestPosition == capacity) return;
+            // Binary search for first sample to keep
+            final int keep = lowerBound(before.getTime());
+            if (0 == keep) {
                 return;
             }
-        }
-        // now we're on the last element
-        if (data[oldestPosition].taken().getTime() < before.getTime()) {
-            oldestPosition = data.length;
-            newestPosition = data.length;
+            for (int index=0; index<keep; index++) {
+                evicted(position(index));
+            }
+            if (keep == length()) {
+                oldestPosition = capacity;
+                newestPosition = capacity;
+            } else {
+                oldestPosition = position(keep);
+            }
+        } finally {
+            endWrite();
         }
     }
 
     public void clear() {
-        oldestPosition = data.length;
-        newestPosition = data.length;
+        beginWrite();
+        try {
+            oldestPosition = capacity;
+            newestPosition = capacity;
+            for (final IncrementalAggregate<T> aggregate : incrementalAggregates) {
+                aggregate.reset();
+            }
+        } finally {
+            endWrite();
+        }
+    }
+
+    // MARK:- Incremental aggregates
+
+    /**
+     * Maintain aggregate incrementally on every push and evict, such that summary() is
+     * available at any time without rescanning the window. The aggregate is reset and the
+     * current window is replayed on registration.
+     * @param aggregate Incremental aggregate, e.g. Mean, Variance, Gaussian.
+     */
+    public void track(@NonNull final IncrementalAggregate<T> aggregate) {
+        beginWrite();
+        try {
+            for (final IncrementalAggregate<T> existing : incrementalAggregates) {
+                if (existing == aggregate) {
+                    return;
+                }
+            }
+            aggregate.reset();
+            final int size = length();
+            for (int index=0; index<size; index++) {
+                aggregate.onPush(timeOf(index), valueOf(index));
+            }
+            final IncrementalAggregate<T>[] aggregates = (IncrementalAggregate<T>[]) new IncrementalAggregate<?>[incrementalAggregates.length + 1];
+            System.arraycopy(incrementalAggregates, 0, aggregates, 0, incrementalAggregates.length);
+            aggregates[incrementalAggregates.length] = aggregate;
+            incrementalAggregates = aggregates;
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * Stop maintaining aggregate.
+     * @param aggregate Incremental aggregate previously registered with track().
+     */
+    public void untrack(@NonNull final IncrementalAggregate<T> aggregate) {
+        beginWrite();
+        try {
+            final List<IncrementalAggregate<T>> aggregates = new ArrayList<>(incrementalAggregates.length);
+            for (final IncrementalAggregate<T> existing : incrementalAggregates) {
+                if (existing != aggregate) {
+                    aggregates.add(existing);
+                }
+            }
+            //noinspection ToArrayCallWithZeroLengthArrayArgument
+            incrementalAggregates = aggregates.toArray((IncrementalAggregate<T>[]) new IncrementalAggregate<?>[aggregates.size()]);
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * Summary of incrementally maintained aggregates for the current window, in order of
+     * registration. This is a constant time operation, but aggregates are not protected by
+     * the sequence lock, thus the summary should be obtained on the writer thread.
+     * @return Summary of tracked aggregates.
+     */
+    @NonNull
+    public Summary<T> summary() {
+        return new Summary<T>(incrementalAggregates);
     }
 
     @Nullable
     public Date latest() {
-        if (newestPosition == data.length) {
-            return null;
-        }
-        if (null == data[newestPosition]) {
-            return null;
+        while (true) {
+            final int version = beginRead();
+            final Sample<T> sample = (newestPosition == capacity ? null : sampleAt(newestPosition));
+            if (validate(version)) {
+                return (null == sample ? null : sample.taken());
+            }
         }
-        return data[newestPosition].taken();
     }
 
     @Nullable
     public T latestValue() {
-        if (newestPosition == data.length) {
-            return null;
+        while (true) {
+            final int version = beginRead();
+            final T value = (newestPosition == capacity ? null : valueObjectAt(newestPosition));
+            if (validate(version)) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Visit all samples in order, from oldest to newest, without materialising Sample objects.
+     * Every sample is read consistently, but samples may be skipped or repeated if the list is
+     * modified concurrently.
+     * @param consumer Consumer of sample time and value.
+     */
+    public void forEach(@NonNull final SampleConsumer consumer) {
+        for (int index=0;; index++) {
+            long time;
+            double value;
+            while (true) {
+                final int version = beginRead();
+                try {
+                    if (index >= length()) {
+                        if (validate(version)) {
+                            return;
+                        }
+                        continue;
+                    }
+                    time = timeOf(index);
+                    value = valueOf(index);
+                    if (validate(version)) {
+                        break;
+                    }
+                } catch (RuntimeException e) {
+                    if (validate(version)) {
+                        throw e;
+                    }
+                }
+            }
+            consumer.accept(time, value);
+        }
+    }
+
+    /**
+     * Consistent copy of this list, obtained without blocking writers.
+     * @return Sample list holding a copy of all samples.
+     */
+    @NonNull
+    public SampleList<T> snapshot() {
+        while (true) {
+            final int version = beginRead();
+            try {
+                final int size = length();
+                final Sample<T>[] samples = new Sample[size];
+                for (int index=0; index<size; index++) {
+                    samples[index] = sampleOf(index);
+                }
+                if (validate(version)) {
+                    return new SampleList<>(samples);
+                }
+            } catch (RuntimeException e) {
+                if (validate(version)) {
+                    throw e;
+                }
+            }
         }
-        if (null == data[newestPosition]) {
-            return null;
+    }
+
+    // MARK:- Time range views
+
+    /**
+     * Binary search for first sample taken at or after time.
+     * @param time Milliseconds since unix epoch.
+     * @return Index of first sample where taken >= time, or size if there is none.
+     */
+    int lowerBound(final long time) {
+        int low = 0, high = length();
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (timeOf(middle) < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Binary search for first sample taken after time.
+     * @param time Milliseconds since unix epoch.
+     * @return Index of first sample where taken > time, or size if there is none.
+     */
+    int upperBound(final long time) {
+        int low = 0, high = length();
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (timeOf(middle) <= time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * View of samples taken in time range, without copying.
+     * @param fromTime Milliseconds since unix epoch, inclusive.
+     * @param toTime Milliseconds since unix epoch, inclusive.
+     * @return Read only view.
+     */
+    @NonNull
+    protected SampleList<T> view(final long fromTime, final long toTime) {
+        return new SampleListRange<>(this, fromTime, toTime);
+    }
+
+    /**
+     * View of samples taken in time range, without copying. The view is bounded by time,
+     * thus it remains valid as samples are pushed and evicted.
+     * @param fromTime Milliseconds since unix epoch, inclusive.
+     * @param toTime Milliseconds since unix epoch, inclusive.
+     * @return Read only view.
+     */
+    @NonNull
+    protected final SampleList<T> timeRange(final long fromTime, final long toTime) {
+        return view(fromTime, toTime);
+    }
+
+    /**
+     * View of samples taken at or after time, equivalent to filter(new Since(after)).
+     * @param after Start time, inclusive.
+     * @return Read only view, without copying.
+     */
+    @NonNull
+    public SampleList<T> since(@NonNull final Date after) {
+        return timeRange(after.getTime(), Long.MAX_VALUE);
+    }
+
+    /**
+     * View of samples taken at or before time, equivalent to filter(new Until(before)).
+     * @param before End time, inclusive.
+     * @return Read only view, without copying.
+     */
+    @NonNull
+    public SampleList<T> until(@NonNull final Date before) {
+        return timeRange(Long.MIN_VALUE, before.getTime());
+    }
+
+    /**
+     * View of samples taken in time period, equivalent to filter(new InPeriod(after, before)).
+     * @param after Start time, inclusive.
+     * @param before End time, inclusive.
+     * @return Read only view, without copying.
+     */
+    @NonNull
+    public SampleList<T> between(@NonNull final Date after, @NonNull final Date before) {
+        return timeRange(after.getTime(), before.getTime());
+    }
+
+    /**
+     * View of latest samples.
+     * @param count Maximum number of samples.
+     * @return Read only view of the time range covered by up to count newest samples at the
+     * time of call, without copying.
+     */
+    @NonNull
+    public SampleList<T> latest(final int count) {
+        while (true) {
+            final int version = beginRead();
+            try {
+                final int size = length();
+                final int fromIndex = Math.max(0, size - Math.max(0, count));
+                final long fromTime = (fromIndex < size ? timeOf(fromIndex) : Long.MAX_VALUE);
+                final long toTime = (fromIndex < size ? timeOf(size - 1) : Long.MIN_VALUE);
+                if (validate(version)) {
+                    return view(fromTime, toTime);
+                }
+            } catch (RuntimeException e) {
+                if (validate(version)) {
+                    throw e;
+                }
+            }
         }
-        return (T) data[newestPosition].value();
     }
 
     private void incrementNewest() {
-        if (newestPosition == data.length) {
+        if (newestPosition == capacity) {
             newestPosition = 0;
             oldestPosition = 0;
         } else {
             if (newestPosition == (oldestPosition - 1)) {
                 ++oldestPosition;
-                if (oldestPosition == data.length) {
+                if (oldestPosition == capacity) {
                     oldestPosition = 0;
                 }
             }
             ++newestPosition;
         }
-        if (newestPosition == data.length) {
+        if (newestPosition == capacity) {
             // just gone past the end of the container
             newestPosition = 0;
             if (0 == oldestPosition) {
@@ -189,7 +687,8 @@ public class SampleList<T extends DoubleValue> implements Iterable<Sample<T>>, F
     @NonNull
     @Override
     public IteratorProxy<T> filter(@NonNull final Filter filter) {
-        return new IteratorProxy<>(iterator(), filter);
+        // Time range filters are applied by binary search, and other filters are fused
+        return new IteratorProxy<>(this, (Filter<T>) null).filter(filter);
     }
 
     @NonNull
@@ -209,26 +708,63 @@ public class SampleList<T extends DoubleValue> implements Iterable<Sample<T>>, F
         return s.toString();
     }
 
+    /**
+     * Evaluate aggregates over all samples in this list. Aggregates are grouped by the number of
+     * passes they require, and single pass aggregates (e.g. Variance) are evaluated in one pass.
+     * @param aggregates Aggregates to evaluate.
+     * @return Summary of aggregates.
+     */
     @NonNull
     public Summary<T> aggregate(@NonNull final Aggregate<T> ... aggregates) {
-        int maxRuns = 1;
-        for (final Aggregate<T> aggregate : aggregates) {
-            if (aggregate.runs() > maxRuns) {
-                maxRuns = aggregate.runs();
-            }
-        }
+        return aggregate(null, aggregates);
+    }
 
-        for (int run=1; run<=maxRuns; run++) {
-            for (final Aggregate<T> aggregate : aggregates) {
-                aggregate.beginRun(run);
+    /**
+     * Aggregate samples accepted by filter, in a single scan of the list for each pass.
+     * Primitive aggregates are evaluated in place, and evaluated again over a consistent copy
+     * if the list was modified during evaluation. Other aggregates, and cumulative aggregates,
+     * are evaluated once over a consistent copy.
+     * @param filter Filter, or null to aggregate all samples.
+     * @param aggregates Aggregates
+     * @return Summary of aggregates.
+     */
+    @NonNull
+    Summary<T> aggregate(@Nullable final Filter<T> filter, @NonNull final Aggregate<T>[] aggregates) {
+        final AggregatePlan<T> plan = new AggregatePlan<>(aggregates);
+        if (!repeatable(aggregates)) {
+            // Map every sample exactly once
+            return plan.execute(snapshot(), filter);
+        }
+        final int version = beginRead();
+        try {
+            final Summary<T> summary = plan.execute(this, filter);
+            if (validate(version)) {
+                return summary;
             }
+        } catch (RuntimeException e) {
+            if (validate(version)) {
+                throw e;
+            }
+        }
+        // List was modified during evaluation, evaluate again over consistent copy
+        for (final Aggregate<T> aggregate : aggregates) {
+            aggregate.reset();
+        }
+        return plan.execute(snapshot(), filter);
+    }
 
-            for (final Sample<T> sample : this) {
-                for (final Aggregate<T> aggregate : aggregates) {
-                    aggregate.map(sample);
-                }
+    /**
+     * Test if aggregates can be evaluated again after reset(), where only primitive aggregates
+     * are required to restore all state affected by map() on reset().
+     * @param aggregates Aggregates
+     * @return True if all aggregates are primitive and not cumulative.
+     */
+    private static boolean repeatable(@NonNull final Aggregate<?>[] aggregates) {
+        for (final Aggregate<?> aggregate : aggregates) {
+            if (!(aggregate instanceof PrimitiveAggregate) || aggregate instanceof CumulativeAggregate) {
+                return false;
             }
         }
-        return new Summary<>(aggregates);
+        return true;
     }
 }
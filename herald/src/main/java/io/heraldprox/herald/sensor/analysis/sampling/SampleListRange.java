@@ -0,0 +1,191 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis.sampling;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import io.heraldprox.herald.sensor.datatype.Date;
+import io.heraldprox.herald.sensor.datatype.DoubleValue;
+
+/**
+ * Read only view of a time range of a sample list, without copying. The view holds the time
+ * bounds rather than indices, and the index range is resolved by binary search whenever the
+ * version of the underlying list has changed, thus the view remains valid as samples are
+ * pushed and evicted. Reads are validated against the version of the underlying list.
+ */
+final class SampleListRange<T extends DoubleValue> extends SampleList<T> {
+    @NonNull
+    private final SampleList<T> list;
+    // Time bounds in milliseconds since unix epoch, inclusive
+    private final long fromTime;
+    private final long toTime;
+    // Index range resolved for a version of the underlying list
+    @Nullable
+    private volatile Window window = null;
+
+    /**
+     * Index range of samples in time range, for a version of the underlying list.
+     */
+    private final static class Window {
+        private final int version;
+        private final int offset;
+        private final int size;
+
+        private Window(final int version, final int offset, final int size) {
+            this.version = version;
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+
+    SampleListRange(@NonNull final SampleList<T> list, final long fromTime, final long toTime) {
+        super(0, false);
+        this.list = list;
+        this.fromTime = fromTime;
+        this.toTime = toTime;
+    }
+
+    /**
+     * Resolve index range for version of underlying list. Must be called within an optimistic
+     * read of the underlying list, as the result is only valid if the read is validated.
+     * @param version Version returned by list.beginRead().
+     * @return Index range for version.
+     */
+    @NonNull
+    private Window window(final int version) {
+        final Window current = window;
+        if (null != current && current.version == version) {
+            return current;
+        }
+        final int fromIndex = (Long.MIN_VALUE == fromTime ? 0 : list.lowerBound(fromTime));
+        final int toIndex = (Long.MAX_VALUE == toTime ? list.length() : list.upperBound(toTime));
+        final Window resolved = new Window(version, fromIndex, Math.max(0, toIndex - fromIndex));
+        window = resolved;
+        return resolved;
+    }
+
+    /**
+     * Index range for current read, resolving the range if no read has begun.
+     * @return Index range.
+     */
+    @NonNull
+    private Window window() {
+        final Window current = window;
+        return (null == current ? window(list.beginRead()) : current);
+    }
+
+    @Override
+    protected int length() {
+        return window().size;
+    }
+
+    // View is consistent while the underlying list is not modified, and the index range is
+    // resolved again on every read that observes a new version
+
+    @Override
+    int beginRead() {
+        final int version = list.beginRead();
+        try {
+            window(version);
+        } catch (RuntimeException e) {
+            // Inconsistent read of concurrent write, rejected by validate()
+            window = null;
+        }
+        return version;
+    }
+
+    @Override
+    boolean validate(final int version) {
+        return list.validate(version);
+    }
+
+    @Nullable
+    @Override
+    protected Sample<T> sampleOf(final int index) {
+        return list.sampleOf(window().offset + index);
+    }
+
+    @Override
+    protected long timeOf(final int index) {
+        return list.timeOf(window().offset + index);
+    }
+
+    @Override
+    protected double valueOf(final int index) {
+        return list.valueOf(window().offset + index);
+    }
+
+    @Nullable
+    @Override
+    public Date latest() {
+        final Sample<T> sample = latestSample();
+        return (null == sample ? null : sample.taken());
+    }
+
+    @Nullable
+    @Override
+    public T latestValue() {
+        final Sample<T> sample = latestSample();
+        return (null == sample ? null : sample.value());
+    }
+
+    @Nullable
+    private Sample<T> latestSample() {
+        while (true) {
+            final int version = beginRead();
+            try {
+                final int size = length();
+                final Sample<T> sample = (0 == size ? null : sampleOf(size - 1));
+                if (validate(version)) {
+                    return sample;
+                }
+            } catch (RuntimeException e) {
+                if (validate(version)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    @NonNull
+    @Override
+    protected SampleList<T> view(final long fromTime, final long toTime) {
+        // View of underlying list, rather than view of view
+        return new SampleListRange<>(list, Math.max(this.fromTime, fromTime), Math.min(this.toTime, toTime));
+    }
+
+    // MARK:- Read only
+
+    @Override
+    public void push(@NonNull final Sample<T> sample) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void push(@NonNull final Date taken, @NonNull final T value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void push(final long secondsSinceUnixEpoch, @NonNull final T value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clearBeforeDate(@NonNull final Date before) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void track(@NonNull final IncrementalAggregate<T> aggregate) {
+        throw new UnsupportedOperationException();
+    }
+}
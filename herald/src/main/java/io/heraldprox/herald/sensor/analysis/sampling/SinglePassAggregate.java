@@ -0,0 +1,21 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis.sampling;
+
+import io.heraldprox.herald.sensor.datatype.DoubleValue;
+
+/**
+ * Multi-run aggregate with an equivalent single pass formulation, e.g. variance by accumulating
+ * deviations from a shift value. SampleList.aggregate() calls beginSinglePass() instead of beginRun(1), and then
+ * maps every sample once, thus single pass aggregates do not force further passes over the
+ * list for other aggregates. Results are equal to the multi-run form up to rounding.
+ */
+public interface SinglePassAggregate<T extends DoubleValue> extends Aggregate<T> {
+
+    /**
+     * Begin first and only run, where map() accumulates the complete result.
+     */
+    void beginSinglePass();
+}
@@ -0,0 +1,24 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis.sampling;
+
+/**
+ * Filter that accepts samples taken within a time range. SampleList.filter() applies these
+ * filters by binary search over the time ordered samples, instead of testing every sample.
+ */
+public interface TimeRangeFilter<T> extends Filter<T> {
+
+    /**
+     * Start of time range.
+     * @return Milliseconds since unix epoch, inclusive, or Long.MIN_VALUE if unbounded.
+     */
+    long fromTime();
+
+    /**
+     * End of time range.
+     * @return Milliseconds since unix epoch, inclusive, or Long.MAX_VALUE if unbounded.
+     */
+    long toTime();
+}
@@ -5,21 +5,121 @@
 package io.heraldprox.herald.sensor.analysis.sampling;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
+import io.heraldprox.herald.sensor.datatype.Date;
 import io.heraldprox.herald.sensor.datatype.DoubleValue;
+import io.heraldprox.herald.sensor.datatype.TimeInterval;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Sample lists for each (variant, sampled ID) pair.
+ * <br>- Sampled IDs are transient, e.g. due to MAC address rotation, thus an eviction policy
+ *   can be set to bound memory use. Sampled IDs whose newest sample in all variants is older
+ *   than the time to live are evicted by evict(), and the number of sampled IDs is capped by
+ *   evicting the least recently pushed sampled IDs on push() and evict().
+ * <br>- Eviction removes the lists of a sampled ID in all variants, and is safe to run
+ *   concurrently with push and analysis. Idle eviction checks the newest sample of all lists
+ *   again while excluding pushes, thus a sample pushed concurrently is never dropped. Analysis that is in progress for an evicted sampled
+ *   ID completes on the removed lists, and a later push starts new lists.
+ */
 @SuppressWarnings("unchecked")
 public class VariantSet {
     private final int defaultListSize;
+    private final boolean primitive;
     private final Map<Class<? extends DoubleValue>, ListManager<? extends DoubleValue>> map = new ConcurrentHashMap<>();
+    // Index of sampled IDs, counting the list managers holding a list for each ID, maintained
+    // incrementally by list managers on list creation and removal
+    private final Map<SampledID, Integer> sampledIDs = new ConcurrentHashMap<>();
+    private final Set<SampledID> sampledIDsView = Collections.unmodifiableSet(sampledIDs.keySet());
+    @Nullable
+    private SampledID[] sortedSampledIDs = null;
+    // Variants that received samples via push() for each sampled ID since the last drain,
+    // only maintained for incremental analysis, and replaced on drain
+    private volatile boolean trackDirty = false;
+    @NonNull
+    private final AtomicReference<ConcurrentMap<SampledID, Set<Class<? extends DoubleValue>>>> dirty = new AtomicReference<ConcurrentMap<SampledID, Set<Class<? extends DoubleValue>>>>(new ConcurrentHashMap<SampledID, Set<Class<? extends DoubleValue>>>());
+    // Eviction policy
+    @Nullable
+    private volatile TimeInterval timeToLive = null;
+    private volatile int maxSampledIDs = 0;
+    // Sampled IDs in least recently pushed order, maintained while capacity is set. Lock order
+    // is sampledIDs then recentlyPushed.
+    @NonNull
+    private final LinkedHashMap<SampledID, Boolean> recentlyPushed = new LinkedHashMap<>(16, 0.75f, true);
+    @NonNull
+    private final Object evictionLock = new Object();
+    private final AtomicLong evictedIdle = new AtomicLong(0);
+    private final AtomicLong evictedCapacity = new AtomicLong(0);
+    // Resolved sample lists of analysis providers for each sampled ID, discarded on any change
+    // to the lists of the sampled ID
+    private final ConcurrentMap<SampledID, AnalysisProviderManager.Bindings> bindings = new ConcurrentHashMap<>();
+    private final ListManager.Listener listener = new ListManager.Listener() {
+        @Override
+        public void listAdded(@NonNull final SampledID sampledID) {
+            bindings.remove(sampledID);
+            synchronized (sampledIDs) {
+                final Integer count = sampledIDs.get(sampledID);
+                if (null == count) {
+                    sampledIDs.put(sampledID, 1);
+                    sortedSampledIDs = null;
+                    if (maxSampledIDs > 0) {
+                        synchronized (recentlyPushed) {
+                            recentlyPushed.put(sampledID, Boolean.TRUE);
+                        }
+                    }
+                } else {
+                    sampledIDs.put(sampledID, count + 1);
+                }
+            }
+        }
+
+        @Override
+        public void listRemoved(@NonNull final SampledID sampledID) {
+            bindings.remove(sampledID);
+            synchronized (sampledIDs) {
+                final Integer count = sampledIDs.get(sampledID);
+                if (null == count) {
+                    return;
+                }
+                if (count <= 1) {
+                    sampledIDs.remove(sampledID);
+                    sortedSampledIDs = null;
+                    synchronized (recentlyPushed) {
+                        recentlyPushed.remove(sampledID);
+                    }
+                } else {
+                    sampledIDs.put(sampledID, count - 1);
+                }
+            }
+        }
+    };
 
     public VariantSet(final int defaultListSize) {
+        this(defaultListSize, false);
+    }
+
+    /**
+     * Variant set with default list size.
+     * @param defaultListSize Default sample list capacity
+     * @param primitive Use PrimitiveSampleList for all variants that support it, to avoid
+     *                  holding Sample, Date and value objects for every sample.
+     */
+    public VariantSet(final int defaultListSize, final boolean primitive) {
         this.defaultListSize = defaultListSize;
+        this.primitive = primitive;
     }
 
     @NonNull
@@ -27,41 +127,76 @@ public class VariantSet {
         return map.keySet();
     }
 
+    /**
+     * Sampled IDs with a sample list in any variant. The set is maintained incrementally as
+     * lists are created and removed, thus this call does not copy or merge key sets.
+     * @return Unmodifiable live view of sampled IDs.
+     */
     @NonNull
     public Set<SampledID> sampledIDs() {
-        final Set<SampledID> sampledIDs = new HashSet<>();
-        for (final ListManager<? extends DoubleValue> listManager : map.values()) {
-            sampledIDs.addAll(listManager.sampledIDs());
+        return sampledIDsView;
+    }
+
+    /**
+     * Sampled IDs in ascending order, for deterministic processing order. The sorted array is
+     * cached until the set of sampled IDs changes.
+     * @return Shared array of sampled IDs, must not be modified.
+     */
+    @NonNull
+    SampledID[] sortedSampledIDs() {
+        synchronized (sampledIDs) {
+            if (null == sortedSampledIDs) {
+                final SampledID[] array = sampledIDs.keySet().toArray(new SampledID[0]);
+                Arrays.sort(array);
+                sortedSampledIDs = array;
+            }
+            return sortedSampledIDs;
         }
-        return sampledIDs;
     }
 
     @NonNull
     public <T extends DoubleValue> ListManager<T> add(@NonNull final Class<T> variant, final int listSize) {
-        final ListManager<T> listManager = new ListManager<>(listSize);
-        map.put(variant, listManager);
+        final ListManager<T> listManager = new ListManager<>(listSize, primitive && PrimitiveSampleList.supports(variant) ? variant : null, listener);
+        final ListManager<? extends DoubleValue> replaced = map.put(variant, listManager);
+        if (null != replaced) {
+            replaced.detach();
+        }
         return listManager;
     }
 
     public <T extends DoubleValue> void remove(@NonNull final Class<T> variant) {
-        map.remove(variant);
+        final ListManager<? extends DoubleValue> removed = map.remove(variant);
+        if (null != removed) {
+            removed.detach();
+        }
     }
 
     public void remove(@NonNull final SampledID sampledID) {
         for (final ListManager<? extends DoubleValue> listManager : map.values()) {
             listManager.remove(sampledID);
         }
+        dirty.get().remove(sampledID);
     }
 
     public void clear() {
-        map.clear();
+        for (final Class<? extends DoubleValue> variant : map.keySet()) {
+            remove(variant);
+        }
+        dirty.get().clear();
     }
 
     @NonNull
     public <T extends DoubleValue> ListManager<T> listManager(@NonNull final Class<T> variant) {
         ListManager<T> listManager = (ListManager<T>) map.get(variant);
         if (null == listManager) {
-            listManager = add(variant, defaultListSize);
+            // Double checked creation, as concurrent analysis may request a new variant on
+            // multiple threads, and a replaced list manager would lose its lists
+            synchronized (map) {
+                listManager = (ListManager<T>) map.get(variant);
+                if (null == listManager) {
+                    listManager = add(variant, defaultListSize);
+                }
+            }
         }
         return listManager;
     }
@@ -76,6 +211,251 @@ public class VariantSet {
     }
 
     public <T extends DoubleValue> void push(@NonNull final SampledID sampledID, @NonNull final Sample<T> sample) {
-        ((ListManager<T>) listManager(sample.value().getClass())).push(sampledID, sample);
+        final Class<? extends DoubleValue> variant = sample.value().getClass();
+        ((ListManager<T>) listManager(variant)).push(sampledID, sample);
+        if (trackDirty) {
+            final ConcurrentMap<SampledID, Set<Class<? extends DoubleValue>>> current = dirty.get();
+            markDirty(current, sampledID, variant);
+            if (current != dirty.get()) {
+                // Drained concurrently, mark again to ensure the sample is analysed next time
+                markDirty(dirty.get(), sampledID, variant);
+            }
+        }
+        if (maxSampledIDs > 0) {
+            synchronized (recentlyPushed) {
+                // Access order update, without adding sampled IDs removed concurrently
+                recentlyPushed.get(sampledID);
+            }
+            enforceCapacity();
+        }
+    }
+
+    @Nullable
+    AnalysisProviderManager.Bindings bindings(@NonNull final SampledID sampledID) {
+        return bindings.get(sampledID);
+    }
+
+    void bindings(@NonNull final SampledID sampledID, @NonNull final AnalysisProviderManager.Bindings bindings) {
+        this.bindings.put(sampledID, bindings);
+    }
+
+    void unbind(@NonNull final SampledID sampledID, @NonNull final AnalysisProviderManager.Bindings bindings) {
+        this.bindings.remove(sampledID, bindings);
+    }
+
+    private static void markDirty(@NonNull final ConcurrentMap<SampledID, Set<Class<? extends DoubleValue>>> dirty, @NonNull final SampledID sampledID, @NonNull final Class<? extends DoubleValue> variant) {
+        Set<Class<? extends DoubleValue>> variants = dirty.get(sampledID);
+        if (null == variants) {
+            final Set<Class<? extends DoubleValue>> created = Collections.newSetFromMap(new ConcurrentHashMap<Class<? extends DoubleValue>, Boolean>(4));
+            variants = dirty.putIfAbsent(sampledID, created);
+            if (null == variants) {
+                variants = created;
+            }
+        }
+        variants.add(variant);
+    }
+
+    /**
+     * Enable or disable tracking of (sampled ID, variant) pairs that received samples via
+     * push(), for incremental analysis. On enable, all existing sampled IDs are marked as
+     * changed in all variants, as their samples have not been tracked.
+     * @param trackDirty Track changes for drainDirty().
+     */
+    void trackDirty(final boolean trackDirty) {
+        if (this.trackDirty == trackDirty) {
+            return;
+        }
+        this.trackDirty = trackDirty;
+        final ConcurrentMap<SampledID, Set<Class<? extends DoubleValue>>> current = dirty.get();
+        current.clear();
+        if (trackDirty) {
+            for (final SampledID sampledID : sampledIDs.keySet()) {
+                for (final Class<? extends DoubleValue> variant : map.keySet()) {
+                    markDirty(current, sampledID, variant);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get and reset the (sampled ID, variant) pairs that received samples via push() since
+     * the last call, while tracking is enabled by trackDirty(). A sample pushed concurrently
+     * is reported by this call or the next call.
+     * @return Variants with new samples for each sampled ID.
+     */
+    @NonNull
+    Map<SampledID, Set<Class<? extends DoubleValue>>> drainDirty() {
+        return dirty.getAndSet(new ConcurrentHashMap<SampledID, Set<Class<? extends DoubleValue>>>());
+    }
+
+    // MARK:- Eviction
+
+    /**
+     * Set eviction policy for transient sampled IDs.
+     * @param timeToLive Evict sampled IDs without samples newer than this interval on evict(),
+     *                   or null to disable idle eviction.
+     * @param maxSampledIDs Maximum number of sampled IDs, where the least recently pushed
+     *                      sampled IDs are evicted on push() and evict() when exceeded, or zero
+     *                      for no limit.
+     */
+    public void eviction(@Nullable final TimeInterval timeToLive, final int maxSampledIDs) {
+        synchronized (sampledIDs) {
+            this.timeToLive = timeToLive;
+            this.maxSampledIDs = Math.max(0, maxSampledIDs);
+            synchronized (recentlyPushed) {
+                recentlyPushed.clear();
+                if (this.maxSampledIDs > 0) {
+                    // Existing sampled IDs are ranked in ascending order
+                    for (final SampledID sampledID : sortedSampledIDs()) {
+                        recentlyPushed.put(sampledID, Boolean.TRUE);
+                    }
+                }
+            }
+        }
+        enforceCapacity();
+    }
+
+    /**
+     * Evict sampled IDs according to the eviction policy.
+     * @param timeNow Current time for idle eviction.
+     * @return Number of sampled IDs evicted.
+     */
+    public int evict(@NonNull final Date timeNow) {
+        int evicted = 0;
+        final TimeInterval timeToLive = this.timeToLive;
+        if (null != timeToLive && timeToLive.value < timeNow.secondsSinceUnixEpoch()) {
+            final long cutoff = timeNow.getTime() - timeToLive.millis();
+            for (final SampledID sampledID : sortedSampledIDs()) {
+                final Date newest = latest(sampledID);
+                if ((null == newest || newest.getTime() < cutoff) && removeIfIdle(sampledID, cutoff)) {
+                    evicted++;
+                }
+            }
+            evictedIdle.addAndGet(evicted);
+        }
+        return evicted + enforceCapacity();
+    }
+
+    /**
+     * Remove lists of sampled ID in all variants, if no list has a sample at or after cutoff.
+     * Pushes to the lists are excluded while checking and removing, thus a concurrent push is
+     * either seen by the check, or pushed again to a new list by ListManager.push().
+     * @param sampledID Sampled ID
+     * @param cutoff Time in milliseconds since unix epoch
+     * @return True if any list was removed.
+     */
+    private boolean removeIfIdle(@NonNull final SampledID sampledID, final long cutoff) {
+        synchronized (evictionLock) {
+            final List<ListManager<? extends DoubleValue>> listManagers = new ArrayList<ListManager<? extends DoubleValue>>(map.values());
+            final List<SampleList<? extends DoubleValue>> lists = new ArrayList<>(listManagers.size());
+            for (final ListManager<? extends DoubleValue> listManager : listManagers) {
+                lists.add(listManager.existingList(sampledID));
+            }
+            int locked = 0;
+            try {
+                for (final SampleList<? extends DoubleValue> list : lists) {
+                    if (null == list) {
+                        locked++;
+                        continue;
+                    }
+                    list.beginWrite();
+                    locked++;
+                    // Newest sample is last, as latest()
+                    final int length = list.length();
+                    if (length > 0 && list.timeOf(length - 1) >= cutoff) {
+                        return false;
+                    }
+                }
+                boolean removed = false;
+                for (int i=0; i<listManagers.size(); i++) {
+                    final SampleList<? extends DoubleValue> list = lists.get(i);
+                    if (null != list && listManagers.get(i).remove(sampledID, list)) {
+                        removed = true;
+                    }
+                }
+                dirty.get().remove(sampledID);
+                return removed;
+            } finally {
+                for (int i=0; i<locked; i++) {
+                    final SampleList<? extends DoubleValue> list = lists.get(i);
+                    if (null != list) {
+                        list.endWrite();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Time of newest sample for sampled ID in any variant.
+     * @param sampledID Sampled ID
+     * @return Time of newest sample, or null if there are no samples.
+     */
+    @Nullable
+    public Date latest(@NonNull final SampledID sampledID) {
+        Date newest = null;
+        for (final ListManager<? extends DoubleValue> listManager : map.values()) {
+            final SampleList<? extends DoubleValue> list = listManager.existingList(sampledID);
+            if (null == list) {
+                continue;
+            }
+            final Date latest = list.latest();
+            if (null != latest && (null == newest || latest.getTime() > newest.getTime())) {
+                newest = latest;
+            }
+        }
+        return newest;
+    }
+
+    /**
+     * Evict least recently pushed sampled IDs until the number of sampled IDs is within
+     * capacity.
+     * @return Number of sampled IDs evicted.
+     */
+    private int enforceCapacity() {
+        int evicted = 0;
+        while (maxSampledIDs > 0 && sampledIDs.size() > maxSampledIDs) {
+            final SampledID eldest;
+            synchronized (recentlyPushed) {
+                final Iterator<SampledID> iterator = recentlyPushed.keySet().iterator();
+                if (!iterator.hasNext()) {
+                    break;
+                }
+                eldest = iterator.next();
+                iterator.remove();
+            }
+            remove(eldest);
+            evicted++;
+        }
+        evictedCapacity.addAndGet(evicted);
+        return evicted;
+    }
+
+    /**
+     * Number of sampled IDs evicted for being idle since creation.
+     * @return Eviction count.
+     */
+    public long evictedIdle() {
+        return evictedIdle.get();
+    }
+
+    /**
+     * Number of sampled IDs evicted for exceeding capacity since creation.
+     * @return Eviction count.
+     */
+    public long evictedCapacity() {
+        return evictedCapacity.get();
+    }
+
+    /**
+     * Number of sample lists across all variants.
+     * @return List count.
+     */
+    public int liveLists() {
+        int lists = 0;
+        for (final ListManager<? extends DoubleValue> listManager : map.values()) {
+            lists += listManager.size();
+        }
+        return lists;
     }
 }
@@ -6,11 +6,11 @@ package io.heraldprox.herald.sensor.analysis.views;
 
 import androidx.annotation.NonNull;
 
-import io.heraldprox.herald.sensor.analysis.sampling.Filter;
+import io.heraldprox.herald.sensor.analysis.sampling.PrimitiveFilter;
 import io.heraldprox.herald.sensor.analysis.sampling.Sample;
 import io.heraldprox.herald.sensor.datatype.DoubleValue;
 
-public class GreaterThan<T extends DoubleValue> implements Filter<T> {
+public class GreaterThan<T extends DoubleValue> implements PrimitiveFilter<T> {
     private final double min;
 
     public GreaterThan(final double min) {
@@ -21,4 +21,9 @@ public class GreaterThan<T extends DoubleValue> implements Filter<T> {
     public boolean test(@NonNull final Sample<T> item) {
         return item.value().doubleValue() > min;
     }
+
+    @Override
+    public boolean test(final long time, final double value) {
+        return value > min;
+    }
 }
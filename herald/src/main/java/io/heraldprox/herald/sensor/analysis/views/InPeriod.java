@@ -6,12 +6,13 @@ package io.heraldprox.herald.sensor.analysis.views;
 
 import androidx.annotation.NonNull;
 
-import io.heraldprox.herald.sensor.analysis.sampling.Filter;
+import io.heraldprox.herald.sensor.analysis.sampling.PrimitiveFilter;
 import io.heraldprox.herald.sensor.analysis.sampling.Sample;
+import io.heraldprox.herald.sensor.analysis.sampling.TimeRangeFilter;
 import io.heraldprox.herald.sensor.datatype.Date;
 import io.heraldprox.herald.sensor.datatype.DoubleValue;
 
-public class InPeriod<T extends DoubleValue> implements Filter<T> {
+public class InPeriod<T extends DoubleValue> implements TimeRangeFilter<T>, PrimitiveFilter<T> {
     private final long afterTime;
     private final long beforeTime;
 
@@ -29,4 +30,19 @@ public class InPeriod<T extends DoubleValue> implements Filter<T> {
         final long takenTime = item.taken().getTime();
         return afterTime <= takenTime && takenTime <= beforeTime;
     }
+
+    @Override
+    public boolean test(final long time, final double value) {
+        return afterTime <= time && time <= beforeTime;
+    }
+
+    @Override
+    public long fromTime() {
+        return afterTime;
+    }
+
+    @Override
+    public long toTime() {
+        return beforeTime;
+    }
 }
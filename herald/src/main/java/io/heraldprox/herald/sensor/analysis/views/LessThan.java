@@ -6,11 +6,11 @@ package io.heraldprox.herald.sensor.analysis.views;
 
 import androidx.annotation.NonNull;
 
-import io.heraldprox.herald.sensor.analysis.sampling.Filter;
+import io.heraldprox.herald.sensor.analysis.sampling.PrimitiveFilter;
 import io.heraldprox.herald.sensor.analysis.sampling.Sample;
 import io.heraldprox.herald.sensor.datatype.DoubleValue;
 
-public class LessThan<T extends DoubleValue> implements Filter<T> {
+public class LessThan<T extends DoubleValue> implements PrimitiveFilter<T> {
     private final double max;
 
     public LessThan(final double max) {
@@ -21,4 +21,9 @@ public class LessThan<T extends DoubleValue> implements Filter<T> {
     public boolean test(@NonNull final Sample<T> item) {
         return item.value().doubleValue() < max;
     }
+
+    @Override
+    public boolean test(final long time, final double value) {
+        return value < max;
+    }
 }
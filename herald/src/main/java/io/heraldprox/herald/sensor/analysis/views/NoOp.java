@@ -6,11 +6,11 @@ package io.heraldprox.herald.sensor.analysis.views;
 
 import androidx.annotation.NonNull;
 
-import io.heraldprox.herald.sensor.analysis.sampling.Filter;
+import io.heraldprox.herald.sensor.analysis.sampling.PrimitiveFilter;
 import io.heraldprox.herald.sensor.analysis.sampling.Sample;
 import io.heraldprox.herald.sensor.datatype.DoubleValue;
 
-public class NoOp<T extends DoubleValue> implements Filter<T> {
+public class NoOp<T extends DoubleValue> implements PrimitiveFilter<T> {
 
     public NoOp() {
     }
@@ -19,4 +19,9 @@ public class NoOp<T extends DoubleValue> implements Filter<T> {
     public boolean test(@NonNull final Sample<T> item) {
         return true;
     }
+
+    @Override
+    public boolean test(final long time, final double value) {
+        return true;
+    }
 }
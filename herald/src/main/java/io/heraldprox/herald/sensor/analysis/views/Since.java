@@ -6,13 +6,14 @@ package io.heraldprox.herald.sensor.analysis.views;
 
 import androidx.annotation.NonNull;
 
-import io.heraldprox.herald.sensor.analysis.sampling.Filter;
+import io.heraldprox.herald.sensor.analysis.sampling.PrimitiveFilter;
 import io.heraldprox.herald.sensor.analysis.sampling.Sample;
+import io.heraldprox.herald.sensor.analysis.sampling.TimeRangeFilter;
 import io.heraldprox.herald.sensor.datatype.Date;
 import io.heraldprox.herald.sensor.datatype.DoubleValue;
 
 @SuppressWarnings("unchecked")
-public class Since<T extends DoubleValue> implements Filter<T> {
+public class Since<T extends DoubleValue> implements TimeRangeFilter<T>, PrimitiveFilter<T> {
     private final long afterTime;
 
     public Since(final long secondsSinceUnixEpoch) {
@@ -32,4 +33,19 @@ public class Since<T extends DoubleValue> implements Filter<T> {
     public boolean test(@NonNull final Sample<T> item) {
         return item.taken().getTime() >= afterTime;
     }
+
+    @Override
+    public boolean test(final long time, final double value) {
+        return time >= afterTime;
+    }
+
+    @Override
+    public long fromTime() {
+        return afterTime;
+    }
+
+    @Override
+    public long toTime() {
+        return Long.MAX_VALUE;
+    }
 }
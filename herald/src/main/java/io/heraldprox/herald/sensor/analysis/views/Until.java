@@ -6,12 +6,13 @@ package io.heraldprox.herald.sensor.analysis.views;
 
 import androidx.annotation.NonNull;
 
-import io.heraldprox.herald.sensor.analysis.sampling.Filter;
+import io.heraldprox.herald.sensor.analysis.sampling.PrimitiveFilter;
 import io.heraldprox.herald.sensor.analysis.sampling.Sample;
+import io.heraldprox.herald.sensor.analysis.sampling.TimeRangeFilter;
 import io.heraldprox.herald.sensor.datatype.Date;
 import io.heraldprox.herald.sensor.datatype.DoubleValue;
 
-public class Until<T extends DoubleValue> implements Filter<T> {
+public class Until<T extends DoubleValue> implements TimeRangeFilter<T>, PrimitiveFilter<T> {
     private final long beforeTime;
 
     public Until(final long secondsSinceUnixEpoch) {
@@ -26,4 +27,19 @@ public class Until<T extends DoubleValue> implements Filter<T> {
     public boolean test(@NonNull final Sample<T> item) {
         return item.taken().getTime() <= beforeTime;
     }
+
+    @Override
+    public boolean test(final long time, final double value) {
+        return time <= beforeTime;
+    }
+
+    @Override
+    public long fromTime() {
+        return Long.MIN_VALUE;
+    }
+
+    @Override
+    public long toTime() {
+        return beforeTime;
+    }
 }
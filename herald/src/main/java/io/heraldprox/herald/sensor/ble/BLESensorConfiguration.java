@@ -199,6 +199,16 @@ public class BLESensorConfiguration {
     @NonNull
     public static TimeInterval filterDuplicatePayloadData = TimeInterval.never;
 
+    /**
+     *  Dispatch cycle for delivering proximity measurements to SensorDelegate in batches
+     *  <br>- Set to .zero to dispatch measurements as soon as the sensor operation queue is free
+     *  <br>- Set time interval N to collect measurements for N seconds and deliver them as one batch
+     *  <br>- Example : 1 means delegates receive measurements once a second
+     *  <br>- Only applies to BatchSensorDelegate, other delegates receive each measurement as it is acquired
+     */
+    @NonNull
+    public static TimeInterval sensorDelegateBatchInterval = TimeInterval.zero;
+
     /**
      *  Expiry time for shared payloads, to ensure only recently seen payloads are shared
      */
@@ -253,6 +263,39 @@ public class BLESensorConfiguration {
             "^00","^1002","^06","^08","^03","^0C","^0D","^0F","^0E","^0B"
     };
 
+    /**
+     *  Maximum number of device filter verdicts to cache
+     *  <br>- Verdicts are cached by the manufacturer specific data in advert
+     *  <br>- Repeated adverts from the same device types are resolved without pattern matching
+     *  <br>- Least recently used verdicts are discarded when the cache is full
+     *  <br>- Set to 0 to disable caching
+     */
+    public static int deviceFilterVerdictCacheSize = 256;
+
+    /**
+     *  Enable online learning of device filter rules
+     *  <br>- Learns from the outcome of every completed connection to an Apple device
+     *  <br>- Advert messages of devices without payload characteristic are counted as ignore examples
+     *  <br>- Message features (type, and type with data byte) are promoted to ignore rules once they
+     *    pass the confidence threshold, and demoted if contrary evidence is found
+     *  <br>- Learned rules are applied in addition to deviceFilterFeaturePatterns, but a device is only
+     *    ignored by learned rules if every message in its advert is covered by a rule
+     *  <br>- Learned rules are persisted in "filter.bin" in application files folder
+     */
+    public static boolean deviceFilterLearningEnabled = false;
+
+    /**
+     *  Minimum number of ignore examples for a feature to be promoted to an ignore rule
+     */
+    public static int deviceFilterLearningMinimumSamples = 3;
+
+    /**
+     *  Minimum proportion of ignore examples for a feature to be promoted to an ignore rule
+     *  <br>- Set to 1 to only learn rules for features that have never been seen on a device
+     *    offering sensor services, as a single missed connection is expensive
+     */
+    public static double deviceFilterLearningConfidence = 1;
+
     /**
      *  Enable inertia sensor
      *  <br>- Inertia sensor (accelerometer) measures acceleration in meters per second (m/s) along device X, Y and Z axis
@@ -28,9 +28,9 @@ import io.heraldprox.herald.BuildConfig;
 import io.heraldprox.herald.sensor.PayloadDataSupplier;
 import io.heraldprox.herald.sensor.SensorDelegate;
 import io.heraldprox.herald.sensor.ble.filter.BLEAdvertParser;
-import io.heraldprox.herald.sensor.ble.filter.BLEAdvertServiceData;
+import io.heraldprox.herald.sensor.ble.filter.BLEAdvertSegmentView;
 import io.heraldprox.herald.sensor.ble.filter.BLEDeviceFilter;
-import io.heraldprox.herald.sensor.ble.filter.BLEScanResponseData;
+import io.heraldprox.herald.sensor.ble.filter.BLEDeviceFilterRules;
 import io.heraldprox.herald.sensor.data.ConcreteSensorLogger;
 import io.heraldprox.herald.sensor.data.SensorLogger;
 import io.heraldprox.herald.sensor.data.TextFile;
@@ -49,6 +49,7 @@ import io.heraldprox.herald.sensor.datatype.SignalCharacteristicDataType;
 import io.heraldprox.herald.sensor.datatype.TargetIdentifier;
 import io.heraldprox.herald.sensor.datatype.TimeInterval;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -192,6 +193,9 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
             BLESensorConfiguration.payloadDataUpdateTimeInterval = TimeInterval.minute;
             // Log results to file for analysis
             this.deviceFilter = new BLEDeviceFilter(context, "filter.csv");
+        } else if (BLESensorConfiguration.deviceFilterLearningEnabled) {
+            // Rule-based filter with rules learned from connection outcomes
+            this.deviceFilter = new BLEDeviceFilter(null, null, BLESensorConfiguration.deviceFilterFeaturePatterns, new BLEDeviceFilterRules(new File(context.getFilesDir(), "filter.bin")));
         } else {
             // Standard rule-based filter
             this.deviceFilter = new BLEDeviceFilter();
@@ -721,17 +725,26 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
             if (null == scanRecord) {
                 return;
             }
-            final BLEScanResponseData bleScanResponseData = BLEAdvertParser.parseScanResponse(scanRecord.getBytes(), 0);
-            final List<BLEAdvertServiceData> bleAdvertServiceDataList = BLEAdvertParser.extractServiceUUID16Data(bleScanResponseData.segments);
-            for (final BLEAdvertServiceData bleAdvertServiceData : bleAdvertServiceDataList) {
+            final byte[] raw = scanRecord.getBytes();
+            if (null == raw) {
+                return;
+            }
+            final Data serviceDataKey = BLESensorConfiguration.interopAdvertBasedProtocolServiceDataKey;
+            if (2 != serviceDataKey.value.length) {
+                return;
+            }
+            final int serviceUUID16 = ((serviceDataKey.value[0] & 0xff) << 8) | (serviceDataKey.value[1] & 0xff);
+            // Parse advert in place, only copying the payload data
+            final BLEAdvertSegmentView segment = new BLEAdvertSegmentView(raw, 0);
+            while (segment.next()) {
                 try {
                     // Test if service data area contains expected service data key
-                    if (!BLESensorConfiguration.interopAdvertBasedProtocolServiceDataKey.equals(new Data(bleAdvertServiceData.service))) {
+                    if (!segment.isServiceUUID16Data() || serviceUUID16 != segment.serviceUUID16()) {
                         continue;
                     }
-                    //noinspection ConstantConditions
-                    if (null != bleAdvertServiceData.data && bleAdvertServiceData.data.length > 0) {
-                        final LegacyPayloadData payloadData = new LegacyPayloadData(BLESensorConfiguration.interopAdvertBasedProtocolServiceUUID, bleAdvertServiceData.data);
+                    if (segment.payloadLength() > 0) {
+                        final byte[] data = BLEAdvertParser.subDataBigEndian(raw, segment.payloadOffset(), segment.payloadLength());
+                        final LegacyPayloadData payloadData = new LegacyPayloadData(BLESensorConfiguration.interopAdvertBasedProtocolServiceUUID, data);
                         device.payloadData(payloadData);
                         logger.debug("processLegacyAdvertOnlyProtocolServiceData, found service (device={},payload={})", device, payloadData.shortName());
                     }
@@ -941,8 +954,9 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
         } else {
             logger.fault("taskConnectDevice, complete (success=false,device={},elapsed={}ms)", device, timeToProcessMillis);
         }
-        // Train device filter
-        if (BLESensorConfiguration.deviceFilterTrainingEnabled) {
+        // Train device filter, only learning from completed connections as the payload
+        // characteristic may be missing due to connection failure
+        if (BLESensorConfiguration.deviceFilterTrainingEnabled || (BLESensorConfiguration.deviceFilterLearningEnabled && success)) {
             deviceFilter.train(device, null == device.payloadCharacteristic());
         }
         return success;
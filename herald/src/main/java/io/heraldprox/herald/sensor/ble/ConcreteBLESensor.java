@@ -14,10 +14,12 @@ import io.heraldprox.herald.sensor.datatype.BluetoothState;
 import io.heraldprox.herald.sensor.datatype.Data;
 import io.heraldprox.herald.sensor.datatype.PayloadData;
 import io.heraldprox.herald.sensor.datatype.Proximity;
+import io.heraldprox.herald.sensor.datatype.ProximityBatch;
 import io.heraldprox.herald.sensor.datatype.ProximityMeasurementUnit;
 import io.heraldprox.herald.sensor.datatype.RSSI;
 import io.heraldprox.herald.sensor.datatype.SensorState;
 import io.heraldprox.herald.sensor.datatype.SensorType;
+import io.heraldprox.herald.sensor.BatchSensorDelegate;
 import io.heraldprox.herald.sensor.PayloadDataSupplier;
 import io.heraldprox.herald.sensor.SensorDelegate;
 import io.heraldprox.herald.sensor.datatype.TargetIdentifier;
@@ -28,19 +30,34 @@ import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class ConcreteBLESensor implements BLESensor, BLEDatabaseDelegate, BluetoothStateManagerDelegate {
     private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "BLE.ConcreteBLESensor");
     private final Queue<SensorDelegate> delegates = new ConcurrentLinkedQueue<>();
+    // Batch delegates receive proximity measurements in batches, other delegates receive each
+    // measurement as it is acquired, thus retaining the time of measurement
+    private final Queue<BatchSensorDelegate> batchDelegates = new ConcurrentLinkedQueue<>();
+    private final Queue<SensorDelegate> measureDelegates = new ConcurrentLinkedQueue<>();
     @NonNull
     private final BLETransmitter transmitter;
     @NonNull
     private final BLEReceiver receiver;
-    private final ExecutorService operationQueue = Executors.newSingleThreadExecutor();
+    private final ScheduledExecutorService operationQueue = Executors.newSingleThreadScheduledExecutor();
     // Record payload data to enable de-duplication
     private final Map<PayloadData, Date> didReadPayloadData = new ConcurrentHashMap<>();
+    // Proximity measurements collected in current dispatch cycle
+    @NonNull
+    private ProximityBatch proximityBatch = new ProximityBatch();
+    private boolean proximityBatchScheduled = false;
+    private final Runnable dispatchProximityBatch = new Runnable() {
+        @Override
+        public void run() {
+            dispatchProximityBatch();
+        }
+    };
 
     public ConcreteBLESensor(@NonNull final Context context, @NonNull final PayloadDataSupplier payloadDataSupplier) {
         final BluetoothStateManager bluetoothStateManager = new ConcreteBluetoothStateManager(context);
@@ -55,6 +72,11 @@ public class ConcreteBLESensor implements BLESensor, BLEDatabaseDelegate, Blueto
     @Override
     public void add(@NonNull final SensorDelegate delegate) {
         delegates.add(delegate);
+        if (delegate instanceof BatchSensorDelegate) {
+            batchDelegates.add((BatchSensorDelegate) delegate);
+        } else {
+            measureDelegates.add(delegate);
+        }
         transmitter.add(delegate);
         receiver.add(delegate);
     }
@@ -104,28 +126,13 @@ public class ConcreteBLESensor implements BLESensor, BLEDatabaseDelegate, Blueto
                 if (null == rssi) {
                     return;
                 }
-                final Proximity proximity = new Proximity(ProximityMeasurementUnit.RSSI, rssi.value, device.calibration());
-                logger.debug("didMeasure (device={},payloadData={},proximity={})", device, device.payloadData(), proximity.description());
-                operationQueue.execute(new Runnable() {
-                    @Override
-                    public void run() {
-                        for (final SensorDelegate delegate : delegates) {
-                            delegate.sensor(SensorType.BLE, proximity, device.identifier);
-                        }
-                    }
-                });
-                final PayloadData payloadData = device.payloadData();
-                if (null == payloadData) {
-                    return;
+                logger.debug("didMeasure (device={},payloadData={},rssi={})", device, device.payloadData(), rssi.value);
+                if (!batchDelegates.isEmpty()) {
+                    appendToProximityBatch(device, rssi);
+                }
+                if (!measureDelegates.isEmpty()) {
+                    dispatchProximity(device, rssi);
                 }
-                operationQueue.execute(new Runnable() {
-                    @Override
-                    public void run() {
-                        for (final SensorDelegate delegate : delegates) {
-                            delegate.sensor(SensorType.BLE, proximity, device.identifier, payloadData);
-                        }
-                    }
-                });
                 break;
             }
             case payloadData: {
@@ -165,6 +172,69 @@ public class ConcreteBLESensor implements BLESensor, BLEDatabaseDelegate, Blueto
         }
     }
 
+    /**
+     * Add RSSI measurement to batch for current dispatch cycle, and schedule dispatch if this
+     * is the first measurement in the cycle.
+     * @param device BLE device
+     * @param rssi Measured RSSI
+     */
+    private synchronized void appendToProximityBatch(@NonNull final BLEDevice device, @NonNull final RSSI rssi) {
+        proximityBatch.append(System.currentTimeMillis(), device.identifier, device.payloadData(), ProximityMeasurementUnit.RSSI, rssi.value, device.calibration());
+        if (proximityBatchScheduled) {
+            return;
+        }
+        proximityBatchScheduled = true;
+        final TimeInterval interval = BLESensorConfiguration.sensorDelegateBatchInterval;
+        if (interval.value <= 0) {
+            operationQueue.execute(dispatchProximityBatch);
+        } else {
+            operationQueue.schedule(dispatchProximityBatch, interval.millis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Deliver RSSI measurement to delegates that do not accept batches, as didMeasure followed
+     * by didMeasure:withPayload if payload data is known.
+     * @param device BLE device
+     * @param rssi Measured RSSI
+     */
+    private void dispatchProximity(@NonNull final BLEDevice device, @NonNull final RSSI rssi) {
+        final Proximity proximity = new Proximity(ProximityMeasurementUnit.RSSI, rssi.value, device.calibration());
+        final PayloadData payloadData = device.payloadData();
+        operationQueue.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (final SensorDelegate delegate : measureDelegates) {
+                    delegate.sensor(SensorType.BLE, proximity, device.identifier);
+                }
+                if (null == payloadData) {
+                    return;
+                }
+                for (final SensorDelegate delegate : measureDelegates) {
+                    delegate.sensor(SensorType.BLE, proximity, device.identifier, payloadData);
+                }
+            }
+        });
+    }
+
+    /**
+     * Deliver proximity measurements collected in current dispatch cycle to batch delegates.
+     */
+    private void dispatchProximityBatch() {
+        final ProximityBatch batch;
+        synchronized (this) {
+            batch = proximityBatch;
+            proximityBatch = new ProximityBatch(batch.size());
+            proximityBatchScheduled = false;
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        for (final BatchSensorDelegate delegate : batchDelegates) {
+            delegate.sensor(SensorType.BLE, batch);
+        }
+    }
+
     @Override
     public void bleDatabaseDidDelete(@NonNull final BLEDevice device) {
         logger.debug("didDelete (device={})", device.identifier);
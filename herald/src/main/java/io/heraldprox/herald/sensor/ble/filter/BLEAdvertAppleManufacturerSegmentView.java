@@ -0,0 +1,163 @@
+//  Copyright 2020-2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.ble.filter;
+
+import androidx.annotation.NonNull;
+
+import io.heraldprox.herald.sensor.datatype.Data;
+
+/**
+ * Reusable cursor over the Apple messages (type, length, data) in manufacturer specific data,
+ * where each message is an (array, offset, length, type) view over the original raw advert.
+ * <br>- Parsing rules are identical to BLEAdvertParser.extractAppleManufacturerSegments, which
+ *   is an adapter over this view.
+ * <br>- Type "01" marks legacy service UUID encoding without length data, where the message
+ *   extends to the end of the manufacturer data.
+ * <br>- A trailing type byte without length byte is not a complete message and ends parsing.
+ */
+public class BLEAdvertAppleManufacturerSegmentView {
+    private final static byte[] empty = new byte[0];
+    @NonNull
+    private byte[] raw = empty;
+    private int position = 0;
+    private int end = 0;
+    // Message is at raw[messageOffset] with messageLength bytes, including type and length
+    private int messageOffset = 0;
+    private int messageLength = 0;
+    private int messageType = 0;
+    private int reportedLength = 0;
+
+    public BLEAdvertAppleManufacturerSegmentView() {
+    }
+
+    /**
+     * Reset view to parse manufacturer data of segment, positioned before the first message.
+     * @param manufacturerData Manufacturer specific data segment
+     * @return This view
+     */
+    @NonNull
+    public BLEAdvertAppleManufacturerSegmentView reset(@NonNull final BLEAdvertSegmentView manufacturerData) {
+        return reset(manufacturerData.array(), manufacturerData.payloadOffset(), manufacturerData.payloadLength());
+    }
+
+    /**
+     * Reset view to parse manufacturer data (after manufacturer identifier), positioned before
+     * the first message.
+     * @param raw Raw data
+     * @param offset Start of manufacturer data
+     * @param length Length of manufacturer data
+     * @return This view
+     */
+    @NonNull
+    public BLEAdvertAppleManufacturerSegmentView reset(@NonNull final byte[] raw, final int offset, final int length) {
+        this.raw = raw;
+        this.position = offset;
+        this.end = offset + length;
+        this.messageOffset = offset;
+        this.messageLength = 0;
+        this.messageType = 0;
+        this.reportedLength = 0;
+        return this;
+    }
+
+    /**
+     * Advance to next message.
+     * @return True if positioned at next message, false if end of data has been reached.
+     */
+    public boolean next() {
+        if (position >= end) {
+            return false;
+        }
+        final int type = raw[position] & 0xFF;
+        final int remaining = end - position;
+        if (0x01 == type) {
+            messageLength = remaining;
+            reportedLength = remaining - 1;
+        } else {
+            if (remaining < 2) {
+                position = end;
+                return false;
+            }
+            reportedLength = raw[position + 1] & 0xFF;
+            messageLength = Math.min(reportedLength, remaining - 2) + 2;
+        }
+        messageType = type;
+        messageOffset = position;
+        position += messageLength;
+        return true;
+    }
+
+    // MARK:- Message view
+
+    /**
+     * Underlying raw data.
+     * @return Array shared with the caller, must not be modified.
+     */
+    @NonNull
+    public byte[] array() {
+        return raw;
+    }
+
+    /**
+     * Message type, e.g. 0x10 for nearby info.
+     * @return Type code.
+     */
+    public int type() {
+        return messageType;
+    }
+
+    /**
+     * Message length as reported in the message, which may exceed the available data.
+     * @return Reported length in bytes.
+     */
+    public int reportedLength() {
+        return reportedLength;
+    }
+
+    /**
+     * Start of message data in array, after type and length (if present).
+     * @return Offset in array.
+     */
+    public int offset() {
+        return messageOffset + (0x01 == messageType ? 1 : 2);
+    }
+
+    /**
+     * Length of message data available in array.
+     * @return Data length in bytes.
+     */
+    public int length() {
+        return messageLength - (0x01 == messageType ? 1 : 2);
+    }
+
+    /**
+     * Start of message in array, including type and length.
+     * @return Offset in array.
+     */
+    public int rawOffset() {
+        return messageOffset;
+    }
+
+    /**
+     * Length of message, including type and length, as used for device filter matching.
+     * @return Raw length in bytes.
+     */
+    public int rawLength() {
+        return messageLength;
+    }
+
+    // MARK:- Adapters
+
+    /**
+     * Copy message, as produced by BLEAdvertParser.extractAppleManufacturerSegments.
+     * @return Segment with copy of data.
+     */
+    @NonNull
+    public BLEAdvertAppleManufacturerSegment toSegment() {
+        return new BLEAdvertAppleManufacturerSegment(messageType, reportedLength,
+                BLEAdvertParser.subDataBigEndian(raw, offset(), length()),
+                new Data(BLEAdvertParser.subDataBigEndian(raw, messageOffset, messageLength)));
+    }
+}
@@ -7,7 +7,6 @@ package io.heraldprox.herald.sensor.ble.filter;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import io.heraldprox.herald.sensor.datatype.Data;
 import io.heraldprox.herald.sensor.datatype.UInt8;
 
 import java.util.List;
@@ -21,37 +20,20 @@ public class BLEAdvertParser {
         return new BLEScanResponseData(raw.length - offset, extractSegments(raw, offset));
     }
 
+    /**
+     * Extract segments from raw advert data. This is an adapter over BLEAdvertSegmentView
+     * which copies the data of every segment, use the view directly to parse in place.
+     * @param raw Raw advert data
+     * @param offset Start of first segment
+     * @return Segments with copy of data
+     */
     @NonNull
     public static List<BLEAdvertSegment> extractSegments(@NonNull final byte[] raw, final int offset) {
         final ArrayList<BLEAdvertSegment> segments = new ArrayList<>();
-        int position = offset;
-        int segmentLength;
-        int segmentType;
-        byte[] segmentData;
-        Data rawData;
-        int c;
-
-        while (position < raw.length) {
-            if ((position + 2) <= raw.length) {
-                segmentLength = raw[position++] & 0xff;
-                segmentType = raw[position++] & 0xff;
-                // Note: Unsupported types are handled as 'unknown'
-                // check reported length with actual remaining data length
-                if ((position + segmentLength - 1) <= raw.length) {
-                    segmentData = subDataBigEndian(raw, position, segmentLength - 1); // Note: type IS INCLUDED in length
-                    rawData = new Data(subDataBigEndian(raw, position - 2, segmentLength + 1));
-                    position += segmentLength - 1;
-                    segments.add(new BLEAdvertSegment(BLEAdvertSegmentType.typeFor(segmentType), segmentLength - 1, segmentData, rawData));
-                } else {
-                    // error in data length - advance to end
-                    position = raw.length;
-                }
-            } else {
-                // invalid segment - advance to end
-                position = raw.length;
-            }
+        final BLEAdvertSegmentView segment = new BLEAdvertSegmentView(raw, offset);
+        while (segment.next()) {
+            segments.add(segment.toSegment());
         }
-
         return segments;
     }
 
@@ -141,33 +123,21 @@ public class BLEAdvertParser {
         return manufacturerData;
     }
 
+    /**
+     * Extract Apple messages from manufacturer data. This is an adapter over
+     * BLEAdvertAppleManufacturerSegmentView which copies the data of every message, use the
+     * view directly to parse in place.
+     * @param manuData Manufacturer data
+     * @return Apple messages with copy of data
+     */
     @NonNull
     public static List <BLEAdvertAppleManufacturerSegment> extractAppleManufacturerSegments(@NonNull final List <BLEAdvertManufacturerData> manuData) {
         final List<BLEAdvertAppleManufacturerSegment> appleSegments = new ArrayList<>();
+        final BLEAdvertAppleManufacturerSegmentView message = new BLEAdvertAppleManufacturerSegmentView();
         for (final BLEAdvertManufacturerData manu : manuData) {
-            int bytePos = 0;
-            while (bytePos < manu.data.length) {
-                final byte type = manu.data[bytePos];
-                final int typeValue = type & 0xFF;
-                // "01" marks legacy service UUID encoding without length data
-                if (0x01 == type) {
-                    final int length = manu.data.length - bytePos - 1;
-                    final Data data = new Data(subDataBigEndian(manu.data, bytePos + 1, length));
-                    final Data raw = new Data(subDataBigEndian(manu.data, bytePos, manu.data.length - bytePos));
-                    final BLEAdvertAppleManufacturerSegment segment = new BLEAdvertAppleManufacturerSegment(typeValue, length, data.value, raw);
-                    appleSegments.add(segment);
-                    bytePos = manu.data.length;
-                }
-                // Parse according to Type-Length-Data
-                else {
-                    final int length = manu.data[bytePos + 1] & 0xFF;
-                    final int maxLength = Math.min(length, manu.data.length - bytePos - 2);
-                    final Data data = new Data(subDataBigEndian(manu.data, bytePos + 2, maxLength));
-                    final Data raw = new Data(subDataBigEndian(manu.data, bytePos, maxLength + 2));
-                    final BLEAdvertAppleManufacturerSegment segment = new BLEAdvertAppleManufacturerSegment(typeValue, length, data.value, raw);
-                    appleSegments.add(segment);
-                    bytePos += (maxLength + 2);
-                }
+            message.reset(manu.data, 0, manu.data.length);
+            while (message.next()) {
+                appleSegments.add(message.toSegment());
             }
         }
         return appleSegments;
@@ -0,0 +1,216 @@
+//  Copyright 2020-2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.ble.filter;
+
+import androidx.annotation.NonNull;
+
+import io.heraldprox.herald.sensor.datatype.Data;
+
+/**
+ * Reusable cursor over the segments of a raw advert, where each segment is an (array, offset,
+ * length, type) view over the original data. Fields are read in place, thus parsing an advert
+ * requires no allocation unless segment data is explicitly copied, e.g. via toSegment().
+ * <br>- Segmentation rules are identical to BLEAdvertParser.extractSegments, which is an
+ *   adapter over this view.
+ * <br>- Usage: while (view.next()) { ... }
+ */
+public class BLEAdvertSegmentView {
+    private final static byte[] empty = new byte[0];
+    @NonNull
+    private byte[] raw = empty;
+    private int position = 0;
+    // Segment is at raw[segmentOffset], with length (including type) and type bytes
+    private int segmentOffset = 0;
+    private int segmentLength = 0;
+    private int segmentType = 0;
+
+    public BLEAdvertSegmentView() {
+    }
+
+    /**
+     * View over raw advert data, positioned before the first segment.
+     * @param raw Raw advert data
+     * @param offset Start of first segment
+     */
+    public BLEAdvertSegmentView(@NonNull final byte[] raw, final int offset) {
+        reset(raw, offset);
+    }
+
+    /**
+     * Reset view to parse raw advert data, positioned before the first segment.
+     * @param raw Raw advert data
+     * @param offset Start of first segment
+     * @return This view
+     */
+    @NonNull
+    public BLEAdvertSegmentView reset(@NonNull final byte[] raw, final int offset) {
+        this.raw = raw;
+        this.position = offset;
+        this.segmentOffset = offset;
+        this.segmentLength = 0;
+        this.segmentType = 0;
+        return this;
+    }
+
+    /**
+     * Advance to next segment.
+     * @return True if positioned at next segment, false if end of data has been reached or
+     * the remaining data does not contain a complete segment.
+     */
+    public boolean next() {
+        if (position < 0 || position + 2 > raw.length) {
+            position = raw.length;
+            return false;
+        }
+        final int length = raw[position] & 0xff;
+        // Check reported length with actual remaining data length, noting type is included in length
+        if (position + 2 + length - 1 > raw.length) {
+            position = raw.length;
+            return false;
+        }
+        segmentOffset = position;
+        segmentLength = length;
+        segmentType = raw[position + 1] & 0xff;
+        position += 2 + length - 1;
+        return true;
+    }
+
+    // MARK:- Segment view
+
+    /**
+     * Underlying raw advert data.
+     * @return Array shared with the caller, must not be modified.
+     */
+    @NonNull
+    public byte[] array() {
+        return raw;
+    }
+
+    /**
+     * Segment type code.
+     * @return Type code, see BLEAdvertSegmentType.
+     */
+    public int type() {
+        return segmentType;
+    }
+
+    @NonNull
+    public BLEAdvertSegmentType segmentType() {
+        return BLEAdvertSegmentType.typeFor(segmentType);
+    }
+
+    /**
+     * Start of segment data (after length and type) in array.
+     * @return Offset in array.
+     */
+    public int offset() {
+        return segmentOffset + 2;
+    }
+
+    /**
+     * Length of segment data (excluding length and type).
+     * @return Data length in bytes.
+     */
+    public int length() {
+        return Math.max(0, segmentLength - 1);
+    }
+
+    /**
+     * Start of segment in array, including length and type.
+     * @return Offset in array.
+     */
+    public int rawOffset() {
+        return segmentOffset;
+    }
+
+    /**
+     * Length of segment, including length and type.
+     * @return Raw length in bytes.
+     */
+    public int rawLength() {
+        return segmentLength + 1;
+    }
+
+    // MARK:- Typed accessors
+
+    /**
+     * Read unsigned byte in segment data.
+     * @param index Index in segment data.
+     * @return Value in range 0-255.
+     */
+    public int uint8(final int index) {
+        return raw[offset() + index] & 0xff;
+    }
+
+    /**
+     * Read unsigned little endian 16-bit value in segment data.
+     * @param index Index in segment data.
+     * @return Value in range 0-65535.
+     */
+    public int uint16(final int index) {
+        return (raw[offset() + index] & 0xff) | ((raw[offset() + index + 1] & 0xff) << 8);
+    }
+
+    /**
+     * Is this a manufacturer specific data segment with manufacturer identifier?
+     * @return True if manufacturer identifier and data are available.
+     */
+    public boolean isManufacturerData() {
+        return BLEAdvertSegmentType.manufacturerData.code == segmentType && length() >= 2;
+    }
+
+    /**
+     * Manufacturer identifier of manufacturer specific data segment, e.g. 0x004C for Apple.
+     * @return Manufacturer identifier.
+     */
+    public int manufacturer() {
+        return uint16(0);
+    }
+
+    /**
+     * Is this a 16-bit service UUID data segment with service UUID?
+     * @return True if service UUID and data are available.
+     */
+    public boolean isServiceUUID16Data() {
+        return BLEAdvertSegmentType.serviceUUID16Data.code == segmentType && length() >= 2;
+    }
+
+    /**
+     * Service UUID of 16-bit service UUID data segment, e.g. 0xFD6F.
+     * @return Service UUID.
+     */
+    public int serviceUUID16() {
+        return uint16(0);
+    }
+
+    /**
+     * Start of manufacturer or service data (after identifier) in array.
+     * @return Offset in array.
+     */
+    public int payloadOffset() {
+        return offset() + 2;
+    }
+
+    /**
+     * Length of manufacturer or service data (excluding identifier).
+     * @return Length in bytes.
+     */
+    public int payloadLength() {
+        return Math.max(0, length() - 2);
+    }
+
+    // MARK:- Adapters
+
+    /**
+     * Copy segment data, as produced by BLEAdvertParser.extractSegments.
+     * @return Segment with copy of data.
+     */
+    @NonNull
+    public BLEAdvertSegment toSegment() {
+        return new BLEAdvertSegment(segmentType(), segmentLength - 1,
+                BLEAdvertParser.subDataBigEndian(raw, offset(), segmentLength - 1),
+                new Data(BLEAdvertParser.subDataBigEndian(raw, segmentOffset, segmentLength + 1)));
+    }
+}
@@ -12,6 +12,7 @@ import androidx.annotation.Nullable;
 
 import io.heraldprox.herald.sensor.ble.BLEDevice;
 import io.heraldprox.herald.sensor.ble.BLESensorConfiguration;
+import io.heraldprox.herald.sensor.data.BufferedTextFile;
 import io.heraldprox.herald.sensor.data.ConcreteSensorLogger;
 import io.heraldprox.herald.sensor.data.SensorLogger;
 import io.heraldprox.herald.sensor.data.TextFile;
@@ -20,10 +21,8 @@ import io.heraldprox.herald.sensor.datatype.Data;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.TimeZone;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -38,16 +37,20 @@ public class BLEDeviceFilter {
     }
     private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "BLE.BLEDeviceFilter");
     @Nullable
-    private final List<FilterPattern> filterPatterns;
+    private volatile BLEFilterPatternMatcher filterPatternMatcher = null;
+    @NonNull
+    private final BLEFilterVerdictCache verdictCache = new BLEFilterVerdictCache(BLESensorConfiguration.deviceFilterVerdictCacheSize);
     @Nullable
-    private final TextFile textFile;
-    private final Map<Data, ShouldIgnore> samples = new HashMap<>();
-
-    // Counter for training samples
-    private final static class ShouldIgnore {
-        public long yes = 0;
-        public long no = 0;
-    }
+    private final BufferedTextFile textFile;
+    @Nullable
+    private final BLEDeviceFilterRules rules;
+    @Nullable
+    private String[] patterns = null;
+    // Configuration at last compile, checked on match to invalidate verdicts on change
+    private volatile boolean trainingEnabled = BLESensorConfiguration.deviceFilterTrainingEnabled;
+    // Configured patterns that patterns were taken from, or null if patterns were given explicitly
+    @Nullable
+    private volatile String[] configuredPatterns = null;
 
     // Pattern for filtering device based on message content
     public final static class FilterPattern {
@@ -101,19 +104,90 @@ public class BLEDeviceFilter {
      * @param patterns Patterns for matching
      */
     public BLEDeviceFilter(@Nullable final Context context, @Nullable final String file, @Nullable final String[] patterns) {
+        this(context, file, patterns, null);
+    }
+
+    /**
+     * BLE device filter for matching devices against the given set of patterns and learned
+     * rules, and writing advert data to file for analysis. Patterns given as
+     * BLESensorConfiguration.deviceFilterFeaturePatterns follow changes to the configuration.
+     * @param context Application context
+     * @param file Target file
+     * @param patterns Patterns for matching
+     * @param rules Learned rules for matching in addition to patterns, updated by training
+     */
+    public BLEDeviceFilter(@Nullable final Context context, @Nullable final String file, @Nullable final String[] patterns, @Nullable final BLEDeviceFilterRules rules) {
         if (null == context || null == file) {
             textFile = null;
         } else {
-            textFile = new TextFile(context, file);
+            final TextFile textFile = new TextFile(context, file);
             if (textFile.empty()) {
                 textFile.write("time,ignore,featureData,scanRecordRawData,identifier,rssi,deviceModel,deviceName");
             }
+            this.textFile = new BufferedTextFile(textFile);
+        }
+        this.rules = rules;
+        patterns(patterns);
+        if (null != patterns && patterns == BLESensorConfiguration.deviceFilterFeaturePatterns) {
+            configuredPatterns = patterns;
+        }
+    }
+
+    /**
+     * Replace the set of patterns for matching. This invalidates all cached verdicts.
+     * @param patterns Patterns for matching
+     */
+    public synchronized void patterns(@Nullable final String[] patterns) {
+        this.patterns = patterns;
+        this.configuredPatterns = null;
+        compile();
+    }
+
+    /**
+     * Compile patterns into matcher if BLESensorConfiguration.deviceFilterTrainingEnabled or
+     * deviceFilterFeaturePatterns have changed since the last compile, as cached verdicts
+     * depend on both.
+     */
+    private synchronized void compileOnConfigurationChange() {
+        final String[] configuredPatterns = this.configuredPatterns;
+        if (null != configuredPatterns && configuredPatterns != BLESensorConfiguration.deviceFilterFeaturePatterns) {
+            this.patterns = BLESensorConfiguration.deviceFilterFeaturePatterns;
+            this.configuredPatterns = this.patterns;
+            compile();
+        } else if (trainingEnabled != BLESensorConfiguration.deviceFilterTrainingEnabled) {
+            compile();
         }
-        if (BLESensorConfiguration.deviceFilterTrainingEnabled || null == patterns || 0 == patterns.length) {
-            filterPatterns = null;
+    }
+
+    /**
+     * Compile patterns into matcher, and invalidate all cached verdicts.
+     */
+    private synchronized void compile() {
+        trainingEnabled = BLESensorConfiguration.deviceFilterTrainingEnabled;
+        if (trainingEnabled || null == patterns || 0 == patterns.length) {
+            filterPatternMatcher = null;
         } else {
-            filterPatterns = compilePatterns(patterns);
+            filterPatternMatcher = new BLEFilterPatternMatcher(compilePatterns(patterns));
         }
+        verdictCache.invalidate();
+    }
+
+    /**
+     * Learned rules, updated by training.
+     * @return Learned rules, or null if learning is disabled for this filter.
+     */
+    @Nullable
+    public BLEDeviceFilterRules rules() {
+        return rules;
+    }
+
+    /**
+     * Cache of verdicts by manufacturer specific data, for monitoring hit and miss counts.
+     * @return Verdict cache
+     */
+    @NonNull
+    public BLEFilterVerdictCache verdictCache() {
+        return verdictCache;
     }
 
     // MARK:- Pattern matching functions
@@ -176,33 +250,23 @@ public class BLEDeviceFilter {
      */
     @Nullable
     protected static List<Data> extractMessages(@Nullable final byte[] rawScanRecordData) {
-        // Parse raw scan record data in scan response data
         if (null == rawScanRecordData || 0 == rawScanRecordData.length) {
             return null;
         }
-        final BLEScanResponseData bleScanResponseData = BLEAdvertParser.parseScanResponse(rawScanRecordData, 0);
-        // Parse scan response data into manufacturer specific data
-        //noinspection ConstantConditions
-        if (null == bleScanResponseData || null == bleScanResponseData.segments || bleScanResponseData.segments.isEmpty()) {
-            return null;
-        }
-        final List<BLEAdvertManufacturerData> bleAdvertManufacturerDataList = BLEAdvertParser.extractManufacturerData(bleScanResponseData.segments);
-        // Parse manufacturer specific data into messages
-        //noinspection ConstantConditions
-        if (null == bleAdvertManufacturerDataList || bleAdvertManufacturerDataList.isEmpty()) {
-            return null;
-        }
-        final List<BLEAdvertAppleManufacturerSegment> bleAdvertAppleManufacturerSegments = BLEAdvertParser.extractAppleManufacturerSegments(bleAdvertManufacturerDataList);
-        // Convert segments to messages
-        //noinspection ConstantConditions
-        if (null == bleAdvertAppleManufacturerSegments || bleAdvertAppleManufacturerSegments.isEmpty()) {
-            return null;
-        }
-        final List<Data> messages = new ArrayList<>(bleAdvertAppleManufacturerSegments.size());
-        for (final BLEAdvertAppleManufacturerSegment segment : bleAdvertAppleManufacturerSegments) {
-            //noinspection ConstantConditions
-            if (null != segment && null != segment.raw && segment.raw.value.length > 0) {
-                messages.add(segment.raw);
+        // Parse raw scan record data in place, copying only the messages
+        List<Data> messages = null;
+        final BLEAdvertSegmentView segment = new BLEAdvertSegmentView(rawScanRecordData, 0);
+        final BLEAdvertAppleManufacturerSegmentView message = new BLEAdvertAppleManufacturerSegmentView();
+        while (segment.next()) {
+            if (!segment.isManufacturerData()) {
+                continue;
+            }
+            message.reset(segment);
+            while (message.next()) {
+                if (null == messages) {
+                    messages = new ArrayList<>();
+                }
+                messages.add(new Data(BLEAdvertParser.subDataBigEndian(rawScanRecordData, message.rawOffset(), message.rawLength())));
             }
         }
         return messages;
@@ -242,26 +306,23 @@ public class BLEDeviceFilter {
         if (null == scanRecordData) {
             return;
         }
-        final List<Data> featureList = extractFeatures(scanRecord);
+        final List<Data> featureList;
+        try {
+            featureList = extractFeatures(scanRecord);
+        } catch (Throwable e) {
+            logger.fault("train, failed to extract features (device={},scanRecord={})", device, scanRecordData.hexEncodedString());
+            return;
+        }
         if (null == featureList) {
             return;
         }
-        // Update ignore yes/no counts for feature data
+        // Update learned rules
+        train(featureList, ignore);
+        // Write samples to text file for analysis
         for (final Data featureData : featureList) {
-            ShouldIgnore shouldIgnore = samples.get(featureData);
-            if (null == shouldIgnore) {
-                shouldIgnore = new ShouldIgnore();
-                samples.put(featureData, shouldIgnore);
-            }
-            if (ignore) {
-                shouldIgnore.yes++;
-            } else {
-                shouldIgnore.no++;
-            }
             logger.debug("train (ignore={},feature={},scanRecord={},device={})", (ignore ? "Y" : "N"), featureData.hexEncodedString(), scanRecordData.hexEncodedString(), device.description());
-            // Write sample to text file for analysis
             if (null == textFile) {
-                return;
+                continue;
             }
             final StringBuilder stringBuilder = new StringBuilder();
             stringBuilder.append('"');
@@ -296,6 +357,40 @@ public class BLEDeviceFilter {
         }
     }
 
+    /**
+     * Add training example to learned rules.
+     * @param rawScanRecordData Raw scan record data of example device
+     * @param ignore Should this device be ignored
+     */
+    protected void train(@Nullable final byte[] rawScanRecordData, final boolean ignore) {
+        final List<Data> messages;
+        try {
+            messages = extractMessages(rawScanRecordData);
+        } catch (Throwable e) {
+            logger.fault("train, failed to extract messages (scanRecord={})", (null == rawScanRecordData ? null : new Data(rawScanRecordData).hexEncodedString()));
+            return;
+        }
+        if (null == messages) {
+            return;
+        }
+        train(messages, ignore);
+    }
+
+    /**
+     * Add training example to learned rules, and invalidate cached verdicts if rules have changed.
+     * @param messages Messages in advert of example device
+     * @param ignore Should this device be ignored
+     */
+    private void train(@NonNull final List<Data> messages, final boolean ignore) {
+        if (null == rules || messages.isEmpty()) {
+            return;
+        }
+        if (rules.train(messages, ignore)) {
+            logger.debug("train, rules updated (rules={})", rules.patterns());
+            verdictCache.invalidate();
+        }
+    }
+
     /**
      * Match filter patterns against data items, returning the first match
      * @param patternList List of patterns
@@ -335,6 +430,88 @@ public class BLEDeviceFilter {
         return null;
     }
 
+    /**
+     * Match filter patterns against data items, returning the first match. This is equivalent
+     * to matching against the pattern list, but operates on the raw message bytes.
+     * @param matcher Compiled patterns
+     * @param rawData Raw data
+     * @return First matching pattern
+     */
+    @Nullable
+    protected static MatchingPattern match(@Nullable final BLEFilterPatternMatcher matcher, @Nullable final Data rawData) {
+        // No pattern to match against
+        if (null == matcher) {
+            return null;
+        }
+        // Empty raw data
+        //noinspection ConstantConditions
+        if (null == rawData || null == rawData.value || 0 == rawData.value.length) {
+            return null;
+        }
+        // Parse messages in place and match in advert order
+        final BLEAdvertSegmentView segment = new BLEAdvertSegmentView(rawData.value, 0);
+        final BLEAdvertAppleManufacturerSegmentView message = new BLEAdvertAppleManufacturerSegmentView();
+        while (segment.next()) {
+            if (!segment.isManufacturerData()) {
+                continue;
+            }
+            message.reset(segment);
+            while (message.next()) {
+                try {
+                    final FilterPattern pattern = matcher.match(message.array(), message.rawOffset(), message.rawLength());
+                    if (null != pattern) {
+                        return new MatchingPattern(pattern, BLEFilterPatternMatcher.hexEncodedString(message.array(), message.rawOffset(), message.rawLength()));
+                    }
+                } catch (Throwable e) {
+                    // Errors are acceptable
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Match learned rules against data items, where all messages must be covered by a rule.
+     * @param rules Learned rules
+     * @param rawData Raw data
+     * @return Rule matching the first message, or null if any message is not covered by a rule.
+     */
+    @Nullable
+    protected static MatchingPattern match(@NonNull final BLEDeviceFilterRules rules, @Nullable final Data rawData) {
+        // Empty raw data
+        //noinspection ConstantConditions
+        if (null == rawData || null == rawData.value || 0 == rawData.value.length) {
+            return null;
+        }
+        // Parse messages in place, all messages must be covered by a rule
+        int firstRule = -1;
+        int firstOffset = 0;
+        int firstLength = 0;
+        final BLEAdvertSegmentView segment = new BLEAdvertSegmentView(rawData.value, 0);
+        final BLEAdvertAppleManufacturerSegmentView message = new BLEAdvertAppleManufacturerSegmentView();
+        while (segment.next()) {
+            if (!segment.isManufacturerData()) {
+                continue;
+            }
+            message.reset(segment);
+            while (message.next()) {
+                final int rule = rules.rule(message.array(), message.rawOffset(), message.rawLength());
+                if (rule < 0) {
+                    return null;
+                }
+                if (firstRule < 0) {
+                    firstRule = rule;
+                    firstOffset = message.rawOffset();
+                    firstLength = message.rawLength();
+                }
+            }
+        }
+        if (firstRule < 0) {
+            return null;
+        }
+        return new MatchingPattern(rules.filterPattern(firstRule), BLEFilterPatternMatcher.hexEncodedString(rawData.value, firstOffset, firstLength));
+    }
+
     /**
      * Match scan record messages against all registered patterns, returns matching pattern or null.
      * @param device BLE device
@@ -353,18 +530,7 @@ public class BLEDeviceFilter {
             if (null == bytes) {
                 return null;
             }
-            final Data rawData = new Data(bytes);
-            // Attempt to match
-            final MatchingPattern matchingPattern = match(filterPatterns, rawData);
-            //noinspection ConstantConditions
-            if (null == matchingPattern || null == matchingPattern.filterPattern ||
-                    null == matchingPattern.filterPattern.pattern ||
-                    null == matchingPattern.filterPattern.regularExpression ||
-                    null == matchingPattern.message) {
-                return null;
-            } else {
-                return matchingPattern;
-            }
+            return match(bytes);
         } catch (Throwable e) {
             logger.fault("match, unknown error (device={},scanRecord={})", device, device.scanRecord());
             return null;
@@ -372,39 +538,45 @@ public class BLEDeviceFilter {
     }
 
     /**
-     * Should the device be ignored based on scan record data?
-     * @param device BLE device
-     * @return True if device should be ignored, false otherwise
+     * Match raw scan record data against all registered patterns, using cached verdict for
+     * previously seen manufacturer specific data. Cached verdicts are invalidated if the
+     * configuration has changed since they were evaluated.
+     * @param rawScanRecordData Raw scan record data
+     * @return Matching pattern, or null if none is found
      */
-    private boolean ignoreBasedOnStatistics(@NonNull final BLEDevice device) {
-        final ScanRecord scanRecord = device.scanRecord();
-        // Do not ignore device without any scan record data
-        if (null == scanRecord) {
-            return false;
+    @Nullable
+    protected MatchingPattern match(@NonNull final byte[] rawScanRecordData) {
+        // Cannot match scan record without manufacturer specific data
+        final Data key = BLEFilterVerdictCache.key(rawScanRecordData);
+        if (null == key) {
+            return null;
         }
-        // Extract feature data from scan record
-        // Do not ignore device without any feature data
-        final List<Data> featureList = extractFeatures(scanRecord);
-        if (null == featureList) {
-            return false;
+        // Configuration may be changed at any time, e.g. enabling training
+        if (trainingEnabled != BLESensorConfiguration.deviceFilterTrainingEnabled ||
+                (null != configuredPatterns && configuredPatterns != BLESensorConfiguration.deviceFilterFeaturePatterns)) {
+            compileOnConfigurationChange();
         }
-        for (final Data featureData : featureList) {
-            // Get training example statistics
-            final ShouldIgnore shouldIgnore = samples.get(featureData);
-            // Do not ignore device based on unknown feature data
-            if (null == shouldIgnore) {
-                return false;
-            }
-            // Do not ignore device if there is even one example of it being legitimate
-            if (shouldIgnore.no > 0) {
-                return false;
-            }
-            // Ignore device if the signature has been registered for ignore more than twice
-            if (shouldIgnore.yes > 2) {
-                return true;
-            }
+        // Use cached verdict for known manufacturer specific data
+        final BLEFilterVerdictCache.Verdict cachedVerdict = verdictCache.get(key);
+        if (null != cachedVerdict) {
+            return cachedVerdict.matchingPattern;
+        }
+        // Attempt to match
+        final long generation = verdictCache.generation();
+        MatchingPattern matchingPattern = match(filterPatternMatcher, new Data(rawScanRecordData));
+        if (null == matchingPattern && null != rules && !trainingEnabled) {
+            matchingPattern = match(rules, new Data(rawScanRecordData));
+        }
+        //noinspection ConstantConditions
+        if (null == matchingPattern || null == matchingPattern.filterPattern ||
+                null == matchingPattern.filterPattern.pattern ||
+                null == matchingPattern.filterPattern.regularExpression ||
+                null == matchingPattern.message) {
+            verdictCache.put(key, generation, new BLEFilterVerdictCache.Verdict(null));
+            return null;
+        } else {
+            verdictCache.put(key, generation, new BLEFilterVerdictCache.Verdict(matchingPattern));
+            return matchingPattern;
         }
-        // Do not ignore device if no decision is reached based on existing rules
-        return false;
     }
 }
@@ -0,0 +1,463 @@
+//  Copyright 2020-2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.ble.filter;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import io.heraldprox.herald.sensor.ble.BLESensorConfiguration;
+import io.heraldprox.herald.sensor.data.ConcreteSensorLogger;
+import io.heraldprox.herald.sensor.data.SensorLogger;
+import io.heraldprox.herald.sensor.datatype.Data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Pattern;
+
+/**
+ * Adaptive device filter rules learned online from connection outcomes. Every Apple message in
+ * the advert of a connected device is broken down into features, and the ignore (no payload
+ * characteristic found) and legitimate counts for each feature are accumulated. A feature is
+ * promoted to an ignore rule once it has sufficient ignore examples at the required confidence
+ * level, and demoted again if contrary evidence is found.
+ * <br>- Features are the message type (e.g. "^07"), and the message type with one of the first
+ *   two data bytes (e.g. "^10....04"), which are the forms of the hand maintained patterns.
+ * <br>- A device is only ignored if every message in its advert is covered by a rule, such that
+ *   an advert carrying any message that has never been seen on an ignored device (e.g. the
+ *   overflow area of an iOS device running the app in background) is never filtered, even if
+ *   it also carries messages that are common on ignored devices (e.g. nearby info).
+ * <br>- Feature counts and rules are persisted in a compact binary file (11 bytes per feature).
+ */
+public class BLEDeviceFilterRules {
+    private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "BLE.BLEDeviceFilterRules");
+    private final static byte[] fileHeader = new byte[]{'H', 'D', 'F', 'R'};
+    private final static int fileVersion = 1;
+    // Number of data bytes after message type and length to use as features, limited to the
+    // first two bytes as later bytes are often random (e.g. authentication tag in nearby info)
+    private final static int featureDepth = 2;
+    // Upper bound on feature table size to limit memory usage
+    private final static int featureLimit = 4096;
+    // Persist counts after this many training samples, even if rules have not changed
+    private final static int persistInterval = 100;
+    // Shared by all persisted rules, as writes are infrequent
+    @NonNull
+    private final static ExecutorService executorService = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "BLEDeviceFilterRules");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    @Nullable
+    private final File file;
+    @NonNull
+    private final Map<Integer, Counts> features = new HashMap<>();
+    @NonNull
+    private final TreeSet<Integer> rules = new TreeSet<>();
+    @NonNull
+    private final Map<Integer, BLEDeviceFilter.FilterPattern> filterPatterns = new HashMap<>();
+    private long samplesSincePersist = 0;
+
+    // Counter for training samples
+    private final static class Counts {
+        public int yes = 0;
+        public int no = 0;
+
+        public Counts() {
+        }
+
+        public Counts(final int yes, final int no) {
+            this.yes = yes;
+            this.no = no;
+        }
+    }
+
+    /**
+     * In-memory rules that are not persisted.
+     */
+    public BLEDeviceFilterRules() {
+        this.file = null;
+    }
+
+    /**
+     * Rules persisted in file, existing rules are loaded from file if available.
+     * @param file Binary file for persisting rules.
+     */
+    public BLEDeviceFilterRules(@NonNull final File file) {
+        this.file = file;
+        if (file.exists()) {
+            try {
+                final FileInputStream fileInputStream = new FileInputStream(file);
+                read(fileInputStream);
+                fileInputStream.close();
+                logger.debug("Loaded rules (file={},features={},rules={})", file, features.size(), rules.size());
+            } catch (Throwable e) {
+                logger.fault("Load rules failed (file={})", file, e);
+                features.clear();
+                rules.clear();
+            }
+        }
+    }
+
+    // MARK:- Features
+
+    /**
+     * Encode feature as integer.
+     * @param type Message type
+     * @param position Zero for message type only, otherwise position of data byte (1 = first data byte)
+     * @param value Data byte value, zero for message type only
+     * @return Encoded feature
+     */
+    protected static int feature(final int type, final int position, final int value) {
+        return ((type & 0xFF) << 16) | ((position & 0xFF) << 8) | (value & 0xFF);
+    }
+
+    /**
+     * Extract features from message.
+     * @param message Apple message (type, length, data)
+     * @return Encoded features
+     */
+    @NonNull
+    protected static int[] features(@NonNull final Data message) {
+        final byte[] value = message.value;
+        if (0 == value.length) {
+            return new int[0];
+        }
+        final int positions = Math.min(featureDepth, Math.max(0, value.length - 2));
+        final int[] features = new int[1 + positions];
+        features[0] = feature(value[0], 0, 0);
+        for (int i=1; i<=positions; i++) {
+            features[i] = feature(value[0], i, value[1 + i]);
+        }
+        return features;
+    }
+
+    /**
+     * Regular expression equivalent to feature, over hex encoded message.
+     * @param feature Encoded feature
+     * @return Start anchored regular expression, e.g. "^10....04"
+     */
+    @NonNull
+    protected static String pattern(final int feature) {
+        final int type = (feature >>> 16) & 0xFF;
+        final int position = (feature >>> 8) & 0xFF;
+        final int value = feature & 0xFF;
+        final StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append('^');
+        stringBuilder.append(String.format("%02X", type));
+        if (position > 0) {
+            // Skip length and preceding data bytes
+            for (int i=0; i<position; i++) {
+                stringBuilder.append("..");
+            }
+            stringBuilder.append(String.format("%02X", value));
+        }
+        return stringBuilder.toString();
+    }
+
+    // MARK:- Training
+
+    /**
+     * Add training example.
+     * @param messages Apple messages in advert of example device
+     * @param ignore Should this device be ignored
+     * @return True if rules have changed as a result of this example, false otherwise.
+     */
+    public synchronized boolean train(@NonNull final List<Data> messages, final boolean ignore) {
+        boolean changed = false;
+        for (final Data message : messages) {
+            //noinspection ConstantConditions
+            if (null == message || null == message.value) {
+                continue;
+            }
+            for (final int feature : features(message)) {
+                Counts counts = features.get(feature);
+                if (null == counts) {
+                    if (features.size() >= featureLimit) {
+                        continue;
+                    }
+                    counts = new Counts();
+                    features.put(feature, counts);
+                }
+                if (ignore) {
+                    if (counts.yes < Integer.MAX_VALUE) {
+                        counts.yes++;
+                    }
+                } else {
+                    if (counts.no < Integer.MAX_VALUE) {
+                        counts.no++;
+                    }
+                }
+                changed |= update(feature, counts);
+            }
+        }
+        // Persist snapshot on rule change, and periodically to retain counts
+        samplesSincePersist++;
+        if (null != file && (changed || samplesSincePersist >= persistInterval)) {
+            samplesSincePersist = 0;
+            persist(toByteArray());
+        }
+        return changed;
+    }
+
+    /**
+     * Promote or demote feature according to counts.
+     * @param feature Encoded feature
+     * @param counts Training counts for feature
+     * @return True if rule was added or removed.
+     */
+    private boolean update(final int feature, @NonNull final Counts counts) {
+        final boolean isRule = counts.yes >= BLESensorConfiguration.deviceFilterLearningMinimumSamples &&
+                counts.yes >= BLESensorConfiguration.deviceFilterLearningConfidence * ((double) counts.yes + counts.no);
+        if (isRule) {
+            if (rules.add(feature)) {
+                logger.debug("Promoted feature to rule (pattern={},yes={},no={})", pattern(feature), counts.yes, counts.no);
+                return true;
+            }
+        } else {
+            if (rules.remove(feature)) {
+                logger.debug("Demoted rule (pattern={},yes={},no={})", pattern(feature), counts.yes, counts.no);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Match messages against learned rules.
+     * @param messages Apple messages in advert
+     * @return Rule matching the first message, or null if any message is not covered by a rule.
+     */
+    @Nullable
+    public synchronized BLEDeviceFilter.MatchingPattern match(@NonNull final List<Data> messages) {
+        if (rules.isEmpty()) {
+            return null;
+        }
+        int firstRule = -1;
+        Data firstMessage = null;
+        for (final Data message : messages) {
+            //noinspection ConstantConditions
+            if (null == message || null == message.value) {
+                continue;
+            }
+            final int rule = rule(message.value, 0, message.value.length);
+            // Message not covered by any rule
+            if (rule < 0) {
+                return null;
+            }
+            if (firstRule < 0) {
+                firstRule = rule;
+                firstMessage = message;
+            }
+        }
+        if (firstRule < 0) {
+            return null;
+        }
+        return new BLEDeviceFilter.MatchingPattern(filterPattern(firstRule), firstMessage.hexEncodedString());
+    }
+
+    /**
+     * Find rule covering message.
+     * @param array Data containing the message
+     * @param offset Start of message (type) in data
+     * @param length Length of message in bytes
+     * @return Rule covering message, or -1 if message is not covered by any rule.
+     */
+    protected synchronized int rule(@NonNull final byte[] array, final int offset, final int length) {
+        if (rules.isEmpty() || length <= 0) {
+            return -1;
+        }
+        final int type = array[offset];
+        final int typeFeature = feature(type, 0, 0);
+        if (rules.contains(typeFeature)) {
+            return typeFeature;
+        }
+        final int positions = Math.min(featureDepth, length - 2);
+        for (int i=1; i<=positions; i++) {
+            final int feature = feature(type, i, array[offset + 1 + i]);
+            if (rules.contains(feature)) {
+                return feature;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get filter pattern for rule, compiling the pattern on first use.
+     * @param rule Encoded feature
+     * @return Filter pattern equivalent to rule
+     */
+    @NonNull
+    protected synchronized BLEDeviceFilter.FilterPattern filterPattern(final int rule) {
+        BLEDeviceFilter.FilterPattern filterPattern = filterPatterns.get(rule);
+        if (null == filterPattern) {
+            final String regularExpression = pattern(rule);
+            filterPattern = new BLEDeviceFilter.FilterPattern(regularExpression, Pattern.compile(regularExpression, Pattern.CASE_INSENSITIVE));
+            filterPatterns.put(rule, filterPattern);
+        }
+        return filterPattern;
+    }
+
+    /**
+     * Learned rules as regular expressions, for diagnostics.
+     * @return Regular expressions in feature order.
+     */
+    @NonNull
+    public synchronized List<String> patterns() {
+        final List<String> patterns = new ArrayList<>(rules.size());
+        for (final int feature : rules) {
+            patterns.add(pattern(feature));
+        }
+        return patterns;
+    }
+
+    /**
+     * Number of learned rules.
+     * @return Rule count.
+     */
+    public synchronized int size() {
+        return rules.size();
+    }
+
+    /**
+     * Number of features with training counts.
+     * @return Feature count.
+     */
+    public synchronized int features() {
+        return features.size();
+    }
+
+    // MARK:- Persistence
+
+    /**
+     * Write feature counts in binary format.
+     * @param outputStream Target stream
+     * @throws IOException On write failure
+     */
+    public synchronized void write(@NonNull final OutputStream outputStream) throws IOException {
+        final DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+        dataOutputStream.write(fileHeader);
+        dataOutputStream.writeByte(fileVersion);
+        dataOutputStream.writeInt(features.size());
+        for (final Map.Entry<Integer, Counts> entry : features.entrySet()) {
+            final int feature = entry.getKey();
+            dataOutputStream.writeByte(feature >>> 16);
+            dataOutputStream.writeByte(feature >>> 8);
+            dataOutputStream.writeByte(feature);
+            dataOutputStream.writeInt(entry.getValue().yes);
+            dataOutputStream.writeInt(entry.getValue().no);
+        }
+        dataOutputStream.flush();
+    }
+
+    /**
+     * Replace feature counts with data in binary format, and derive rules from counts
+     * according to current configuration.
+     * @param inputStream Source stream
+     * @throws IOException On read failure or invalid data
+     */
+    public synchronized void read(@NonNull final InputStream inputStream) throws IOException {
+        final DataInputStream dataInputStream = new DataInputStream(inputStream);
+        final byte[] header = new byte[fileHeader.length];
+        dataInputStream.readFully(header);
+        for (int i=0; i<header.length; i++) {
+            if (header[i] != fileHeader[i]) {
+                throw new IOException("Invalid header");
+            }
+        }
+        final int version = dataInputStream.readUnsignedByte();
+        if (fileVersion != version) {
+            throw new IOException("Unsupported version " + version);
+        }
+        final int count = dataInputStream.readInt();
+        if (count < 0 || count > featureLimit) {
+            throw new IOException("Invalid feature count " + count);
+        }
+        features.clear();
+        rules.clear();
+        for (int i=0; i<count; i++) {
+            final int type = dataInputStream.readUnsignedByte();
+            final int position = dataInputStream.readUnsignedByte();
+            final int value = dataInputStream.readUnsignedByte();
+            final Counts counts = new Counts(dataInputStream.readInt(), dataInputStream.readInt());
+            final int feature = feature(type, position, value);
+            features.put(feature, counts);
+            update(feature, counts);
+        }
+    }
+
+    /**
+     * Serialise feature counts to binary data.
+     * @return Binary data
+     */
+    @NonNull
+    protected synchronized byte[] toByteArray() {
+        final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(9 + features.size() * 11);
+        try {
+            write(byteArrayOutputStream);
+        } catch (IOException e) {
+            logger.fault("Serialise rules failed", e);
+        }
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    /**
+     * Write snapshot to file asynchronously, via temporary file to avoid partial writes.
+     * Snapshots are written in submission order by the shared single thread executor.
+     * @param snapshot Binary data
+     */
+    private void persist(@NonNull final byte[] snapshot) {
+        if (null == file) {
+            return;
+        }
+        executorService.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final File temporaryFile = new File(file.getParentFile(), file.getName() + ".tmp");
+                    final FileOutputStream fileOutputStream = new FileOutputStream(temporaryFile);
+                    fileOutputStream.write(snapshot);
+                    fileOutputStream.flush();
+                    fileOutputStream.close();
+                    if (!temporaryFile.renameTo(file)) {
+                        logger.fault("Persist rules failed (file={},reason=renameFailed)", file);
+                    }
+                } catch (Throwable e) {
+                    logger.fault("Persist rules failed (file={})", file, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Load rules from binary data, for testing.
+     * @param data Binary data
+     * @return Rules
+     * @throws IOException On invalid data
+     */
+    @NonNull
+    protected static BLEDeviceFilterRules fromByteArray(@NonNull final byte[] data) throws IOException {
+        final BLEDeviceFilterRules rules = new BLEDeviceFilterRules();
+        rules.read(new ByteArrayInputStream(data));
+        return rules;
+    }
+}
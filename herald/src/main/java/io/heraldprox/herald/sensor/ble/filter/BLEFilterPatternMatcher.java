@@ -0,0 +1,197 @@
+//  Copyright 2020-2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.ble.filter;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import io.heraldprox.herald.sensor.datatype.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+
+/**
+ * Matcher for a set of filter patterns that operates directly on raw message bytes.
+ * <br>- Patterns of the form "^" followed by hex digits and "." wildcards (e.g. "^10....04")
+ *   are compiled into nibble value and mask prefixes, and matched without hex encoding.
+ * <br>- All other patterns fall back to regular expression matching over the hex encoded
+ *   message, which is only generated if a fallback pattern needs to be evaluated.
+ * <br>- Candidate patterns are indexed by the first message byte, and evaluated in the
+ *   original pattern order, thus the result is identical to sequential regex matching.
+ */
+public class BLEFilterPatternMatcher {
+    private final static char[] hexChars = "0123456789ABCDEF".toCharArray();
+    @NonNull
+    private final BLEDeviceFilter.FilterPattern[] filterPatterns;
+    // Compiled prefix for each pattern, null for regular expression fallback
+    @NonNull
+    private final byte[][] values;
+    @NonNull
+    private final byte[][] masks;
+    // Candidate pattern indices in pattern order, indexed by first byte of message
+    @NonNull
+    private final int[][] candidates = new int[256][];
+    // Candidate pattern indices for empty messages, i.e. fallback patterns only
+    @NonNull
+    private final int[] emptyCandidates;
+
+    public BLEFilterPatternMatcher(@NonNull final List<BLEDeviceFilter.FilterPattern> filterPatterns) {
+        final int count = filterPatterns.size();
+        this.filterPatterns = filterPatterns.toArray(new BLEDeviceFilter.FilterPattern[count]);
+        this.values = new byte[count][];
+        this.masks = new byte[count][];
+        for (int i=0; i<count; i++) {
+            compile(i, this.filterPatterns[i].regularExpression);
+        }
+        final List<Integer> fallback = new ArrayList<>();
+        for (int i=0; i<count; i++) {
+            if (null == values[i]) {
+                fallback.add(i);
+            }
+        }
+        emptyCandidates = toArray(fallback);
+        final List<Integer> list = new ArrayList<>(count);
+        for (int b=0; b<256; b++) {
+            list.clear();
+            for (int i=0; i<count; i++) {
+                if (null == values[i] || (b & masks[i][0] & 0xFF) == (values[i][0] & 0xFF)) {
+                    list.add(i);
+                }
+            }
+            candidates[b] = toArray(list);
+        }
+    }
+
+    /**
+     * Number of patterns compiled into byte prefixes.
+     * @return Count of patterns matched without regular expressions.
+     */
+    public int compiledPatterns() {
+        int count = 0;
+        for (final byte[] value : values) {
+            if (null != value) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Match message against all patterns, returns first matching pattern in pattern order.
+     * @param message Message data
+     * @return First matching pattern, or null if no match was found
+     */
+    @Nullable
+    public BLEDeviceFilter.FilterPattern match(@Nullable final Data message) {
+        //noinspection ConstantConditions
+        if (null == message || null == message.value) {
+            return null;
+        }
+        return match(message.value, 0, message.value.length);
+    }
+
+    /**
+     * Match message against all patterns, returns first matching pattern in pattern order.
+     * @param data Data containing the message
+     * @param offset Start of message in data
+     * @param length Length of message in bytes
+     * @return First matching pattern, or null if no match was found
+     */
+    @Nullable
+    public BLEDeviceFilter.FilterPattern match(@NonNull final byte[] data, final int offset, final int length) {
+        final int[] patternIndices = (length > 0 ? candidates[data[offset] & 0xFF] : emptyCandidates);
+        String hexEncodedString = null;
+        for (final int i : patternIndices) {
+            final byte[] value = values[i];
+            if (null != value) {
+                if (matchPrefix(value, masks[i], data, offset, length)) {
+                    return filterPatterns[i];
+                }
+                continue;
+            }
+            if (null == hexEncodedString) {
+                hexEncodedString = hexEncodedString(data, offset, length);
+            }
+            try {
+                final Matcher matcher = filterPatterns[i].pattern.matcher(hexEncodedString);
+                if (matcher.find()) {
+                    return filterPatterns[i];
+                }
+            } catch (Throwable ignored) {
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Hex encoding of message, identical to Data.hexEncodedString.
+     * @param data Data containing the message
+     * @param offset Start of message in data
+     * @param length Length of message in bytes
+     * @return Upper case hex encoded string
+     */
+    @NonNull
+    public static String hexEncodedString(@NonNull final byte[] data, final int offset, final int length) {
+        final char[] chars = new char[length * 2];
+        for (int i=0, j=0; i<length; i++) {
+            final int v = data[offset + i] & 0xFF;
+            chars[j++] = hexChars[v >>> 4];
+            chars[j++] = hexChars[v & 0x0F];
+        }
+        return new String(chars);
+    }
+
+    private static boolean matchPrefix(@NonNull final byte[] value, @NonNull final byte[] mask, @NonNull final byte[] data, final int offset, final int length) {
+        if (value.length > length) {
+            return false;
+        }
+        for (int j=0; j<value.length; j++) {
+            if ((data[offset + j] & mask[j] & 0xFF) != (value[j] & 0xFF)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compile pattern into nibble value and mask prefix if it is a start anchored sequence of
+     * hex digits and wildcards, otherwise leave it for regular expression matching.
+     * @param index Pattern index
+     * @param regularExpression Regular expression
+     */
+    private void compile(final int index, @NonNull final String regularExpression) {
+        if (regularExpression.length() < 2 || '^' != regularExpression.charAt(0)) {
+            return;
+        }
+        final int nibbles = regularExpression.length() - 1;
+        final byte[] value = new byte[(nibbles + 1) / 2];
+        final byte[] mask = new byte[value.length];
+        for (int i=0; i<nibbles; i++) {
+            final char c = regularExpression.charAt(i + 1);
+            final int shift = (0 == (i % 2) ? 4 : 0);
+            if ('.' == c) {
+                continue;
+            }
+            final int digit = (c < 0x80 ? Character.digit(c, 16) : -1);
+            if (digit < 0) {
+                return;
+            }
+            value[i / 2] |= (byte) (digit << shift);
+            mask[i / 2] |= (byte) (0x0F << shift);
+        }
+        values[index] = value;
+        masks[index] = mask;
+    }
+
+    @NonNull
+    private static int[] toArray(@NonNull final List<Integer> list) {
+        final int[] array = new int[list.size()];
+        for (int i=0; i<array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+}
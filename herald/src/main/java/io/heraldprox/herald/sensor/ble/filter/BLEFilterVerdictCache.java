@@ -0,0 +1,160 @@
+//  Copyright 2020-2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.ble.filter;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import io.heraldprox.herald.sensor.datatype.Data;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded least recently used cache of device filter verdicts, keyed by the raw manufacturer
+ * specific data segments in a scan record. The verdict of the device filter is fully determined
+ * by these segments, thus repeated adverts from the same device types (e.g. AirPods, Watches,
+ * Macs) can be resolved with a single hash lookup instead of parsing and pattern matching.
+ * <br>- Verdicts are tagged with a generation number, and calling invalidate() when the pattern
+ *   set changes discards all existing verdicts and rejects late verdicts from the previous set.
+ */
+public class BLEFilterVerdictCache {
+    private final static int manufacturerDataType = BLEAdvertSegmentType.manufacturerData.code;
+    private final int capacity;
+    @NonNull
+    private final LinkedHashMap<Data, Verdict> verdicts;
+    private long generation = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Cached verdict, where matchingPattern is null if the device did not match any pattern.
+     */
+    public final static class Verdict {
+        @Nullable
+        public final BLEDeviceFilter.MatchingPattern matchingPattern;
+
+        public Verdict(@Nullable final BLEDeviceFilter.MatchingPattern matchingPattern) {
+            this.matchingPattern = matchingPattern;
+        }
+    }
+
+    /**
+     * Verdict cache holding up to capacity entries.
+     * @param capacity Maximum number of cached verdicts, or zero to disable caching.
+     */
+    public BLEFilterVerdictCache(final int capacity) {
+        this.capacity = Math.max(0, capacity);
+        this.verdicts = new LinkedHashMap<Data, Verdict>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(@NonNull final Map.Entry<Data, Verdict> eldest) {
+                return size() > BLEFilterVerdictCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Extract cache key from raw scan record data. The key is the concatenation of all
+     * manufacturer specific data segments (length and data, excluding type), in advert order.
+     * @param rawScanRecordData Raw scan record data
+     * @return Cache key, or null if the scan record does not contain manufacturer specific data.
+     */
+    @Nullable
+    public static Data key(@Nullable final byte[] rawScanRecordData) {
+        if (null == rawScanRecordData) {
+            return null;
+        }
+        // First pass to size the key
+        final BLEAdvertSegmentView segment = new BLEAdvertSegmentView(rawScanRecordData, 0);
+        int keyLength = 0;
+        while (segment.next()) {
+            if (manufacturerDataType == segment.type()) {
+                keyLength += 1 + segment.length();
+            }
+        }
+        if (0 == keyLength) {
+            return null;
+        }
+        // Second pass to copy manufacturer specific data segments
+        final byte[] key = new byte[keyLength];
+        int keyPosition = 0;
+        segment.reset(rawScanRecordData, 0);
+        while (segment.next()) {
+            if (manufacturerDataType == segment.type()) {
+                key[keyPosition++] = rawScanRecordData[segment.rawOffset()];
+                System.arraycopy(rawScanRecordData, segment.offset(), key, keyPosition, segment.length());
+                keyPosition += segment.length();
+            }
+        }
+        return new Data(key);
+    }
+
+    /**
+     * Current generation of verdicts, to be obtained before evaluating a verdict for put().
+     * @return Generation number.
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Get cached verdict and update hit/miss counters.
+     * @param key Cache key
+     * @return Cached verdict, or null if no verdict is available.
+     */
+    @Nullable
+    public synchronized Verdict get(@NonNull final Data key) {
+        final Verdict verdict = verdicts.get(key);
+        if (null == verdict) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return verdict;
+    }
+
+    /**
+     * Cache verdict, unless the cache has been invalidated since the verdict was evaluated.
+     * @param key Cache key
+     * @param generation Generation at the start of verdict evaluation.
+     * @param verdict Verdict
+     */
+    public synchronized void put(@NonNull final Data key, final long generation, @NonNull final Verdict verdict) {
+        if (0 == capacity || generation != this.generation) {
+            return;
+        }
+        verdicts.put(key, verdict);
+    }
+
+    /**
+     * Discard all cached verdicts, e.g. when the pattern set has changed.
+     */
+    public synchronized void invalidate() {
+        generation++;
+        verdicts.clear();
+    }
+
+    public synchronized int size() {
+        return verdicts.size();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        return "BLEFilterVerdictCache{size=" + verdicts.size() + ", capacity=" + capacity + ", hits=" + hits + ", misses=" + misses + "}";
+    }
+}
@@ -0,0 +1,130 @@
+//  Copyright 2020-2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.data;
+
+import androidx.annotation.NonNull;
+
+import io.heraldprox.herald.sensor.datatype.TimeInterval;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asynchronous buffered writer for appending lines to a text file. Lines are held in memory
+ * and appended to file in a single write on a background thread, either after the flush
+ * interval has elapsed since the first buffered line, or once the buffer is full. This keeps
+ * file I/O off time critical threads, e.g. the BLE receiver when writing training data.
+ * <br>- Writes for all buffered files are performed by a single shared daemon thread, thus
+ *   buffered files can be discarded without being closed. Call flush() to write buffered
+ *   lines before the process exits.
+ */
+public class BufferedTextFile {
+    private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "Data.BufferedTextFile");
+    @NonNull
+    private final TextFile textFile;
+    @NonNull
+    private final TimeInterval flushInterval;
+    private final int capacity;
+    // Shared by all buffered files, as writes are infrequent
+    @NonNull
+    private final static ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "BufferedTextFile");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    @NonNull
+    private final Object flushLock = new Object();
+    @NonNull
+    private List<String> buffer = new ArrayList<>();
+    private boolean flushScheduled = false;
+    @NonNull
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Buffered writer for text file, flushing buffered lines at least every 10 seconds.
+     * @param textFile Target file
+     */
+    public BufferedTextFile(@NonNull final TextFile textFile) {
+        this(textFile, new TimeInterval(10), 100);
+    }
+
+    /**
+     * Buffered writer for text file.
+     * @param textFile Target file
+     * @param flushInterval Maximum time lines are held in memory before writing to file.
+     * @param capacity Maximum number of lines held in memory before writing to file.
+     */
+    public BufferedTextFile(@NonNull final TextFile textFile, @NonNull final TimeInterval flushInterval, final int capacity) {
+        this.textFile = textFile;
+        this.flushInterval = flushInterval;
+        this.capacity = Math.max(1, capacity);
+    }
+
+    @NonNull
+    public TextFile textFile() {
+        return textFile;
+    }
+
+    /**
+     * Append line to buffer for asynchronous write to file.
+     * @param line Line of text
+     */
+    public synchronized void write(@NonNull final String line) {
+        buffer.add(line);
+        if (buffer.size() >= capacity) {
+            try {
+                executorService.execute(flushTask);
+            } catch (Throwable e) {
+                logger.fault("write, failed to schedule flush (file={})", textFile, e);
+            }
+        } else if (!flushScheduled) {
+            try {
+                executorService.schedule(flushTask, flushInterval.millis(), TimeUnit.MILLISECONDS);
+                flushScheduled = true;
+            } catch (Throwable e) {
+                logger.fault("write, failed to schedule flush (file={})", textFile, e);
+            }
+        }
+    }
+
+    /**
+     * Number of lines held in memory awaiting write to file.
+     * @return Buffered line count.
+     */
+    public synchronized int buffered() {
+        return buffer.size();
+    }
+
+    /**
+     * Write all buffered lines to file on the calling thread.
+     */
+    public void flush() {
+        // Flush lock ensures lines are written in order by concurrent flushes
+        synchronized (flushLock) {
+            final List<String> lines;
+            synchronized (this) {
+                flushScheduled = false;
+                if (buffer.isEmpty()) {
+                    return;
+                }
+                lines = buffer;
+                buffer = new ArrayList<>();
+            }
+            textFile.write(lines);
+        }
+    }
+}
@@ -0,0 +1,381 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.data;
+
+import android.content.Context;
+import android.media.MediaScannerConnection;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import io.heraldprox.herald.sensor.datatype.Callback;
+import io.heraldprox.herald.sensor.datatype.TimeInterval;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time segmented text file for logs that are subject to a data retention policy, e.g. the
+ * encounter log. Lines are appended to segment files that each cover a fixed period of time
+ * (e.g. one day), and a small manifest file records the time range of each segment.
+ * <br>- Appends are written to the segment covering the time of the record. Each segment
+ *   starts with the header line, if provided.
+ * <br>- Retention deletes whole segments that end before the cut off time, and records the cut
+ *   off time as the start of a segment that spans the cut off time, thus applying retention
+ *   never rewrites retained records. Readers must discard records before start().
+ * <br>- Queries only read segments that overlap the requested time range.
+ * <br>- Segment file name is derived from file name and segment start time in UTC, e.g.
+ *   "contacts.csv" is segmented into "contacts-20210901-000000.csv" and so on, with manifest
+ *   "contacts-manifest.csv" (start,end,file) where start and end are in milliseconds since
+ *   unix epoch.
+ * <br>- Segmented storage replaces the single file format of TextFile, thus a log that used to
+ *   be "contacts.csv" is now found in the segment files and manifest listed above. Files
+ *   created with a context are registered with the media scanner periodically, like
+ *   TextFile(context, filename), such that all segments remain visible and exportable on device.
+ */
+public class SegmentedTextFile implements Resettable {
+    private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "Data.SegmentedTextFile");
+    private final static String manifestHeader = "start,end,file";
+    // Shared by all segmented text files, as media scans are infrequent
+    private final static ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "SegmentedTextFile");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    // Context for media scanner, or null if files are not scanned
+    @Nullable
+    private final Context context;
+    @NonNull
+    private final File folder;
+    @NonNull
+    private final String name;
+    @NonNull
+    private final String extension;
+    private final long duration;
+    @Nullable
+    private final String header;
+    @NonNull
+    private final File manifestFile;
+    @NonNull
+    private final TextFile manifest;
+    @NonNull
+    private final SimpleDateFormat dateFormatter = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.UK);
+    // Segments in time order
+    @NonNull
+    private final List<Segment> segments = new ArrayList<>();
+
+    /**
+     * Segment file covering time range [start, end).
+     */
+    private final static class Segment {
+        // Start of retained records, may be later than start of segment after retention
+        private long start;
+        private final long end;
+        @NonNull
+        private final File file;
+        @NonNull
+        private final TextFile textFile;
+
+        private Segment(final long start, final long end, @NonNull final File file) {
+            this.start = start;
+            this.end = end;
+            this.file = file;
+            this.textFile = new TextFile(file);
+        }
+    }
+
+    /**
+     * Time segmented text file.
+     * @param folder Folder for segment and manifest files.
+     * @param filename File name, segment file names are derived from this name.
+     * @param segmentDuration Time period covered by each segment, e.g. one day.
+     * @param header Header line at the start of each segment, or null for no header.
+     */
+    public SegmentedTextFile(@NonNull final File folder, @NonNull final String filename, @NonNull final TimeInterval segmentDuration, @Nullable final String header) {
+        this(null, folder, filename, segmentDuration, header);
+    }
+
+    /**
+     * Time segmented text file in the same folder as TextFile(context, filename), with the
+     * manifest and segment files registered with the media scanner.
+     * @param context Application context
+     * @param filename File name, segment file names are derived from this name.
+     * @param segmentDuration Time period covered by each segment, e.g. one day.
+     * @param header Header line at the start of each segment, or null for no header.
+     */
+    public SegmentedTextFile(@NonNull final Context context, @NonNull final String filename, @NonNull final TimeInterval segmentDuration, @Nullable final String header) {
+        this(context, new File(TextFile.getRootFolder(context), "Sensor"), filename, segmentDuration, header);
+        executorService.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                scan(files());
+            }
+        }, 30, 30, TimeUnit.SECONDS);
+    }
+
+    private SegmentedTextFile(@Nullable final Context context, @NonNull final File folder, @NonNull final String filename, @NonNull final TimeInterval segmentDuration, @Nullable final String header) {
+        this.context = context;
+        this.folder = folder;
+        final int dot = filename.lastIndexOf('.');
+        this.name = (dot > 0 ? filename.substring(0, dot) : filename);
+        this.extension = (dot > 0 ? filename.substring(dot) : "");
+        this.duration = Math.max(1, segmentDuration.millis());
+        this.header = header;
+        this.dateFormatter.setTimeZone(TimeZone.getTimeZone("UTC"));
+        this.manifestFile = new File(folder, name + "-manifest" + extension);
+        this.manifest = new TextFile(manifestFile);
+        readManifest();
+    }
+
+    // MARK: - Resettable
+
+    /**
+     * Remove all segments.
+     */
+    @Override
+    public synchronized void reset() {
+        for (final Segment segment : segments) {
+            delete(segment);
+        }
+        segments.clear();
+        writeManifest();
+    }
+
+    // MARK: - I/O functions
+
+    /**
+     * Start time of segment covering time.
+     * @param time Time in milliseconds since unix epoch
+     * @return Segment start time in milliseconds since unix epoch.
+     */
+    public long segmentStart(final long time) {
+        final long remainder = time % duration;
+        return time - (remainder < 0 ? remainder + duration : remainder);
+    }
+
+    /**
+     * Start time of retained records, i.e. the cut off time of the latest retention, or the
+     * start of the oldest segment.
+     * @return Time in milliseconds since unix epoch, or Long.MIN_VALUE if there are no segments.
+     */
+    public synchronized long start() {
+        return (segments.isEmpty() ? Long.MIN_VALUE : segments.get(0).start);
+    }
+
+    /**
+     * Number of segments.
+     * @return Segment count.
+     */
+    public synchronized int segments() {
+        return segments.size();
+    }
+
+    /**
+     * Test if all segments are empty.
+     * @return True if empty, false otherwise.
+     */
+    public synchronized boolean empty() {
+        for (final Segment segment : segments) {
+            if (!segment.textFile.empty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Append line to segment covering time.
+     * @param time Time of record in milliseconds since unix epoch
+     * @param line Line of text
+     */
+    public synchronized void write(final long time, @NonNull final String line) {
+        final TextFile textFile = segment(time).textFile;
+        if (null != header && textFile.empty()) {
+            textFile.write(header);
+        }
+        textFile.write(line);
+    }
+
+    /**
+     * Append lines to segment covering time in a single write.
+     * @param time Time of all records in segment, in milliseconds since unix epoch
+     * @param lines Lines of text
+     */
+    public synchronized void write(final long time, @NonNull final List<String> lines) {
+        if (lines.isEmpty()) {
+            return;
+        }
+        final TextFile textFile = segment(time).textFile;
+        if (null != header && textFile.empty()) {
+            textFile.write(header);
+        }
+        textFile.write(lines);
+    }
+
+    /**
+     * Read lines of all segments that overlap time range, in segment order. This includes the
+     * header line of each segment, and may include records outside of the time range.
+     * @param startTime Start time in milliseconds since unix epoch (inclusive)
+     * @param endTime End time in milliseconds since unix epoch (exclusive)
+     * @param callback Called for each line of text.
+     * @return True if all segments were read, false otherwise.
+     */
+    public synchronized boolean forEachLine(final long startTime, final long endTime, @NonNull final Callback<String> callback) {
+        boolean success = true;
+        for (final Segment segment : segments) {
+            if (segment.end <= startTime || segment.start >= endTime) {
+                continue;
+            }
+            if (!segment.textFile.forEachLine(callback)) {
+                success = false;
+            }
+        }
+        return success;
+    }
+
+    /**
+     * Read lines of all segments, in segment order.
+     * @param callback Called for each line of text.
+     * @return True if all segments were read, false otherwise.
+     */
+    public boolean forEachLine(@NonNull final Callback<String> callback) {
+        return forEachLine(Long.MIN_VALUE, Long.MAX_VALUE, callback);
+    }
+
+    /**
+     * Manifest and segment files.
+     * @return Manifest file, followed by segment files in time order.
+     */
+    @NonNull
+    public synchronized List<File> files() {
+        final List<File> files = new ArrayList<>(segments.size() + 1);
+        files.add(manifestFile);
+        for (final Segment segment : segments) {
+            files.add(segment.file);
+        }
+        return files;
+    }
+
+    /**
+     * Remove all records before time (exclusive) by deleting segments that end on or before
+     * the cut off time. Records in the segment spanning the cut off time are retained on file,
+     * and the cut off time is recorded as start of the segment.
+     * @param time Cut off time in milliseconds since unix epoch (exclusive)
+     * @return Number of segments removed.
+     */
+    public synchronized int removeBefore(final long time) {
+        int removed = 0;
+        boolean changed = false;
+        final Iterator<Segment> iterator = segments.iterator();
+        while (iterator.hasNext()) {
+            final Segment segment = iterator.next();
+            if (segment.end <= time) {
+                delete(segment);
+                iterator.remove();
+                removed++;
+                changed = true;
+            } else {
+                if (segment.start < time) {
+                    segment.start = time;
+                    changed = true;
+                }
+                break;
+            }
+        }
+        if (changed) {
+            writeManifest();
+        }
+        return removed;
+    }
+
+    /**
+     * Get segment covering time, creating a new segment if required. Manifest is updated
+     * before the segment file is created.
+     * @param time Time in milliseconds since unix epoch
+     * @return Segment covering time.
+     */
+    @NonNull
+    private Segment segment(final long time) {
+        // Records are mostly appended to the latest segment
+        int index = segments.size();
+        while (index > 0 && segments.get(index - 1).end > time) {
+            final Segment segment = segments.get(index - 1);
+            if (segmentStart(time) == segment.end - duration) {
+                return segment;
+            }
+            index--;
+        }
+        final long start = segmentStart(time);
+        final Segment segment = new Segment(start, start + duration, new File(folder, name + "-" + dateFormatter.format(new Date(start)) + extension));
+        segments.add(index, segment);
+        writeManifest();
+        return segment;
+    }
+
+    private void delete(@NonNull final Segment segment) {
+        if (segment.file.exists() && !segment.file.delete()) {
+            logger.fault("delete failed (file={})", segment.file);
+        }
+        // Scanning a deleted file removes it from the media store
+        scan(Collections.singletonList(segment.file));
+    }
+
+    /**
+     * Register files with the media scanner, if created with a context.
+     * @param files Files to scan, existing or deleted.
+     */
+    private void scan(@NonNull final List<File> files) {
+        if (null == context || files.isEmpty()) {
+            return;
+        }
+        final String[] paths = new String[files.size()];
+        for (int i=0; i<paths.length; i++) {
+            paths[i] = files.get(i).getAbsolutePath();
+        }
+        MediaScannerConnection.scanFile(context, paths, null, null);
+    }
+
+    private void readManifest() {
+        manifest.forEachLine(new Callback<String>() {
+            @Override
+            public void accept(final String row) {
+                final String[] cols = row.split(",", 3);
+                if (cols.length != 3) {
+                    return;
+                }
+                try {
+                    final long start = Long.parseLong(cols[0]);
+                    final long end = Long.parseLong(cols[1]);
+                    segments.add(new Segment(start, end, new File(folder, cols[2])));
+                } catch (NumberFormatException e) {
+                    // Header or invalid row
+                }
+            }
+        });
+    }
+
+    private void writeManifest() {
+        final StringBuilder s = new StringBuilder(manifestHeader);
+        s.append('\n');
+        for (final Segment segment : segments) {
+            s.append(segment.start).append(',').append(segment.end).append(',').append(segment.file.getName()).append('\n');
+        }
+        manifest.overwrite(s.toString());
+    }
+}
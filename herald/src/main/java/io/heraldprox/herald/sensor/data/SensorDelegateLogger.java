@@ -15,6 +15,7 @@ import java.util.Locale;
 import java.util.TimeZone;
 
 import io.heraldprox.herald.sensor.DefaultSensorDelegate;
+import io.heraldprox.herald.sensor.datatype.Callback;
 
 /**
  * Default sensor delegate with convenient functions for writing data to log file.
@@ -37,6 +38,12 @@ public class SensorDelegateLogger extends DefaultSensorDelegate implements Reset
         this.dateFormatter.setTimeZone(TimeZone.getTimeZone("UTC"));
     }
 
+    public SensorDelegateLogger(@NonNull final TextFile textFile) {
+        this.context = null;
+        this.textFile = textFile;
+        this.dateFormatter.setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+
     @Override
     public synchronized void reset() {
         if (null == textFile) {
@@ -108,4 +115,16 @@ public class SensorDelegateLogger extends DefaultSensorDelegate implements Reset
         }
         return textFile.contentsOf();
     }
+
+    /**
+     * Read file line by line, without holding the entire file content in memory.
+     * @param callback Called for each line of text in file order.
+     * @return True if the entire file was read, or file does not exist, false otherwise.
+     */
+    protected boolean forEachLine(@NonNull final Callback<String> callback) {
+        if (null == textFile) {
+            return true;
+        }
+        return textFile.forEachLine(callback);
+    }
 }
@@ -11,12 +11,13 @@ import android.os.Environment;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import org.w3c.dom.Text;
+import io.heraldprox.herald.sensor.datatype.Callback;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
@@ -28,6 +29,7 @@ import java.util.concurrent.TimeUnit;
 
 public class TextFile implements Resettable {
     private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "Data.TextFile");
+    private final static int readBufferSize = 64 * 1024;
     @NonNull
     private final File file;
 
@@ -135,26 +137,55 @@ public class TextFile implements Resettable {
     }
 
     /**
-     * Get contents of file.
+     * Get contents of file. Use forEachLine() for parsing large files, as this function holds
+     * the entire file content in memory.
      * @return File content
      */
     @NonNull
     public synchronized String contentsOf() {
+        final StringBuilder stringBuilder = new StringBuilder((int) Math.min(file.length(), Integer.MAX_VALUE - 1));
+        if (!forEachLine(new Callback<String>() {
+            @Override
+            public void accept(final String line) {
+                stringBuilder.append(line);
+                stringBuilder.append("\n");
+            }
+        })) {
+            return "";
+        }
+        return stringBuilder.toString();
+    }
+
+    /**
+     * Read file line by line in a single pass through a buffered reader, such that only the
+     * current line is held in memory. Exceptions thrown by the callback are propagated to the
+     * caller after the file is closed.
+     * @param callback Called for each line of text in file order, without newline character.
+     * @return True if the entire file was read, or file does not exist, false on read failure.
+     */
+    public synchronized boolean forEachLine(@NonNull final Callback<String> callback) {
+        if (!file.exists()) {
+            return true;
+        }
+        BufferedReader bufferedReader = null;
         try {
-            final FileInputStream fileInputStream = new FileInputStream(file);
-            final BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(fileInputStream));
-            final StringBuilder stringBuilder = new StringBuilder();
+            bufferedReader = new BufferedReader(new InputStreamReader(new FileInputStream(file)), readBufferSize);
             String line;
             while ((line = bufferedReader.readLine()) != null) {
-                stringBuilder.append(line);
-                stringBuilder.append("\n");
+                callback.accept(line);
             }
-            bufferedReader.close();
-            fileInputStream.close();
-            return stringBuilder.toString();
-        } catch (Throwable e) {
+            return true;
+        } catch (IOException e) {
             logger.fault("read failed (file={})", file, e);
-            return "";
+            return false;
+        } finally {
+            if (null != bufferedReader) {
+                try {
+                    bufferedReader.close();
+                } catch (IOException e) {
+                    logger.fault("read failed to close file (file={})", file, e);
+                }
+            }
         }
     }
 
@@ -164,7 +195,7 @@ public class TextFile implements Resettable {
      * @param context Application context.
      * @return Root folder.
      */
-    private static File getRootFolder(@NonNull final Context context) {
+    static File getRootFolder(@NonNull final Context context) {
         // Get SD card or emulated external storage. By convention (really!?)
         // SD card is reported after emulated storage, so select the last folder
         final File[] externalMediaDirs = context.getExternalMediaDirs();
@@ -194,6 +225,29 @@ public class TextFile implements Resettable {
         }
     }
 
+    /**
+     * Append lines to new or existing file in a single write.
+     * @param lines Lines of text
+     */
+    public synchronized void write(@NonNull final List<String> lines) {
+        if (lines.isEmpty()) {
+            return;
+        }
+        try {
+            final StringBuilder stringBuilder = new StringBuilder();
+            for (final String line : lines) {
+                stringBuilder.append(line);
+                stringBuilder.append('\n');
+            }
+            final FileOutputStream fileOutputStream = new FileOutputStream(file, true);
+            fileOutputStream.write(stringBuilder.toString().getBytes());
+            fileOutputStream.flush();
+            fileOutputStream.close();
+        } catch (Throwable e) {
+            logger.fault("write failed (file={})", file, e);
+        }
+    }
+
     /**
      * Overwrite file content.
      * @param content Text content
@@ -62,6 +62,32 @@ public class Distribution {
         }
     }
 
+    /**
+     * Remove single occurrence of sample value from distribution, reversing add(x) for a
+     * sliding window of samples. Min and max cannot be derived from the accumulators, thus
+     * they are provided by the caller for the remaining samples.
+     * @param x Sample value, which must have been added to the distribution.
+     * @param min Minimum value of remaining samples.
+     * @param max Maximum value of remaining samples.
+     */
+    public synchronized void remove(final double x, final double min, final double max) {
+        if (n <= 1) {
+            n = 0;
+            m1 = 0;
+            m2 = 0;
+            this.min = Double.MAX_VALUE;
+            this.max = -Double.MAX_VALUE;
+            return;
+        }
+        // Reverse update of count, mean, variance, where m2 is clamped to avoid negative variance from rounding
+        n--;
+        final double delta = x - m1;
+        m1 -= delta / n;
+        m2 = Math.max(0, m2 - delta * (x - m1));
+        this.min = min;
+        this.max = max;
+    }
+
     /**
      * Add multiple occurrences of sample value to distribution.
      * @param x Sample value.
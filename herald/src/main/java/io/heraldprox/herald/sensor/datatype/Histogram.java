@@ -110,21 +110,23 @@ public class Histogram {
      */
     public void read(@NonNull final TextFile textFile) {
         clear();
-        final String content = textFile.contentsOf();
-        for (final String row : content.split("\n")) {
-            final String[] cols = row.split(",", 2);
-            if (cols.length != 2) {
-                continue;
+        textFile.forEachLine(new Callback<String>() {
+            @Override
+            public void accept(final String row) {
+                final String[] cols = row.split(",", 2);
+                if (cols.length != 2) {
+                    return;
+                }
+                final int value = Integer.parseInt(cols[0]);
+                final long count = Long.parseLong(cols[1]);
+                if (value < min || value > max) {
+                    return;
+                }
+                final int index = value - min;
+                histogram[index] = count;
+                samples += count;
             }
-            final int value = Integer.parseInt(cols[0]);
-            final long count = Long.parseLong(cols[1]);
-            if (value < min || value > max) {
-                continue;
-            }
-            final int index = value - min;
-            histogram[index] = count;
-            samples += count;
-        }
+        });
     }
 
     /**
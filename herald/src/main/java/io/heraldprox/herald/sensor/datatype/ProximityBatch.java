@@ -0,0 +1,138 @@
+//  Copyright 2020-2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.datatype;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Batch of proximity measurements acquired by a sensor in one dispatch cycle. Measurements are
+ * held as (timestamp, target, payload, proximity) records in parallel arrays, such that the
+ * cost of collecting measurements is per batch rather than per measurement. Proximity objects
+ * are only created on demand.
+ */
+public class ProximityBatch {
+    private int size = 0;
+    @NonNull
+    private long[] timestamps;
+    @NonNull
+    private TargetIdentifier[] targets;
+    @NonNull
+    private PayloadData[] payloads;
+    @NonNull
+    private ProximityMeasurementUnit[] units;
+    @NonNull
+    private double[] values;
+    @NonNull
+    private Calibration[] calibrations;
+
+    public ProximityBatch() {
+        this(16);
+    }
+
+    /**
+     * Batch with initial capacity, the capacity is increased automatically as required.
+     * @param capacity Expected number of measurements in batch.
+     */
+    public ProximityBatch(final int capacity) {
+        final int length = Math.max(1, capacity);
+        this.timestamps = new long[length];
+        this.targets = new TargetIdentifier[length];
+        this.payloads = new PayloadData[length];
+        this.units = new ProximityMeasurementUnit[length];
+        this.values = new double[length];
+        this.calibrations = new Calibration[length];
+    }
+
+    /**
+     * Append measurement to batch.
+     * @param timestamp Time of measurement in milliseconds since unix epoch.
+     * @param target Target identifier.
+     * @param payload Payload data of target, or null if unknown at time of measurement.
+     * @param unit Unit of measurement.
+     * @param value Measured value.
+     * @param calibration Calibration data (optional).
+     */
+    public void append(final long timestamp, @NonNull final TargetIdentifier target, @Nullable final PayloadData payload, @NonNull final ProximityMeasurementUnit unit, final double value, @Nullable final Calibration calibration) {
+        if (size == timestamps.length) {
+            grow(size * 2);
+        }
+        timestamps[size] = timestamp;
+        targets[size] = target;
+        payloads[size] = payload;
+        units[size] = unit;
+        values[size] = value;
+        calibrations[size] = calibration;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return 0 == size;
+    }
+
+    /**
+     * Time of measurement.
+     * @param index Record index.
+     * @return Milliseconds since unix epoch.
+     */
+    public long timestamp(final int index) {
+        return timestamps[index];
+    }
+
+    @NonNull
+    public TargetIdentifier target(final int index) {
+        return targets[index];
+    }
+
+    @Nullable
+    public PayloadData payload(final int index) {
+        return payloads[index];
+    }
+
+    @NonNull
+    public ProximityMeasurementUnit unit(final int index) {
+        return units[index];
+    }
+
+    public double value(final int index) {
+        return values[index];
+    }
+
+    @Nullable
+    public Calibration calibration(final int index) {
+        return calibrations[index];
+    }
+
+    /**
+     * Materialise proximity data for record.
+     * @param index Record index.
+     * @return New proximity object for record.
+     */
+    @NonNull
+    public Proximity proximity(final int index) {
+        return new Proximity(units[index], values[index], calibrations[index]);
+    }
+
+    private void grow(final int capacity) {
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        targets = Arrays.copyOf(targets, capacity);
+        payloads = Arrays.copyOf(payloads, capacity);
+        units = Arrays.copyOf(units, capacity);
+        values = Arrays.copyOf(values, capacity);
+        calibrations = Arrays.copyOf(calibrations, capacity);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "ProximityBatch{size=" + size + "}";
+    }
+}
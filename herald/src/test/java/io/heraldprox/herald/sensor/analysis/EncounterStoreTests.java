@@ -0,0 +1,148 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis;
+
+import io.heraldprox.herald.sensor.datatype.Encounter;
+import io.heraldprox.herald.sensor.datatype.PayloadData;
+import io.heraldprox.herald.sensor.datatype.Proximity;
+import io.heraldprox.herald.sensor.datatype.ProximityMeasurementUnit;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EncounterStoreTests {
+
+    private static Encounter encounter(final long time) {
+        return new Encounter(new Proximity(ProximityMeasurementUnit.RSSI, -50d), new PayloadData((byte) 0, 1), new Date(time));
+    }
+
+    // Reference result by scanning all encounters in time order
+    private static List<Encounter> scan(final List<Encounter> encounters, final long startTime, final long endTime) {
+        final List<Encounter> subdata = new ArrayList<>();
+        for (final Encounter encounter : encounters) {
+            final long time = encounter.timestamp.getTime();
+            if (time >= startTime && time < endTime) {
+                subdata.add(encounter);
+            }
+        }
+        return subdata;
+    }
+
+    @Test
+    public void testRange() {
+        final Random random = new Random(0);
+        final EncounterStore store = new EncounterStore();
+        final List<Encounter> expected = new ArrayList<>();
+        long time = 0;
+        for (int i=0; i<1000; i++) {
+            // Mostly in time order, with duplicate timestamps and occasional late arrivals
+            time += random.nextInt(3);
+            final Encounter encounter = encounter(i % 50 == 0 ? time - random.nextInt(100) : time);
+            assertTrue(store.add(encounter));
+            // Late arrival is inserted after encounters with the same or earlier timestamp
+            int position = expected.size();
+            while (position > 0 && expected.get(position - 1).timestamp.getTime() > encounter.timestamp.getTime()) {
+                position--;
+            }
+            expected.add(position, encounter);
+        }
+        assertEquals(expected.size(), store.size());
+        for (int i=0; i<1000; i++) {
+            final long startTime = random.nextInt((int) time + 20) - 10;
+            final long endTime = startTime + random.nextInt(200) - 20;
+            assertEquals(scan(expected, startTime, endTime), store.range(startTime, endTime));
+            assertEquals(scan(expected, startTime, Long.MAX_VALUE), store.since(startTime));
+        }
+        // Encounter without timestamp is not stored
+        assertFalse(store.add(new Encounter(null, null, null)));
+        assertEquals(expected.size(), store.size());
+    }
+
+    @Test
+    public void testViews() {
+        final EncounterStore store = new EncounterStore();
+        for (int i=0; i<100; i++) {
+            store.add(encounter(i));
+        }
+        final List<Encounter> view = store.range(10, 20);
+        final List<Encounter> copy = new ArrayList<>(view);
+        assertEquals(10, view.size());
+        // Views are read-only
+        try {
+            view.add(encounter(15));
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // Expected
+        }
+        try {
+            view.get(10);
+            fail();
+        } catch (IndexOutOfBoundsException e) {
+            // Expected
+        }
+        // Views are unaffected by append, out of order insertion, removal and clear
+        for (int i=100; i<1000; i++) {
+            store.add(encounter(i));
+        }
+        store.add(encounter(15));
+        assertEquals(11, store.range(10, 20).size());
+        assertEquals(copy, view);
+        assertEquals(991, store.removeBefore(990));
+        assertEquals(copy, view);
+        assertEquals(Arrays.asList(store.since(0).toArray()), store.range(990, 1000));
+        store.clear();
+        assertEquals(0, store.size());
+        assertEquals(copy, view);
+        // Store remains usable after removal of all encounters
+        assertEquals(0, store.removeBefore(Long.MAX_VALUE));
+        store.add(encounter(5));
+        assertEquals(1, store.since(0).size());
+    }
+
+    @Test
+    public void testPerformance() {
+        final int count = 100000;
+        final int queries = 1000;
+        final EncounterStore store = new EncounterStore();
+        final List<Encounter> list = new ArrayList<>(count);
+        for (int i=0; i<count; i++) {
+            final Encounter encounter = encounter(i * 1000L);
+            store.add(encounter);
+            list.add(encounter);
+        }
+        // Query the last hour of data, as in periodic social distance scoring
+        final Random random = new Random(1);
+        long scanTime = 0, storeTime = 0, scanned = 0, viewed = 0;
+        for (int i=0; i<queries * 2; i++) {
+            final long startTime = (count - 3600 - random.nextInt(3600)) * 1000L;
+            final long endTime = startTime + 3600 * 1000L;
+            final long t0 = System.nanoTime();
+            final List<Encounter> scan = scan(list, startTime, endTime);
+            final long t1 = System.nanoTime();
+            final List<Encounter> view = store.range(startTime, endTime);
+            final long t2 = System.nanoTime();
+            // Second half of queries after warm up
+            if (i >= queries) {
+                scanTime += (t1 - t0);
+                storeTime += (t2 - t1);
+                scanned += scan.size();
+                viewed += view.size();
+            }
+        }
+        assertEquals(scanned, viewed);
+        System.out.println("testPerformance (encounters=" + count + ",queries=" + queries + ",scan=" + (scanTime / queries) + "ns/query,store=" + (storeTime / queries) + "ns/query)");
+        assertTrue(storeTime < scanTime);
+    }
+}
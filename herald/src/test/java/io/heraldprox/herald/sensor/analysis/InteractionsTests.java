@@ -4,19 +4,27 @@
 
 package io.heraldprox.herald.sensor.analysis;
 
+import io.heraldprox.herald.sensor.data.SegmentedTextFile;
+import io.heraldprox.herald.sensor.data.TextFile;
 import io.heraldprox.herald.sensor.datatype.Encounter;
 import io.heraldprox.herald.sensor.datatype.PayloadData;
 import io.heraldprox.herald.sensor.datatype.Proximity;
 import io.heraldprox.herald.sensor.datatype.ProximityMeasurementUnit;
+import io.heraldprox.herald.sensor.datatype.TimeInterval;
 
 import org.junit.Test;
 
+import java.io.File;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 @SuppressWarnings("ConstantConditions")
 public class InteractionsTests {
@@ -178,4 +186,180 @@ public class InteractionsTests {
         assertEquals(Interactions.reduceByTime(encounters6).get(0).context.size(), 1);
         assertEquals(Interactions.reduceByTime(encounters6).get(1).context.size(), 1);
     }
+
+    private final static String header = "time,proximity,unit,payload";
+
+    private static File folder() throws Exception {
+        final File folder = File.createTempFile("InteractionsTests", "");
+        assertTrue(folder.delete());
+        assertTrue(folder.mkdirs());
+        return folder;
+    }
+
+    private static void delete(final File folder) {
+        for (final File file : folder.listFiles()) {
+            assertTrue(file.delete());
+        }
+        assertTrue(folder.delete());
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        final File folder = folder();
+        final PayloadData pd1 = new PayloadData((byte) 0, 1);
+        final Interactions interactions = new Interactions(new SegmentedTextFile(folder, "contacts.csv", TimeInterval.day, header));
+        interactions.append(new Encounter(new Proximity(ProximityMeasurementUnit.RSSI, -50d), pd1, f.parse("2020-09-24 00:00:00")));
+        interactions.append(new Encounter(new Proximity(ProximityMeasurementUnit.RSSI, -60d), pd1, f.parse("2020-09-24 00:00:10")));
+        interactions.append(new Encounter(new Proximity(ProximityMeasurementUnit.RSSI, -70d), pd1, f.parse("2020-09-25 00:00:00")));
+        // Historic encounters are loaded from segment files, skipping header
+        final SegmentedTextFile segmentedTextFile = new SegmentedTextFile(folder, "contacts.csv", TimeInterval.day, header);
+        assertEquals(2, segmentedTextFile.segments());
+        final Interactions loaded = new Interactions(segmentedTextFile);
+        assertEquals(3, loaded.subdata(new Date(0)).size());
+        assertEquals(interactions.subdata(new Date(0)).get(1).csvString(), loaded.subdata(new Date(0)).get(1).csvString());
+        // Retention applies to file and memory, without deleting the segment spanning the cut off
+        loaded.remove(f.parse("2020-09-24 00:00:05"));
+        assertEquals(2, loaded.subdata(new Date(0)).size());
+        assertEquals(2, segmentedTextFile.segments());
+        assertEquals(2, new Interactions(new SegmentedTextFile(folder, "contacts.csv", TimeInterval.day, header)).subdata(new Date(0)).size());
+        // Retention deletes whole segments
+        loaded.remove(f.parse("2020-09-25 00:00:00"));
+        assertEquals(1, loaded.subdata(new Date(0)).size());
+        assertEquals(1, segmentedTextFile.segments());
+        assertEquals(1, new Interactions(new SegmentedTextFile(folder, "contacts.csv", TimeInterval.day, header)).subdata(new Date(0)).size());
+        // Reset
+        loaded.reset();
+        assertEquals(0, loaded.subdata(new Date(0)).size());
+        assertEquals(0, new Interactions(new SegmentedTextFile(folder, "contacts.csv", TimeInterval.day, header)).subdata(new Date(0)).size());
+        delete(folder);
+        // Non-existent folder
+        assertEquals(0, new Interactions(new SegmentedTextFile(folder, "contacts.csv", TimeInterval.day, header)).subdata(new Date(0)).size());
+        delete(folder);
+    }
+
+    @Test
+    public void testMigrate() throws Exception {
+        final File folder = folder();
+        final PayloadData pd1 = new PayloadData((byte) 0, 1);
+        final TextFile textFile = new TextFile(new File(folder, "contacts.csv"));
+        textFile.write(header);
+        textFile.write(new Encounter(new Proximity(ProximityMeasurementUnit.RSSI, -50d), pd1, f.parse("2020-09-24 00:00:00")).csvString());
+        textFile.write(new Encounter(new Proximity(ProximityMeasurementUnit.RSSI, -60d), pd1, f.parse("2020-09-24 00:00:10")).csvString());
+        textFile.write(new Encounter(new Proximity(ProximityMeasurementUnit.RSSI, -70d), pd1, f.parse("2020-09-25 00:00:00")).csvString());
+        // Encounters are migrated from log file to segment files
+        final SegmentedTextFile segmentedTextFile = new SegmentedTextFile(folder, "contacts.csv", TimeInterval.day, header);
+        final Interactions interactions = new Interactions(textFile, segmentedTextFile);
+        assertEquals(3, interactions.subdata(new Date(0)).size());
+        assertEquals(2, segmentedTextFile.segments());
+        assertTrue(textFile.empty());
+        // Migration is only performed once
+        assertEquals(3, new Interactions(textFile, new SegmentedTextFile(folder, "contacts.csv", TimeInterval.day, header)).subdata(new Date(0)).size());
+        delete(folder);
+    }
+
+    // Sample heap usage on background thread to estimate peak heap usage of task
+    private static long peakHeap(final Runnable task) throws Exception {
+        final Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        final long baseline = runtime.totalMemory() - runtime.freeMemory();
+        final AtomicLong peak = new AtomicLong(baseline);
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final Thread sampler = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (running.get()) {
+                    final long used = runtime.totalMemory() - runtime.freeMemory();
+                    if (used > peak.get()) {
+                        peak.set(used);
+                    }
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        });
+        sampler.start();
+        task.run();
+        running.set(false);
+        sampler.join();
+        return (peak.get() - baseline) / (1024 * 1024);
+    }
+
+    @Test
+    public void testPerformance() throws Exception {
+        final int lines = 1000000;
+        final File folder = folder();
+        final TextFile textFile = new TextFile(new File(folder, "contacts.csv"));
+        final List<String> rows = new ArrayList<>();
+        rows.add(header);
+        // Encounter every 2 seconds for 23 days
+        final long start = f.parse("2020-09-24 00:00:00").getTime();
+        for (int i=0; i<lines; i++) {
+            final PayloadData payloadData = new PayloadData((byte) (i % 100), 16);
+            rows.add(new Encounter(new Proximity(ProximityMeasurementUnit.RSSI, (double) (-50 - i % 40)), payloadData, new Date(start + i * 2000L)).csvString());
+            if (rows.size() == 10000) {
+                textFile.write(rows);
+                rows.clear();
+            }
+        }
+        textFile.write(rows);
+        rows.clear();
+        final long fileSize = textFile.contentsOf().length() / (1024 * 1024);
+        // Load encounters from entire file content
+        final List<Encounter> split = new ArrayList<>();
+        final long t0 = System.nanoTime();
+        final long splitHeap = peakHeap(new Runnable() {
+            @Override
+            public void run() {
+                for (final String line : textFile.contentsOf().split("\n")) {
+                    final Encounter encounter = new Encounter(line);
+                    if (encounter.isValid()) {
+                        split.add(encounter);
+                    }
+                }
+            }
+        });
+        final long t1 = System.nanoTime();
+        final int splitCount = split.size();
+        // Retention by rewriting all retained records, as applied to a single log file
+        final Date before = new Date(start + (lines * 2000L) - TimeInterval.hours(14 * 24).millis());
+        final long t2 = System.nanoTime();
+        final StringBuilder content = new StringBuilder();
+        content.append(header).append("\n");
+        for (final Encounter encounter : split) {
+            if (encounter.timestamp.getTime() >= before.getTime()) {
+                content.append(encounter.csvString()).append("\n");
+            }
+        }
+        final TextFile rewritten = new TextFile(new File(folder, "rewritten.csv"));
+        rewritten.overwrite(content.toString());
+        final long t3 = System.nanoTime();
+        split.clear();
+        content.setLength(0);
+        // Migrate to segment files, then load encounters line by line from segment files
+        new Interactions(textFile, new SegmentedTextFile(folder, "contacts.csv", TimeInterval.day, header));
+        final Interactions[] streamed = new Interactions[1];
+        final long t4 = System.nanoTime();
+        final long streamHeap = peakHeap(new Runnable() {
+            @Override
+            public void run() {
+                streamed[0] = new Interactions(new SegmentedTextFile(folder, "contacts.csv", TimeInterval.day, header));
+            }
+        });
+        final long t5 = System.nanoTime();
+        assertEquals(lines, splitCount);
+        assertEquals(lines, streamed[0].subdata(new Date(0)).size());
+        // Retention by deleting segment files
+        final long t6 = System.nanoTime();
+        streamed[0].remove(before);
+        final long t7 = System.nanoTime();
+        final int retained = streamed[0].subdata(new Date(0)).size();
+        assertEquals(retained, new Interactions(new SegmentedTextFile(folder, "contacts.csv", TimeInterval.day, header)).subdata(new Date(0)).size());
+        System.out.println("testPerformance (lines=" + lines + ",fileSize=" + fileSize + "MB,retained=" + retained
+                + ",split={time=" + ((t1 - t0) / 1000000) + "ms,peakHeap=" + splitHeap + "MB,retention=" + ((t3 - t2) / 1000000)
+                + "ms},stream={time=" + ((t5 - t4) / 1000000) + "ms,peakHeap=" + streamHeap + "MB,retention=" + ((t7 - t6) / 1000000) + "ms})");
+        delete(folder);
+    }
 }
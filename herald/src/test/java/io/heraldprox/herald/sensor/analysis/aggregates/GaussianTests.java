@@ -7,7 +7,12 @@ package io.heraldprox.herald.sensor.analysis.aggregates;
 import org.junit.Test;
 
 import io.heraldprox.herald.sensor.analysis.sampling.Sample;
+import io.heraldprox.herald.sensor.analysis.sampling.SampleList;
+import io.heraldprox.herald.sensor.datatype.Date;
 import io.heraldprox.herald.sensor.datatype.Int8;
+import io.heraldprox.herald.sensor.datatype.RSSI;
+
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -69,4 +74,39 @@ public class GaussianTests {
         gaussian.reset();
         assertNull(gaussian.reduce());
     }
+
+    @Test
+    public void testIncremental() {
+        // Incremental model over sliding window is equivalent to full pass over window
+        final Random random = new Random(0);
+        final SampleList<RSSI> list = new SampleList<>(20);
+        final Gaussian<RSSI> incremental = new Gaussian<>();
+        list.track(incremental);
+        long time = 1000;
+        for (int i=0; i<10000; i++) {
+            time += random.nextInt(3);
+            list.push(time, new RSSI(-random.nextInt(100) + random.nextDouble()));
+            if (0 == random.nextInt(20)) {
+                list.clearBeforeDate(new Date(time - random.nextInt(30)));
+            }
+            if (0 == random.nextInt(500)) {
+                list.clear();
+            }
+            final Gaussian<RSSI> expected = new Gaussian<>();
+            list.aggregate(expected);
+            assertEquals(expected.model().count(), incremental.model().count());
+            if (null == expected.reduce()) {
+                assertNull(incremental.reduce());
+                continue;
+            }
+            assertEquals(expected.model().mean(), incremental.model().mean(), 0.000000001);
+            assertEquals(expected.model().min(), incremental.model().min(), Double.MIN_VALUE);
+            assertEquals(expected.model().max(), incremental.model().max(), Double.MIN_VALUE);
+            if (null == expected.model().variance()) {
+                assertNull(incremental.model().variance());
+            } else {
+                assertEquals(expected.model().variance(), incremental.model().variance(), 0.000001);
+            }
+        }
+    }
 }
@@ -7,7 +7,12 @@ package io.heraldprox.herald.sensor.analysis.aggregates;
 import org.junit.Test;
 
 import io.heraldprox.herald.sensor.analysis.sampling.Sample;
+import io.heraldprox.herald.sensor.analysis.sampling.SampleList;
+import io.heraldprox.herald.sensor.datatype.Date;
 import io.heraldprox.herald.sensor.datatype.Int8;
+import io.heraldprox.herald.sensor.datatype.RSSI;
+
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -59,4 +64,31 @@ public class MeanTests {
         mean.reset();
         assertNull(mean.reduce());
     }
+
+    @Test
+    public void testIncremental() {
+        // Incremental mean over sliding window is equivalent to full pass over window
+        final Random random = new Random(0);
+        final SampleList<RSSI> list = new SampleList<>(20);
+        final Mean<RSSI> incremental = new Mean<>();
+        list.track(incremental);
+        long time = 1000;
+        for (int i=0; i<10000; i++) {
+            time += random.nextInt(3);
+            list.push(time, new RSSI(-random.nextInt(100) + random.nextDouble()));
+            if (0 == random.nextInt(20)) {
+                list.clearBeforeDate(new Date(time - random.nextInt(30)));
+            }
+            if (0 == random.nextInt(500)) {
+                list.clear();
+            }
+            final Mean<RSSI> expected = new Mean<>();
+            list.aggregate(expected);
+            if (null == expected.reduce()) {
+                assertNull(incremental.reduce());
+            } else {
+                assertEquals(expected.reduce(), incremental.reduce(), 0.000000001);
+            }
+        }
+    }
 }
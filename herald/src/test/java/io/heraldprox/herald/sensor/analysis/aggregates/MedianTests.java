@@ -7,7 +7,13 @@ package io.heraldprox.herald.sensor.analysis.aggregates;
 import org.junit.Test;
 
 import io.heraldprox.herald.sensor.analysis.sampling.Sample;
+import io.heraldprox.herald.sensor.analysis.sampling.SampleList;
+import io.heraldprox.herald.sensor.datatype.Date;
 import io.heraldprox.herald.sensor.datatype.Int8;
+import io.heraldprox.herald.sensor.datatype.RSSI;
+
+import java.util.Arrays;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
@@ -68,4 +74,87 @@ public class MedianTests {
         median.reset();
         assertNull(median.reduce());
     }
+
+    private static Double referenceMedian(final SampleList<RSSI> list) {
+        if (0 == list.size()) {
+            return null;
+        }
+        final double[] values = new double[list.size()];
+        for (int i=0; i<values.length; i++) {
+            values[i] = list.get(i).value().value;
+        }
+        Arrays.sort(values);
+        if (1 == values.length % 2) {
+            return values[values.length / 2];
+        }
+        return (values[values.length / 2 - 1] + values[values.length / 2]) / 2;
+    }
+
+    @Test
+    public void testIncremental() {
+        // Incremental median over sliding window is equivalent to sorting the window
+        final Random random = new Random(0);
+        final SampleList<RSSI> list = new SampleList<>(31);
+        final Median<RSSI> median = new Median<>();
+        list.track(median);
+        long time = 1000;
+        for (int i=0; i<20000; i++) {
+            time += random.nextInt(3);
+            // Integer RSSI values with many duplicates, and occasional fractional values
+            final double rssi = (0 == random.nextInt(10) ? -random.nextDouble() * 100 : -random.nextInt(100));
+            list.push(time, new RSSI(rssi));
+            if (0 == random.nextInt(20)) {
+                list.clearBeforeDate(new Date(time - random.nextInt(30)));
+            }
+            if (0 == random.nextInt(1000)) {
+                list.clear();
+            }
+            assertEquals(list.size(), median.count());
+            assertEquals(referenceMedian(list), median.reduce());
+        }
+    }
+
+    @Test
+    public void testRemoveMissingValue() {
+        // Removing a value that was never added has no effect
+        final Median<Int8> median = new Median<>();
+        median.onPush(0, 1);
+        median.onPush(0, 3);
+        median.onEvict(0, 2);
+        assertEquals(2, median.count());
+        assertEquals(2, median.reduce(), Double.MIN_VALUE);
+    }
+
+    @Test
+    public void testIncrementalPerformance() {
+        final int window = 60;
+        final int samples = 100000;
+        final Random random = new Random(0);
+        final double[] values = new double[samples];
+        for (int i=0; i<samples; i++) {
+            values[i] = -random.nextInt(100);
+        }
+        // Full pass on every sample
+        final SampleList<RSSI> list = new SampleList<>(window);
+        double fullPass = 0;
+        final long t0 = System.nanoTime();
+        for (int i=0; i<samples; i++) {
+            list.push(i, new RSSI(values[i]));
+            final Median<RSSI> median = new Median<>();
+            fullPass += list.aggregate(median).get(0);
+        }
+        final long t1 = System.nanoTime();
+        // Incremental
+        list.clear();
+        final Median<RSSI> median = new Median<>();
+        list.track(median);
+        double incremental = 0;
+        for (int i=0; i<samples; i++) {
+            list.push(i, new RSSI(values[i]));
+            incremental += median.reduce();
+        }
+        final long t2 = System.nanoTime();
+        assertEquals(fullPass, incremental, 0.000001);
+        System.out.println("testIncrementalPerformance (window=" + window + ",samples=" + samples + ",fullPass=" + ((t1 - t0) / samples) + "ns/sample,incremental=" + ((t2 - t1) / samples) + "ns/sample)");
+    }
 }
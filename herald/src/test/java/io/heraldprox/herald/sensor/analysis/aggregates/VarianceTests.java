@@ -7,11 +7,17 @@ package io.heraldprox.herald.sensor.analysis.aggregates;
 import org.junit.Test;
 
 import io.heraldprox.herald.sensor.analysis.sampling.Sample;
+import io.heraldprox.herald.sensor.analysis.sampling.SampleList;
+import io.heraldprox.herald.sensor.datatype.Date;
 import io.heraldprox.herald.sensor.datatype.Int8;
+import io.heraldprox.herald.sensor.datatype.RSSI;
+
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 @SuppressWarnings("ConstantConditions")
 public class VarianceTests {
@@ -89,4 +95,46 @@ public class VarianceTests {
         variance.reset();
         assertNull(variance.reduce());
     }
+
+    @Test
+    public void testIncremental() {
+        // Incremental variance over sliding window is equivalent to full pass over window
+        final Random random = new Random(0);
+        final SampleList<RSSI> list = new SampleList<>(20);
+        final Variance<RSSI> incremental = new Variance<>();
+        list.track(incremental);
+        long time = 1000;
+        for (int i=0; i<10000; i++) {
+            time += random.nextInt(3);
+            list.push(time, new RSSI(-random.nextInt(100) + random.nextDouble()));
+            if (0 == random.nextInt(20)) {
+                list.clearBeforeDate(new Date(time - random.nextInt(30)));
+            }
+            if (0 == random.nextInt(500)) {
+                list.clear();
+            }
+            final Variance<RSSI> expected = new Variance<>();
+            list.aggregate(expected);
+            if (null == expected.reduce()) {
+                assertNull(incremental.reduce());
+            } else {
+                assertEquals(expected.reduce(), incremental.reduce(), 0.000001);
+            }
+        }
+    }
+
+    @Test
+    public void testIncrementalStability() {
+        // Variance of constant window after evicting large values must not become negative
+        final SampleList<RSSI> list = new SampleList<>(3);
+        final Variance<RSSI> variance = new Variance<>();
+        list.track(variance);
+        list.push(1, new RSSI(1e9));
+        list.push(2, new RSSI(-1e9));
+        for (int i=0; i<3; i++) {
+            list.push(3 + i, new RSSI(0.1));
+        }
+        assertEquals(0, variance.reduce(), 0.000001);
+        assertTrue(variance.reduce() >= 0);
+    }
 }
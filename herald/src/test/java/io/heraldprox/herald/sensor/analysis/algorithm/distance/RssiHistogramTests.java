@@ -5,11 +5,17 @@
 package io.heraldprox.herald.sensor.analysis.algorithm.distance;
 
 import io.heraldprox.herald.sensor.analysis.algorithms.distance.RssiHistogram;
+import io.heraldprox.herald.sensor.data.TextFile;
 import io.heraldprox.herald.sensor.datatype.TimeInterval;
 
 import org.junit.Test;
 
+import java.io.File;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class RssiHistogramTests {
 
@@ -381,4 +387,196 @@ public class RssiHistogramTests {
         assertEquals(-10, rssiHistogram.normalise(-45), Double.MIN_VALUE);
         assertEquals(-10, rssiHistogram.normalise(-9), Double.MIN_VALUE);
     }
+
+    // MARK:- Fenwick tree
+
+    // Reference percentile by linear scan of cumulative distribution function
+    private static int samplePercentile(final long[] histogram, final int min, final int max, final double percentile) {
+        long samples = 0;
+        for (final long count : histogram) {
+            samples += count;
+        }
+        if (0 == samples) {
+            return (int) Math.round(min + (max - min) * percentile);
+        }
+        final double percentileCount = samples * percentile;
+        long cdf = 0;
+        for (int i=0; i<histogram.length; i++) {
+            cdf += histogram[i];
+            if (cdf >= percentileCount) {
+                return min + i;
+            }
+        }
+        return max;
+    }
+
+    // Reference normalisation by linear scan of cumulative distribution function
+    private static double normalise(final long[] histogram, final int min, final double rssi) {
+        final int index = (int) Math.max(0, Math.min(histogram.length - 1, Math.round(rssi) - min));
+        long samples = 0, cdf = 0;
+        for (int i=0; i<histogram.length; i++) {
+            samples += histogram[i];
+            if (i <= index) {
+                cdf += histogram[i];
+            }
+        }
+        if (0 == samples) {
+            return min + index;
+        }
+        return min + (histogram.length - 1) * cdf / (double) samples;
+    }
+
+    @Test
+    public void test_equivalence() {
+        final Random random = new Random(0);
+        final RssiHistogram rssiHistogram = new RssiHistogram(-99, -10, TimeInterval.zero, null);
+        final long[] expected = new long[90];
+        for (int i=0; i<2000; i++) {
+            // Skewed distribution with out of range values
+            final int rssi = -105 + (int) Math.abs(random.nextGaussian() * 20 + 40);
+            rssiHistogram.add(rssi);
+            if (rssi >= -99 && rssi <= -10) {
+                expected[rssi + 99]++;
+            }
+            if (0 == i % 50) {
+                assertArrayEquals(expected, rssiHistogram.histogram());
+                for (int p=0; p<=100; p++) {
+                    assertEquals(samplePercentile(expected, -99, -10, p / 100d), rssiHistogram.samplePercentile(p / 100d));
+                }
+                for (int r=-105; r<=0; r++) {
+                    assertEquals(normalise(expected, -99, r), rssiHistogram.normalise(r), 0.000001);
+                    assertEquals(expected[Math.max(0, Math.min(89, r + 99))] * (r >= -99 && r <= -10 ? 1 : 0), rssiHistogram.count(r));
+                }
+            }
+        }
+        rssiHistogram.clear();
+        assertEquals(0, rssiHistogram.samples());
+        assertEquals(-54, rssiHistogram.samplePercentile(0.5));
+    }
+
+    @Test
+    public void test_concurrent_add() throws Exception {
+        final RssiHistogram rssiHistogram = new RssiHistogram(-99, -10, TimeInterval.zero, null);
+        final Thread[] threads = new Thread[8];
+        final int samples = 100000;
+        for (int t=0; t<threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i=0; i<samples; i++) {
+                        rssiHistogram.add(-99 + (i % 90));
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(threads.length * samples, rssiHistogram.samples());
+        for (int rssi=-99; rssi<=-10; rssi++) {
+            assertEquals(threads.length * (samples / 90 + (rssi + 99 < samples % 90 ? 1 : 0)), rssiHistogram.count(rssi));
+        }
+    }
+
+    @Test
+    public void test_read_write() throws Exception {
+        final File folder = new File("test_rssiHistogramTests");
+        final File file = new File(folder, "test_read_write");
+        file.delete();
+        folder.delete();
+        final TextFile textFile = new TextFile(file);
+        final RssiHistogram rssiHistogram = new RssiHistogram(-99, -10, TimeInterval.never, textFile);
+        for (int rssi=-44; rssi<=-10; rssi++) {
+            rssiHistogram.add(rssi);
+            rssiHistogram.add(rssi);
+        }
+        rssiHistogram.write(textFile);
+        final RssiHistogram rssiHistogramRead = new RssiHistogram(-99, -10, TimeInterval.never, textFile);
+        assertArrayEquals(rssiHistogram.histogram(), rssiHistogramRead.histogram());
+        assertEquals(70, rssiHistogramRead.samples());
+        assertEquals(-27, rssiHistogramRead.samplePercentile(0.5));
+        file.delete();
+        folder.delete();
+    }
+
+    @Test
+    public void test_maximum_count() throws Exception {
+        final File folder = new File("test_rssiHistogramTests");
+        final File file = new File(folder, "test_maximum_count");
+        file.delete();
+        folder.delete();
+        final TextFile textFile = new TextFile(file);
+        textFile.overwrite("-50," + (Long.MAX_VALUE - 1) + "\n");
+        final RssiHistogram rssiHistogram = new RssiHistogram(-99, -10, TimeInterval.never, textFile);
+        assertEquals(Long.MAX_VALUE - 1, rssiHistogram.samples());
+        // Data collection stops at maximum count
+        rssiHistogram.add(-40);
+        rssiHistogram.add(-40);
+        assertEquals(Long.MAX_VALUE, rssiHistogram.samples());
+        assertEquals(1, rssiHistogram.count(-40));
+        final RssiHistogram other = new RssiHistogram(-99, -10);
+        other.add(-30);
+        rssiHistogram.merge(other);
+        assertEquals(Long.MAX_VALUE, rssiHistogram.samples());
+        assertEquals(0, rssiHistogram.count(-30));
+        // Merge is capped at maximum count
+        final RssiHistogram merged = new RssiHistogram(-99, -10);
+        merged.add(-60);
+        merged.merge(rssiHistogram);
+        assertEquals(Long.MAX_VALUE, merged.samples());
+        assertEquals(1, merged.count(-60));
+        assertEquals(Long.MAX_VALUE - 1, merged.count(-50));
+        assertEquals(0, merged.count(-40));
+        file.delete();
+        folder.delete();
+    }
+
+    @Test
+    public void test_background_write() throws Exception {
+        final File folder = new File("test_rssiHistogramTests");
+        final File file = new File(folder, "test_background_write");
+        file.delete();
+        folder.delete();
+        final TextFile textFile = new TextFile(file);
+        // Background write is scheduled by first add after update period
+        final RssiHistogram rssiHistogram = new RssiHistogram(-99, -10, TimeInterval.zero, textFile);
+        rssiHistogram.add(-50);
+        for (int i=0; i<100 && textFile.contentsOf().isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+        final RssiHistogram rssiHistogramRead = new RssiHistogram(-99, -10, TimeInterval.never, textFile);
+        assertEquals(1, rssiHistogramRead.samples());
+        assertEquals(1, rssiHistogramRead.count(-50));
+        file.delete();
+        folder.delete();
+    }
+
+    @Test
+    public void test_performance() {
+        final Random random = new Random(0);
+        final int samples = 1000000;
+        final int[] values = new int[samples];
+        for (int i=0; i<samples; i++) {
+            values[i] = -99 + random.nextInt(90);
+        }
+        final RssiHistogram rssiHistogram = new RssiHistogram(-99, -10, TimeInterval.zero, null);
+        for (int i=0; i<samples; i++) {
+            rssiHistogram.add(values[i]);
+        }
+        rssiHistogram.clear();
+        final long t0 = System.nanoTime();
+        for (int i=0; i<samples; i++) {
+            rssiHistogram.add(values[i]);
+        }
+        final long t1 = System.nanoTime();
+        double sum = 0;
+        for (int i=0; i<samples; i++) {
+            sum += rssiHistogram.normalise(values[i]) + rssiHistogram.samplePercentile((i % 100) / 100d);
+        }
+        final long t2 = System.nanoTime();
+        System.out.println("test_performance (samples=" + samples + ",add=" + ((t1 - t0) / samples) + "ns/sample,query=" + ((t2 - t1) / samples) + "ns/query)");
+        assertEquals(samples, rssiHistogram.samples());
+        assertTrue(sum < 0);
+    }
 }
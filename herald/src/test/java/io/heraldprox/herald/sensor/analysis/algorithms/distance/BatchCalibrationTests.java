@@ -0,0 +1,208 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis.algorithms.distance;
+
+import io.heraldprox.herald.sensor.analysis.sampling.Sample;
+import io.heraldprox.herald.sensor.data.TextFile;
+import io.heraldprox.herald.sensor.datatype.Distance;
+import io.heraldprox.herald.sensor.datatype.RSSI;
+import io.heraldprox.herald.sensor.datatype.TimeInterval;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@SuppressWarnings("ResultOfMethodCallIgnored")
+public class BatchCalibrationTests {
+    private final File folder = new File("test_batchCalibrationTests");
+
+    @After
+    public void tearDown() {
+        final File[] files = folder.listFiles();
+        if (null != files) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+        folder.delete();
+    }
+
+    private static BatchCalibration batchCalibration() {
+        return new BatchCalibration(new Distance(0.5), new Distance(2), TimeInterval.minutes(30), TimeInterval.hours(12));
+    }
+
+    private static void write(final File file, final String content) throws IOException {
+        file.getParentFile().mkdirs();
+        final FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(content.getBytes("UTF-8"));
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    // Calibration log with RSSI values, interleaved with inertia rows, and reference histogram
+    private static String calibrationLog(final Random random, final int rows, final RssiHistogram expected) {
+        final StringBuilder s = new StringBuilder("time,payload,rssi,x,y,z\n");
+        for (int i=0; i<rows; i++) {
+            if (0 == i % 10) {
+                s.append("2021-04-01 10:00:00,,,0.1,0.2,0.3\n");
+            }
+            final double rssi = -40 - random.nextInt(50);
+            s.append("2021-04-01 10:00:00,\"A,B\",").append(rssi).append(",,,\n");
+            expected.add(rssi);
+        }
+        return s.toString();
+    }
+
+    // Contact log with RSSI measurements, interleaved with other events, and reference histogram
+    private static String contactLog(final Random random, final int rows, final RssiHistogram expected) {
+        final StringBuilder s = new StringBuilder("time,sensor,id,detect,read,measure,share,visit,data\r\n");
+        for (int i=0; i<rows; i++) {
+            if (0 == i % 10) {
+                s.append("2021-04-01 10:00:00,BLE,target,1,,,,,\r\n");
+                s.append("2021-04-01 10:00:00,BLE,target,,2,,,,payload\r\n");
+            }
+            final int rssi = -30 - random.nextInt(60);
+            s.append("2021-04-01 10:00:00,BLE,target,,,3,,,RSSI:").append(rssi).append(".0[BLETransmitPower:12.0]\r\n");
+            expected.add(rssi);
+        }
+        return s.toString();
+    }
+
+    @Test
+    public void testParse() throws Exception {
+        final Random random = new Random(0);
+        final RssiHistogram expected = new RssiHistogram(-99, -10);
+        final File calibration = new File(folder, "calibration.csv");
+        final File contacts = new File(folder, "contacts.csv");
+        write(calibration, calibrationLog(random, 1000, expected));
+        write(contacts, contactLog(random, 1000, expected));
+        // Small regions to exercise lines spanning regions
+        for (final int regionSize : new int[]{128, 1000, 1024 * 1024}) {
+            final RssiHistogram actual = new RssiHistogram(-99, -10);
+            assertEquals(1000, BatchCalibration.parse(calibration, actual, regionSize));
+            assertEquals(1000, BatchCalibration.parse(contacts, actual, regionSize));
+            assertArrayEquals(expected.histogram(), actual.histogram());
+        }
+        // Unknown format is ignored
+        final File unknown = new File(folder, "unknown.csv");
+        write(unknown, "a,b,c\n1,2,3\n");
+        assertEquals(0, BatchCalibration.parse(unknown, new RssiHistogram(-99, -10), 1024));
+    }
+
+    @Test
+    public void testMerge() {
+        final RssiHistogram a = new RssiHistogram(-99, -10);
+        final RssiHistogram b = new RssiHistogram(-80, 0);
+        a.add(-50);
+        b.add(-50);
+        b.add(-5);
+        a.merge(b);
+        assertEquals(2, a.count(-50));
+        assertEquals(2, a.samples());
+    }
+
+    @Test
+    public void testRun() throws Exception {
+        final Random random = new Random(1);
+        final BatchCalibration batchCalibration = batchCalibration();
+        final RssiHistogram expectedA = new RssiHistogram(-99, -10);
+        final RssiHistogram expectedB = new RssiHistogram(-99, -10);
+        for (int i=0; i<4; i++) {
+            final File fileA = new File(folder, "a" + i + ".csv");
+            final File fileB = new File(folder, "b" + i + ".csv");
+            write(fileA, calibrationLog(random, 500, expectedA));
+            write(fileB, contactLog(random, 500, expectedB));
+            batchCalibration.add("modelA", fileA);
+            batchCalibration.add("modelB", fileB);
+        }
+        // Missing file is skipped
+        batchCalibration.add("modelC", new File(folder, "missing.csv"));
+        final Map<String, BatchCalibration.Parameters> parameters = batchCalibration.run(3);
+        assertEquals(2, parameters.size());
+        assertFalse(parameters.containsKey("modelC"));
+        final BatchCalibration.Parameters a = parameters.get("modelA");
+        final BatchCalibration.Parameters b = parameters.get("modelB");
+        assertNotNull(a);
+        assertNotNull(b);
+        assertEquals(2000, a.samples);
+        assertEquals(2000, b.samples);
+        // Parallel result is identical to sequential fit
+        assertEquals(batchCalibration.fit(expectedA).toString(), a.toString());
+        assertEquals(batchCalibration.fit(expectedB).toString(), b.toString());
+        // Max RSSI percentile maps to min distance, and anchor percentile maps to mean distance
+        final double maxRssi = expectedA.samplePercentile((TimeInterval.day.value - TimeInterval.minutes(30).value) / (double) TimeInterval.day.value);
+        final double anchorRssi = expectedA.samplePercentile(0.5);
+        assertEquals(0.5, a.intercept + a.coefficient * maxRssi, 0.000001);
+        assertEquals(2, a.intercept + a.coefficient * anchorRssi, 0.000001);
+        assertTrue(a.coefficient < 0);
+    }
+
+    @Test
+    public void testReadWrite() {
+        final TextFile textFile = new TextFile(new File(folder, "parameters.csv"));
+        final Map<String, BatchCalibration.Parameters> parameters = new TreeMap<>();
+        parameters.put("Pixel 3", new BatchCalibration.Parameters(-17.102080, -0.266793, 100));
+        parameters.put("iPhone, 12", new BatchCalibration.Parameters(-12.5, -0.2, 200));
+        BatchCalibration.write(parameters, textFile);
+        final Map<String, BatchCalibration.Parameters> read = BatchCalibration.read(textFile);
+        assertEquals(2, read.size());
+        for (final Map.Entry<String, BatchCalibration.Parameters> entry : parameters.entrySet()) {
+            assertEquals(entry.getValue().toString(), read.get(entry.getKey()).toString());
+        }
+        // Apply to model
+        final SmoothedLinearModel<RSSI> model = new SmoothedLinearModel<>();
+        read.get("iPhone, 12").apply(model);
+        model.map(new Sample<>(1000, new RSSI(-70)));
+        assertEquals(-12.5 + -0.2 * -70, model.reduce(), 0.000001);
+        // Parameters are not applicable to self calibrated model
+        final SelfCalibratedModel<RSSI> selfCalibratedModel = new SelfCalibratedModel<>(new Distance(0.5), new Distance(2), TimeInterval.minutes(5), TimeInterval.hours(1), null);
+        try {
+            read.get("iPhone, 12").apply(selfCalibratedModel);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testPerformance() throws Exception {
+        final Random random = new Random(2);
+        final int files = 8;
+        final int rows = 125000;
+        final BatchCalibration batchCalibration = batchCalibration();
+        final RssiHistogram expected = new RssiHistogram(-99, -10);
+        for (int i=0; i<files; i++) {
+            final File file = new File(folder, "contacts" + i + ".csv");
+            write(file, contactLog(random, rows, expected));
+            batchCalibration.add("model", file);
+        }
+        // Warm up
+        batchCalibration.histograms(1, 64 * 1024 * 1024);
+        final long t0 = System.nanoTime();
+        final Map<String, RssiHistogram> sequential = batchCalibration.histograms(1, 64 * 1024 * 1024);
+        final long t1 = System.nanoTime();
+        final Map<String, RssiHistogram> parallel = batchCalibration.histograms(Runtime.getRuntime().availableProcessors(), 64 * 1024 * 1024);
+        final long t2 = System.nanoTime();
+        assertArrayEquals(expected.histogram(), sequential.get("model").histogram());
+        assertArrayEquals(expected.histogram(), parallel.get("model").histogram());
+        System.out.println("testPerformance (files=" + files + ",lines=" + (files * rows) + ",threads=" + Runtime.getRuntime().availableProcessors()
+                + ",sequential=" + ((t1 - t0) / 1000000) + "ms,parallel=" + ((t2 - t1) / 1000000) + "ms)");
+    }
+}
@@ -0,0 +1,81 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis.algorithms.distance;
+
+import io.heraldprox.herald.sensor.analysis.sampling.CallableForNewSample;
+import io.heraldprox.herald.sensor.analysis.sampling.Sample;
+import io.heraldprox.herald.sensor.analysis.sampling.SampleList;
+import io.heraldprox.herald.sensor.analysis.sampling.SampledID;
+import io.heraldprox.herald.sensor.datatype.Date;
+import io.heraldprox.herald.sensor.datatype.Distance;
+import io.heraldprox.herald.sensor.datatype.RSSI;
+import io.heraldprox.herald.sensor.datatype.TimeInterval;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DistanceAnalyserTests {
+    private final static CallableForNewSample<Distance> callable = new CallableForNewSample<Distance>() {
+        @Override
+        public void newSample(final SampledID sampled, final Sample<Distance> item) {
+        }
+    };
+
+    private static SampleList<RSSI> input(final long start, final int samples) {
+        final SampleList<RSSI> input = new SampleList<>(samples);
+        for (int i=0; i<samples; i++) {
+            input.push(start + i, new RSSI(-70 - (i % 5)));
+        }
+        return input;
+    }
+
+    @Test
+    public void testSmoothedLinearModelAnalyserInterval() {
+        // Replay of historic data, where interval guard uses the given time rather than wall clock
+        final SmoothedLinearModelAnalyser analyser = new SmoothedLinearModelAnalyser(new TimeInterval(10), new TimeInterval(30), new SmoothedLinearModel<RSSI>());
+        final SampledID sampledID = new SampledID(1);
+        final SampleList<RSSI> input = input(1000, 60);
+        final SampleList<Distance> output = new SampleList<>(10);
+        assertTrue(analyser.analyse(new Date(1040), sampledID, input, output, callable));
+        assertFalse(analyser.analyse(new Date(1045), sampledID, input, output, callable));
+        assertTrue(analyser.analyse(new Date(1050), sampledID, input, output, callable));
+        assertEquals(2, output.size());
+    }
+
+    @Test
+    public void testSmoothedLinearModelAnalyserSweep() {
+        final SmoothedLinearModelAnalyser analyser = new SmoothedLinearModelAnalyser(new TimeInterval(10), new TimeInterval(30), new SmoothedLinearModel<RSSI>());
+        final SampleList<RSSI> input = input(1000, 60);
+        final SampleList<Distance> output = new SampleList<>(200);
+        for (int i=0; i<100; i++) {
+            assertTrue(analyser.analyse(new Date(1040), new SampledID(i), input, output, callable));
+        }
+        assertEquals(100, analyser.lastRanSize());
+        // Transient sampled IDs are discarded after interval has elapsed
+        final SampleList<RSSI> later = input(2000, 60);
+        assertTrue(analyser.analyse(new Date(2040), new SampledID(100), later, output, callable));
+        assertEquals(1, analyser.lastRanSize());
+    }
+
+    @Test
+    public void testFowlerBasicAnalyserSweep() {
+        final FowlerBasicAnalyser analyser = new FowlerBasicAnalyser(10, -11, -0.4);
+        final SampleList<RSSI> input = input(1000, 60);
+        final SampleList<Distance> output = new SampleList<>(200);
+        for (int i=0; i<100; i++) {
+            assertTrue(analyser.analyse(new Date(1060), new SampledID(i), input, output, callable));
+        }
+        assertEquals(100, analyser.lastRanSize());
+        // Interval guard is unaffected by sweep
+        assertFalse(analyser.analyse(new Date(1065), new SampledID(0), input, output, callable));
+        // Transient sampled IDs are discarded after interval has elapsed
+        final SampleList<RSSI> later = input(2000, 60);
+        assertTrue(analyser.analyse(new Date(2060), new SampledID(100), later, output, callable));
+        assertEquals(1, analyser.lastRanSize());
+    }
+}
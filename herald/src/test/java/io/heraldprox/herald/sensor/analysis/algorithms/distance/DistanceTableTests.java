@@ -0,0 +1,181 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis.algorithms.distance;
+
+import io.heraldprox.herald.sensor.analysis.sampling.Sample;
+import io.heraldprox.herald.sensor.datatype.Distance;
+import io.heraldprox.herald.sensor.datatype.RSSI;
+import io.heraldprox.herald.sensor.datatype.TimeInterval;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("ConstantConditions")
+public class DistanceTableTests {
+
+    // Median RSSI values of integers and half integers, with values outside of table
+    private static double[] medianOfRssi(final Random random, final int count) {
+        final double[] medianOfRssi = new double[count];
+        for (int i=0; i<count; i++) {
+            switch (i % 10) {
+                case 0:
+                    medianOfRssi[i] = -200 + random.nextDouble() * 250;
+                    break;
+                case 1:
+                    medianOfRssi[i] = (i % 20 == 1 ? Double.NaN : -140);
+                    break;
+                default:
+                    medianOfRssi[i] = -99 + random.nextInt(180) / 2d;
+                    break;
+            }
+        }
+        return medianOfRssi;
+    }
+
+    @Test
+    public void testSmoothedLinearModel() {
+        final Random random = new Random(0);
+        final double[] medianOfRssi = medianOfRssi(random, 1000);
+        final double[] distance = new double[medianOfRssi.length];
+        final SmoothedLinearModel<RSSI> model = new SmoothedLinearModel<>();
+        model.distance(medianOfRssi, distance, medianOfRssi.length);
+        for (int i=0; i<medianOfRssi.length; i++) {
+            assertEquals(model.distance(medianOfRssi[i]), distance[i], 0);
+        }
+        // Table is rebuilt on parameter change
+        model.setParameters(-12.5, -0.2);
+        model.distance(medianOfRssi, distance, medianOfRssi.length);
+        for (int i=0; i<medianOfRssi.length; i++) {
+            assertEquals(model.distance(medianOfRssi[i]), distance[i], 0);
+        }
+        // Batch result is identical to aggregate
+        model.map(new Sample<>(0, new RSSI(-70)));
+        model.map(new Sample<>(1, new RSSI(-71)));
+        model.distance(new double[]{-70.5}, distance, 1);
+        assertEquals(model.reduce(), distance[0], 0);
+        // Out of range
+        model.distance(new double[]{-10}, distance, 1);
+        assertTrue(Double.isNaN(distance[0]));
+        model.reset();
+        model.map(new Sample<>(0, new RSSI(-10)));
+        assertNull(model.reduce());
+    }
+
+    @Test
+    public void testFowlerBasic() {
+        final Random random = new Random(1);
+        final double[] modeOfRssi = medianOfRssi(random, 1000);
+        final double[] distance = new double[modeOfRssi.length];
+        final FowlerBasic<RSSI> model = new FowlerBasic<>(-50, -24);
+        model.distance(modeOfRssi, distance, modeOfRssi.length);
+        for (int i=0; i<modeOfRssi.length; i++) {
+            assertEquals(model.distance(modeOfRssi[i]), distance[i], 0);
+        }
+        model.map(new Sample<>(0, new RSSI(-70)));
+        model.distance(new double[]{-70}, distance, 1);
+        assertEquals(model.reduce(), distance[0], 0);
+        // Zero coefficient
+        new FowlerBasic<RSSI>(-50, 0).distance(new double[]{-70}, distance, 1);
+        assertTrue(Double.isNaN(distance[0]));
+    }
+
+    @Test
+    public void testSelfCalibratedModel() {
+        final Random random = new Random(2);
+        final double[] medianOfRssi = medianOfRssi(random, 1000);
+        final double[] distance = new double[medianOfRssi.length];
+        final SelfCalibratedModel<RSSI> model = new SelfCalibratedModel<>(new Distance(0.2), new Distance(1), TimeInterval.minutes(30), TimeInterval.hours(12), null);
+        for (int i=0; i<1000; i++) {
+            model.histogram.add(-90 + random.nextInt(60));
+        }
+        model.distance(medianOfRssi, distance, medianOfRssi.length);
+        for (int i=0; i<medianOfRssi.length; i++) {
+            assertEquals(model.distance(medianOfRssi[i]), distance[i], 0);
+        }
+        // Batch uses latest histogram
+        for (int i=0; i<1000; i++) {
+            model.histogram.add(-50 + random.nextInt(30));
+        }
+        model.distance(medianOfRssi, distance, medianOfRssi.length);
+        for (int i=0; i<medianOfRssi.length; i++) {
+            assertEquals(model.distance(medianOfRssi[i]), distance[i], 0);
+        }
+        // Batch result is identical to aggregate
+        model.map(new Sample<>(0, new RSSI(-60)));
+        final Double expected = model.reduce();
+        model.distance(new double[]{-60}, distance, 1);
+        assertEquals(expected, distance[0], 0);
+    }
+
+    @Test
+    public void testPerformance() {
+        final Random random = new Random(3);
+        final int targets = 10000;
+        final int iterations = 100;
+        final double[] medianOfRssi = new double[targets];
+        for (int i=0; i<targets; i++) {
+            medianOfRssi[i] = -99 + random.nextInt(180) / 2d;
+        }
+        final double[] scalar = new double[targets];
+        final double[] batch = new double[targets];
+        final SmoothedLinearModel<RSSI> linear = new SmoothedLinearModel<>();
+        final FowlerBasic<RSSI> fowler = new FowlerBasic<>(-50, -24);
+        final SelfCalibratedModel<RSSI> selfCalibrated = new SelfCalibratedModel<>(new Distance(0.2), new Distance(1), TimeInterval.minutes(30), TimeInterval.hours(12), null);
+        for (int i=0; i<10000; i++) {
+            selfCalibrated.histogram.add(-90 + random.nextInt(60));
+        }
+        final String[] names = new String[]{"linear", "fowler", "selfCalibrated"};
+        final StringBuilder s = new StringBuilder("testPerformance (targets=" + targets);
+        for (int model=0; model<names.length; model++) {
+            long scalarTime = 0, batchTime = 0;
+            for (int iteration=0; iteration<iterations * 2; iteration++) {
+                final long t0 = System.nanoTime();
+                for (int i=0; i<targets; i++) {
+                    switch (model) {
+                        case 0:
+                            scalar[i] = linear.distance(medianOfRssi[i]);
+                            break;
+                        case 1:
+                            scalar[i] = fowler.distance(medianOfRssi[i]);
+                            break;
+                        default:
+                            scalar[i] = selfCalibrated.distance(medianOfRssi[i]);
+                            break;
+                    }
+                }
+                final long t1 = System.nanoTime();
+                switch (model) {
+                    case 0:
+                        linear.distance(medianOfRssi, batch, targets);
+                        break;
+                    case 1:
+                        fowler.distance(medianOfRssi, batch, targets);
+                        break;
+                    default:
+                        selfCalibrated.distance(medianOfRssi, batch, targets);
+                        break;
+                }
+                final long t2 = System.nanoTime();
+                // Second half of iterations after warm up
+                if (iteration >= iterations) {
+                    scalarTime += (t1 - t0);
+                    batchTime += (t2 - t1);
+                }
+            }
+            for (int i=0; i<targets; i++) {
+                assertEquals(scalar[i], batch[i], 0);
+            }
+            s.append(",").append(names[model]).append("={scalar=").append(scalarTime / iterations / targets)
+                    .append("ns/target,batch=").append(batchTime / iterations / targets).append("ns/target}");
+        }
+        s.append(")");
+        System.out.println(s.toString());
+    }
+}
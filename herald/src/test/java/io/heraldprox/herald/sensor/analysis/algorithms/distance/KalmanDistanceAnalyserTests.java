@@ -0,0 +1,171 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis.algorithms.distance;
+
+import io.heraldprox.herald.sensor.analysis.sampling.CallableForNewSample;
+import io.heraldprox.herald.sensor.analysis.sampling.Sample;
+import io.heraldprox.herald.sensor.analysis.sampling.SampleList;
+import io.heraldprox.herald.sensor.analysis.sampling.SampledID;
+import io.heraldprox.herald.sensor.datatype.Date;
+import io.heraldprox.herald.sensor.datatype.Distance;
+import io.heraldprox.herald.sensor.datatype.RSSI;
+import io.heraldprox.herald.sensor.datatype.TimeInterval;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("ConstantConditions")
+public class KalmanDistanceAnalyserTests {
+
+    private final static class RecordingCallable implements CallableForNewSample<Distance> {
+        private final List<Sample<Distance>> samples = new ArrayList<>();
+
+        @Override
+        public void newSample(final SampledID sampled, final Sample<Distance> item) {
+            samples.add(item);
+        }
+    }
+
+    @Test
+    public void testFilter() {
+        final Random random = new Random(0);
+        final SampleList<RSSI> list = new SampleList<>(10);
+        final KalmanDistanceAnalyser.RssiFilter filter = new KalmanDistanceAnalyser.RssiFilter(list, 0.5, 25, 3, 3);
+        list.track(filter);
+        assertNull(filter.reduce());
+        // Converges on noisy constant signal, with variance below measurement noise
+        long time = 0;
+        for (int i=0; i<100; i++) {
+            list.push(time++, new RSSI(-68 + random.nextInt(9) - 4));
+        }
+        assertEquals(-68, filter.reduce(), 2);
+        assertTrue(filter.variance() < 25);
+        assertEquals(0, filter.rejected());
+        // Invalid values are ignored
+        list.push(time++, new RSSI(-5));
+        list.push(time++, new RSSI(-120));
+        assertEquals(-68, filter.reduce(), 2);
+        // Single outlier is rejected
+        list.push(time++, new RSSI(-30));
+        assertEquals(-68, filter.reduce(), 2);
+        assertEquals(1, filter.rejected());
+        // Filter follows step change after consecutive rejections
+        for (int i=0; i<10; i++) {
+            list.push(time++, new RSSI(-40));
+        }
+        assertEquals(-40, filter.reduce(), 1);
+        // Eviction does not affect filter state, and clear resets filter
+        assertEquals(10, list.size());
+        list.clear();
+        assertNull(filter.reduce());
+    }
+
+    @Test
+    public void testAnalyse() {
+        final SmoothedLinearModel<RSSI> model = new SmoothedLinearModel<>();
+        final KalmanDistanceAnalyser analyser = new KalmanDistanceAnalyser(new TimeInterval(10), model, 0.5, 25, 3, 3, TimeInterval.minutes(5));
+        final SampledID sampledID = new SampledID(1);
+        final SampleList<RSSI> input = new SampleList<>(10);
+        final SampleList<Distance> output = new SampleList<>(10);
+        final RecordingCallable callable = new RecordingCallable();
+        // No data
+        assertFalse(analyser.analyse(new Date(0), sampledID, input, output, callable));
+        // First sample is published
+        input.push(1000, new RSSI(-70));
+        assertTrue(analyser.analyse(new Date(1000), sampledID, input, output, callable));
+        assertEquals(1, callable.samples.size());
+        assertEquals(1000, output.get(0).taken().secondsSinceUnixEpoch());
+        assertEquals(model.distance(-70), output.get(0).value().value, 0.000001);
+        // No new data
+        assertFalse(analyser.analyse(new Date(1001), sampledID, input, output, callable));
+        // New data within interval
+        input.push(1005, new RSSI(-72));
+        assertFalse(analyser.analyse(new Date(1005), sampledID, input, output, callable));
+        // New data after interval, without rescanning input
+        input.push(1010, new RSSI(-72));
+        assertTrue(analyser.analyse(new Date(1010), sampledID, input, output, callable));
+        assertEquals(2, callable.samples.size());
+        final double distance = output.get(1).value().value;
+        assertTrue(distance > model.distance(-70) && distance < model.distance(-72));
+        // Out of model range
+        final SampledID near = new SampledID(2);
+        final SampleList<RSSI> nearInput = new SampleList<>(10);
+        nearInput.push(1000, new RSSI(-20));
+        assertFalse(analyser.analyse(new Date(1000), near, nearInput, output, callable));
+        assertEquals(2, analyser.size());
+        // Replaced input list is tracked from scratch
+        final SampleList<RSSI> replacement = new SampleList<>(10);
+        replacement.push(1020, new RSSI(-80));
+        assertTrue(analyser.analyse(new Date(1020), sampledID, replacement, output, callable));
+        assertEquals(model.distance(-80), output.get(2).value().value, 0.000001);
+        assertNull(input.summary().get(KalmanDistanceAnalyser.RssiFilter.class));
+        assertEquals(-80, replacement.summary().get(KalmanDistanceAnalyser.RssiFilter.class), Double.MIN_VALUE);
+        // Filters without new samples are discarded after time to live
+        assertFalse(analyser.analyse(new Date(1000 + 5 * 60 + 10), sampledID, replacement, output, callable));
+        assertEquals(1, analyser.size());
+        assertNull(nearInput.summary().get(KalmanDistanceAnalyser.RssiFilter.class));
+    }
+
+    @Test
+    public void testPerformance() {
+        final Random random = new Random(1);
+        final int ids = 1000;
+        final int samples = 60;
+        final int windowSize = 60;
+        final SampledID[] sampledIDs = new SampledID[ids];
+        for (int i=0; i<ids; i++) {
+            sampledIDs[i] = new SampledID(i);
+        }
+        final int[][] rssi = new int[ids][samples * 2];
+        for (int i=0; i<ids; i++) {
+            for (int j=0; j<rssi[i].length; j++) {
+                rssi[i][j] = -70 - (i % 20) + random.nextInt(9) - 4;
+            }
+        }
+        final SmoothedLinearModelAnalyser windowAnalyser = new SmoothedLinearModelAnalyser(TimeInterval.zero, new TimeInterval(windowSize - 1), new SmoothedLinearModel<RSSI>());
+        final KalmanDistanceAnalyser kalmanAnalyser = new KalmanDistanceAnalyser(TimeInterval.zero, new SmoothedLinearModel<RSSI>(), 0.5, 25, 3, 3, TimeInterval.minutes(30));
+        final RecordingCallable windowCallable = new RecordingCallable();
+        final RecordingCallable kalmanCallable = new RecordingCallable();
+        final long start = 1000;
+        long windowTime = 0, kalmanTime = 0;
+        for (int id=0; id<ids; id++) {
+            final SampleList<RSSI> windowInput = new SampleList<>(windowSize);
+            final SampleList<RSSI> kalmanInput = new SampleList<>(windowSize);
+            final SampleList<Distance> windowOutput = new SampleList<>(samples * 2);
+            final SampleList<Distance> kalmanOutput = new SampleList<>(samples * 2);
+            // Every new sample is analysed, where the window analyser scans the full window
+            for (int j=0; j<rssi[id].length; j++) {
+                final long t0 = System.nanoTime();
+                windowInput.push(start + j, new RSSI(rssi[id][j]));
+                windowAnalyser.analyse(new Date(start + j), sampledIDs[id], windowInput, windowOutput, windowCallable);
+                final long t1 = System.nanoTime();
+                kalmanInput.push(start + j, new RSSI(rssi[id][j]));
+                kalmanAnalyser.analyse(new Date(start + j), sampledIDs[id], kalmanInput, kalmanOutput, kalmanCallable);
+                final long t2 = System.nanoTime();
+                // Exclude warm up
+                if (j >= samples) {
+                    windowTime += (t1 - t0);
+                    kalmanTime += (t2 - t1);
+                }
+            }
+            // Smoothed estimates are close
+            assertEquals(samples + 1, windowOutput.size());
+            assertEquals(samples * 2, kalmanOutput.size());
+            assertEquals(windowOutput.get(windowOutput.size() - 1).value().value, kalmanOutput.get(kalmanOutput.size() - 1).value().value, 1);
+        }
+        final int n = ids * samples;
+        System.out.println("testPerformance (ids=" + ids + ",samples=" + n + ",window=" + windowSize
+                + ",smoothedLinearModel=" + (windowTime / n) + "ns/sample,kalman=" + (kalmanTime / n) + "ns/sample)");
+        assertTrue(kalmanTime < windowTime);
+    }
+}
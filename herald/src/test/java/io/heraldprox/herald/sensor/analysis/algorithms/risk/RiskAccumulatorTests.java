@@ -0,0 +1,180 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis.algorithms.risk;
+
+import io.heraldprox.herald.sensor.analysis.sampling.Sample;
+import io.heraldprox.herald.sensor.analysis.sampling.SampleList;
+import io.heraldprox.herald.sensor.analysis.sampling.SampledID;
+import io.heraldprox.herald.sensor.datatype.Distance;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("ConstantConditions")
+public class RiskAccumulatorTests {
+
+    private static RiskAggregationBasic<Distance> model() {
+        return new RiskAggregationBasic<>(1.0, 1.0, 1.0, 1.0);
+    }
+
+    // Reference risk score by aggregating each consecutive pair of samples, as in RangesTests
+    private static double riskScore(final Sample<Distance>[] samples) {
+        final RiskAggregationBasic<Distance> riskScorer = model();
+        final SampleList<Distance> distanceList = new SampleList<>(2);
+        double riskScore = 0;
+        for (final Sample<Distance> sample : samples) {
+            distanceList.push(sample);
+            // Risk slice for latest pair is added on reduce
+            riskScore = distanceList.aggregate(riskScorer).get(0);
+        }
+        return riskScore;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Sample<Distance>[] samples(final Random random, final int count) {
+        final Sample<Distance>[] samples = new Sample[count];
+        long time = 1000;
+        for (int i=0; i<count; i++) {
+            time += 1 + random.nextInt(10);
+            samples[i] = new Sample<>(time, new Distance(0.5 + random.nextDouble() * 8));
+        }
+        return samples;
+    }
+
+    @Test
+    public void testEquivalence() {
+        final Random random = new Random(0);
+        final RiskAccumulator<Distance> accumulator = new RiskAccumulator<>(model());
+        for (int id=0; id<20; id++) {
+            final Sample<Distance>[] samples = samples(random, 1 + random.nextInt(50));
+            final SampledID sampledID = new SampledID(id);
+            for (final Sample<Distance> sample : samples) {
+                accumulator.newSample(sampledID, sample);
+            }
+            assertEquals(riskScore(samples), accumulator.riskScore(sampledID), 0.000000001);
+        }
+        assertEquals(20, accumulator.size());
+        assertEquals(20, accumulator.snapshot().size());
+        // First sample has no risk
+        assertNull(accumulator.riskScore(new SampledID(20)));
+        assertEquals(0, accumulator.add(new SampledID(20), 1000, 0.5), Double.MIN_VALUE);
+        // Clamped at minimum distance
+        assertEquals(10, accumulator.add(new SampledID(20), 1010, 0.5), Double.MIN_VALUE);
+        // Older sample is ignored
+        assertEquals(10, accumulator.add(new SampledID(20), 1005, 0.5), Double.MIN_VALUE);
+        // Risk falls to zero beyond distance where log10 term exceeds clamp
+        assertEquals(10, accumulator.add(new SampledID(20), 1020, 100), Double.MIN_VALUE);
+    }
+
+    @Test
+    public void testMergeAndReset() {
+        final Random random = new Random(1);
+        final Sample<Distance>[] samples = samples(random, 100);
+        final RiskAccumulator<Distance> first = new RiskAccumulator<>(model());
+        final RiskAccumulator<Distance> second = new RiskAccumulator<>(model());
+        final SampledID sampledID = new SampledID(1);
+        // Split stream into two consecutive periods, sharing the sample at the boundary
+        for (int i=0; i<50; i++) {
+            first.newSample(sampledID, samples[i]);
+        }
+        for (int i=49; i<100; i++) {
+            second.newSample(sampledID, samples[i]);
+        }
+        first.merge(second);
+        assertEquals(riskScore(samples), first.riskScore(sampledID), 0.000000001);
+        // Latest sample of merged accumulator is reference for next sample
+        final double before = first.riskScore(sampledID);
+        final long time = samples[99].taken().secondsSinceUnixEpoch();
+        assertEquals(before + 10, first.add(sampledID, time + 10, 0.5), 0.000000001);
+        // Merge into empty accumulator
+        final RiskAccumulator<Distance> empty = new RiskAccumulator<>(model());
+        empty.merge(first);
+        assertEquals(first.snapshot(), empty.snapshot());
+        // Reset
+        first.reset(sampledID);
+        assertNull(first.riskScore(sampledID));
+        empty.reset();
+        assertEquals(0, empty.size());
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        final Random random = new Random(2);
+        final int ids = 100;
+        final Sample<Distance>[] samples = samples(random, 1000);
+        final RiskAccumulator<Distance> accumulator = new RiskAccumulator<>(model());
+        final Thread[] threads = new Thread[4];
+        for (int t=0; t<threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    // Each thread owns a subset of sampled IDs
+                    for (int id=offset; id<ids; id+=threads.length) {
+                        for (final Sample<Distance> sample : samples) {
+                            accumulator.newSample(new SampledID(id), sample);
+                        }
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        final double expected = riskScore(samples);
+        final Map<SampledID, Double> snapshot = accumulator.snapshot();
+        assertEquals(ids, snapshot.size());
+        for (final Double riskScore : snapshot.values()) {
+            assertEquals(expected, riskScore, 0.000000001);
+        }
+    }
+
+    @Test
+    public void testPerformance() {
+        final Random random = new Random(3);
+        final int ids = 1000;
+        final int samplesPerId = 100;
+        final Sample<Distance>[] samples = samples(random, samplesPerId);
+        final SampledID[] sampledIDs = new SampledID[ids];
+        for (int i=0; i<ids; i++) {
+            sampledIDs[i] = new SampledID(i);
+        }
+        // Recompute risk from sample history on every new sample
+        final long t0 = System.nanoTime();
+        double recomputed = 0;
+        for (int id=0; id<ids; id++) {
+            final SampleList<Distance> history = new SampleList<>(samplesPerId);
+            for (final Sample<Distance> sample : samples) {
+                history.push(sample);
+                final RiskAggregationBasic<Distance> riskScorer = model();
+                final SampleList<Distance> pair = new SampleList<>(2);
+                for (final Sample<Distance> item : history) {
+                    pair.push(item);
+                    recomputed = pair.aggregate(riskScorer).get(0);
+                }
+            }
+        }
+        final long t1 = System.nanoTime();
+        // Fold each new sample into running risk score
+        final RiskAccumulator<Distance> accumulator = new RiskAccumulator<>(model());
+        for (int id=0; id<ids; id++) {
+            for (final Sample<Distance> sample : samples) {
+                accumulator.newSample(sampledIDs[id], sample);
+            }
+        }
+        final long t2 = System.nanoTime();
+        final int n = ids * samplesPerId;
+        System.out.println("testPerformance (ids=" + ids + ",samples=" + n + ",recompute=" + ((t1 - t0) / n) + "ns/sample,incremental=" + ((t2 - t1) / n) + "ns/sample)");
+        assertEquals(recomputed, accumulator.riskScore(sampledIDs[0]), 0.000000001);
+        assertTrue(t2 - t1 < t1 - t0);
+    }
+}
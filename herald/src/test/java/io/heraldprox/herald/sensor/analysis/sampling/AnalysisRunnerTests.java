@@ -10,15 +10,32 @@ import io.heraldprox.herald.sensor.analysis.algorithms.distance.FowlerBasicAnaly
 import io.heraldprox.herald.sensor.analysis.algorithms.distance.SmoothedLinearModel;
 import io.heraldprox.herald.sensor.analysis.algorithms.distance.SmoothedLinearModelAnalyser;
 import io.heraldprox.herald.sensor.analysis.algorithms.distance.SelfCalibratedModel;
+import io.heraldprox.herald.sensor.ble.BLESensorConfiguration;
+import io.heraldprox.herald.sensor.data.SensorLoggerLevel;
 import io.heraldprox.herald.sensor.datatype.Date;
 import io.heraldprox.herald.sensor.datatype.Distance;
+import io.heraldprox.herald.sensor.datatype.DoubleValue;
+import io.heraldprox.herald.sensor.datatype.Int32;
 import io.heraldprox.herald.sensor.datatype.Int8;
 import io.heraldprox.herald.sensor.datatype.RSSI;
 import io.heraldprox.herald.sensor.datatype.TimeInterval;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 @SuppressWarnings({"ConstantConditions", "unchecked"})
@@ -38,6 +55,42 @@ public class AnalysisRunnerTests {
         assertEquals(listManager.sampledIDs().size(), 0);
     }
 
+    @Test
+    public void listmanager_concurrent() throws Exception {
+        // Concurrent creation of the same list returns the same instance
+        final VariantSet variantSet = new VariantSet(10);
+        final ListManager<RSSI> listManager = variantSet.listManager(RSSI.class);
+        final int ids = 1000;
+        final SampleList<?>[][] lists = new SampleList<?>[4][ids];
+        final Thread[] threads = new Thread[lists.length];
+        for (int t=0; t<threads.length; t++) {
+            final int thread = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i=0; i<ids; i++) {
+                        // Threads create lists in different orders
+                        final int id = (0 == thread % 2 ? i : ids - 1 - i);
+                        lists[thread][id] = listManager.list(new SampledID(id));
+                        listManager.push(new SampledID(id), new Sample<>(thread, new RSSI(-id)));
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(ids, listManager.size());
+        assertEquals(ids, variantSet.sampledIDs().size());
+        for (int i=0; i<ids; i++) {
+            for (int t=1; t<lists.length; t++) {
+                assertTrue(lists[0][i] == lists[t][i]);
+            }
+            assertEquals(lists.length, listManager.list(new SampledID(i)).size());
+        }
+    }
+
     @Test
     public void variantset_listmanager() {
         final VariantSet variantSet = new VariantSet(15);
@@ -66,6 +119,33 @@ public class AnalysisRunnerTests {
         assertEquals(variantSet.size(), 1);
     }
 
+    @Test
+    public void variantset_sampledIDs() {
+        final VariantSet variantSet = new VariantSet(15);
+        assertEquals(0, variantSet.sampledIDs().size());
+        variantSet.push(new SampledID(3), new Sample<>(0, new RSSI(-50)));
+        variantSet.push(new SampledID(1), new Sample<>(0, new RSSI(-50)));
+        variantSet.push(new SampledID(1), new Sample<>(0, new Int8(1)));
+        // Lists created directly on list manager are also indexed
+        variantSet.listManager(Int8.class).list(new SampledID(2));
+        assertEquals(3, variantSet.sampledIDs().size());
+        assertArrayEquals(new SampledID[]{new SampledID(1), new SampledID(2), new SampledID(3)}, variantSet.sortedSampledIDs());
+        // Sampled ID remains until removed from all variants
+        variantSet.listManager(RSSI.class).remove(new SampledID(1));
+        assertTrue(variantSet.sampledIDs().contains(new SampledID(1)));
+        variantSet.listManager(Int8.class).remove(new SampledID(1));
+        assertFalse(variantSet.sampledIDs().contains(new SampledID(1)));
+        assertArrayEquals(new SampledID[]{new SampledID(2), new SampledID(3)}, variantSet.sortedSampledIDs());
+        variantSet.remove(Int8.class);
+        assertArrayEquals(new SampledID[]{new SampledID(3)}, variantSet.sortedSampledIDs());
+        variantSet.listManager(RSSI.class).clear();
+        assertEquals(0, variantSet.sampledIDs().size());
+        variantSet.push(new SampledID(4), new Sample<>(0, new RSSI(-50)));
+        variantSet.clear();
+        assertEquals(0, variantSet.sampledIDs().size());
+        assertEquals(0, variantSet.sortedSampledIDs().length);
+    }
+
     /**
      * [Who]   As a DCT app developer
      * [What]  I want to link my live application data to an analysis runner easily
@@ -75,6 +155,140 @@ public class AnalysisRunnerTests {
      * [What]  I want to periodically run analysis aggregates automatically
      * [Value] So I don't miss any information, and have accurate, regular, samples
      */
+    @Test
+    public void variantset_eviction_idle() {
+        final VariantSet variantSet = new VariantSet(10);
+        variantSet.eviction(TimeInterval.seconds(60), 0);
+        variantSet.push(new SampledID(1), new Sample<>(1000, new RSSI(-50)));
+        variantSet.push(new SampledID(2), new Sample<>(1000, new RSSI(-50)));
+        // Newest sample in any variant keeps sampled ID alive
+        variantSet.push(new SampledID(2), new Sample<>(1050, new Distance(1)));
+        assertEquals(2, variantSet.sampledIDs().size());
+        assertEquals(3, variantSet.liveLists());
+        assertEquals(1050, variantSet.latest(new SampledID(2)).secondsSinceUnixEpoch());
+        assertEquals(0, variantSet.evict(new Date(1060)));
+        assertEquals(1, variantSet.evict(new Date(1061)));
+        assertFalse(variantSet.sampledIDs().contains(new SampledID(1)));
+        assertEquals(2, variantSet.liveLists());
+        assertEquals(1, variantSet.evictedIdle());
+        assertEquals(0, variantSet.evictedCapacity());
+        // Sampled ID without samples is idle
+        variantSet.listManager(RSSI.class, new SampledID(3));
+        assertEquals(2, variantSet.sampledIDs().size());
+        assertEquals(1, variantSet.evict(new Date(1061)));
+        assertEquals(1, variantSet.sampledIDs().size());
+        // Runner applies eviction policy before analysis
+        final AnalysisRunner runner = new AnalysisRunner(new AnalysisProviderManager(new FowlerBasicAnalyser(0, -11, -0.4)), new AnalysisDelegateManager(), 10);
+        runner.variantSet().eviction(TimeInterval.seconds(60), 0);
+        runner.newSample(new SampledID(1), new Sample<>(1000, new RSSI(-50)));
+        runner.run(new Date(2000));
+        assertEquals(0, runner.variantSet().sampledIDs().size());
+        assertEquals(1, runner.variantSet().evictedIdle());
+    }
+
+    @Test
+    public void variantset_eviction_idle_concurrent_push() throws Exception {
+        final VariantSet variantSet = new VariantSet(10);
+        variantSet.eviction(TimeInterval.seconds(60), 0);
+        final int ids = 100000;
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final Thread evictor = new Thread() {
+            @Override
+            public void run() {
+                while (!done.get()) {
+                    variantSet.evict(new Date(1060));
+                }
+            }
+        };
+        evictor.start();
+        // Sampled ID is idle until a fresh sample is pushed, which must never be dropped
+        int dropped = 0;
+        for (int i=0; i<ids; i++) {
+            final SampledID sampledID = new SampledID(i);
+            variantSet.push(sampledID, new Sample<>(0, new RSSI(-50)));
+            variantSet.push(sampledID, new Sample<>(2000, new RSSI(-50)));
+            final Date latest = variantSet.latest(sampledID);
+            if (null == latest || 2000 != latest.secondsSinceUnixEpoch()) {
+                dropped++;
+            }
+            variantSet.remove(sampledID);
+        }
+        done.set(true);
+        evictor.join();
+        assertEquals(0, dropped);
+        assertTrue(variantSet.evictedIdle() > 0);
+    }
+
+    @Test
+    public void variantset_eviction_capacity() {
+        final VariantSet variantSet = new VariantSet(10);
+        for (int i=0; i<5; i++) {
+            variantSet.push(new SampledID(i), new Sample<>(1000 + i, new RSSI(-50)));
+        }
+        // Existing sampled IDs are ranked in ascending order
+        variantSet.eviction(null, 4);
+        assertEquals(1, variantSet.evictedCapacity());
+        assertFalse(variantSet.sampledIDs().contains(new SampledID(0)));
+        // Push updates recency, thus sampled ID 2 is least recently pushed
+        variantSet.push(new SampledID(1), new Sample<>(2000, new RSSI(-50)));
+        variantSet.push(new SampledID(5), new Sample<>(2000, new RSSI(-50)));
+        assertEquals(4, variantSet.sampledIDs().size());
+        assertFalse(variantSet.sampledIDs().contains(new SampledID(2)));
+        assertTrue(variantSet.sampledIDs().contains(new SampledID(1)));
+        // Lists created without push are evicted first, on next push or evict
+        variantSet.listManager(Distance.class, new SampledID(6));
+        assertEquals(5, variantSet.sampledIDs().size());
+        assertEquals(1, variantSet.evict(new Date(2000)));
+        assertFalse(variantSet.sampledIDs().contains(new SampledID(3)));
+        variantSet.push(new SampledID(7), new Sample<>(2000, new RSSI(-50)));
+        assertFalse(variantSet.sampledIDs().contains(new SampledID(4)));
+        assertEquals(4, variantSet.sampledIDs().size());
+        assertEquals(4, variantSet.liveLists());
+        assertEquals(4, variantSet.evictedCapacity());
+        assertEquals(0, variantSet.evictedIdle());
+    }
+
+    @Test
+    public void variantset_eviction_concurrent() throws Exception {
+        // Transient sampled IDs are ingested while analysis runs in parallel
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        final SensorLoggerLevel logLevel = BLESensorConfiguration.logLevel;
+        BLESensorConfiguration.logLevel = SensorLoggerLevel.off;
+        try {
+            final AnalysisRunner runner = new AnalysisRunner(new AnalysisProviderManager(new FowlerBasicAnalyser(0, -11, -0.4)), new AnalysisDelegateManager(), 20, pool);
+            final int capacity = 100;
+            runner.variantSet().eviction(TimeInterval.seconds(30), capacity);
+            final int pushes = 50000;
+            final Thread ingest = new Thread() {
+                @Override
+                public void run() {
+                    for (int i=0; i<pushes; i++) {
+                        // Rotating sampled IDs, one sample per second
+                        runner.newSample(new SampledID(i / 20), new Sample<>(1000 + i, new RSSI(-50 - i % 20)));
+                    }
+                }
+            };
+            ingest.start();
+            while (ingest.isAlive()) {
+                runner.run(new Date(1000 + pushes));
+            }
+            ingest.join();
+            runner.run(new Date(1000 + pushes));
+            final VariantSet variantSet = runner.variantSet();
+            assertTrue(variantSet.sampledIDs().size() <= capacity);
+            assertEquals(variantSet.sampledIDs().size(), variantSet.sortedSampledIDs().length);
+            // Only sampled IDs with samples in the last 30 seconds remain
+            for (final SampledID sampledID : variantSet.sampledIDs()) {
+                assertTrue(variantSet.latest(sampledID).secondsSinceUnixEpoch() >= 1000 + pushes - 30);
+            }
+            // Every sampled ID has been evicted, except for the live ones
+            assertTrue(variantSet.sampledIDs().size() + variantSet.evictedIdle() + variantSet.evictedCapacity() >= pushes / 20);
+        } finally {
+            BLESensorConfiguration.logLevel = logLevel;
+            pool.shutdown();
+        }
+    }
+
     @Test
     public void analysisrunner_basic() {
         final SampleList<RSSI> srcData = new SampleList<>(25);
@@ -277,6 +491,468 @@ public class AnalysisRunnerTests {
         assertEquals(samples.get(0).value().value, 1.0, 0.001);
     }
 
+    @Test
+    public void analysisrunner_parallel_deterministic() throws Exception {
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            // Smoothed linear model analyser tracks last run in real time
+            final long timeNow = new Date().secondsSinceUnixEpoch() + 1;
+            final List<String> serial = runAll(null, 50, timeNow);
+            final List<String> parallel = runAll(pool, 50, timeNow);
+            assertTrue(serial.size() > 50);
+            assertEquals(serial, parallel);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static List<String> runAll(final ForkJoinPool pool, final int ids, final long timeNow) {
+        final SensorLoggerLevel logLevel = BLESensorConfiguration.logLevel;
+        BLESensorConfiguration.logLevel = SensorLoggerLevel.off;
+        try {
+            final RecordingDistanceDelegate delegate = new RecordingDistanceDelegate();
+            final AnalysisProviderManager apm = new AnalysisProviderManager(
+                    new FowlerBasicAnalyser(0, -11, -0.4),
+                    new SmoothedLinearModelAnalyser(TimeInterval.zero, TimeInterval.minute, new SmoothedLinearModel<RSSI>()));
+            final AnalysisRunner runner = new AnalysisRunner(apm, new AnalysisDelegateManager(delegate), 120, pool);
+            populate(runner, ids, 120, timeNow);
+            runner.run(new Date(timeNow));
+            return delegate.output;
+        } finally {
+            BLESensorConfiguration.logLevel = logLevel;
+        }
+    }
+
+    private static void populate(final AnalysisRunner runner, final int ids, final int samples, final long timeNow) {
+        final Random random = new Random(0);
+        for (int i=ids; i-->0;) {
+            final SampledID sampledID = new SampledID(i * 7919L);
+            final int mean = -50 - random.nextInt(40);
+            for (int j=samples; j>0; j--) {
+                runner.newSample(sampledID, new Sample<>(timeNow - j, new RSSI(mean + random.nextInt(10) - 5)));
+            }
+        }
+    }
+
+    private static void ingest(final AnalysisRunner runner, final int ids, final long timeNow) {
+        for (int i=ids; i-->0;) {
+            runner.newSample(new SampledID(i * 7919L), new Sample<>(timeNow, new RSSI(-50 - i % 40)));
+        }
+    }
+
+    @Test
+    public void analysisrunner_parallel_performance() {
+        final int ids = 500;
+        final int samples = 120;
+        final int iterations = 10;
+        final SensorLoggerLevel logLevel = BLESensorConfiguration.logLevel;
+        BLESensorConfiguration.logLevel = SensorLoggerLevel.off;
+        try {
+            final StringBuilder result = new StringBuilder("analysisrunner_parallel_performance (ids=" + ids + ",samples=" + samples + ",cores=" + Runtime.getRuntime().availableProcessors());
+            for (final int threads : new int[]{0, 1, 2, 4}) {
+                final ForkJoinPool pool = (0 == threads ? null : new ForkJoinPool(threads));
+                try {
+                    final RecordingDistanceDelegate delegate = new RecordingDistanceDelegate();
+                    final AnalysisRunner runner = new AnalysisRunner(new AnalysisProviderManager(new FowlerBasicAnalyser(0, -11, -0.4)), new AnalysisDelegateManager(delegate), samples, pool);
+                    final long timeNow = 1000000;
+                    populate(runner, ids, samples, timeNow);
+                    // Warm up, then measure runs with advancing time to pass interval guard, and
+                    // a new sample for every sampled ID, as providers with unchanged input are skipped
+                    for (int i=0; i<iterations; i++) {
+                        ingest(runner, ids, timeNow + i);
+                        runner.run(new Date(timeNow + i));
+                    }
+                    final long t0 = System.nanoTime();
+                    for (int i=iterations; i<iterations * 2; i++) {
+                        ingest(runner, ids, timeNow + i);
+                        runner.run(new Date(timeNow + i));
+                    }
+                    final long t1 = System.nanoTime();
+                    assertEquals(ids * iterations * 2, delegate.output.size());
+                    result.append(0 == threads ? ",serial=" : ",threads" + threads + "=").append((t1 - t0) / iterations / 1000).append("us/run");
+                } finally {
+                    if (null != pool) {
+                        pool.shutdown();
+                    }
+                }
+            }
+            System.out.println(result.append(")"));
+        } finally {
+            BLESensorConfiguration.logLevel = logLevel;
+        }
+    }
+
+    @Test
+    public void analysisrunner_incremental() {
+        final CountingProvider<RSSI, Distance> distance = new CountingProvider<>(RSSI.class, Distance.class, new Distance(1));
+        final CountingProvider<Distance, Int8> chained = new CountingProvider<>(Distance.class, Int8.class, new Int8(1));
+        final CountingProvider<Int8, RSSI> unchanged = new CountingProvider<>(Int8.class, RSSI.class, null);
+        final AnalysisRunner runner = new AnalysisRunner(new AnalysisProviderManager(distance, chained, unchanged), new AnalysisDelegateManager(), 10);
+        runner.incremental(true, new TimeInterval(60));
+        runner.newSample(new SampledID(1), new Sample<>(0, new RSSI(-50)));
+        runner.newSample(new SampledID(2), new Sample<>(0, new RSSI(-50)));
+        runner.run(new Date(10));
+        assertEquals(2, distance.count);
+        // Output of distance provider triggers chained provider for same sampled ID
+        assertEquals(2, chained.count);
+        assertEquals(2, unchanged.count);
+        // Only changed sampled ID is analysed
+        runner.newSample(new SampledID(2), new Sample<>(20, new RSSI(-50)));
+        runner.run(new Date(30));
+        assertEquals(3, distance.count);
+        assertEquals(new SampledID(2), distance.lastSampledID);
+        // No new samples, no analysis
+        runner.run(new Date(40));
+        assertEquals(3, distance.count);
+        // Re-evaluation of all providers for all sampled IDs after interval
+        runner.run(new Date(70));
+        assertEquals(5, distance.count);
+        assertEquals(5, unchanged.count);
+        runner.run(new Date(80));
+        assertEquals(5, distance.count);
+        // Removed sampled IDs are not re-evaluated
+        runner.variantSet().remove(new SampledID(1));
+        runner.run(new Date(130));
+        assertEquals(6, distance.count);
+        // Full mode analyses all sampled IDs on every run, skipping providers with unchanged
+        // input since they last produced new samples
+        runner.incremental(false, null);
+        final int unchangedCount = unchanged.count;
+        runner.run(new Date(140));
+        assertEquals(6, distance.count);
+        assertEquals(unchangedCount + 1, unchanged.count);
+        runner.newSample(new SampledID(2), new Sample<>(145, new RSSI(-50)));
+        runner.run(new Date(150));
+        assertEquals(7, distance.count);
+    }
+
+    @Test
+    public void variantset_dirty_tracking() throws Exception {
+        final VariantSet variantSet = new VariantSet(10);
+        variantSet.push(new SampledID(1), new Sample<>(0, new RSSI(-50)));
+        // Changes are not tracked for full analysis
+        assertTrue(variantSet.drainDirty().isEmpty());
+        // Existing sampled IDs are reported as changed when tracking is enabled
+        variantSet.trackDirty(true);
+        assertEquals(Collections.singleton(RSSI.class), variantSet.drainDirty().get(new SampledID(1)));
+        assertTrue(variantSet.drainDirty().isEmpty());
+        // Every sampled ID pushed concurrently with drain is reported
+        final Thread[] writers = new Thread[4];
+        final int pushes = 10000;
+        for (int w=0; w<writers.length; w++) {
+            final int writer = w;
+            writers[w] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i=0; i<pushes; i++) {
+                        variantSet.push(new SampledID(2 + writer * pushes + i), new Sample<>(i, new RSSI(-50)));
+                    }
+                }
+            });
+            writers[w].start();
+        }
+        final Set<SampledID> reported = new HashSet<>();
+        boolean running = true;
+        while (running) {
+            running = false;
+            for (final Thread writer : writers) {
+                running = running || writer.isAlive();
+            }
+            reported.addAll(variantSet.drainDirty().keySet());
+        }
+        reported.addAll(variantSet.drainDirty().keySet());
+        assertEquals(writers.length * pushes, reported.size());
+        // Changes are not tracked once disabled
+        variantSet.trackDirty(false);
+        variantSet.push(new SampledID(1), new Sample<>(10, new RSSI(-50)));
+        assertTrue(variantSet.drainDirty().isEmpty());
+    }
+
+    @Test
+    public void analysisprovidermanager_order() {
+        // Chain registered in reverse order completes in a single pass
+        final CountingProvider<Int8, Int32> last = new CountingProvider<>(Int8.class, Int32.class, null);
+        final CountingProvider<Distance, Int8> chained = new CountingProvider<>(Distance.class, Int8.class, new Int8(1));
+        final CountingProvider<RSSI, Distance> distance = new CountingProvider<>(RSSI.class, Distance.class, new Distance(1));
+        final CountingProvider<Distance, Distance> smoothed = new CountingProvider<>(Distance.class, Distance.class, null);
+        final AnalysisProviderManager apm = new AnalysisProviderManager(last, chained);
+        apm.add(smoothed);
+        apm.add(distance);
+        final VariantSet variantSet = new VariantSet(10);
+        variantSet.push(new SampledID(1), new Sample<>(0, new RSSI(-50)));
+        assertTrue(apm.analyse(new Date(10), new SampledID(1), variantSet, new AnalysisDelegateManager()));
+        assertEquals(1, distance.count);
+        assertEquals(1, smoothed.count);
+        assertEquals(1, chained.count);
+        assertEquals(1, last.count);
+        assertEquals(1, variantSet.listManager(Int8.class, new SampledID(1)).size());
+        // Providers with unchanged input since last update are skipped, providers without
+        // update are run again
+        assertFalse(apm.analyse(new Date(20), new SampledID(1), variantSet, new AnalysisDelegateManager()));
+        assertEquals(1, distance.count);
+        assertEquals(1, chained.count);
+        assertEquals(2, smoothed.count);
+        assertEquals(2, last.count);
+        // No lists are created for sampled IDs without input
+        assertFalse(apm.analyse(new Date(20), new SampledID(2), variantSet, new AnalysisDelegateManager()));
+        assertEquals(1, variantSet.sampledIDs().size());
+        // Cached lists are discarded when lists change
+        variantSet.remove(new SampledID(1));
+        variantSet.push(new SampledID(1), new Sample<>(30, new RSSI(-50)));
+        assertTrue(apm.analyse(new Date(40), new SampledID(1), variantSet, new AnalysisDelegateManager()));
+        assertEquals(2, distance.count);
+        assertEquals(1, variantSet.listManager(Distance.class, new SampledID(1)).size());
+        assertEquals(1, variantSet.listManager(Int8.class, new SampledID(1)).size());
+    }
+
+    @Test
+    public void analysisrunner_incremental_performance() {
+        final int ids = 1000;
+        final int samples = 120;
+        final int iterations = 10;
+        final SensorLoggerLevel logLevel = BLESensorConfiguration.logLevel;
+        BLESensorConfiguration.logLevel = SensorLoggerLevel.off;
+        try {
+            final StringBuilder result = new StringBuilder("analysisrunner_incremental_performance (ids=" + ids + ",samples=" + samples);
+            for (final int ingest : new int[]{0, 10, 100, 1000}) {
+                final long[] elapsed = new long[2];
+                for (int mode=0; mode<2; mode++) {
+                    final AnalysisRunner runner = new AnalysisRunner(new AnalysisProviderManager(new FowlerBasicAnalyser(0, -11, -0.4)), new AnalysisDelegateManager(), samples);
+                    runner.incremental(1 == mode, null);
+                    long timeNow = 1000000;
+                    populate(runner, ids, samples, timeNow);
+                    runner.run(new Date(timeNow));
+                    final Random random = new Random(0);
+                    for (int i=0; i<iterations * 2; i++) {
+                        timeNow++;
+                        // New samples for a number of sampled IDs on each run
+                        for (int j=0; j<ingest; j++) {
+                            runner.newSample(new SampledID(random.nextInt(ids) * 7919L), new Sample<>(timeNow, new RSSI(-50 - random.nextInt(40))));
+                        }
+                        final long t0 = System.nanoTime();
+                        runner.run(new Date(timeNow));
+                        if (i >= iterations) {
+                            elapsed[mode] += System.nanoTime() - t0;
+                        }
+                    }
+                }
+                result.append(",ingest").append(ingest).append("={full=").append(elapsed[0] / iterations / 1000)
+                        .append("us/run,incremental=").append(elapsed[1] / iterations / 1000).append("us/run}");
+                // Full mode skips providers with unchanged input, thus incremental mode only
+                // saves the scan of all sampled IDs, which is only significant without ingest
+                if (0 == ingest) {
+                    assertTrue(elapsed[1] < elapsed[0]);
+                }
+            }
+            System.out.println(result.append(")"));
+        } finally {
+            BLESensorConfiguration.logLevel = logLevel;
+        }
+    }
+
+    @Test
+    public void analysisdelegatemanager_dispatch() {
+        final CountingDelegate<RSSI> rssi = new CountingDelegate<>(RSSI.class);
+        final CountingDelegate<Distance> distance1 = new CountingDelegate<>(Distance.class);
+        final CountingDelegate<Distance> distance2 = new CountingDelegate<>(Distance.class);
+        final AnalysisDelegateManager adm = new AnalysisDelegateManager(rssi, distance1);
+        assertEquals(2, adm.inputTypes().size());
+        // Dispatcher resolved before registration includes later delegates
+        final CallableForNewSample<Distance> dispatcher = adm.dispatcher(Distance.class);
+        adm.add(distance2);
+        assertTrue(dispatcher == adm.dispatcher(Distance.class));
+        dispatcher.newSample(new SampledID(1), new Sample<>(0, new Distance(1)));
+        adm.newSample(new SampledID(1), new Sample<>(0, new Distance(1)));
+        adm.newSample(new SampledID(1), new Sample<>(0, new RSSI(-50)));
+        // Samples without delegates are ignored, including types with an empty dispatcher
+        adm.newSample(new SampledID(1), new Sample<>(0, new Int8(1)));
+        adm.dispatcher(Int32.class);
+        adm.newSample(new SampledID(1), new Sample<>(0, new Int32(1)));
+        assertEquals(2, adm.inputTypes().size());
+        assertEquals(1, rssi.count);
+        assertEquals(2, distance1.count);
+        assertEquals(2, distance2.count);
+        // Analysis provider output is dispatched to delegates of its output type
+        final AnalysisProviderManager apm = new AnalysisProviderManager(new CountingProvider<>(RSSI.class, Distance.class, new Distance(1)));
+        final VariantSet variantSet = new VariantSet(10);
+        variantSet.push(new SampledID(1), new Sample<>(0, new RSSI(-50)));
+        apm.analyse(new Date(10), new SampledID(1), variantSet, adm);
+        assertEquals(3, distance1.count);
+        assertEquals(3, distance2.count);
+        // Dispatch table is rebuilt for different delegates
+        final CountingDelegate<Distance> distance3 = new CountingDelegate<>(Distance.class);
+        variantSet.push(new SampledID(1), new Sample<>(20, new RSSI(-50)));
+        apm.analyse(new Date(30), new SampledID(1), variantSet, new AnalysisDelegateManager(distance3));
+        assertEquals(3, distance1.count);
+        assertEquals(1, distance3.count);
+    }
+
+    /**
+     * Delegate manager implementation prior to dispatch tables, as reference for performance.
+     */
+    private final static class MapDelegateManager {
+        private final Map<Class<? extends DoubleValue>, List<AnalysisDelegate<? extends DoubleValue>>> lists = new ConcurrentHashMap<>();
+
+        private MapDelegateManager(final AnalysisDelegate<? extends DoubleValue> ... delegates) {
+            for (final AnalysisDelegate<? extends DoubleValue> delegate : delegates) {
+                List<AnalysisDelegate<? extends DoubleValue>> list = lists.get(delegate.inputType());
+                if (null == list) {
+                    list = new ArrayList<>(1);
+                    lists.put(delegate.inputType(), list);
+                }
+                list.add(delegate);
+            }
+        }
+
+        private synchronized <T extends DoubleValue> void newSample(final SampledID sampled, final Sample<T> sample) {
+            final List<AnalysisDelegate<? extends DoubleValue>> list = lists.get(sample.value().getClass());
+            if (null == list) {
+                return;
+            }
+            for (final AnalysisDelegate<? extends DoubleValue> delegate : list) {
+                try {
+                    ((AnalysisDelegate<T>) delegate).newSample(sampled, sample);
+                } catch (Throwable e) {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+    @Test
+    public void analysisdelegatemanager_performance() {
+        final int samples = 1000000;
+        final CountingDelegate<RSSI> rssi = new CountingDelegate<>(RSSI.class);
+        final CountingDelegate<Distance> distance1 = new CountingDelegate<>(Distance.class);
+        final CountingDelegate<Distance> distance2 = new CountingDelegate<>(Distance.class);
+        final CountingDelegate<Int8> int8 = new CountingDelegate<>(Int8.class);
+        final MapDelegateManager map = new MapDelegateManager(rssi, distance1, distance2, int8);
+        final AnalysisDelegateManager table = new AnalysisDelegateManager(rssi, distance1, distance2, int8);
+        final SampledID sampledID = new SampledID(1);
+        final Sample<DoubleValue>[] input = new Sample[]{new Sample<>(0, new RSSI(-50)), new Sample<>(0, new Distance(1)), new Sample<>(0, new Int8(1)), new Sample<>(0, new Int32(1))};
+        final CallableForNewSample<Distance> dispatcher = table.dispatcher(Distance.class);
+        final Sample<Distance> distance = new Sample<>(0, new Distance(1));
+        long mapElapsed = 0, tableElapsed = 0, dispatcherElapsed = 0;
+        for (int repeat=0; repeat<5; repeat++) {
+            final long t0 = System.nanoTime();
+            for (int i=0; i<samples; i++) {
+                map.newSample(sampledID, input[i & 3]);
+            }
+            final long t1 = System.nanoTime();
+            for (int i=0; i<samples; i++) {
+                table.newSample(sampledID, input[i & 3]);
+            }
+            final long t2 = System.nanoTime();
+            for (int i=0; i<samples; i++) {
+                dispatcher.newSample(sampledID, distance);
+            }
+            final long t3 = System.nanoTime();
+            mapElapsed = t1 - t0;
+            tableElapsed = t2 - t1;
+            dispatcherElapsed = t3 - t2;
+        }
+        assertEquals(5 * 2 * samples / 4, rssi.count);
+        assertEquals(5 * (2 * samples / 4 + samples), distance1.count);
+        assertEquals(distance1.count, distance2.count);
+        System.out.println("analysisdelegatemanager_performance (samples=" + samples + ",map=" + (mapElapsed / samples) + "ns/sample,table=" + (tableElapsed / samples) + "ns/sample,dispatcher=" + (dispatcherElapsed / samples) + "ns/sample)");
+    }
+
+    private final static class CountingProvider<T extends DoubleValue, U extends DoubleValue> implements AnalysisProvider<T, U> {
+        private final Class<T> inputType;
+        private final Class<U> outputType;
+        private final U outputValue;
+        private int count = 0;
+        private SampledID lastSampledID = null;
+
+        private CountingProvider(final Class<T> inputType, final Class<U> outputType, final U outputValue) {
+            this.inputType = inputType;
+            this.outputType = outputType;
+            this.outputValue = outputValue;
+        }
+
+        @NonNull
+        @Override
+        public Class<T> inputType() {
+            return inputType;
+        }
+
+        @NonNull
+        @Override
+        public Class<U> outputType() {
+            return outputType;
+        }
+
+        @Override
+        public boolean analyse(@NonNull final Date timeNow, @NonNull final SampledID sampled, @NonNull final SampleList<T> input, @NonNull final SampleList<U> output, @NonNull final CallableForNewSample<U> callable) {
+            count++;
+            lastSampledID = sampled;
+            if (null == outputValue) {
+                return false;
+            }
+            final Sample<U> sample = new Sample<>(timeNow, outputValue);
+            output.push(sample);
+            callable.newSample(sampled, sample);
+            return true;
+        }
+    }
+
+    private final static class CountingDelegate<T extends DoubleValue> implements AnalysisDelegate<T> {
+        private final Class<T> inputType;
+        private int count = 0;
+
+        private CountingDelegate(final Class<T> inputType) {
+            this.inputType = inputType;
+        }
+
+        @Override
+        public void newSample(@NonNull final SampledID sampled, @NonNull final Sample<T> item) {
+            count++;
+        }
+
+        @NonNull
+        @Override
+        public Class<T> inputType() {
+            return inputType;
+        }
+
+        @Override
+        public void reset() {
+            count = 0;
+        }
+
+        @NonNull
+        @Override
+        public SampleList<T> samples() {
+            return new SampleList<>(1);
+        }
+    }
+
+    private final static class RecordingDistanceDelegate implements AnalysisDelegate<Distance> {
+        private final List<String> output = new ArrayList<>();
+
+        @Override
+        public void newSample(@NonNull final SampledID sampled, @NonNull final Sample<Distance> item) {
+            output.add(sampled + "," + item);
+        }
+
+        @NonNull
+        @Override
+        public Class<Distance> inputType() {
+            return Distance.class;
+        }
+
+        @Override
+        public void reset() {
+            output.clear();
+        }
+
+        @NonNull
+        @Override
+        public SampleList<Distance> samples() {
+            return new SampleList<>(1);
+        }
+    }
+
     private final static class DummyRSSISource {
         private final SampledID sampledID;
         private final SampleList<RSSI> data;
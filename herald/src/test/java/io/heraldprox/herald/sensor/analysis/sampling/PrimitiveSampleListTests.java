@@ -0,0 +1,240 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.analysis.sampling;
+
+import io.heraldprox.herald.sensor.analysis.aggregates.Gaussian;
+import io.heraldprox.herald.sensor.analysis.aggregates.Mean;
+import io.heraldprox.herald.sensor.analysis.aggregates.Median;
+import io.heraldprox.herald.sensor.analysis.aggregates.Mode;
+import io.heraldprox.herald.sensor.analysis.aggregates.Variance;
+import io.heraldprox.herald.sensor.analysis.views.Since;
+import io.heraldprox.herald.sensor.datatype.Date;
+import io.heraldprox.herald.sensor.datatype.Distance;
+import io.heraldprox.herald.sensor.datatype.Int32;
+import io.heraldprox.herald.sensor.datatype.RSSI;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings({"ConstantConditions", "unchecked"})
+public class PrimitiveSampleListTests {
+
+    @Test
+    public void testPushAndGet() {
+        final PrimitiveSampleList<RSSI> sl = new PrimitiveSampleList<>(3, RSSI.class);
+        assertEquals(0, sl.size());
+        assertNull(sl.latest());
+        assertNull(sl.latestValue());
+        sl.push(new Date(1234), new RSSI(-55));
+        sl.push(1244, -60);
+        sl.push(new Sample<>(new Date(1265), new RSSI(-58)));
+        sl.push(new Date(1270), -61);
+        // Oldest sample has been evicted
+        assertEquals(3, sl.size());
+        assertEquals(1244, sl.get(0).taken().secondsSinceUnixEpoch());
+        assertEquals(-60, sl.get(0).value().value, Double.MIN_VALUE);
+        assertEquals(-58, sl.get(1).value().value, Double.MIN_VALUE);
+        assertEquals(-61, sl.get(2).value().value, Double.MIN_VALUE);
+        assertEquals(1270, sl.latest().secondsSinceUnixEpoch());
+        assertEquals(new RSSI(-61), sl.latestValue());
+        // Iterator materialises samples
+        int count = 0;
+        for (final Sample<RSSI> sample : sl) {
+            assertTrue(sample.value() instanceof RSSI);
+            count++;
+        }
+        assertEquals(3, count);
+        sl.clearBeforeDate(new Date(1265));
+        assertEquals(2, sl.size());
+        sl.clear();
+        assertEquals(0, sl.size());
+    }
+
+    @Test
+    public void testMillisecondPrecision() {
+        final PrimitiveSampleList<RSSI> sl = new PrimitiveSampleList<>(3, RSSI.class);
+        final Date taken = new Date();
+        sl.push(taken, new RSSI(-55));
+        assertEquals(taken.getTime(), sl.latest().getTime());
+    }
+
+    @Test
+    public void testSupports() {
+        assertTrue(PrimitiveSampleList.supports(RSSI.class));
+        assertTrue(PrimitiveSampleList.supports(Distance.class));
+        assertFalse(PrimitiveSampleList.supports(Int32.class));
+        try {
+            new PrimitiveSampleList<>(3, Int32.class);
+            assertTrue(false);
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        // Subclass of supported type cannot be reconstructed from double value
+        final RSSI subclass = new RSSI(-50) {
+        };
+        assertFalse(PrimitiveSampleList.supports(subclass.getClass()));
+        // Value factory enables other value types
+        final PrimitiveSampleList<Int32> int32List = new PrimitiveSampleList<>(3, new PrimitiveSampleList.ValueFactory<Int32>() {
+            @Override
+            public Int32 value(final double value) {
+                return new Int32((int) value);
+            }
+        });
+        int32List.push(10, new Int32(7));
+        assertEquals(7, int32List.get(0).value().value);
+        final PrimitiveSampleList<Distance> distanceList = new PrimitiveSampleList<>(3, PrimitiveSampleList.distance);
+        distanceList.push(10, 1.5);
+        assertEquals(new Distance(1.5), distanceList.latestValue());
+        // Variant set falls back to sample list for unsupported types
+        final VariantSet variantSet = new VariantSet(5, true);
+        assertTrue(variantSet.listManager(RSSI.class, new SampledID(1)) instanceof PrimitiveSampleList);
+        assertFalse(variantSet.listManager(Int32.class, new SampledID(1)) instanceof PrimitiveSampleList);
+        assertFalse(new VariantSet(5).listManager(RSSI.class, new SampledID(1)) instanceof PrimitiveSampleList);
+    }
+
+    @Test
+    public void testForEach() {
+        final PrimitiveSampleList<RSSI> sl = new PrimitiveSampleList<>(3, RSSI.class);
+        sl.push(10, -50);
+        sl.push(20, -60);
+        final long[] times = new long[2];
+        final double[] values = new double[2];
+        sl.forEach(new SampleConsumer() {
+            private int index = 0;
+            @Override
+            public void accept(final long time, final double value) {
+                times[index] = time;
+                values[index] = value;
+                index++;
+            }
+        });
+        assertEquals(10000, times[0]);
+        assertEquals(20000, times[1]);
+        assertEquals(-50, values[0], Double.MIN_VALUE);
+        assertEquals(-60, values[1], Double.MIN_VALUE);
+    }
+
+    @Test
+    public void testEquivalence() {
+        final Random random = new Random(0);
+        final SampleList<RSSI> expected = new SampleList<>(20);
+        final PrimitiveSampleList<RSSI> actual = new PrimitiveSampleList<>(20, RSSI.class);
+        long time = 1000;
+        for (int i=0; i<1000; i++) {
+            time += random.nextInt(5);
+            final RSSI rssi = new RSSI(-random.nextInt(100));
+            expected.push(time, rssi);
+            actual.push(time, rssi);
+            if (0 == random.nextInt(50)) {
+                final Date before = new Date(time - random.nextInt(30));
+                expected.clearBeforeDate(before);
+                actual.clearBeforeDate(before);
+            }
+            assertEquals(expected.size(), actual.size());
+            assertEquals(expected.toString(), actual.toString());
+            assertEquals(expected.latest(), actual.latest());
+            assertEquals(expected.latestValue(), actual.latestValue());
+            final Summary<RSSI> e = expected.aggregate(new Mean<RSSI>(), new Variance<RSSI>(), new Gaussian<RSSI>(), new Median<RSSI>(), new Mode<RSSI>());
+            final Summary<RSSI> a = actual.aggregate(new Mean<RSSI>(), new Variance<RSSI>(), new Gaussian<RSSI>(), new Median<RSSI>(), new Mode<RSSI>());
+            for (int j=0; j<5; j++) {
+                assertEquals(e.get(j), a.get(j));
+            }
+            // Filters operate on materialised samples
+            assertEquals(expected.filter(new Since<RSSI>(time - 10)).toView().toString(), actual.filter(new Since<RSSI>(time - 10)).toView().toString());
+        }
+    }
+
+    // MARK:- Performance
+
+    private static long usedMemory() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i=0; i<3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                // Ignore
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static VariantSet populate(final boolean primitive, final int ids, final int samples) {
+        final VariantSet variantSet = new VariantSet(samples, primitive);
+        for (int i=0; i<ids; i++) {
+            final SampleList<RSSI> list = variantSet.listManager(RSSI.class, new SampledID(i));
+            if (list instanceof PrimitiveSampleList) {
+                // Allocation free push
+                final PrimitiveSampleList<RSSI> primitiveList = (PrimitiveSampleList<RSSI>) list;
+                for (int j=0; j<samples; j++) {
+                    primitiveList.push(1000 + j, -(i + j) % 100);
+                }
+            } else {
+                for (int j=0; j<samples; j++) {
+                    list.push(1000 + j, new RSSI(-(i + j) % 100));
+                }
+            }
+        }
+        return variantSet;
+    }
+
+    private static double aggregate(final VariantSet variantSet) {
+        double total = 0;
+        final ListManager<RSSI> listManager = variantSet.listManager(RSSI.class);
+        for (final SampledID sampledID : listManager.sampledIDs()) {
+            final Summary<RSSI> summary = listManager.list(sampledID).aggregate(new Mean<RSSI>(), new Variance<RSSI>());
+            total += summary.get(0) + summary.get(1);
+        }
+        return total;
+    }
+
+    @Test
+    public void testPerformance() {
+        final int ids = 1000;
+        final int samples = 100;
+        final int iterations = 100;
+        // Memory
+        final long m0 = usedMemory();
+        final VariantSet objects = populate(false, ids, samples);
+        final long m1 = usedMemory();
+        final VariantSet primitives = populate(true, ids, samples);
+        final long m2 = usedMemory();
+        final long objectsMemory = m1 - m0;
+        final long primitivesMemory = m2 - m1;
+        // Throughput
+        double objectsTotal = 0, primitivesTotal = 0;
+        for (int i=0; i<iterations; i++) {
+            objectsTotal = aggregate(objects);
+            primitivesTotal = aggregate(primitives);
+        }
+        final long t0 = System.nanoTime();
+        for (int i=0; i<iterations; i++) {
+            objectsTotal = aggregate(objects);
+        }
+        final long t1 = System.nanoTime();
+        for (int i=0; i<iterations; i++) {
+            primitivesTotal = aggregate(primitives);
+        }
+        final long t2 = System.nanoTime();
+        assertEquals(objectsTotal, primitivesTotal, 0.000001);
+        final long objectsPush = System.nanoTime();
+        populate(false, ids, samples);
+        final long primitivesPush = System.nanoTime();
+        populate(true, ids, samples);
+        final long end = System.nanoTime();
+        final int n = ids * samples;
+        System.out.println("testPerformance (ids=" + ids + ",samples=" + n
+                + ",memory={objects=" + (objectsMemory / n) + "B/sample,primitives=" + (primitivesMemory / n) + "B/sample}"
+                + ",push={objects=" + ((primitivesPush - objectsPush) / n) + "ns/sample,primitives=" + ((end - primitivesPush) / n) + "ns/sample}"
+                + ",aggregate={objects=" + ((t1 - t0) / iterations / ids) + "ns/list,primitives=" + ((t2 - t1) / iterations / ids) + "ns/list})");
+        assertTrue(primitivesMemory < objectsMemory);
+    }
+}
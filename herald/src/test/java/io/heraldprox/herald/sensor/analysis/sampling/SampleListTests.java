@@ -4,15 +4,35 @@
 
 package io.heraldprox.herald.sensor.analysis.sampling;
 
+import io.heraldprox.herald.sensor.analysis.aggregates.Gaussian;
+import io.heraldprox.herald.sensor.analysis.aggregates.Mean;
+import io.heraldprox.herald.sensor.analysis.aggregates.Median;
+import io.heraldprox.herald.sensor.analysis.aggregates.Mode;
+import io.heraldprox.herald.sensor.analysis.aggregates.Variance;
+import io.heraldprox.herald.sensor.analysis.views.GreaterThan;
+import io.heraldprox.herald.sensor.analysis.views.InPeriod;
+import io.heraldprox.herald.sensor.analysis.views.InRange;
+import io.heraldprox.herald.sensor.analysis.views.LessThan;
+import io.heraldprox.herald.sensor.analysis.views.Since;
+import io.heraldprox.herald.sensor.analysis.views.Until;
 import io.heraldprox.herald.sensor.datatype.Date;
+import io.heraldprox.herald.sensor.datatype.DoubleValue;
 import io.heraldprox.herald.sensor.datatype.RSSI;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
 import org.junit.Test;
 
 import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 @SuppressWarnings({"ConstantConditions", "unchecked"})
@@ -472,4 +492,890 @@ public class SampleListTests {
         assertEquals(sl.get(2).taken().secondsSinceUnixEpoch(), 30);
         assertEquals(sl.get(2).value().value, -75, Double.MIN_VALUE);
     }
+
+    @Test
+    public void samplelist_incremental_summary() {
+        final SampleList<RSSI> sl = new SampleList<>(3);
+        sl.push(new Date(1000), new RSSI(-10));
+        sl.push(new Date(1010), new RSSI(-20));
+        // Tracking replays existing window
+        final Mean<RSSI> mean = new Mean<>();
+        final Variance<RSSI> variance = new Variance<>();
+        sl.track(mean);
+        sl.track(variance);
+        assertEquals(-15, sl.summary().get(Mean.class), Double.MIN_VALUE);
+        assertEquals(50, sl.summary().get(Variance.class), Double.MIN_VALUE);
+        // Overwrite evicts oldest sample
+        sl.push(new Date(1020), new RSSI(-30));
+        sl.push(new Date(1030), new RSSI(-40));
+        assertEquals(-30, sl.summary().get(0), Double.MIN_VALUE);
+        // Clear before date evicts samples
+        sl.clearBeforeDate(new Date(1030));
+        assertEquals(-40, sl.summary().get(0), Double.MIN_VALUE);
+        assertEquals(null, sl.summary().get(1));
+        // Clear resets aggregates
+        sl.clear();
+        assertEquals(null, sl.summary().get(0));
+        // Untracked aggregates are no longer maintained
+        sl.untrack(variance);
+        sl.push(new Date(1040), new RSSI(-50));
+        sl.push(new Date(1050), new RSSI(-60));
+        assertEquals(-55, sl.summary().get(0), Double.MIN_VALUE);
+        assertEquals(null, sl.summary().get(1));
+        assertEquals(null, variance.reduce());
+    }
+
+    @Test
+    public void samplelist_incremental_primitive() {
+        final PrimitiveSampleList<RSSI> sl = new PrimitiveSampleList<>(2, RSSI.class);
+        final Mean<RSSI> mean = new Mean<>();
+        sl.track(mean);
+        sl.push(1000, -10);
+        sl.push(new Date(1010), new RSSI(-20));
+        sl.push(new Sample<>(new Date(1020), new RSSI(-30)));
+        assertEquals(-25, mean.reduce(), Double.MIN_VALUE);
+    }
+
+    @Test
+    public void samplelist_incremental_performance() {
+        final int window = 100;
+        final int samples = 100000;
+        final SampleList<RSSI> sl = new SampleList<>(window);
+        double fullPass = 0;
+        final long t0 = System.nanoTime();
+        for (int i=0; i<samples; i++) {
+            sl.push(i, new RSSI(-(i % 100)));
+            final Summary<RSSI> summary = sl.aggregate(new Mean<RSSI>(), new Variance<RSSI>(), new Gaussian<RSSI>());
+            fullPass += summary.get(0) + (null == summary.get(1) ? 0 : summary.get(1));
+        }
+        final long t1 = System.nanoTime();
+        sl.clear();
+        sl.track(new Mean<RSSI>());
+        sl.track(new Variance<RSSI>());
+        sl.track(new Gaussian<RSSI>());
+        double incremental = 0;
+        for (int i=0; i<samples; i++) {
+            sl.push(i, new RSSI(-(i % 100)));
+            final Summary<RSSI> summary = sl.summary();
+            incremental += summary.get(0) + (null == summary.get(1) ? 0 : summary.get(1));
+        }
+        final long t2 = System.nanoTime();
+        assertEquals(fullPass / samples, incremental / samples, 0.0001);
+        System.out.println("samplelist_incremental_performance (window=" + window + ",samples=" + samples + ",fullPass=" + ((t1 - t0) / samples) + "ns/sample,incremental=" + ((t2 - t1) / samples) + "ns/sample)");
+    }
+
+    @Test
+    public void samplelist_range_views() {
+        final SampleList<RSSI> sl = new SampleList<>(5);
+        for (int i=0; i<7; i++) {
+            sl.push(new Date(1000 + i * 10), new RSSI(-i));
+        }
+        // Ring buffer has wrapped, holding 1020 - 1060
+        assertEquals("[(1970-01-01 00:17:00,RSSI{value=-2.0}) ,(1970-01-01 00:17:10,RSSI{value=-3.0}) ,(1970-01-01 00:17:20,RSSI{value=-4.0}) ,(1970-01-01 00:17:30,RSSI{value=-5.0}) ,(1970-01-01 00:17:40,RSSI{value=-6.0})]", sl.toString());
+        final SampleList<RSSI> since = sl.since(new Date(1035));
+        assertEquals(3, since.size());
+        assertEquals(1040, since.get(0).taken().secondsSinceUnixEpoch());
+        assertEquals(-6, since.latestValue().value, Double.MIN_VALUE);
+        assertEquals(1060, since.latest().secondsSinceUnixEpoch());
+        final SampleList<RSSI> until = sl.until(new Date(1030));
+        assertEquals(2, until.size());
+        assertEquals(1030, until.latest().secondsSinceUnixEpoch());
+        final SampleList<RSSI> between = sl.between(new Date(1030), new Date(1050));
+        assertEquals(3, between.size());
+        assertEquals(-4, between.aggregate(new Mean<RSSI>()).get(0), Double.MIN_VALUE);
+        // Views of views
+        assertEquals(1, between.since(new Date(1050)).size());
+        assertEquals(2, between.latest(2).size());
+        assertEquals(1040, between.latest(2).get(0).taken().secondsSinceUnixEpoch());
+        // Latest
+        assertEquals(0, sl.latest(0).size());
+        assertEquals(5, sl.latest(10).size());
+        assertEquals(null, sl.latest(0).latestValue());
+        // Empty ranges
+        assertEquals(0, sl.since(new Date(2000)).size());
+        assertEquals(0, sl.until(new Date(0)).size());
+        assertEquals(0, sl.between(new Date(1050), new Date(1040)).size());
+        assertEquals(0, new SampleList<RSSI>(5).since(new Date(0)).size());
+        // Views are read only
+        try {
+            since.push(new Date(2000), new RSSI(-1));
+            assertTrue(false);
+        } catch (UnsupportedOperationException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void samplelist_range_filter_fast_path() {
+        final Random random = new Random(0);
+        final SampleList<RSSI> sl = new SampleList<>(50);
+        final PrimitiveSampleList<RSSI> psl = new PrimitiveSampleList<>(50, RSSI.class);
+        long time = 1000;
+        for (int i=0; i<2000; i++) {
+            // Duplicate timestamps are common
+            time += random.nextInt(3);
+            sl.push(time, new RSSI(-random.nextInt(100)));
+            psl.push(time, sl.latestValue());
+            final long a = time - random.nextInt(80);
+            final long b = a + random.nextInt(40);
+            for (final Filter<RSSI> filter : new Filter[]{new Since<RSSI>(a), new Until<RSSI>(a), new InPeriod<RSSI>(a, b)}) {
+                // Fast path is equivalent to testing every sample
+                final IteratorProxy<RSSI> expected = new IteratorProxy<>(sl.iterator(), filter);
+                final String expectedString = expected.toView().toString();
+                assertEquals(expectedString, sl.filter(filter).toView().toString());
+                assertEquals(expectedString, psl.filter(filter).toView().toString());
+                // Iterating fast path
+                int count = 0;
+                for (final IteratorProxy<RSSI> proxy = sl.filter(filter); proxy.hasNext(); proxy.next()) {
+                    count++;
+                }
+                assertEquals(sl.filter(filter).toView().size(), count);
+            }
+            if (0 == random.nextInt(10)) {
+                final Date before = new Date(time - random.nextInt(50));
+                sl.clearBeforeDate(before);
+                psl.clearBeforeDate(before);
+                assertEquals(sl.toString(), psl.toString());
+                if (sl.size() > 0) {
+                    assertTrue(sl.get(0).taken().getTime() >= before.getTime());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void samplelist_clearBeforeDate_incremental() {
+        final SampleList<RSSI> sl = new SampleList<>(5);
+        final Mean<RSSI> mean = new Mean<>();
+        sl.track(mean);
+        for (int i=0; i<7; i++) {
+            sl.push(new Date(1000 + i * 10), new RSSI(-i));
+        }
+        sl.clearBeforeDate(new Date(1045));
+        assertEquals(2, sl.size());
+        assertEquals(-5.5, mean.reduce(), Double.MIN_VALUE);
+        sl.clearBeforeDate(new Date(2000));
+        assertEquals(0, sl.size());
+        assertEquals(null, mean.reduce());
+    }
+
+    @Test
+    public void samplelist_range_performance() {
+        final int window = 1000;
+        final int iterations = 10000;
+        final SampleList<RSSI> sl = new SampleList<>(window);
+        for (int i=0; i<window; i++) {
+            sl.push(i, new RSSI(-(i % 100)));
+        }
+        // Filter recent 90 seconds by testing every sample, as before fast path
+        final Filter<RSSI> since = new Since<>(window - 90);
+        int linear = 0;
+        final long t0 = System.nanoTime();
+        for (int i=0; i<iterations; i++) {
+            linear += new IteratorProxy<>(sl.iterator(), since).toView().size();
+        }
+        final long t1 = System.nanoTime();
+        int binary = 0;
+        for (int i=0; i<iterations; i++) {
+            binary += sl.filter(since).toView().size();
+        }
+        final long t2 = System.nanoTime();
+        assertEquals(linear, binary);
+        System.out.println("samplelist_range_performance (window=" + window + ",iterations=" + iterations + ",linear=" + ((t1 - t0) / iterations) + "ns/filter,binary=" + ((t2 - t1) / iterations) + "ns/filter)");
+    }
+
+    /**
+     * Reference implementation of multi-run aggregation, mapping all aggregates in every run.
+     */
+    private static <T extends DoubleValue> Summary<T> aggregateAllRuns(final SampleList<T> sl, final Aggregate<T> ... aggregates) {
+        int maxRuns = 1;
+        for (final Aggregate<T> aggregate : aggregates) {
+            maxRuns = Math.max(maxRuns, aggregate.runs());
+        }
+        for (int run=1; run<=maxRuns; run++) {
+            for (final Aggregate<T> aggregate : aggregates) {
+                aggregate.beginRun(run);
+            }
+            for (final Sample<T> sample : sl) {
+                for (final Aggregate<T> aggregate : aggregates) {
+                    aggregate.map(sample);
+                }
+            }
+        }
+        return new Summary<>(aggregates);
+    }
+
+    /**
+     * Aggregate of samples (not primitive) that counts mapped samples in each run.
+     */
+    private final static class RunCounter<T extends DoubleValue> implements Aggregate<T> {
+        private final int runs;
+        private final int[] counts;
+        private int run = 1;
+
+        private RunCounter(final int runs) {
+            this.runs = runs;
+            this.counts = new int[runs + 1];
+        }
+
+        @Override
+        public int runs() {
+            return runs;
+        }
+
+        @Override
+        public void beginRun(final int thisRun) {
+            run = thisRun;
+        }
+
+        @Override
+        public void map(@NonNull final Sample<T> value) {
+            counts[Math.min(run, runs)]++;
+        }
+
+        @Nullable
+        @Override
+        public Double reduce() {
+            return (double) counts[runs];
+        }
+
+        @Override
+        public void reset() {
+            run = 1;
+        }
+    }
+
+    @Test
+    public void samplelist_aggregate_plan() {
+        final Random random = new Random(0);
+        for (int size=0; size<50; size++) {
+            final SampleList<RSSI> sl = (0 == size % 2 ? new SampleList<RSSI>(size + 1) : new PrimitiveSampleList<>(size + 1, RSSI.class));
+            for (int i=0; i<size; i++) {
+                sl.push(i, new RSSI(-random.nextInt(100) + random.nextDouble()));
+            }
+            final Summary<RSSI> expected = aggregateAllRuns(sl, new Mean<RSSI>(), new Variance<RSSI>(), new Gaussian<RSSI>(), new Median<RSSI>(), new Mode<RSSI>());
+            // Primitive aggregates only
+            final Summary<RSSI> primitive = sl.aggregate(new Mean<RSSI>(), new Variance<RSSI>(), new Gaussian<RSSI>(), new Median<RSSI>(), new Mode<RSSI>());
+            // Primitive aggregates and multi-run aggregate of samples
+            final RunCounter<RSSI> counter = new RunCounter<>(3);
+            final Summary<RSSI> mixed = sl.aggregate(new Mean<RSSI>(), new Variance<RSSI>(), new Gaussian<RSSI>(), new Median<RSSI>(), new Mode<RSSI>(), counter);
+            for (int i=0; i<5; i++) {
+                if (null == expected.get(i)) {
+                    assertNull(primitive.get(i));
+                    assertNull(mixed.get(i));
+                } else {
+                    assertEquals(expected.get(i), primitive.get(i), 0.000000001);
+                    assertEquals(expected.get(i), mixed.get(i), 0.000000001);
+                }
+            }
+            assertEquals(size, counter.counts[1]);
+            assertEquals(size, counter.counts[2]);
+            assertEquals(size, counter.counts[3]);
+        }
+    }
+
+    @Test
+    public void samplelist_aggregate_single_pass() {
+        final SampleList<RSSI> sl = new SampleList<>(10);
+        for (int i=0; i<10; i++) {
+            sl.push(i, new RSSI(-i));
+        }
+        // Variance no longer requires a second pass over the list
+        final RunCounter<RSSI> counter = new RunCounter<>(1);
+        final Summary<RSSI> summary = sl.aggregate(new Variance<RSSI>(), counter);
+        assertEquals(10, counter.counts[1]);
+        assertEquals(9.166666666666666, summary.get(0), 0.000000001);
+        // Variance is still usable in two runs outside of sample list
+        final Variance<RSSI> variance = new Variance<>();
+        aggregateAllRuns(sl, variance);
+        assertEquals(9.166666666666666, variance.reduce(), 0.000000001);
+    }
+
+    @Test
+    public void samplelist_aggregate_performance() {
+        final int window = 1000;
+        final int iterations = 2000;
+        final SampleList<RSSI> sl = new SampleList<>(window);
+        for (int i=0; i<window; i++) {
+            sl.push(i, new RSSI(-(i % 100)));
+        }
+        double allRuns = 0, plan = 0;
+        for (int i=0; i<iterations; i++) {
+            allRuns += aggregateAllRuns(sl, new Mean<RSSI>(), new Variance<RSSI>(), new Gaussian<RSSI>(), new Mode<RSSI>()).get(1);
+            plan += sl.aggregate(new Mean<RSSI>(), new Variance<RSSI>(), new Gaussian<RSSI>(), new Mode<RSSI>()).get(1);
+        }
+        final long t0 = System.nanoTime();
+        for (int i=0; i<iterations; i++) {
+            allRuns += aggregateAllRuns(sl, new Mean<RSSI>(), new Variance<RSSI>(), new Gaussian<RSSI>(), new Mode<RSSI>()).get(1);
+        }
+        final long t1 = System.nanoTime();
+        for (int i=0; i<iterations; i++) {
+            plan += sl.aggregate(new Mean<RSSI>(), new Variance<RSSI>(), new Gaussian<RSSI>(), new Mode<RSSI>()).get(1);
+        }
+        final long t2 = System.nanoTime();
+        assertEquals(allRuns / iterations, plan / iterations, 0.000001);
+        System.out.println("samplelist_aggregate_performance (window=" + window + ",iterations=" + iterations + ",allRuns=" + ((t1 - t0) / iterations) + "ns/aggregate,plan=" + ((t2 - t1) / iterations) + "ns/aggregate)");
+    }
+
+    /**
+     * Filter of samples (not primitive), to exercise the sample path of filtered aggregation.
+     */
+    private final static class EvenSeconds<T extends DoubleValue> implements Filter<T> {
+        @Override
+        public boolean test(@NonNull final Sample<T> item) {
+            return 0 == item.taken().secondsSinceUnixEpoch() % 2;
+        }
+    }
+
+    /**
+     * Apply filters through a chain of iterators, as reference for fused filters.
+     */
+    private static IteratorProxy<RSSI> chain(final SampleList<RSSI> sl, final Filter<RSSI> ... filters) {
+        IteratorProxy<RSSI> proxy = new IteratorProxy<>(sl.iterator(), filters[0]);
+        for (int i=1; i<filters.length; i++) {
+            proxy = new IteratorProxy<>(proxy, filters[i]);
+        }
+        return proxy;
+    }
+
+    private static IteratorProxy<RSSI> fused(final SampleList<RSSI> sl, final Filter<RSSI> ... filters) {
+        IteratorProxy<RSSI> proxy = sl.filter(filters[0]);
+        for (int i=1; i<filters.length; i++) {
+            proxy = proxy.filter(filters[i]);
+        }
+        return proxy;
+    }
+
+    @Test
+    public void iteratorproxy_fused_filters() {
+        final Random random = new Random(0);
+        for (int size=0; size<40; size++) {
+            final SampleList<RSSI> sl = (0 == size % 2 ? new SampleList<RSSI>(size + 1) : new PrimitiveSampleList<>(size + 1, RSSI.class));
+            for (int i=0; i<size; i++) {
+                sl.push(1000 + i, new RSSI(-random.nextInt(100)));
+            }
+            final Filter<RSSI>[][] chains = new Filter[][]{
+                    {new InRange<RSSI>(-80, -20)},
+                    {new InRange<RSSI>(-80, -20), new GreaterThan<RSSI>(-60)},
+                    {new GreaterThan<RSSI>(-90), new Since<RSSI>(1005), new LessThan<RSSI>(-10), new Until<RSSI>(1030)},
+                    {new Since<RSSI>(1005), new InRange<RSSI>(-80, -20), new InPeriod<RSSI>(1000, 1020)},
+                    {new InRange<RSSI>(-80, -20), new EvenSeconds<RSSI>()},
+                    {new EvenSeconds<RSSI>(), new Until<RSSI>(1010)}
+            };
+            for (final Filter<RSSI>[] filters : chains) {
+                assertEquals(chain(sl, filters).toView().toString(), fused(sl, filters).toView().toString());
+                // Iteration
+                final IteratorProxy<RSSI> expectedIterator = chain(sl, filters);
+                final IteratorProxy<RSSI> actualIterator = fused(sl, filters);
+                while (expectedIterator.hasNext()) {
+                    assertTrue(actualIterator.hasNext());
+                    assertEquals(expectedIterator.next().toString(), actualIterator.next().toString());
+                }
+                assertFalse(actualIterator.hasNext());
+                // Single and multi-run aggregates, with and without aggregates of samples
+                final RunCounter<RSSI> counter = new RunCounter<>(3);
+                final Summary<RSSI> expected = chain(sl, filters).aggregate(new Mean<RSSI>(), new Variance<RSSI>(), new Median<RSSI>(), new Mode<RSSI>());
+                final Summary<RSSI> primitive = fused(sl, filters).aggregate(new Mean<RSSI>(), new Variance<RSSI>(), new Median<RSSI>(), new Mode<RSSI>());
+                final Summary<RSSI> mixed = fused(sl, filters).aggregate(new Mean<RSSI>(), new Variance<RSSI>(), new Median<RSSI>(), new Mode<RSSI>(), counter);
+                for (int i=0; i<4; i++) {
+                    assertEquals(expected.get(i), primitive.get(i));
+                    assertEquals(expected.get(i), mixed.get(i));
+                }
+                final int accepted = chain(sl, filters).toView().size();
+                assertEquals(accepted, counter.counts[1]);
+                assertEquals(accepted, counter.counts[3]);
+            }
+        }
+        // Filters on a started iterator apply to the remaining samples
+        final SampleList<RSSI> sl = new SampleList<>(10);
+        for (int i=0; i<10; i++) {
+            sl.push(i, new RSSI(-i));
+        }
+        final IteratorProxy<RSSI> started = sl.filter(new LessThan<RSSI>(-1));
+        assertEquals(-2, started.next().value().value, Double.MIN_VALUE);
+        assertEquals(3, started.filter(new GreaterThan<RSSI>(-6)).toView().size());
+    }
+
+    @Test
+    public void iteratorproxy_aggregate_performance() {
+        final int window = 1000;
+        final int iterations = 2000;
+        for (final SampleList<RSSI> sl : new SampleList[]{new SampleList<RSSI>(window), new PrimitiveSampleList<>(window, RSSI.class)}) {
+            for (int i=0; i<window; i++) {
+                sl.push(i, new RSSI(-(i % 100)));
+            }
+            final Filter<RSSI>[] filters = new Filter[]{new InRange<RSSI>(-90, -10), new InRange<RSSI>(-70, -30)};
+            double chained = 0, fused = 0;
+            for (int i=0; i<iterations; i++) {
+                chained += chain(sl, filters).aggregate(new Mean<RSSI>(), new Variance<RSSI>(), new Mode<RSSI>()).get(1);
+                fused += fused(sl, filters).aggregate(new Mean<RSSI>(), new Variance<RSSI>(), new Mode<RSSI>()).get(1);
+            }
+            final long t0 = System.nanoTime();
+            for (int i=0; i<iterations; i++) {
+                chained += chain(sl, filters).aggregate(new Mean<RSSI>(), new Variance<RSSI>(), new Mode<RSSI>()).get(1);
+            }
+            final long t1 = System.nanoTime();
+            for (int i=0; i<iterations; i++) {
+                fused += fused(sl, filters).aggregate(new Mean<RSSI>(), new Variance<RSSI>(), new Mode<RSSI>()).get(1);
+            }
+            final long t2 = System.nanoTime();
+            assertEquals(chained / iterations, fused / iterations, 0.000001);
+            System.out.println("iteratorproxy_aggregate_performance (type=" + sl.getClass().getSimpleName() + ",window=" + window + ",iterations=" + iterations + ",chained=" + ((t1 - t0) / iterations) + "ns/aggregate,fused=" + ((t2 - t1) / iterations) + "ns/aggregate)");
+        }
+    }
+
+    // MARK:- Concurrency
+
+    /**
+     * Sample value derived from sample time, to detect torn reads of time and value.
+     */
+    private static double valueFor(final long secondsSinceUnixEpoch) {
+        return -(secondsSinceUnixEpoch % 97);
+    }
+
+    /**
+     * Primitive aggregate that counts samples that are inconsistent with their time, or are not
+     * contiguous with the previous sample, as the writer pushes samples every second.
+     */
+    private final static class ConsistencyCheck<T extends DoubleValue> implements PrimitiveAggregate<T> {
+        private long previous = -1;
+        private int violations = 0;
+
+        @Override
+        public int runs() {
+            return 1;
+        }
+
+        @Override
+        public void beginRun(final int thisRun) {
+        }
+
+        @Override
+        public void map(@NonNull final Sample<T> value) {
+            map(value.taken().getTime(), value.value().doubleValue());
+        }
+
+        @Override
+        public void map(final long time, final double value) {
+            if (valueFor(time / 1000) != value || (-1 != previous && time != previous + 1000)) {
+                violations++;
+            }
+            previous = time;
+        }
+
+        @Nullable
+        @Override
+        public Double reduce() {
+            return (double) violations;
+        }
+
+        @Override
+        public void reset() {
+            previous = -1;
+            violations = 0;
+        }
+    }
+
+    // Count samples outside of time range, and samples that are not contiguous
+    private final static class RangeCheck<T extends DoubleValue> implements PrimitiveAggregate<T> {
+        private final long fromTime, toTime;
+        private final ConsistencyCheck<T> consistency = new ConsistencyCheck<>();
+        private int violations = 0;
+
+        private RangeCheck(final long fromTime, final long toTime) {
+            this.fromTime = fromTime;
+            this.toTime = toTime;
+        }
+
+        @Override
+        public int runs() {
+            return 1;
+        }
+
+        @Override
+        public void beginRun(final int thisRun) {
+        }
+
+        @Override
+        public void map(@NonNull final Sample<T> value) {
+            map(value.taken().getTime(), value.value().doubleValue());
+        }
+
+        @Override
+        public void map(final long time, final double value) {
+            if (time < fromTime || time > toTime) {
+                violations++;
+            }
+            consistency.map(time, value);
+        }
+
+        @Nullable
+        @Override
+        public Double reduce() {
+            return (double) (violations + consistency.violations);
+        }
+
+        @Override
+        public void reset() {
+            violations = 0;
+            consistency.reset();
+        }
+    }
+
+    private static void stress(final SampleList<RSSI> sl) throws Exception {
+        final int pushes = 200000;
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final AtomicReference<String> failure = new AtomicReference<>(null);
+        final AtomicInteger reads = new AtomicInteger(0);
+        final Thread[] readers = new Thread[3];
+        for (int r=0; r<readers.length; r++) {
+            final int reader = r;
+            readers[r] = new Thread() {
+                @Override
+                public void run() {
+                    final Random random = new Random(reader);
+                    long latest = 0;
+                    while (!done.get() && null == failure.get()) {
+                        reads.incrementAndGet();
+                        final int size = sl.size();
+                        if (size < 0 || size > 64) {
+                            failure.set("size=" + size);
+                        }
+                        if (size > 0) {
+                            try {
+                                final Sample<RSSI> sample = sl.get(random.nextInt(size));
+                                if (null != sample && valueFor(sample.taken().secondsSinceUnixEpoch()) != sample.value().value) {
+                                    failure.set("get=" + sample);
+                                }
+                            } catch (IndexOutOfBoundsException e) {
+                                // Index may be beyond size after concurrent clearBeforeDate()
+                            }
+                        }
+                        final Date date = sl.latest();
+                        if (null != date) {
+                            if (date.getTime() < latest) {
+                                failure.set("latest=" + date);
+                            }
+                            latest = date.getTime();
+                        }
+                        switch (reader) {
+                            case 0: {
+                                final SampleList<RSSI> snapshot = sl.snapshot();
+                                final ConsistencyCheck<RSSI> check = new ConsistencyCheck<>();
+                                for (final Sample<RSSI> s : snapshot) {
+                                    check.map(s);
+                                }
+                                if (0 != check.violations) {
+                                    failure.set("snapshot=" + snapshot);
+                                }
+                                break;
+                            }
+                            case 1: {
+                                final ConsistencyCheck<RSSI> check = new ConsistencyCheck<>();
+                                sl.aggregate(check);
+                                if (0 != check.violations) {
+                                    failure.set("aggregate");
+                                }
+                                break;
+                            }
+                            default: {
+                                // Samples may be skipped or repeated, but not torn
+                                sl.forEach(new SampleConsumer() {
+                                    @Override
+                                    public void accept(final long time, final double value) {
+                                        if (valueFor(time / 1000) != value) {
+                                            failure.set("forEach=" + time + "," + value);
+                                        }
+                                    }
+                                });
+                                break;
+                            }
+                        }
+                    }
+                }
+            };
+            readers[r].start();
+        }
+        // Single writer, never blocked by readers
+        final long t0 = System.nanoTime();
+        for (long t=1; t<=pushes; t++) {
+            sl.push(t, new RSSI(valueFor(t)));
+            if (0 == t % 1000) {
+                sl.clearBeforeDate(new Date(t - 10));
+            }
+        }
+        final long t1 = System.nanoTime();
+        done.set(true);
+        for (final Thread reader : readers) {
+            reader.join();
+        }
+        assertNull(failure.get());
+        assertEquals(pushes, sl.latest().secondsSinceUnixEpoch());
+        System.out.println("samplelist_concurrent_stress (type=" + sl.getClass().getSimpleName() + ",pushes=" + pushes + ",reads=" + reads.get() + ",push=" + ((t1 - t0) / pushes) + "ns/sample)");
+    }
+
+    @Test
+    public void samplelist_concurrent_stress() throws Exception {
+        stress(new SampleList<RSSI>(64));
+        stress(new PrimitiveSampleList<>(64, RSSI.class));
+    }
+
+    /**
+     * Counts all samples mapped since construction, and pushes a sample to the list on first
+     * map to emulate a concurrent write during evaluation.
+     */
+    private static class MapCounter<T extends DoubleValue> implements PrimitiveAggregate<T> {
+        private final SampleList<RSSI> list;
+        private int mapped = 0;
+        private int count = 0;
+
+        private MapCounter(final SampleList<RSSI> list) {
+            this.list = list;
+        }
+
+        @Override
+        public int runs() {
+            return 1;
+        }
+
+        @Override
+        public void beginRun(final int thisRun) {
+        }
+
+        @Override
+        public void map(@NonNull final Sample<T> value) {
+            map(value.taken().getTime(), value.value().doubleValue());
+        }
+
+        @Override
+        public void map(final long time, final double value) {
+            if (0 == mapped++) {
+                list.push(time / 1000 + 100, new RSSI(-1));
+            }
+            count++;
+        }
+
+        @Nullable
+        @Override
+        public Double reduce() {
+            return (double) count;
+        }
+
+        @Override
+        public void reset() {
+            count = 0;
+        }
+    }
+
+    private static class CumulativeMapCounter<T extends DoubleValue> extends MapCounter<T> implements CumulativeAggregate<T> {
+        private CumulativeMapCounter(final SampleList<RSSI> list) {
+            super(list);
+        }
+    }
+
+    @Test
+    public void samplelist_aggregate_concurrent_write() {
+        for (final SampleList<RSSI> sl : new SampleList[]{new SampleList<RSSI>(10), new PrimitiveSampleList<>(10, RSSI.class)}) {
+            for (int i=0; i<5; i++) {
+                sl.push(i, new RSSI(-i));
+            }
+            // Primitive aggregate is reset and evaluated again over the modified list
+            final MapCounter<RSSI> primitive = new MapCounter<>(sl);
+            assertEquals(6, sl.aggregate(primitive).get(0), Double.MIN_VALUE);
+            assertEquals(11, primitive.mapped);
+            // Cumulative aggregate maps every sample of a consistent copy once
+            final MapCounter<RSSI> cumulative = new CumulativeMapCounter<>(sl);
+            assertEquals(6, sl.aggregate(cumulative).get(0), Double.MIN_VALUE);
+            assertEquals(6, cumulative.mapped);
+            assertEquals(7, sl.size());
+            // Non-primitive aggregate maps every sample of a consistent copy once
+            final MapCounter<RSSI> counter = new MapCounter<>(sl);
+            final Aggregate<RSSI> sample = new Aggregate<RSSI>() {
+                @Override
+                public int runs() {
+                    return 1;
+                }
+
+                @Override
+                public void beginRun(final int thisRun) {
+                }
+
+                @Override
+                public void map(@NonNull final Sample<RSSI> value) {
+                    counter.map(value);
+                }
+
+                @Nullable
+                @Override
+                public Double reduce() {
+                    return counter.reduce();
+                }
+
+                @Override
+                public void reset() {
+                    counter.reset();
+                }
+            };
+            assertEquals(7, sl.aggregate(sample).get(0), Double.MIN_VALUE);
+            assertEquals(7, counter.mapped);
+            assertEquals(8, sl.size());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void samplelist_aggregate_exception_releases_write() {
+        for (final SampleList<RSSI> sl : new SampleList[]{new SampleList<RSSI>(2), new PrimitiveSampleList<>(2, RSSI.class)}) {
+            final AtomicBoolean failPush = new AtomicBoolean(false);
+            final AtomicBoolean failEvict = new AtomicBoolean(false);
+            sl.track(new Mean<RSSI>() {
+                @Override
+                public void onPush(final long time, final double value) {
+                    if (failPush.get()) {
+                        throw new IllegalStateException("onPush");
+                    }
+                    super.onPush(time, value);
+                }
+
+                @Override
+                public void onEvict(final long time, final double value) {
+                    if (failEvict.get()) {
+                        throw new IllegalStateException("onEvict");
+                    }
+                    super.onEvict(time, value);
+                }
+            });
+            sl.push(10, new RSSI(-10));
+            // Exception in onPush is propagated, and the sample is retained
+            failPush.set(true);
+            try {
+                sl.push(20, new RSSI(-20));
+                assertTrue(false);
+            } catch (IllegalStateException e) {
+                // Expected
+            }
+            failPush.set(false);
+            assertEquals(2, sl.size());
+            assertEquals(20, sl.latest().secondsSinceUnixEpoch());
+            // Exception in onEvict is propagated, and the list is unchanged
+            failEvict.set(true);
+            try {
+                sl.push(30, new RSSI(-30));
+                assertTrue(false);
+            } catch (IllegalStateException e) {
+                // Expected
+            }
+            failEvict.set(false);
+            assertEquals(2, sl.size());
+            assertEquals(10, sl.get(0).taken().secondsSinceUnixEpoch());
+            assertEquals(20, sl.latest().secondsSinceUnixEpoch());
+            // List remains readable and writable
+            sl.push(30, new RSSI(-30));
+            assertEquals(2, sl.size());
+            assertEquals(30, sl.latest().secondsSinceUnixEpoch());
+            assertEquals(-25, sl.aggregate(new Mean<RSSI>()).get(0), 0.000001);
+            sl.clear();
+            assertEquals(0, sl.size());
+        }
+    }
+
+    @Test
+    public void samplelist_range_views_after_push() {
+        for (final SampleList<RSSI> sl : new SampleList[]{new SampleList<RSSI>(5), new PrimitiveSampleList<>(5, RSSI.class)}) {
+            for (int i=0; i<5; i++) {
+                sl.push(new Date(1000 + i * 10), new RSSI(-i));
+            }
+            final SampleList<RSSI> since = sl.since(new Date(1020));
+            final IteratorProxy<RSSI> filtered = sl.filter(new Since<RSSI>(1020));
+            final SampleList<RSSI> latest = sl.latest(2);
+            assertEquals(3, since.size());
+            // Push and evict after the views are created, views are resolved by time
+            sl.push(new Date(1050), new RSSI(-5));
+            sl.push(new Date(1060), new RSSI(-6));
+            assertEquals(5, since.size());
+            assertEquals(1020, since.get(0).taken().secondsSinceUnixEpoch());
+            assertEquals(-4, since.aggregate(new Mean<RSSI>()).get(0), Double.MIN_VALUE);
+            assertEquals(-4, filtered.aggregate(new Mean<RSSI>()).get(0), Double.MIN_VALUE);
+            assertEquals(1060, since.latest().secondsSinceUnixEpoch());
+            // Latest view covers time range of latest samples at the time of call
+            assertEquals(2, latest.size());
+            assertEquals(-3.5, latest.aggregate(new Mean<RSSI>()).get(0), Double.MIN_VALUE);
+            // View of evicted time range is empty
+            sl.push(new Date(1070), new RSSI(-7));
+            sl.push(new Date(1080), new RSSI(-8));
+            sl.push(new Date(1090), new RSSI(-9));
+            assertEquals(0, latest.size());
+            assertNull(latest.latest());
+        }
+    }
+
+    @Test
+    public void samplelist_concurrent_range_views() throws Exception {
+        final SampleList<RSSI> sl = new SampleList<>(64);
+        final int pushes = 100000;
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final AtomicReference<String> failure = new AtomicReference<>(null);
+        final AtomicInteger reads = new AtomicInteger(0);
+        final Thread reader = new Thread() {
+            @Override
+            public void run() {
+                while (!done.get() && null == failure.get()) {
+                    final Date latest = sl.latest();
+                    if (null == latest) {
+                        continue;
+                    }
+                    // Aggregate over time range views while the writer moves the window
+                    final long fromTime = latest.getTime() - 20000, toTime = latest.getTime() + 10000;
+                    final SampleList<RSSI> view = sl.between(new Date(new java.util.Date(fromTime)), new Date(new java.util.Date(toTime)));
+                    final RangeCheck<RSSI> check = new RangeCheck<>(fromTime, toTime);
+                    if (0 != view.aggregate(check).get(0)) {
+                        failure.set("between=" + fromTime + "," + toTime);
+                    }
+                    final RangeCheck<RSSI> snapshotCheck = new RangeCheck<>(fromTime, toTime);
+                    for (final Sample<RSSI> sample : view.snapshot()) {
+                        snapshotCheck.map(sample);
+                    }
+                    if (0 != snapshotCheck.reduce()) {
+                        failure.set("snapshot=" + fromTime + "," + toTime);
+                    }
+                    reads.incrementAndGet();
+                }
+            }
+        };
+        reader.start();
+        for (long t=1; t<=pushes; t++) {
+            sl.push(t, new RSSI(valueFor(t)));
+        }
+        done.set(true);
+        reader.join();
+        assertNull(failure.get());
+        assertTrue(reads.get() > 0);
+    }
+
+    @Test
+    public void samplelist_concurrent_writers() throws Exception {
+        // Writers are serialised, thus no sample is lost
+        final int writers = 4;
+        final int pushes = 20000;
+        final PrimitiveSampleList<RSSI> sl = new PrimitiveSampleList<>(writers * pushes, RSSI.class);
+        final Mean<RSSI> mean = new Mean<>();
+        sl.track(mean);
+        final Thread[] threads = new Thread[writers];
+        for (int w=0; w<writers; w++) {
+            threads[w] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i=0; i<pushes; i++) {
+                        sl.push(i, -1);
+                    }
+                }
+            };
+            threads[w].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(writers * pushes, sl.size());
+        assertEquals(-1, mean.reduce(), Double.MIN_VALUE);
+        assertEquals(writers * pushes, sl.aggregate(new Gaussian<RSSI>()).get(0) * -sl.size(), 0.0001 * writers * pushes);
+    }
 }
@@ -8,12 +8,19 @@ import io.heraldprox.herald.sensor.ble.filter.BLEAdvertManufacturerData;
 import io.heraldprox.herald.sensor.ble.filter.BLEAdvertParser;
 import io.heraldprox.herald.sensor.ble.filter.BLEScanResponseData;
 
+import io.heraldprox.herald.sensor.datatype.Data;
+
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 public class AdvertParserTests {
 
@@ -170,4 +177,273 @@ public class AdvertParserTests {
 //        assertEquals(true, BLEAdvertParser.isAppleTV(result.segments));
     }
 
-}
\ No newline at end of file
+    // MARK: View based parsing
+
+    @Test
+    public void testSegmentView() {
+        final byte[] data = Data.fromHexEncodedString("02011A020A0C0BFF4C001006071EA3DD89E0").value;
+        final BLEAdvertSegmentView segment = new BLEAdvertSegmentView(data, 0);
+        assertTrue(segment.next());
+        assertEquals(0x01, segment.type());
+        assertEquals(2, segment.offset());
+        assertEquals(1, segment.length());
+        assertEquals(0x1A, segment.uint8(0));
+        assertTrue(segment.next());
+        assertEquals(BLEAdvertSegmentType.txPowerLevel, segment.segmentType());
+        assertEquals(12, segment.uint8(0));
+        assertTrue(segment.next());
+        assertTrue(segment.isManufacturerData());
+        assertEquals(0x004C, segment.manufacturer());
+        assertEquals(10, segment.payloadOffset());
+        assertEquals(8, segment.payloadLength());
+        assertEquals(6, segment.rawOffset());
+        assertEquals(12, segment.rawLength());
+        assertFalse(segment.next());
+        // Views share the original data
+        assertTrue(data == segment.array());
+    }
+
+    @Test
+    public void testServiceDataView() {
+        final byte[] data = Data.fromHexEncodedString("02011A0516D2FE0102").value;
+        final BLEAdvertSegmentView segment = new BLEAdvertSegmentView(data, 0);
+        assertTrue(segment.next());
+        assertFalse(segment.isServiceUUID16Data());
+        assertTrue(segment.next());
+        assertTrue(segment.isServiceUUID16Data());
+        assertEquals(0xFED2, segment.serviceUUID16());
+        assertEquals("0102", new Data(BLEAdvertParser.subDataBigEndian(data, segment.payloadOffset(), segment.payloadLength())).hexEncodedString());
+        // Identical to list based parser
+        final BLEAdvertServiceData serviceData = BLEAdvertParser.extractServiceUUID16Data(BLEAdvertParser.extractSegments(data, 0)).get(0);
+        assertEquals("FED2", new Data(serviceData.service).hexEncodedString());
+        assertEquals("0102", new Data(serviceData.data).hexEncodedString());
+    }
+
+    @Test
+    public void testAppleManufacturerSegmentView() {
+        final byte[] data = Data.fromHexEncodedString("1BFF4C000C0E00C857AC085510515D52CF3862211006551EEE51497A").value;
+        final BLEAdvertSegmentView segment = new BLEAdvertSegmentView(data, 0);
+        assertTrue(segment.next());
+        final BLEAdvertAppleManufacturerSegmentView message = new BLEAdvertAppleManufacturerSegmentView().reset(segment);
+        assertTrue(message.next());
+        assertEquals(0x0C, message.type());
+        assertEquals(14, message.reportedLength());
+        assertEquals("0C0E00C857AC085510515D52CF386221", BLEFilterPatternMatcher.hexEncodedString(message.array(), message.rawOffset(), message.rawLength()));
+        assertTrue(message.next());
+        assertEquals(0x10, message.type());
+        assertEquals("551EEE51497A", BLEFilterPatternMatcher.hexEncodedString(message.array(), message.offset(), message.length()));
+        assertFalse(message.next());
+        // Legacy service UUID encoding extends to end of data
+        final byte[] overflow = Data.fromHexEncodedString("0100000000000000000000200000000000").value;
+        message.reset(overflow, 0, overflow.length);
+        assertTrue(message.next());
+        assertEquals(0x01, message.type());
+        assertEquals(16, message.length());
+        assertFalse(message.next());
+        // Trailing type without length ends parsing, instead of throwing index out of bounds
+        final byte[] truncated = Data.fromHexEncodedString("10020102" + "07").value;
+        message.reset(truncated, 0, truncated.length);
+        assertTrue(message.next());
+        assertFalse(message.next());
+    }
+
+    @Test
+    public void testViewEquivalence() {
+        final Random random = new Random(0);
+        int compared = 0;
+        for (int i=0; i<100000; i++) {
+            final byte[] raw = randomAdvert(random);
+            // Segments
+            final List<BLEAdvertSegment> expectedSegments = referenceExtractSegments(raw, 0);
+            final List<BLEAdvertSegment> actualSegments = BLEAdvertParser.extractSegments(raw, 0);
+            assertEquals(expectedSegments.size(), actualSegments.size());
+            for (int j=0; j<expectedSegments.size(); j++) {
+                assertEquals(expectedSegments.get(j).toString(), actualSegments.get(j).toString());
+            }
+            // Apple manufacturer segments, where the reference implementation may fail on truncated data
+            final List<BLEAdvertManufacturerData> manufacturerData = BLEAdvertParser.extractManufacturerData(actualSegments);
+            final List<BLEAdvertAppleManufacturerSegment> expectedMessages;
+            try {
+                expectedMessages = referenceExtractAppleManufacturerSegments(manufacturerData);
+            } catch (ArrayIndexOutOfBoundsException e) {
+                continue;
+            }
+            final List<BLEAdvertAppleManufacturerSegment> actualMessages = BLEAdvertParser.extractAppleManufacturerSegments(manufacturerData);
+            assertEquals(expectedMessages.size(), actualMessages.size());
+            for (int j=0; j<expectedMessages.size(); j++) {
+                assertEquals(expectedMessages.get(j).type, actualMessages.get(j).type);
+                assertEquals(expectedMessages.get(j).reportedLength, actualMessages.get(j).reportedLength);
+                assertArrayEquals(expectedMessages.get(j).data, actualMessages.get(j).data);
+                assertEquals(expectedMessages.get(j).raw, actualMessages.get(j).raw);
+            }
+            // Device filter messages
+            final List<Data> messages = BLEDeviceFilter.extractMessages(raw);
+            if (expectedMessages.isEmpty()) {
+                assertTrue(null == messages || messages.isEmpty());
+            } else {
+                assertEquals(expectedMessages.size(), messages.size());
+                for (int j=0; j<expectedMessages.size(); j++) {
+                    assertEquals(expectedMessages.get(j).raw, messages.get(j));
+                }
+            }
+            compared++;
+        }
+        assertTrue(compared > 50000);
+    }
+
+    @Test
+    public void testViewPerformance() {
+        final Random random = new Random(0);
+        final byte[][] adverts = new byte[1000][];
+        for (int i=0; i<adverts.length; i++) {
+            adverts[i] = randomAdvert(random);
+        }
+        final int iterations = 200;
+        // Warm up
+        long listCount = 0, viewCount = 0;
+        for (int i=0; i<iterations; i++) {
+            for (final byte[] advert : adverts) {
+                listCount += countMessagesWithLists(advert);
+                viewCount += countMessagesWithViews(advert);
+            }
+        }
+        assertEquals(listCount, viewCount);
+        final long t0 = System.nanoTime();
+        for (int i=0; i<iterations; i++) {
+            for (final byte[] advert : adverts) {
+                listCount += countMessagesWithLists(advert);
+            }
+        }
+        final long t1 = System.nanoTime();
+        for (int i=0; i<iterations; i++) {
+            for (final byte[] advert : adverts) {
+                viewCount += countMessagesWithViews(advert);
+            }
+        }
+        final long t2 = System.nanoTime();
+        assertEquals(listCount, viewCount);
+        final int n = iterations * adverts.length;
+        System.out.println("testViewPerformance (adverts=" + n + ",lists=" + ((t1 - t0) / n) + "ns/advert,views=" + ((t2 - t1) / n) + "ns/advert)");
+    }
+
+    private static int countMessagesWithLists(final byte[] raw) {
+        final List<BLEAdvertSegment> segments = BLEAdvertParser.extractSegments(raw, 0);
+        final List<BLEAdvertManufacturerData> manufacturerData = BLEAdvertParser.extractManufacturerData(segments);
+        return BLEAdvertParser.extractAppleManufacturerSegments(manufacturerData).size();
+    }
+
+    private static int countMessagesWithViews(final byte[] raw) {
+        int count = 0;
+        final BLEAdvertSegmentView segment = new BLEAdvertSegmentView(raw, 0);
+        final BLEAdvertAppleManufacturerSegmentView message = new BLEAdvertAppleManufacturerSegmentView();
+        while (segment.next()) {
+            if (segment.isManufacturerData()) {
+                message.reset(segment);
+                while (message.next()) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Random advert made of well formed, zero length, truncated and random segments.
+     */
+    private static byte[] randomAdvert(final Random random) {
+        final StringBuilder hex = new StringBuilder();
+        final int segments = random.nextInt(4);
+        for (int s=0; s<segments; s++) {
+            switch (random.nextInt(5)) {
+                case 0: {
+                    // Apple manufacturer data with well formed messages
+                    final StringBuilder messages = new StringBuilder();
+                    final int count = 1 + random.nextInt(3);
+                    for (int m=0; m<count; m++) {
+                        final byte[] data = new byte[random.nextInt(6)];
+                        random.nextBytes(data);
+                        messages.append(String.format("%02X%02X", 2 + random.nextInt(0x1E), data.length)).append(new Data(data).hexEncodedString());
+                    }
+                    if (random.nextBoolean()) {
+                        messages.append("01").append(new Data(new byte[random.nextInt(17)]).hexEncodedString());
+                    }
+                    hex.append(String.format("%02XFF4C00", 3 + messages.length() / 2)).append(messages);
+                    break;
+                }
+                case 1: {
+                    // Manufacturer data with random content
+                    final byte[] data = new byte[random.nextInt(10)];
+                    random.nextBytes(data);
+                    hex.append(String.format("%02XFF", 1 + data.length)).append(new Data(data).hexEncodedString());
+                    break;
+                }
+                case 2:
+                    // Zero length segment
+                    hex.append("00FF");
+                    break;
+                default: {
+                    // Random segment
+                    final byte[] data = new byte[random.nextInt(8)];
+                    random.nextBytes(data);
+                    hex.append(new Data(data).hexEncodedString());
+                    break;
+                }
+            }
+        }
+        return Data.fromHexEncodedString(hex.toString()).value;
+    }
+
+    // MARK: Reference list based parser, as implemented before view based parsing
+
+    private static List<BLEAdvertSegment> referenceExtractSegments(final byte[] raw, final int offset) {
+        final ArrayList<BLEAdvertSegment> segments = new ArrayList<>();
+        int position = offset;
+        int segmentLength;
+        int segmentType;
+        byte[] segmentData;
+        Data rawData;
+        while (position < raw.length) {
+            if ((position + 2) <= raw.length) {
+                segmentLength = raw[position++] & 0xff;
+                segmentType = raw[position++] & 0xff;
+                if ((position + segmentLength - 1) <= raw.length) {
+                    segmentData = BLEAdvertParser.subDataBigEndian(raw, position, segmentLength - 1);
+                    rawData = new Data(BLEAdvertParser.subDataBigEndian(raw, position - 2, segmentLength + 1));
+                    position += segmentLength - 1;
+                    segments.add(new BLEAdvertSegment(BLEAdvertSegmentType.typeFor(segmentType), segmentLength - 1, segmentData, rawData));
+                } else {
+                    position = raw.length;
+                }
+            } else {
+                position = raw.length;
+            }
+        }
+        return segments;
+    }
+
+    private static List<BLEAdvertAppleManufacturerSegment> referenceExtractAppleManufacturerSegments(final List<BLEAdvertManufacturerData> manuData) {
+        final List<BLEAdvertAppleManufacturerSegment> appleSegments = new ArrayList<>();
+        for (final BLEAdvertManufacturerData manu : manuData) {
+            int bytePos = 0;
+            while (bytePos < manu.data.length) {
+                final byte type = manu.data[bytePos];
+                final int typeValue = type & 0xFF;
+                if (0x01 == type) {
+                    final int length = manu.data.length - bytePos - 1;
+                    final Data data = new Data(BLEAdvertParser.subDataBigEndian(manu.data, bytePos + 1, length));
+                    final Data raw = new Data(BLEAdvertParser.subDataBigEndian(manu.data, bytePos, manu.data.length - bytePos));
+                    appleSegments.add(new BLEAdvertAppleManufacturerSegment(typeValue, length, data.value, raw));
+                    bytePos = manu.data.length;
+                } else {
+                    final int length = manu.data[bytePos + 1] & 0xFF;
+                    final int maxLength = Math.min(length, manu.data.length - bytePos - 2);
+                    final Data data = new Data(BLEAdvertParser.subDataBigEndian(manu.data, bytePos + 2, maxLength));
+                    final Data raw = new Data(BLEAdvertParser.subDataBigEndian(manu.data, bytePos, maxLength + 2));
+                    appleSegments.add(new BLEAdvertAppleManufacturerSegment(typeValue, length, data.value, raw));
+                    bytePos += (maxLength + 2);
+                }
+            }
+        }
+        return appleSegments;
+    }
+}
@@ -0,0 +1,238 @@
+//  Copyright 2020-2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.ble.filter;
+
+import io.heraldprox.herald.sensor.ble.BLESensorConfiguration;
+import io.heraldprox.herald.sensor.datatype.Data;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("ConstantConditions")
+public class BLEDeviceFilterRulesTests {
+
+    @Test
+    public void testFeatures() {
+        final int[] features = BLEDeviceFilterRules.features(Data.fromHexEncodedString("10050B04AABBCC"));
+        assertArrayEquals(new int[]{
+                BLEDeviceFilterRules.feature(0x10, 0, 0),
+                BLEDeviceFilterRules.feature(0x10, 1, 0x0B),
+                BLEDeviceFilterRules.feature(0x10, 2, 0x04)}, features);
+        assertEquals("^10", BLEDeviceFilterRules.pattern(features[0]));
+        assertEquals("^10..0B", BLEDeviceFilterRules.pattern(features[1]));
+        assertEquals("^10....04", BLEDeviceFilterRules.pattern(features[2]));
+        // Short messages
+        assertEquals(1, BLEDeviceFilterRules.features(Data.fromHexEncodedString("07")).length);
+        assertEquals(1, BLEDeviceFilterRules.features(Data.fromHexEncodedString("0700")).length);
+        assertEquals(2, BLEDeviceFilterRules.features(Data.fromHexEncodedString("070001")).length);
+        assertEquals(0, BLEDeviceFilterRules.features(new Data()).length);
+    }
+
+    @Test
+    public void testPatternEquivalence() {
+        // Feature patterns match exactly the messages that contain the feature
+        final Random random = new Random(0);
+        for (int i=0; i<1000; i++) {
+            final byte[] message = new byte[1 + random.nextInt(6)];
+            random.nextBytes(message);
+            for (final int feature : BLEDeviceFilterRules.features(new Data(message))) {
+                final BLEFilterPatternMatcher matcher = new BLEFilterPatternMatcher(BLEDeviceFilter.compilePatterns(new String[]{BLEDeviceFilterRules.pattern(feature)}));
+                assertEquals(1, matcher.compiledPatterns());
+                assertNotNull(matcher.match(new Data(message)));
+            }
+        }
+    }
+
+    @Test
+    public void testPromoteDemote() {
+        final BLEDeviceFilterRules rules = new BLEDeviceFilterRules();
+        final List<Data> watch = Collections.singletonList(Data.fromHexEncodedString("10050B04AABBCC"));
+        final List<Data> iPhone = Collections.singletonList(Data.fromHexEncodedString("10050B18AABBCC"));
+        for (int i=1; i<BLESensorConfiguration.deviceFilterLearningMinimumSamples; i++) {
+            assertFalse(rules.train(watch, true));
+        }
+        assertEquals(0, rules.size());
+        // Promoted at minimum samples
+        assertTrue(rules.train(watch, true));
+        assertEquals(Arrays.asList("^10", "^10..0B", "^10....04"), rules.patterns());
+        // Legitimate example demotes shared features only
+        assertTrue(rules.train(iPhone, false));
+        assertEquals(Collections.singletonList("^10....04"), rules.patterns());
+        assertEquals(4, rules.features());
+    }
+
+    @Test
+    public void testPersistence() throws Exception {
+        final BLEDeviceFilterRules rules = new BLEDeviceFilterRules();
+        for (int i=0; i<5; i++) {
+            rules.train(Collections.singletonList(Data.fromHexEncodedString("0719010E2000F4")), true);
+            rules.train(Collections.singletonList(Data.fromHexEncodedString("10050118AABBCC")), false);
+        }
+        final byte[] data = rules.toByteArray();
+        // Header, version, count, and 11 bytes per feature
+        assertEquals(9 + rules.features() * 11, data.length);
+        final BLEDeviceFilterRules restored = BLEDeviceFilterRules.fromByteArray(data);
+        assertEquals(rules.features(), restored.features());
+        assertEquals(rules.patterns(), restored.patterns());
+        // Invalid data
+        try {
+            BLEDeviceFilterRules.fromByteArray(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9});
+            assertTrue(false);
+        } catch (Exception e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testPersistenceFile() throws Exception {
+        final File file = File.createTempFile("BLEDeviceFilterRulesTests", ".bin");
+        file.deleteOnExit();
+        assertTrue(file.delete());
+        final BLEDeviceFilterRules rules = new BLEDeviceFilterRules(file);
+        for (int i=0; i<BLESensorConfiguration.deviceFilterLearningMinimumSamples; i++) {
+            rules.train(Collections.singletonList(Data.fromHexEncodedString("0719010E2000F4")), true);
+        }
+        // Rules are written asynchronously
+        final long timeout = System.currentTimeMillis() + 5000;
+        while (!file.exists() && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        final BLEDeviceFilterRules restored = new BLEDeviceFilterRules(file);
+        assertEquals(rules.patterns(), restored.patterns());
+    }
+
+    @Test
+    public void testFilterLearning() {
+        final BLEDeviceFilter filter = new BLEDeviceFilter(null, null, null, new BLEDeviceFilterRules());
+        final byte[] airPods = new ReplayDevice("0719010E2000F48F010002" + "00000000000000000000000000000000", false).scanRecord;
+        assertNull(filter.match(airPods));
+        for (int i=0; i<BLESensorConfiguration.deviceFilterLearningMinimumSamples; i++) {
+            filter.train(airPods, true);
+        }
+        // Learned rule is applied, and cached verdict was invalidated
+        assertEquals("^07", filter.match(airPods).filterPattern.regularExpression);
+    }
+
+    // MARK:- Replay
+
+    private final static class ReplayDevice {
+        public final byte[] scanRecord;
+        public final boolean herald;
+
+        public ReplayDevice(final String messages, final boolean herald) {
+            final Data data = Data.fromHexEncodedString(messages);
+            final byte[] scanRecord = new byte[3 + 4 + data.value.length];
+            // Flags
+            scanRecord[0] = 0x02;
+            scanRecord[1] = 0x01;
+            scanRecord[2] = 0x1A;
+            // Apple manufacturer data
+            scanRecord[3] = (byte) (3 + data.value.length);
+            scanRecord[4] = (byte) 0xFF;
+            scanRecord[5] = 0x4C;
+            scanRecord[6] = 0x00;
+            System.arraycopy(data.value, 0, scanRecord, 7, data.value.length);
+            this.scanRecord = scanRecord;
+            this.herald = herald;
+        }
+    }
+
+    private final static class ReplayResult {
+        public int connects = 0;
+        public int wastedConnects = 0;
+        public int missedHeraldDevices = 0;
+
+        @Override
+        public String toString() {
+            return "connects=" + connects + ",wasted=" + wastedConnects + ",missed=" + missedHeraldDevices;
+        }
+    }
+
+    private static String hex(final Random random, final int length) {
+        final byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return new Data(bytes).hexEncodedString();
+    }
+
+    /**
+     * Population of Apple devices seen in a busy environment, where Herald devices are iPhones
+     * running the app in background, advertising nearby info and the overflow area.
+     */
+    private static List<ReplayDevice> population(final Random random) {
+        final List<ReplayDevice> devices = new ArrayList<>();
+        for (int i=0; i<40; i++) {
+            // AirPods
+            devices.add(new ReplayDevice("0719010E2000" + hex(random, 21), false));
+            // Watch
+            devices.add(new ReplayDevice("10050B04" + hex(random, 3) + "0C0E00" + hex(random, 13), false));
+            // MacBook
+            devices.add(new ReplayDevice("1005031C" + hex(random, 3), false));
+            // AppleTV
+            devices.add(new ReplayDevice("0906" + hex(random, 6), false));
+            // Find My
+            devices.add(new ReplayDevice("1219" + hex(random, 25), false));
+        }
+        for (int i=0; i<20; i++) {
+            // iPhone running Herald in background
+            devices.add(new ReplayDevice("10050118" + hex(random, 3) + "0100000000000000000000200000000000", true));
+        }
+        return devices;
+    }
+
+    /**
+     * Replay discovery of random devices from the population, connecting to every device
+     * that is not filtered, and training the filter with the connection outcome.
+     */
+    private static ReplayResult replay(final BLEDeviceFilter filter, final List<ReplayDevice> devices, final int events, final long seed) {
+        final Random random = new Random(seed);
+        final ReplayResult result = new ReplayResult();
+        for (int i=0; i<events; i++) {
+            final ReplayDevice device = devices.get(random.nextInt(devices.size()));
+            if (null != filter.match(device.scanRecord)) {
+                if (device.herald) {
+                    result.missedHeraldDevices++;
+                }
+                continue;
+            }
+            result.connects++;
+            if (!device.herald) {
+                result.wastedConnects++;
+            }
+            filter.train(device.scanRecord, !device.herald);
+        }
+        return result;
+    }
+
+    @Test
+    public void testReplay() {
+        final List<ReplayDevice> devices = population(new Random(0));
+        final int events = 20000;
+        final ReplayResult unfiltered = replay(new BLEDeviceFilter(null, null, null), devices, events, 1);
+        final ReplayResult configured = replay(new BLEDeviceFilter(null, null, BLESensorConfiguration.deviceFilterFeaturePatterns), devices, events, 1);
+        final BLEDeviceFilterRules rules = new BLEDeviceFilterRules();
+        final ReplayResult learned = replay(new BLEDeviceFilter(null, null, null, rules), devices, events, 1);
+        System.out.println("testReplay (events=" + events + ",unfiltered={" + unfiltered + "},configured={" + configured + "},learned={" + learned + "},rules=" + rules.patterns() + ")");
+        // Learning without any hand maintained patterns avoids almost all wasted connects
+        assertTrue(learned.wastedConnects < unfiltered.wastedConnects / 100);
+        assertTrue(learned.wastedConnects <= configured.wastedConnects);
+        // Herald devices are never filtered
+        assertEquals(0, unfiltered.missedHeraldDevices);
+        assertEquals(0, learned.missedHeraldDevices);
+    }
+}
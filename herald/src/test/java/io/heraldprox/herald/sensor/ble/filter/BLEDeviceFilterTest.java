@@ -4,6 +4,7 @@
 
 package io.heraldprox.herald.sensor.ble.filter;
 
+import io.heraldprox.herald.sensor.ble.BLESensorConfiguration;
 import io.heraldprox.herald.sensor.datatype.Data;
 
 import org.junit.Test;
@@ -243,4 +244,255 @@ public class BLEDeviceFilterTest {
         assertEquals("1006071EA3DD89E0", messages.get(0).hexEncodedString());
         assertEquals("0100000000000000000000200000000000", messages.get(1).hexEncodedString());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testPatternMatcher() {
+        final List<BLEDeviceFilter.FilterPattern> filterPatterns = BLEDeviceFilter.compilePatterns(new String[]{"^10....04", "^10....14", "^01[0-9A-F]{32}$", "^0c", "^1"});
+        final BLEFilterPatternMatcher matcher = new BLEFilterPatternMatcher(filterPatterns);
+        assertEquals(4, matcher.compiledPatterns());
+        assertEquals("^10....04", matcher.match(Data.fromHexEncodedString("10060C044FDE4DF7")).regularExpression);
+        assertEquals("^10....14", matcher.match(Data.fromHexEncodedString("10060C144FDE4DF7")).regularExpression);
+        assertEquals("^1", matcher.match(Data.fromHexEncodedString("10060C054FDE4DF7")).regularExpression);
+        assertEquals("^01[0-9A-F]{32}$", matcher.match(Data.fromHexEncodedString("0100200000000000000000000000000000")).regularExpression);
+        assertEquals("^0c", matcher.match(Data.fromHexEncodedString("0C0E00C857AC")).regularExpression);
+        assertNull(matcher.match(Data.fromHexEncodedString("0100")));
+        assertNull(matcher.match(Data.fromHexEncodedString("")));
+        // Prefix longer than message
+        assertEquals("^1", matcher.match(Data.fromHexEncodedString("1006")).regularExpression);
+        assertNull(new BLEFilterPatternMatcher(BLEDeviceFilter.compilePatterns(new String[]{"^10....04"})).match(Data.fromHexEncodedString("1006")));
+        // Message at offset
+        final byte[] data = Data.fromHexEncodedString("FF10060C04FF").value;
+        assertEquals("^10....04", matcher.match(data, 1, 4).regularExpression);
+        assertEquals("^1", matcher.match(data, 1, 3).regularExpression);
+    }
+
+    @Test
+    public void testPatternMatcherEquivalence() {
+        final List<BLEDeviceFilter.FilterPattern> filterPatterns = BLEDeviceFilter.compilePatterns(BLESensorConfiguration.deviceFilterFeaturePatterns);
+        filterPatterns.addAll(BLEDeviceFilter.compilePatterns(new String[]{"^01[0-9A-F]{32}$", "^1.A", "^F.."}));
+        final BLEFilterPatternMatcher matcher = new BLEFilterPatternMatcher(filterPatterns);
+        final Random random = new Random(0);
+        for (int i=0; i<100000; i++) {
+            final byte[] message = new byte[random.nextInt(24)];
+            random.nextBytes(message);
+            // Bias towards Apple message types for more matches
+            if (message.length > 0 && random.nextBoolean()) {
+                message[0] = (byte) random.nextInt(0x20);
+            }
+            final Data data = new Data(message);
+            final BLEDeviceFilter.FilterPattern expected = BLEDeviceFilter.match(filterPatterns, data.hexEncodedString());
+            final BLEDeviceFilter.FilterPattern actual = matcher.match(data);
+            assertEquals(data.hexEncodedString(), expected, actual);
+        }
+    }
+
+    @Test
+    public void testPatternMatcherPerformance() {
+        final List<BLEDeviceFilter.FilterPattern> filterPatterns = BLEDeviceFilter.compilePatterns(BLESensorConfiguration.deviceFilterFeaturePatterns);
+        final BLEFilterPatternMatcher matcher = new BLEFilterPatternMatcher(filterPatterns);
+        final Data[] adverts = new Data[]{
+                Data.fromHexEncodedString("02011A020A0C0BFF4C001006071EA3DD89E014FF4C0001000000000000000000002000000000000000000000000000000000000000000000000000000000"),
+                Data.fromHexEncodedString("1bff4c000c0e00c857ac085510515d52cf3862211006551eee51497a"),
+                Data.fromHexEncodedString("02011a020a0c0aff4c00100508141bba69"),
+                Data.fromHexEncodedString("0201060AFF4C001005421C1E616A000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000"),
+                Data.fromHexEncodedString("1eff4c001219006d17255505df2aec6ef580be0ddeba8bb034c996de5b0200")
+        };
+        final int iterations = 20000;
+        // Warm up and verify both paths agree
+        for (int i=0; i<iterations; i++) {
+            final Data raw = adverts[i % adverts.length];
+            final BLEDeviceFilter.MatchingPattern expected = BLEDeviceFilter.match(filterPatterns, raw);
+            final BLEDeviceFilter.MatchingPattern actual = BLEDeviceFilter.match(matcher, raw);
+            assertEquals(null == expected, null == actual);
+            if (null != expected) {
+                assertEquals(expected.filterPattern, actual.filterPattern);
+                assertEquals(expected.message, actual.message);
+            }
+        }
+        final long t0 = System.nanoTime();
+        int regexMatches = 0;
+        for (int i=0; i<iterations; i++) {
+            if (null != BLEDeviceFilter.match(filterPatterns, adverts[i % adverts.length])) {
+                regexMatches++;
+            }
+        }
+        final long t1 = System.nanoTime();
+        int byteMatches = 0;
+        for (int i=0; i<iterations; i++) {
+            if (null != BLEDeviceFilter.match(matcher, adverts[i % adverts.length])) {
+                byteMatches++;
+            }
+        }
+        final long t2 = System.nanoTime();
+        assertEquals(regexMatches, byteMatches);
+        System.out.println("testPatternMatcherPerformance (iterations=" + iterations + ",regex=" + ((t1 - t0) / iterations) + "ns/advert,bytes=" + ((t2 - t1) / iterations) + "ns/advert)");
+    }
+
+    @Test
+    public void testVerdictCacheKey() {
+        // Manufacturer specific data segments only, with length prefix
+        assertEquals("0B4C001006071EA3DD89E0144C000100000000000000000000200000000000", BLEFilterVerdictCache.key(Data.fromHexEncodedString("02011A020A0C0BFF4C001006071EA3DD89E014FF4C0001000000000000000000002000000000000000000000000000000000000000000000000000000000").value).hexEncodedString());
+        // Same manufacturer data with different flags and tx power produces same key
+        assertEquals(BLEFilterVerdictCache.key(Data.fromHexEncodedString("02011A020A0C0AFF4C00100508141BBA69").value), BLEFilterVerdictCache.key(Data.fromHexEncodedString("020106020A080AFF4C00100508141BBA69").value));
+        // No manufacturer data
+        assertNull(BLEFilterVerdictCache.key(Data.fromHexEncodedString("02011A020A0C").value));
+        assertNull(BLEFilterVerdictCache.key(new byte[0]));
+        assertNull(BLEFilterVerdictCache.key(null));
+        // Truncated segment is ignored, as in BLEAdvertParser
+        assertNull(BLEFilterVerdictCache.key(Data.fromHexEncodedString("02011a0aff4c001005031c0b4c").value));
+    }
+
+    @Test
+    public void testVerdictCache() {
+        final BLEFilterVerdictCache cache = new BLEFilterVerdictCache(2);
+        final Data a = new Data((byte) 1, 1), b = new Data((byte) 2, 1), c = new Data((byte) 3, 1);
+        final BLEFilterVerdictCache.Verdict verdict = new BLEFilterVerdictCache.Verdict(null);
+        assertNull(cache.get(a));
+        cache.put(a, cache.generation(), verdict);
+        cache.put(b, cache.generation(), verdict);
+        assertEquals(verdict, cache.get(a));
+        // Least recently used entry (b) is evicted
+        cache.put(c, cache.generation(), verdict);
+        assertEquals(2, cache.size());
+        assertNull(cache.get(b));
+        assertNotNull(cache.get(a));
+        assertNotNull(cache.get(c));
+        assertEquals(3, cache.hits());
+        assertEquals(2, cache.misses());
+        // Invalidation clears entries and rejects verdicts from previous generation
+        final long generation = cache.generation();
+        cache.invalidate();
+        assertEquals(0, cache.size());
+        cache.put(a, generation, verdict);
+        assertEquals(0, cache.size());
+        cache.put(a, cache.generation(), verdict);
+        assertEquals(1, cache.size());
+        // Zero capacity disables caching
+        final BLEFilterVerdictCache disabled = new BLEFilterVerdictCache(0);
+        disabled.put(a, disabled.generation(), verdict);
+        assertEquals(0, disabled.size());
+    }
+
+    @Test
+    public void testVerdictCacheFilter() {
+        final BLEDeviceFilter filter = new BLEDeviceFilter(null, null, new String[]{"^10....04"});
+        final byte[] watch = Data.fromHexEncodedString("02011a020a0c0aff4c00100508041bba69").value;
+        final byte[] phone = Data.fromHexEncodedString("02011a020a0c0aff4c00100508141bba69").value;
+        assertEquals("^10....04", filter.match(watch).filterPattern.regularExpression);
+        assertEquals("^10....04", filter.match(watch).filterPattern.regularExpression);
+        assertNull(filter.match(phone));
+        assertNull(filter.match(phone));
+        assertEquals(2, filter.verdictCache().hits());
+        assertEquals(2, filter.verdictCache().misses());
+        // Changing patterns invalidates verdicts
+        filter.patterns(new String[]{"^10....14"});
+        assertEquals(0, filter.verdictCache().size());
+        assertNull(filter.match(watch));
+        assertEquals("^10....14", filter.match(phone).filterPattern.regularExpression);
+        assertEquals(4, filter.verdictCache().misses());
+    }
+
+    @Test
+    public void testVerdictCacheEquivalence() {
+        final List<BLEDeviceFilter.FilterPattern> filterPatterns = BLEDeviceFilter.compilePatterns(BLESensorConfiguration.deviceFilterFeaturePatterns);
+        final BLEFilterPatternMatcher matcher = new BLEFilterPatternMatcher(filterPatterns);
+        final BLEDeviceFilter filter = new BLEDeviceFilter(null, null, BLESensorConfiguration.deviceFilterFeaturePatterns);
+        final Random random = new Random(0);
+        // Small pool of random Apple messages in adverts with random flags, such that cache hits
+        // occur with different raw data
+        final byte[][] manufacturerData = new byte[50][];
+        for (int i=0; i<manufacturerData.length; i++) {
+            final int messageLength = random.nextInt(20);
+            manufacturerData[i] = new byte[4 + messageLength];
+            random.nextBytes(manufacturerData[i]);
+            manufacturerData[i][0] = 0x4C;
+            manufacturerData[i][1] = 0x00;
+            manufacturerData[i][2] = (byte) random.nextInt(0x20);
+            manufacturerData[i][3] = (byte) messageLength;
+        }
+        for (int i=0; i<20000; i++) {
+            final byte[] segment = manufacturerData[random.nextInt(manufacturerData.length)];
+            final byte[] raw = new byte[3 + 2 + segment.length];
+            raw[0] = 0x02;
+            raw[1] = 0x01;
+            raw[2] = (byte) random.nextInt(256);
+            raw[3] = (byte) (segment.length + 1);
+            raw[4] = (byte) 0xFF;
+            System.arraycopy(segment, 0, raw, 5, segment.length);
+            final BLEDeviceFilter.MatchingPattern expected = BLEDeviceFilter.match(matcher, new Data(raw));
+            final BLEDeviceFilter.MatchingPattern actual = filter.match(raw);
+            assertEquals(null == expected, null == actual);
+            if (null != expected) {
+                assertEquals(expected.filterPattern.regularExpression, actual.filterPattern.regularExpression);
+                assertEquals(expected.message, actual.message);
+            }
+        }
+        assertEquals(manufacturerData.length, filter.verdictCache().misses());
+    }
+
+    @Test
+    public void testVerdictCacheConfigurationChange() {
+        final byte[] raw = Data.fromHexEncodedString("02011A020A0C0BFF4C001006071EA3DD89E014FF4C0001000000000000000000002000000000000000000000000000000000000000000000000000000000").value;
+        final boolean trainingEnabled = BLESensorConfiguration.deviceFilterTrainingEnabled;
+        final String[] featurePatterns = BLESensorConfiguration.deviceFilterFeaturePatterns;
+        try {
+            BLESensorConfiguration.deviceFilterTrainingEnabled = false;
+            BLESensorConfiguration.deviceFilterFeaturePatterns = new String[]{"^10....1E"};
+            final BLEDeviceFilter filter = new BLEDeviceFilter(null, null, BLESensorConfiguration.deviceFilterFeaturePatterns);
+            assertNotNull(filter.match(raw));
+            assertNotNull(filter.match(raw));
+            // Training disables pattern matching
+            BLESensorConfiguration.deviceFilterTrainingEnabled = true;
+            assertNull(filter.match(raw));
+            BLESensorConfiguration.deviceFilterTrainingEnabled = false;
+            assertNotNull(filter.match(raw));
+            // Configured patterns are followed
+            BLESensorConfiguration.deviceFilterFeaturePatterns = new String[]{"^10....04"};
+            assertNull(filter.match(raw));
+            // Explicit patterns are not replaced by configuration
+            filter.patterns(new String[]{"^0100"});
+            BLESensorConfiguration.deviceFilterFeaturePatterns = new String[]{"^10....04"};
+            assertNotNull(filter.match(raw));
+        } finally {
+            BLESensorConfiguration.deviceFilterTrainingEnabled = trainingEnabled;
+            BLESensorConfiguration.deviceFilterFeaturePatterns = featurePatterns;
+        }
+    }
+
+    @Test
+    public void testVerdictCachePerformance() {
+        final BLEDeviceFilter filter = new BLEDeviceFilter(null, null, BLESensorConfiguration.deviceFilterFeaturePatterns);
+        final BLEFilterPatternMatcher matcher = new BLEFilterPatternMatcher(BLEDeviceFilter.compilePatterns(BLESensorConfiguration.deviceFilterFeaturePatterns));
+        final byte[][] adverts = new byte[][]{
+                Data.fromHexEncodedString("02011A020A0C0BFF4C001006071EA3DD89E014FF4C0001000000000000000000002000000000000000000000000000000000000000000000000000000000").value,
+                Data.fromHexEncodedString("1bff4c000c0e00c857ac085510515d52cf3862211006551eee51497a").value,
+                Data.fromHexEncodedString("02011a020a0c0aff4c00100508141bba69").value,
+                Data.fromHexEncodedString("0201060AFF4C001005421C1E616A000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000").value,
+                Data.fromHexEncodedString("1eff4c001219006d17255505df2aec6ef580be0ddeba8bb034c996de5b0200").value
+        };
+        final int iterations = 20000;
+        // Warm up
+        for (int i=0; i<iterations; i++) {
+            BLEDeviceFilter.match(matcher, new Data(adverts[i % adverts.length]));
+            filter.match(adverts[i % adverts.length]);
+        }
+        final long t0 = System.nanoTime();
+        int uncachedMatches = 0;
+        for (int i=0; i<iterations; i++) {
+            if (null != BLEDeviceFilter.match(matcher, new Data(adverts[i % adverts.length]))) {
+                uncachedMatches++;
+            }
+        }
+        final long t1 = System.nanoTime();
+        int cachedMatches = 0;
+        for (int i=0; i<iterations; i++) {
+            if (null != filter.match(adverts[i % adverts.length])) {
+                cachedMatches++;
+            }
+        }
+        final long t2 = System.nanoTime();
+        assertEquals(uncachedMatches, cachedMatches);
+        assertEquals(adverts.length, filter.verdictCache().misses());
+        System.out.println("testVerdictCachePerformance (iterations=" + iterations + ",uncached=" + ((t1 - t0) / iterations) + "ns/advert,cached=" + ((t2 - t1) / iterations) + "ns/advert," + filter.verdictCache() + ")");
+    }
+}
@@ -0,0 +1,93 @@
+//  Copyright 2020-2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.data;
+
+import io.heraldprox.herald.sensor.datatype.TimeInterval;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BufferedTextFileTests {
+
+    @Test
+    public void testFlush() throws Exception {
+        final File file = File.createTempFile("BufferedTextFileTests", ".csv");
+        file.deleteOnExit();
+        final TextFile textFile = new TextFile(file);
+        textFile.write("header");
+        final BufferedTextFile bufferedTextFile = new BufferedTextFile(textFile, TimeInterval.minute, 100);
+        bufferedTextFile.write("a");
+        bufferedTextFile.write("b");
+        // Lines are held in memory until flush
+        assertEquals(2, bufferedTextFile.buffered());
+        assertEquals("header\n", textFile.contentsOf());
+        bufferedTextFile.flush();
+        assertEquals(0, bufferedTextFile.buffered());
+        assertEquals("header\na\nb\n", textFile.contentsOf());
+    }
+
+    @Test
+    public void testCapacity() throws Exception {
+        final File file = File.createTempFile("BufferedTextFileTests", ".csv");
+        file.deleteOnExit();
+        final TextFile textFile = new TextFile(file);
+        final BufferedTextFile bufferedTextFile = new BufferedTextFile(textFile, TimeInterval.minute, 10);
+        for (int i=0; i<25; i++) {
+            bufferedTextFile.write(Integer.toString(i));
+        }
+        // Full buffers are written asynchronously, remainder is written on flush
+        final long timeout = System.currentTimeMillis() + 5000;
+        while (bufferedTextFile.buffered() > 9 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertTrue(bufferedTextFile.buffered() < 10);
+        bufferedTextFile.flush();
+        final StringBuilder expected = new StringBuilder();
+        for (int i=0; i<25; i++) {
+            expected.append(i).append('\n');
+        }
+        assertEquals(expected.toString(), textFile.contentsOf());
+    }
+
+    @Test
+    public void testFlushInterval() throws Exception {
+        final File file = File.createTempFile("BufferedTextFileTests", ".csv");
+        file.deleteOnExit();
+        final TextFile textFile = new TextFile(file);
+        final BufferedTextFile bufferedTextFile = new BufferedTextFile(textFile, new TimeInterval(1), 100);
+        bufferedTextFile.write("a");
+        final long timeout = System.currentTimeMillis() + 5000;
+        while (bufferedTextFile.buffered() > 0 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        // Wait for write to complete, text file is synchronized
+        Thread.sleep(100);
+        assertEquals("a\n", textFile.contentsOf());
+    }
+
+    @Test
+    public void testSharedDaemonThread() throws Exception {
+        final File file = File.createTempFile("BufferedTextFileTests", ".csv");
+        file.deleteOnExit();
+        final TextFile textFile = new TextFile(file);
+        for (int i=0; i<10; i++) {
+            final BufferedTextFile bufferedTextFile = new BufferedTextFile(textFile, TimeInterval.minute, 1);
+            bufferedTextFile.write(Integer.toString(i));
+        }
+        // Background writes for all instances share one daemon thread
+        int threads = 0;
+        for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+            if ("BufferedTextFile".equals(thread.getName())) {
+                assertTrue(thread.isDaemon());
+                threads++;
+            }
+        }
+        assertEquals(1, threads);
+    }
+}
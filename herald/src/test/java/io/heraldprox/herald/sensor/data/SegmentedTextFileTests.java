@@ -0,0 +1,138 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.data;
+
+import io.heraldprox.herald.sensor.datatype.Callback;
+import io.heraldprox.herald.sensor.datatype.TimeInterval;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentedTextFileTests {
+    private final static long hour = TimeInterval.hour.millis();
+
+    private final static class RecordingCallback implements Callback<String> {
+        private final List<String> lines = new ArrayList<>();
+
+        @Override
+        public void accept(final String value) {
+            lines.add(value);
+        }
+    }
+
+    private static File folder() throws Exception {
+        final File folder = File.createTempFile("SegmentedTextFileTests", "");
+        assertTrue(folder.delete());
+        assertTrue(folder.mkdirs());
+        return folder;
+    }
+
+    private static void delete(final File folder) {
+        for (final File file : folder.listFiles()) {
+            assertTrue(file.delete());
+        }
+        assertTrue(folder.delete());
+    }
+
+    private static List<String> lines(final SegmentedTextFile segmentedTextFile, final long startTime, final long endTime) {
+        final RecordingCallback callback = new RecordingCallback();
+        assertTrue(segmentedTextFile.forEachLine(startTime, endTime, callback));
+        return callback.lines;
+    }
+
+    @Test
+    public void testSegmentStart() throws Exception {
+        final File folder = folder();
+        final SegmentedTextFile segmentedTextFile = new SegmentedTextFile(folder, "log.csv", TimeInterval.hour, null);
+        assertEquals(0, segmentedTextFile.segmentStart(0));
+        assertEquals(0, segmentedTextFile.segmentStart(hour - 1));
+        assertEquals(hour, segmentedTextFile.segmentStart(hour));
+        assertEquals(-hour, segmentedTextFile.segmentStart(-1));
+        delete(folder);
+    }
+
+    @Test
+    public void testFiles() throws Exception {
+        final File folder = folder();
+        final SegmentedTextFile segmentedTextFile = new SegmentedTextFile(folder, "log.csv", TimeInterval.hour, null);
+        assertEquals(Arrays.asList(new File(folder, "log-manifest.csv")), segmentedTextFile.files());
+        segmentedTextFile.write(2 * hour, "b");
+        segmentedTextFile.write(hour, "a");
+        assertEquals(Arrays.asList(new File(folder, "log-manifest.csv"), new File(folder, "log-19700101-010000.csv"), new File(folder, "log-19700101-020000.csv")), segmentedTextFile.files());
+        for (final File file : segmentedTextFile.files()) {
+            assertTrue(file.exists());
+        }
+        delete(folder);
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        final File folder = folder();
+        final SegmentedTextFile segmentedTextFile = new SegmentedTextFile(folder, "log.csv", TimeInterval.hour, "header");
+        assertTrue(segmentedTextFile.empty());
+        assertEquals(Long.MIN_VALUE, segmentedTextFile.start());
+        segmentedTextFile.write(hour, "a");
+        segmentedTextFile.write(hour + 1, Arrays.asList("b", "c"));
+        segmentedTextFile.write(3 * hour, "d");
+        // Late record creates segment in time order
+        segmentedTextFile.write(2 * hour, "e");
+        assertFalse(segmentedTextFile.empty());
+        assertEquals(3, segmentedTextFile.segments());
+        assertEquals(hour, segmentedTextFile.start());
+        assertEquals(Arrays.asList("header", "a", "b", "c", "header", "e", "header", "d"), lines(segmentedTextFile, Long.MIN_VALUE, Long.MAX_VALUE));
+        // Only overlapping segments are read
+        assertEquals(Arrays.asList("header", "e"), lines(segmentedTextFile, 2 * hour + 1, 3 * hour));
+        assertEquals(0, lines(segmentedTextFile, 0, hour).size());
+        // Segment file names are derived from file name and segment start
+        assertTrue(new File(folder, "log-19700101-010000.csv").exists());
+        assertTrue(new File(folder, "log-manifest.csv").exists());
+        // Segments are restored from manifest
+        final SegmentedTextFile restored = new SegmentedTextFile(folder, "log.csv", TimeInterval.hour, "header");
+        assertEquals(3, restored.segments());
+        assertEquals(Arrays.asList("header", "e"), lines(restored, 2 * hour, 3 * hour));
+        // Reset
+        restored.reset();
+        assertEquals(0, restored.segments());
+        assertEquals(0, new SegmentedTextFile(folder, "log.csv", TimeInterval.hour, "header").segments());
+        assertEquals(1, folder.listFiles().length);
+        delete(folder);
+    }
+
+    @Test
+    public void testRemoveBefore() throws Exception {
+        final File folder = folder();
+        final SegmentedTextFile segmentedTextFile = new SegmentedTextFile(folder, "log.csv", TimeInterval.hour, null);
+        for (int i=0; i<10; i++) {
+            segmentedTextFile.write(i * hour, Integer.toString(i));
+        }
+        assertEquals(10, segmentedTextFile.segments());
+        // Segment spanning cut off is retained, and cut off is recorded as start
+        assertEquals(0, segmentedTextFile.removeBefore(hour / 2));
+        assertEquals(hour / 2, segmentedTextFile.start());
+        assertEquals(hour / 2, new SegmentedTextFile(folder, "log.csv", TimeInterval.hour, null).start());
+        // Segments ending on or before cut off are deleted
+        assertEquals(5, segmentedTextFile.removeBefore(5 * hour));
+        assertEquals(5, segmentedTextFile.segments());
+        assertEquals(5 * hour, segmentedTextFile.start());
+        assertEquals(Arrays.asList("5", "6", "7", "8", "9"), lines(segmentedTextFile, Long.MIN_VALUE, Long.MAX_VALUE));
+        assertEquals(6, folder.listFiles().length);
+        final SegmentedTextFile restored = new SegmentedTextFile(folder, "log.csv", TimeInterval.hour, null);
+        assertEquals(5, restored.segments());
+        assertEquals(5 * hour, restored.start());
+        // Remove all
+        assertEquals(5, segmentedTextFile.removeBefore(Long.MAX_VALUE));
+        assertEquals(0, segmentedTextFile.segments());
+        assertEquals(1, folder.listFiles().length);
+        delete(folder);
+    }
+}
@@ -0,0 +1,82 @@
+//  Copyright 2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.data;
+
+import io.heraldprox.herald.sensor.datatype.Callback;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TextFileTests {
+
+    private final static class RecordingCallback implements Callback<String> {
+        private final List<String> lines = new ArrayList<>();
+
+        @Override
+        public void accept(final String value) {
+            lines.add(value);
+        }
+    }
+
+    @Test
+    public void testForEachLine() throws Exception {
+        final File file = File.createTempFile("TextFileTests", ".csv");
+        file.deleteOnExit();
+        final TextFile textFile = new TextFile(file);
+        // Empty file
+        final RecordingCallback empty = new RecordingCallback();
+        assertTrue(textFile.forEachLine(empty));
+        assertEquals(0, empty.lines.size());
+        assertEquals("", textFile.contentsOf());
+        // Lines are read in order, without newline character
+        textFile.write("a");
+        textFile.write(Arrays.asList("b", "", "c"));
+        final RecordingCallback lines = new RecordingCallback();
+        assertTrue(textFile.forEachLine(lines));
+        assertEquals(Arrays.asList("a", "b", "", "c"), lines.lines);
+        assertEquals("a\nb\n\nc\n", textFile.contentsOf());
+        // Last line without newline character
+        textFile.overwrite("a\nb");
+        final RecordingCallback partial = new RecordingCallback();
+        assertTrue(textFile.forEachLine(partial));
+        assertEquals(Arrays.asList("a", "b"), partial.lines);
+        // Non-existent file
+        assertTrue(file.delete());
+        final RecordingCallback missing = new RecordingCallback();
+        assertTrue(textFile.forEachLine(missing));
+        assertEquals(0, missing.lines.size());
+        assertEquals("", textFile.contentsOf());
+    }
+
+    @Test
+    public void testForEachLineException() throws Exception {
+        final File file = File.createTempFile("TextFileTests", ".csv");
+        file.deleteOnExit();
+        final TextFile textFile = new TextFile(file);
+        textFile.write(Arrays.asList("1", "x", "3"));
+        // Callback exception is propagated to caller, and file is closed for subsequent writes
+        try {
+            textFile.forEachLine(new Callback<String>() {
+                @Override
+                public void accept(final String value) {
+                    Integer.parseInt(value);
+                }
+            });
+            fail();
+        } catch (NumberFormatException e) {
+            // Expected
+        }
+        textFile.overwrite("1\n");
+        assertEquals("1\n", textFile.contentsOf());
+    }
+}
@@ -0,0 +1,90 @@
+//  Copyright 2020-2021 Herald Project Contributors
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package io.heraldprox.herald.sensor.datatype;
+
+import androidx.annotation.NonNull;
+
+import io.heraldprox.herald.sensor.BatchSensorDelegateAdapter;
+import io.heraldprox.herald.sensor.DefaultSensorDelegate;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ProximityBatchTests {
+
+    @Test
+    public void testEmpty() {
+        final ProximityBatch batch = new ProximityBatch();
+        assertEquals(0, batch.size());
+        assertTrue(batch.isEmpty());
+    }
+
+    @Test
+    public void testAppend() {
+        final TargetIdentifier target = new TargetIdentifier("A");
+        final PayloadData payload = new PayloadData((byte) 1, 4);
+        final Calibration calibration = new Calibration(CalibrationMeasurementUnit.BLETransmitPower, 12d);
+        final ProximityBatch batch = new ProximityBatch();
+        batch.append(1000, target, payload, ProximityMeasurementUnit.RSSI, -55, calibration);
+        batch.append(2000, target, null, ProximityMeasurementUnit.RSSI, -60, null);
+        assertEquals(2, batch.size());
+        assertEquals(1000, batch.timestamp(0));
+        assertSame(target, batch.target(0));
+        assertSame(payload, batch.payload(0));
+        assertEquals(ProximityMeasurementUnit.RSSI, batch.unit(0));
+        assertEquals(-55, batch.value(0), Double.MIN_VALUE);
+        assertSame(calibration, batch.calibration(0));
+        assertEquals(new Proximity(ProximityMeasurementUnit.RSSI, -55d, calibration), batch.proximity(0));
+        assertEquals(2000, batch.timestamp(1));
+        assertNull(batch.payload(1));
+        assertNull(batch.calibration(1));
+        assertEquals(new Proximity(ProximityMeasurementUnit.RSSI, -60d), batch.proximity(1));
+    }
+
+    @Test
+    public void testGrow() {
+        final ProximityBatch batch = new ProximityBatch(1);
+        for (int i=0; i<1000; i++) {
+            batch.append(i, new TargetIdentifier(Integer.toString(i)), null, ProximityMeasurementUnit.RSSI, -i, null);
+        }
+        assertEquals(1000, batch.size());
+        for (int i=0; i<1000; i++) {
+            assertEquals(i, batch.timestamp(i));
+            assertEquals(Integer.toString(i), batch.target(i).value);
+            assertEquals(-i, batch.value(i), Double.MIN_VALUE);
+        }
+    }
+
+    @Test
+    public void testAdapter() {
+        final List<String> events = new ArrayList<>();
+        final BatchSensorDelegateAdapter adapter = new BatchSensorDelegateAdapter(new DefaultSensorDelegate() {
+            @Override
+            public void sensor(@NonNull final SensorType sensor, @NonNull final Proximity didMeasure, @NonNull final TargetIdentifier fromTarget) {
+                events.add("didMeasure," + fromTarget + "," + didMeasure.value);
+            }
+
+            @Override
+            public void sensor(@NonNull final SensorType sensor, @NonNull final Proximity didMeasure, @NonNull final TargetIdentifier fromTarget, @NonNull final PayloadData withPayload) {
+                events.add("didMeasureWithPayload," + fromTarget + "," + didMeasure.value);
+            }
+        });
+        final ProximityBatch batch = new ProximityBatch();
+        batch.append(1000, new TargetIdentifier("A"), new PayloadData((byte) 1, 4), ProximityMeasurementUnit.RSSI, -55, null);
+        batch.append(2000, new TargetIdentifier("B"), null, ProximityMeasurementUnit.RSSI, -60, null);
+        adapter.sensor(SensorType.BLE, batch);
+        assertEquals(3, events.size());
+        assertEquals("didMeasure,A,-55.0", events.get(0));
+        assertEquals("didMeasureWithPayload,A,-55.0", events.get(1));
+        assertEquals("didMeasure,B,-60.0", events.get(2));
+    }
+}